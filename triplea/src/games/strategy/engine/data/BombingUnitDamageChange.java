@@ -66,4 +66,10 @@ public class BombingUnitDamageChange extends Change
 	{
 		return new BombingUnitDamageChange(m_undoHits, m_hits);
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchUnitProperty("unitDamage");
+	}
 }
@@ -50,4 +50,12 @@ public abstract class Change implements Serializable
 	{
 		return false;
 	}
+	
+	/**
+	 * Describes what this change touches. Changes that do not override this touch everything.
+	 */
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchEverything();
+	}
 }
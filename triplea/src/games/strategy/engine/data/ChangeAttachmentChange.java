@@ -118,4 +118,10 @@ public class ChangeAttachmentChange extends Change
 	{
 		return "ChangAttachmentChange attached to:" + m_attachedTo + " name:" + m_attachmentName + " new value:" + m_newValue + " old value:" + m_oldValue;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchAttachment(m_attachedTo, m_attachmentName);
+	}
 }
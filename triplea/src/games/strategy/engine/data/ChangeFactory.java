@@ -32,9 +32,11 @@ import games.strategy.util.PropertyUtil;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,6 +55,9 @@ import java.util.Set;
  */
 public class ChangeFactory
 {
+	// unit properties that are also set by changes other than property changes
+	private static final Set<String> s_sharedUnitProperties = new HashSet<String>(Arrays.asList("owner", "hits", "unitDamage"));
+	
 	public static final Change EMPTY_CHANGE = new Change()
 	{
 		private static final long serialVersionUID = -5514560889478876641L;
@@ -314,6 +319,216 @@ public class ChangeFactory
 		return unitPropertyChange(unit, TripleAUnit.get(unit).getMaxMovementAllowed(), TripleAUnit.ALREADY_MOVED);
 	}
 	
+	/**
+	 * Does this change alter the rules (attachments, technology, game properties, or relationships between players), as opposed to just moving units, hits, ownership or resources?
+	 * Anything that caches what the rules work out to, like battle results, should be thrown away after a change like this.
+	 */
+	public static boolean changesRules(final Change change)
+	{
+		if (change instanceof CompositeChange)
+		{
+			for (final Change child : ((CompositeChange) change).getChanges())
+			{
+				if (changesRules(child))
+					return true;
+			}
+			return false;
+		}
+		return change instanceof ChangeAttachmentChange || change instanceof AttachmentPropertyReset || change instanceof AttachmentPropertyResetUndo
+					|| change instanceof AddAttachmentChange || change instanceof RemoveAttachmentChange || change instanceof GenericTechChange || change instanceof SetPropertyChange
+					|| change instanceof RelationshipChange;
+	}
+	
+	/**
+	 * Builds a change with the same effect as a list of changes, but with fewer changes in it, for replaying many changes at once.
+	 * <p>
+	 * 
+	 * Only changes whose effect does not depend on what happens around them are combined:
+	 * <ul>
+	 * <li>The property changes made to a unit property are replaced with one change from the first old value to the last new value.</li>
+	 * <li>The resource changes made to a player's resource are replaced with one change of their total.</li>
+	 * <li>The units added to and removed from unit holders are replaced with one removal from each holder a unit has left and one addition to each holder a unit has joined,
+	 * in place of the last of those changes. Units end up in the same holders, but not always in the same order within a holder.</li>
+	 * </ul>
+	 * The combined change takes the place of the last change it replaces, every other change is kept in order. The result can be inverted like the original list.
+	 * <p>
+	 * 
+	 * Unit properties that are also set by other kinds of changes (owner, hits and damage) are never combined, since moving them past those changes would change the result.
+	 * 
+	 * @return a CompositeChange with the same effect as the changes, in the order given
+	 */
+	public static CompositeChange compact(final List<Change> changes)
+	{
+		final List<Change> flat = new ArrayList<Change>(changes.size());
+		flatten(changes, flat);
+		// for each combined change, where it goes and what it becomes
+		final Map<List<Object>, Integer> lastIndex = new HashMap<List<Object>, Integer>();
+		final Map<List<Object>, Object> firstOldValue = new HashMap<List<Object>, Object>();
+		final Map<List<Object>, Object> lastNewValue = new HashMap<List<Object>, Object>();
+		final Map<List<Object>, Integer> totals = new HashMap<List<Object>, Integer>();
+		// holder name and type and unit -> units added less units removed
+		final Map<List<Object>, Integer> unitMoves = new LinkedHashMap<List<Object>, Integer>();
+		int lastUnitMove = -1;
+		for (int i = 0; i < flat.size(); i++)
+		{
+			final Change change = flat.get(i);
+			if (change instanceof AddUnits)
+			{
+				final AddUnits addUnits = (AddUnits) change;
+				addUnitMoves(unitMoves, addUnits.getName(), addUnits.getType(), addUnits.getUnits(), 1);
+				lastUnitMove = i;
+				continue;
+			}
+			if (change instanceof RemoveUnits)
+			{
+				final RemoveUnits removeUnits = (RemoveUnits) change;
+				addUnitMoves(unitMoves, removeUnits.getName(), removeUnits.getType(), removeUnits.getUnits(), -1);
+				lastUnitMove = i;
+				continue;
+			}
+			final List<Object> key = getKey(change);
+			if (key == null)
+				continue;
+			lastIndex.put(key, i);
+			if (change instanceof ObjectPropertyChange)
+			{
+				final ObjectPropertyChange propertyChange = (ObjectPropertyChange) change;
+				if (!firstOldValue.containsKey(key))
+					firstOldValue.put(key, propertyChange.getOldValue());
+				lastNewValue.put(key, propertyChange.getNewValue());
+			}
+			else
+			{
+				final Integer total = totals.get(key);
+				totals.put(key, (total == null ? 0 : total) + ((ChangeResourceChange) change).getQuantity());
+			}
+		}
+		final List<Change> compacted = new ArrayList<Change>();
+		for (int i = 0; i < flat.size(); i++)
+		{
+			final Change change = flat.get(i);
+			if (change instanceof AddUnits || change instanceof RemoveUnits)
+			{
+				if (i == lastUnitMove)
+					compacted.addAll(getUnitMoves(unitMoves));
+				continue;
+			}
+			final List<Object> key = getKey(change);
+			if (key == null)
+			{
+				compacted.add(change);
+			}
+			else if (lastIndex.get(key) == i)
+			{
+				if (change instanceof ObjectPropertyChange)
+				{
+					final ObjectPropertyChange propertyChange = (ObjectPropertyChange) change;
+					final Object oldValue = firstOldValue.get(key);
+					final Object newValue = lastNewValue.get(key);
+					if (oldValue == null ? newValue != null : !oldValue.equals(newValue))
+						compacted.add(new ObjectPropertyChange(propertyChange.getObject(), propertyChange.getProperty(), newValue, oldValue));
+				}
+				else
+				{
+					final ChangeResourceChange resourceChange = (ChangeResourceChange) change;
+					final int total = totals.get(key);
+					if (total != 0)
+						compacted.add(new ChangeResourceChange(resourceChange.getPlayerName(), resourceChange.getResourceName(), total));
+				}
+			}
+		}
+		return new CompositeChange(compacted);
+	}
+	
+	private static void addUnitMoves(final Map<List<Object>, Integer> unitMoves, final String name, final String type, final Collection<Unit> units, final int count)
+	{
+		for (final Unit unit : units)
+		{
+			final List<Object> key = Arrays.<Object> asList(name, type, unit);
+			final Integer moves = unitMoves.get(key);
+			unitMoves.put(key, (moves == null ? 0 : moves) + count);
+		}
+	}
+	
+	/**
+	 * @return the removals then the additions of units that left or joined a holder, one change for each holder
+	 */
+	private static List<Change> getUnitMoves(final Map<List<Object>, Integer> unitMoves)
+	{
+		final Map<List<Object>, List<Unit>> removed = new LinkedHashMap<List<Object>, List<Unit>>();
+		final Map<List<Object>, List<Unit>> added = new LinkedHashMap<List<Object>, List<Unit>>();
+		for (final Map.Entry<List<Object>, Integer> entry : unitMoves.entrySet())
+		{
+			if (entry.getValue() == 0)
+				continue;
+			final Map<List<Object>, List<Unit>> units = entry.getValue() < 0 ? removed : added;
+			final List<Object> holder = entry.getKey().subList(0, 2);
+			List<Unit> holderUnits = units.get(holder);
+			if (holderUnits == null)
+			{
+				holderUnits = new ArrayList<Unit>();
+				units.put(holder, holderUnits);
+			}
+			holderUnits.add((Unit) entry.getKey().get(2));
+		}
+		final List<Change> rVal = new ArrayList<Change>();
+		for (final Map.Entry<List<Object>, List<Unit>> entry : removed.entrySet())
+		{
+			rVal.add(new RemoveUnits((String) entry.getKey().get(0), (String) entry.getKey().get(1), entry.getValue()));
+		}
+		for (final Map.Entry<List<Object>, List<Unit>> entry : added.entrySet())
+		{
+			rVal.add(new AddUnits((String) entry.getKey().get(0), (String) entry.getKey().get(1), entry.getValue()));
+		}
+		return rVal;
+	}
+	
+	/**
+	 * @return the number of changes in the list, counting the changes inside composite changes rather than the composite changes themselves
+	 */
+	public static int countChanges(final Collection<Change> changes)
+	{
+		int size = 0;
+		for (final Change change : changes)
+		{
+			if (change instanceof CompositeChange)
+				size += countChanges(((CompositeChange) change).getChanges());
+			else
+				size++;
+		}
+		return size;
+	}
+	
+	private static void flatten(final Collection<Change> changes, final List<Change> flat)
+	{
+		for (final Change change : changes)
+		{
+			if (change instanceof CompositeChange)
+				flatten(((CompositeChange) change).getChanges(), flat);
+			else
+				flat.add(change);
+		}
+	}
+	
+	/**
+	 * @return what the change is combined by, or null if it is not combined with other changes
+	 */
+	private static List<Object> getKey(final Change change)
+	{
+		if (change instanceof ObjectPropertyChange)
+		{
+			final ObjectPropertyChange propertyChange = (ObjectPropertyChange) change;
+			if (!(propertyChange.getObject() instanceof Unit) || s_sharedUnitProperties.contains(propertyChange.getProperty()))
+				return null;
+			return Arrays.<Object> asList(ObjectPropertyChange.class, propertyChange.getObject(), propertyChange.getProperty());
+		}
+		if (change instanceof ChangeResourceChange)
+		{
+			final ChangeResourceChange resourceChange = (ChangeResourceChange) change;
+			return Arrays.<Object> asList(ChangeResourceChange.class, resourceChange.getPlayerName(), resourceChange.getResourceName());
+		}
+		return null;
+	}
 }
 
 
@@ -384,6 +599,12 @@ class AttachmentPropertyReset extends Change
 	{
 		return "AttachmentPropertyClear attached to:" + m_attachedTo + " name:" + m_attachmentName + ", reset old value:" + m_oldValue;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchAttachment(m_attachedTo, m_attachmentName);
+	}
 }
 
 
@@ -431,6 +652,12 @@ class AttachmentPropertyResetUndo extends Change
 	{
 		return "AttachmentPropertyClearUndo attached to:" + m_attachedTo + " name:" + m_attachmentName + " new value:" + m_newValue;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchAttachment(m_attachedTo, m_attachmentName);
+	}
 }
 
 
@@ -496,6 +723,12 @@ class RelationshipChange extends Change
 			throw new IllegalStateException("RelationshipChange may not have null arguments");*/
 		return "Add relation change. " + m_player1 + " and " + m_player2 + " change from " + m_OldRelation + " to " + m_NewRelation;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchRelationships();
+	}
 }
 
 
@@ -523,6 +756,21 @@ class AddUnits extends Change
 		m_name = name;
 	}
 	
+	String getName()
+	{
+		return m_name;
+	}
+	
+	String getType()
+	{
+		return m_type;
+	}
+	
+	Collection<Unit> getUnits()
+	{
+		return m_units;
+	}
+	
 	@Override
 	public Change invert()
 	{
@@ -545,6 +793,12 @@ class AddUnits extends Change
 			throw new IllegalStateException("AddUnits change may not have null arguments: m_name: " + m_name + ", m_type: " + m_type + ", m_units: " + m_units);*/
 		return "Add unit change.  Add to:" + m_name + " units:" + m_units;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchUnits(m_name, m_type);
+	}
 }
 
 
@@ -574,6 +828,21 @@ class RemoveUnits extends Change
 		m_name = name;
 	}
 	
+	String getName()
+	{
+		return m_name;
+	}
+	
+	String getType()
+	{
+		return m_type;
+	}
+	
+	Collection<Unit> getUnits()
+	{
+		return m_units;
+	}
+	
 	@Override
 	public Change invert()
 	{
@@ -600,6 +869,12 @@ class RemoveUnits extends Change
 			throw new IllegalStateException("RemoveUnits change may not have null arguments: m_name: " + m_name + ", m_type: " + m_type + ", m_units: " + m_units);*/
 		return "Remove unit change. Remove from:" + m_name + " units:" + m_units;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchUnits(m_name, m_type);
+	}
 }
 
 
@@ -665,6 +940,12 @@ class OwnerChange extends Change
 	{
 		return m_new + " takes " + m_territory + " from " + m_old;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchOwner(m_territory);
+	}
 }
 
 
@@ -732,6 +1013,13 @@ class PlayerOwnerChange extends Change
 			throw new IllegalStateException("PlayerOwnerChange may not have null arguments");*/
 		return "Some units change owners in territory " + m_location;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchUnitOwners();
+		impact.touchUnits(m_location, UnitHolder.TERRITORY);
+	}
 }
 
 
@@ -783,6 +1071,12 @@ class ChangeUnitProduction extends Change
 		return "Change unit production.  Quantity:" + m_unitProduction + " Territory:" + m_location;
 	}
 	
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchProduction();
+	}
 }
 
 
@@ -803,13 +1097,28 @@ class ChangeResourceChange extends Change
 		m_quantity = quantity;
 	}
 	
-	private ChangeResourceChange(final String player, final String resource, final int quantity)
+	ChangeResourceChange(final String player, final String resource, final int quantity)
 	{
 		m_player = player;
 		m_resource = resource;
 		m_quantity = quantity;
 	}
 	
+	String getPlayerName()
+	{
+		return m_player;
+	}
+	
+	String getResourceName()
+	{
+		return m_resource;
+	}
+	
+	int getQuantity()
+	{
+		return m_quantity;
+	}
+	
 	@Override
 	public Change invert()
 	{
@@ -836,6 +1145,12 @@ class ChangeResourceChange extends Change
 			throw new IllegalStateException("ChangeResourceChange may not have null arguments");*/
 		return "Change resource.  Resource:" + m_resource + " quantity:" + m_quantity + " Player:" + m_player;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchResources();
+	}
 }
 
 
@@ -919,6 +1234,12 @@ class AddProductionRule extends Change
 		
 		return m_rule.getName() + " added to " + m_frontier.getName();
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchProduction();
+	}
 }
 
 
@@ -958,6 +1279,12 @@ class RemoveProductionRule extends Change
 		
 		return m_rule.getName() + " removed from " + m_frontier.getName();
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchProduction();
+	}
 }
 
 
@@ -1000,6 +1327,12 @@ class AddAvailableTech extends Change
 		
 		return m_tech.getName() + " added to " + m_player.getName() + " technology frontier, " + m_frontier.getName();
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchTechs();
+	}
 }
 
 
@@ -1042,6 +1375,12 @@ class RemoveAvailableTech extends Change
 		
 		return m_tech.getName() + " removed from " + m_player.getName() + " technology frontier, " + m_frontier.getName();
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchTechs();
+	}
 }
 
 
@@ -1085,6 +1424,12 @@ class AddAttachmentChange extends Change
 		
 		return m_name + " attachment attached to " + m_attachable.toString();
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchAttachment(m_attachment);
+	}
 }
 
 
@@ -1132,6 +1477,12 @@ class RemoveAttachmentChange extends Change
 		
 		return m_name + " attachment un-attached from " + m_attachable.toString();
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchAttachment(m_attachment);
+	}
 }
 
 
@@ -1302,6 +1653,12 @@ class ProductionFrontierChange extends Change
 		
 		return m_player + " production frontier changed from  " + m_startFrontier + " to " + m_endFrontier;
 	}*/
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchProduction();
+	}
 }
 
 
@@ -1407,6 +1764,26 @@ class ObjectPropertyChange extends Change
 		m_oldValue = resolve(m_oldValue);
 	}
 	
+	Object getObject()
+	{
+		return m_object;
+	}
+	
+	String getProperty()
+	{
+		return m_property;
+	}
+	
+	Object getNewValue()
+	{
+		return m_newValue;
+	}
+	
+	Object getOldValue()
+	{
+		return m_oldValue;
+	}
+	
 	@Override
 	public Change invert()
 	{
@@ -1428,6 +1805,17 @@ class ObjectPropertyChange extends Change
 			throw new IllegalStateException("ObjectPropertyChange may not have null arguments");*/
 		return "Property change, unit:" + m_object + " property:" + m_property + " newValue:" + m_newValue + " oldValue:" + m_oldValue;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		if (m_object instanceof Unit)
+			impact.touchUnitProperty(m_property);
+		else if (m_object instanceof IAttachment)
+			impact.touchAttachment((IAttachment) m_object);
+		else
+			impact.touchEverything();
+	}
 }
 
 
@@ -1492,6 +1880,13 @@ class GenericTechChange extends Change
 			throw new IllegalStateException("GenericTechChange may not have null arguments");*/
 		return "GenericTechChange attached to:" + m_attachedTo + " name:" + m_attachmentName + " new value:" + m_newValue + " old value:" + m_oldValue;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchTechs();
+		impact.touchAttachment(m_attachedTo, m_attachmentName);
+	}
 }
 
 
@@ -1539,6 +1934,12 @@ class AddBattleRecordsChange extends Change
 			throw new IllegalStateException("Records can not be null (most likely caused by improper or impossible serialization): " + m_recordsToAdd);
 		return "Adding Battle Records: " + m_recordsToAdd;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchBattleRecords();
+	}
 }
 
 
@@ -1580,6 +1981,12 @@ class RemoveBattleRecordsChange extends Change
 			throw new IllegalStateException("Records can not be null (most likely caused by improper or impossible serialization): " + m_recordsToRemove);
 		return "Adding Battle Records: " + m_recordsToRemove;
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchBattleRecords();
+	}
 }
 
 
@@ -0,0 +1,229 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.data;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * What a series of changes touched, in broad strokes, so that something worked out from the game data can tell whether it has to be worked out again.
+ * <p>
+ * Each kind of change describes itself. Changes that do not, and changes to anything but units and attachments through an ObjectPropertyChange, touch everything.
+ * Not all changes to game data are changes: the round and step of the sequence, for one, are changed directly.
+ */
+public class ChangeImpact
+{
+	private final GameData m_data;
+	private boolean m_everything = false;
+	private final Set<Territory> m_unitTerritories = new HashSet<Territory>();
+	private final Set<Territory> m_ownerTerritories = new HashSet<Territory>();
+	private final Set<String> m_unitProperties = new HashSet<String>();
+	private final Set<IAttachment> m_attachments = Collections.newSetFromMap(new IdentityHashMap<IAttachment, Boolean>());
+	private boolean m_unitOwners = false;
+	private boolean m_relationships = false;
+	private boolean m_techs = false;
+	private boolean m_battleRecords = false;
+	private boolean m_resources = false;
+	private boolean m_production = false;
+	private boolean m_empty = true;
+	
+	public ChangeImpact(final GameData data)
+	{
+		m_data = data;
+	}
+	
+	public void add(final Change change)
+	{
+		change.addTo(this);
+	}
+	
+	public boolean isEmpty()
+	{
+		return m_empty;
+	}
+	
+	public void clear()
+	{
+		m_everything = false;
+		m_unitTerritories.clear();
+		m_ownerTerritories.clear();
+		m_unitProperties.clear();
+		m_attachments.clear();
+		m_unitOwners = false;
+		m_relationships = false;
+		m_techs = false;
+		m_battleRecords = false;
+		m_resources = false;
+		m_production = false;
+		m_empty = true;
+	}
+	
+	/**
+	 * @return true if something was changed that is not described by the rest of this impact
+	 */
+	public boolean touchesEverything()
+	{
+		return m_everything;
+	}
+	
+	/**
+	 * @return the territories that had units added or removed
+	 */
+	public Set<Territory> getUnitTerritories()
+	{
+		return Collections.unmodifiableSet(m_unitTerritories);
+	}
+	
+	/**
+	 * @return the territories that changed owner
+	 */
+	public Set<Territory> getOwnerTerritories()
+	{
+		return Collections.unmodifiableSet(m_ownerTerritories);
+	}
+	
+	/**
+	 * @return the names of the unit properties changed, on any unit
+	 */
+	public Set<String> getUnitProperties()
+	{
+		return Collections.unmodifiableSet(m_unitProperties);
+	}
+	
+	public Set<IAttachment> getAttachments()
+	{
+		return Collections.unmodifiableSet(m_attachments);
+	}
+	
+	/**
+	 * @return true if any units changed owner
+	 */
+	public boolean touchesUnitOwners()
+	{
+		return m_unitOwners;
+	}
+	
+	public boolean touchesRelationships()
+	{
+		return m_relationships;
+	}
+	
+	public boolean touchesTechs()
+	{
+		return m_techs;
+	}
+	
+	public boolean touchesBattleRecords()
+	{
+		return m_battleRecords;
+	}
+	
+	public boolean touchesResources()
+	{
+		return m_resources;
+	}
+	
+	public boolean touchesProduction()
+	{
+		return m_production;
+	}
+	
+	void touchEverything()
+	{
+		m_everything = true;
+		m_empty = false;
+	}
+	
+	void touchUnits(final String holderName, final String holderType)
+	{
+		m_empty = false;
+		// units held by players are not on the map
+		if (UnitHolder.TERRITORY.equals(holderType))
+		{
+			final Territory territory = m_data.getMap().getTerritory(holderName);
+			if (territory == null)
+				m_everything = true;
+			else
+				m_unitTerritories.add(territory);
+		}
+	}
+	
+	void touchOwner(final String territoryName)
+	{
+		m_empty = false;
+		final Territory territory = m_data.getMap().getTerritory(territoryName);
+		if (territory == null)
+			m_everything = true;
+		else
+			m_ownerTerritories.add(territory);
+	}
+	
+	void touchUnitProperty(final String property)
+	{
+		m_empty = false;
+		m_unitProperties.add(property);
+	}
+	
+	void touchAttachment(final IAttachment attachment)
+	{
+		m_empty = false;
+		if (attachment == null)
+			m_everything = true;
+		else
+			m_attachments.add(attachment);
+	}
+	
+	void touchAttachment(final Attachable attachedTo, final String attachmentName)
+	{
+		touchAttachment(attachedTo == null ? null : attachedTo.getAttachment(attachmentName));
+	}
+	
+	void touchUnitOwners()
+	{
+		m_empty = false;
+		m_unitOwners = true;
+	}
+	
+	void touchRelationships()
+	{
+		m_empty = false;
+		m_relationships = true;
+	}
+	
+	void touchTechs()
+	{
+		m_empty = false;
+		m_techs = true;
+	}
+	
+	void touchBattleRecords()
+	{
+		m_empty = false;
+		m_battleRecords = true;
+	}
+	
+	void touchResources()
+	{
+		m_empty = false;
+		m_resources = true;
+	}
+	
+	void touchProduction()
+	{
+		m_empty = false;
+		m_production = true;
+	}
+}
@@ -55,6 +55,9 @@ public class ChangePerformer
 		{
 			m_data.acquireWriteLock();
 			aChange.perform(m_data);
+			if (ChangeFactory.changesRules(aChange))
+				m_data.rulesChanged();
+			m_data.notifyChangeRecorders(aChange);
 		} finally
 		{
 			m_data.releaseWriteLock();
@@ -105,4 +105,13 @@ public class CompositeChange extends Change
 	{
 		return "CompositeChange <" + (m_changes == null ? "null" : m_changes.toString()) + ">";
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		for (final Change change : m_changes)
+		{
+			change.addTo(impact);
+		}
+	}
 }
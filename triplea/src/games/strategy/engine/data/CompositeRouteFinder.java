@@ -13,16 +13,10 @@
  */
 package games.strategy.engine.data;
 
-import games.strategy.triplea.delegate.Matches;
 import games.strategy.util.CompositeMatchOr;
 import games.strategy.util.Match;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.logging.Logger;
 
 public class CompositeRouteFinder
@@ -59,85 +53,30 @@ public class CompositeRouteFinder
 		s_logger.finer("Initializing CompositeRouteFinderClass...");
 	}
 	
-	private HashSet<Territory> ToHashSet(final Collection<Territory> ters)
-	{
-		final HashSet<Territory> result = new HashSet<Territory>();
-		for (final Territory ter : ters)
-			result.add(ter);
-		return result;
-	}
-	
 	public Route findRoute(final Territory start, final Territory end)
 	{
-		final HashSet<Territory> allMatchingTers = ToHashSet(Match.getMatches(m_map.getTerritories(), new CompositeMatchOr<Territory>(m_matches.keySet())));
-		final HashMap<Territory, Integer> terScoreMap = CreateScoreMap(allMatchingTers, start);
-		final HashMap<Territory, Integer> routeScoreMap = new HashMap<Territory, Integer>();
-		int bestRouteToEndScore = Integer.MAX_VALUE;
-		final HashMap<Territory, Territory> previous = new HashMap<Territory, Territory>();
-		List<Territory> routeLeadersToProcess = new ArrayList<Territory>();
-		for (final Territory ter : m_map.getNeighbors(start, Matches.territoryIsInList(allMatchingTers)))
+		final HashMap<Territory, Integer> terScoreMap = new HashMap<Territory, Integer>();
+		final RouteFinder.Cost cost = new RouteFinder.Cost()
 		{
-			final int routeScore = terScoreMap.get(start) + terScoreMap.get(ter);
-			routeScoreMap.put(ter, routeScore);
-			routeLeadersToProcess.add(ter);
-			previous.put(ter, start);
-		}
-		while (routeLeadersToProcess.size() > 0)
-		{
-			final List<Territory> newLeaders = new ArrayList<Territory>();
-			for (final Territory oldLeader : routeLeadersToProcess)
+			public int getCost(final Territory from, final Territory to)
 			{
-				for (final Territory ter : m_map.getNeighbors(oldLeader, Matches.territoryIsInList(allMatchingTers)))
+				Integer score = terScoreMap.get(to);
+				if (score == null)
 				{
-					final int routeScore = routeScoreMap.get(oldLeader) + terScoreMap.get(ter);
-					if (routeLeadersToProcess.contains(ter) || ter.equals(start)) // If we're bumping into one of the current route leaders or the start
-						continue;
-					if (previous.containsKey(ter)) // If we're bumping into an existing route
-					{
-						if (routeScore >= routeScoreMap.get(ter)) // If the already existing route route is better or the same
-							continue;
-					}
-					if (bestRouteToEndScore <= routeScore)
-						continue; // Ignore this route leader, as we know we already have a better route
-					routeScoreMap.put(ter, routeScore);
-					newLeaders.add(ter);
-					previous.put(ter, oldLeader);
-					if (ter.equals(end))
-					{
-						if (routeScore < bestRouteToEndScore)
-							bestRouteToEndScore = routeScore;
-					}
+					score = GetTerScore(to);
+					terScoreMap.put(to, score);
 				}
+				// the finder needs costs that are not negative
+				return Math.max(0, score);
 			}
-			routeLeadersToProcess = newLeaders;
-		}
-		if (bestRouteToEndScore == Integer.MAX_VALUE)
-			return null;
-		return AssembleRoute(start, end, previous);
-	}
-	
-	private Route AssembleRoute(final Territory start, final Territory end, final HashMap<Territory, Territory> previous)
-	{
-		final List<Territory> routeTers = new ArrayList<Territory>();
-		Territory curTer = end;
-		while (previous.containsKey(curTer))
-		{
-			routeTers.add(curTer);
-			curTer = previous.get(curTer);
-		}
-		routeTers.add(start);
-		Collections.reverse(routeTers);
-		return new Route(routeTers);
-	}
-	
-	private HashMap<Territory, Integer> CreateScoreMap(final Collection<Territory> ters, final Territory startTer)
-	{
-		final HashMap<Territory, Integer> result = new HashMap<Territory, Integer>();
-		for (final Territory ter : m_map.getTerritories())
+		};
+		int lowestScore = Integer.MAX_VALUE;
+		for (final Integer score : m_matches.values())
 		{
-			result.put(ter, GetTerScore(ter));
+			lowestScore = Math.min(lowestScore, score);
 		}
-		return result;
+		final RouteFinder finder = new RouteFinder(m_map, new CompositeMatchOr<Territory>(m_matches.keySet()), cost, RouteFinder.stepsToEnd(m_map, lowestScore));
+		return finder.findRoute(start, end);
 	}
 	
 	/*
@@ -38,6 +38,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -88,6 +89,7 @@ public class GameData implements java.io.Serializable
 	private int m_diceSides;
 	private transient ListenerList<TerritoryListener> m_territoryListeners = new ListenerList<TerritoryListener>();
 	private transient ListenerList<GameDataChangeListener> m_dataChangeListeners = new ListenerList<GameDataChangeListener>();
+	private transient ListenerList<GameDataChangeListener> m_changeRecorders = new ListenerList<GameDataChangeListener>();
 	private transient ListenerList<GameMapListener> m_gameMapListeners = new ListenerList<GameMapListener>();
 	private final AllianceTracker m_alliances = new AllianceTracker(this);
 	// Tracks current relationships between players, this is empty if relationships aren't used
@@ -114,6 +116,13 @@ public class GameData implements java.io.Serializable
 	private final List<Tuple<IAttachment, ArrayList<Tuple<String, String>>>> m_attachmentOrderAndValues = new ArrayList<Tuple<IAttachment, ArrayList<Tuple<String, String>>>>();
 	private final Hashtable<String, TerritoryEffect> m_territoryEffectList = new Hashtable<String, TerritoryEffect>();
 	private final BattleRecordsList m_battleRecordsList = new BattleRecordsList(this);
+	private transient UnitIndex m_unitIndex = new UnitIndex(this);
+	// how many times the owner of a unit has changed, so unit collections know when their counts by owner are out of date
+	private transient volatile int m_unitOwnerChanges = 0;
+	// how many changes to the rules (see ChangeFactory.changesRules()) have been made, kept in copies of the game data so they can tell whether they have the same rules
+	private volatile int m_rulesChanges = 0;
+	// the territory notifications held back on each thread that is merging them
+	private transient ThreadLocal<MergedTerritoryNotifications> m_mergedNotifications = new ThreadLocal<MergedTerritoryNotifications>();
 	
 	/** Creates new GameData */
 	public GameData()
@@ -127,6 +136,8 @@ public class GameData implements java.io.Serializable
 	{
 		in.defaultReadObject();
 		m_lockUtil = new LockUtil();
+		m_unitIndex = new UnitIndex(this);
+		m_mergedNotifications = new ThreadLocal<MergedTerritoryNotifications>();
 	}
 	
 	/**
@@ -166,6 +177,39 @@ public class GameData implements java.io.Serializable
 		return m_unitsList;
 	}
 	
+	/**
+	 * 
+	 * @return where each unit is, and what each unit is carrying
+	 */
+	public UnitIndex getUnitIndex()
+	{
+		return m_unitIndex;
+	}
+	
+	void unitOwnerChanged()
+	{
+		m_unitOwnerChanges++;
+	}
+	
+	int getUnitOwnerChanges()
+	{
+		return m_unitOwnerChanges;
+	}
+	
+	void rulesChanged()
+	{
+		m_rulesChanges++;
+	}
+	
+	/**
+	 * @return how many changes to the rules have been made to this game, including those made before it was copied or saved.
+	 *         Two copies of the same game (see GAME_UUID) with the same count have the same rules, as long as neither was changed after they were copied.
+	 */
+	public int getRulesChanges()
+	{
+		return m_rulesChanges;
+	}
+	
 	/**
 	 * @return list of Players in the game
 	 */
@@ -309,6 +353,22 @@ public class GameData implements java.io.Serializable
 		m_dataChangeListeners.remove(listener);
 	}
 	
+	/**
+	 * Unlike data change listeners, change recorders are told about each change while the write lock is still held.
+	 * So a recorder sees changes in exactly the order they were performed, and a recorder added while holding the read lock sees every change
+	 * made after that lock is released, and none made before.
+	 * Recorders must be quick, and must not try to acquire any lock.
+	 */
+	public void addChangeRecorder(final GameDataChangeListener recorder)
+	{
+		m_changeRecorders.add(recorder);
+	}
+	
+	public void removeChangeRecorder(final GameDataChangeListener recorder)
+	{
+		m_changeRecorders.remove(recorder);
+	}
+	
 	public void addGameMapListener(final GameMapListener listener)
 	{
 		m_gameMapListeners.add(listener);
@@ -319,8 +379,68 @@ public class GameData implements java.io.Serializable
 		m_gameMapListeners.remove(listener);
 	}
 	
+	/**
+	 * Run the runnable, telling territory listeners about each territory that changed once it has run,
+	 * rather than once for every change made to the territory.
+	 * Only the notifications made on the calling thread are merged.
+	 */
+	public void mergeTerritoryNotifications(final Runnable runnable)
+	{
+		if (m_mergedNotifications.get() != null)
+		{
+			runnable.run();
+			return;
+		}
+		final MergedTerritoryNotifications merged = new MergedTerritoryNotifications();
+		m_mergedNotifications.set(merged);
+		try
+		{
+			runnable.run();
+		} finally
+		{
+			m_mergedNotifications.remove();
+			// a listener that fails must not keep the others from hearing about the rest
+			for (final Territory t : merged.m_units)
+			{
+				try
+				{
+					notifyTerritoryUnitsChanged(t);
+				} catch (final RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+			for (final Territory t : merged.m_owners)
+			{
+				try
+				{
+					notifyTerritoryOwnerChanged(t);
+				} catch (final RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+			for (final Territory t : merged.m_attachments)
+			{
+				try
+				{
+					notifyTerritoryAttachmentChanged(t);
+				} catch (final RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+	
 	void notifyTerritoryUnitsChanged(final Territory t)
 	{
+		final MergedTerritoryNotifications merged = m_mergedNotifications.get();
+		if (merged != null)
+		{
+			merged.m_units.add(t);
+			return;
+		}
 		final Iterator<TerritoryListener> iter = m_territoryListeners.iterator();
 		while (iter.hasNext())
 		{
@@ -331,6 +451,12 @@ public class GameData implements java.io.Serializable
 	
 	void notifyTerritoryAttachmentChanged(final Territory t)
 	{
+		final MergedTerritoryNotifications merged = m_mergedNotifications.get();
+		if (merged != null)
+		{
+			merged.m_attachments.add(t);
+			return;
+		}
 		final Iterator<TerritoryListener> iter = m_territoryListeners.iterator();
 		while (iter.hasNext())
 		{
@@ -341,6 +467,12 @@ public class GameData implements java.io.Serializable
 	
 	void notifyTerritoryOwnerChanged(final Territory t)
 	{
+		final MergedTerritoryNotifications merged = m_mergedNotifications.get();
+		if (merged != null)
+		{
+			merged.m_owners.add(t);
+			return;
+		}
 		final Iterator<TerritoryListener> iter = m_territoryListeners.iterator();
 		while (iter.hasNext())
 		{
@@ -359,6 +491,19 @@ public class GameData implements java.io.Serializable
 		}
 	}
 	
+	/**
+	 * Called while the write lock is held.
+	 */
+	void notifyChangeRecorders(final Change aChange)
+	{
+		final Iterator<GameDataChangeListener> iter = m_changeRecorders.iterator();
+		while (iter.hasNext())
+		{
+			final GameDataChangeListener recorder = iter.next();
+			recorder.gameDataChanged(aChange);
+		}
+	}
+	
 	void notifyMapDataChanged()
 	{
 		final Iterator<GameMapListener> iter = m_gameMapListeners.iterator();
@@ -427,6 +572,7 @@ public class GameData implements java.io.Serializable
 	{
 		m_territoryListeners = new ListenerList<TerritoryListener>();
 		m_dataChangeListeners = new ListenerList<GameDataChangeListener>();
+		m_changeRecorders = new ListenerList<GameDataChangeListener>();
 		m_gameMapListeners = new ListenerList<GameMapListener>();
 	}
 	
@@ -587,4 +733,12 @@ public class GameData implements java.io.Serializable
 			m_sequence.setStepIndex(Math.max(0, Math.min(m_sequence.size() - 1, currentIndex - toSubtract)));
 		}
 	}
+	
+	
+	private static class MergedTerritoryNotifications
+	{
+		private final Set<Territory> m_units = new LinkedHashSet<Territory>();
+		private final Set<Territory> m_owners = new LinkedHashSet<Territory>();
+		private final Set<Territory> m_attachments = new LinkedHashSet<Territory>();
+	}
 }
@@ -0,0 +1,170 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.data;
+
+import java.util.Collection;
+import java.util.Set;
+
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Builds the document of a game xml as the parser streams through it.
+ * <p>
+ * 
+ * The nodes are the ones a DocumentBuilder would create, except that whitespace between elements is dropped,
+ * and sections of the game that will not be read can be skipped entirely rather than built and thrown away.
+ * Every error reported by the parser is collected rather than thrown.
+ */
+class GameDocumentHandler extends DefaultHandler implements LexicalHandler
+{
+	private final Document m_document;
+	private final Set<String> m_sections;
+	private final Collection<SAXParseException> m_errors;
+	private Node m_current;
+	// how deep we are inside a section that is being skipped, 0 if we are not skipping
+	private int m_skipDepth = 0;
+	private CDATASection m_cdata = null;
+	private boolean m_inDTD = false;
+	
+	/**
+	 * @param sections
+	 *            the children of the root element to build, or null to build them all
+	 */
+	GameDocumentHandler(final Document document, final Set<String> sections, final Collection<SAXParseException> errors)
+	{
+		m_document = document;
+		m_sections = sections;
+		m_errors = errors;
+		m_current = document;
+	}
+	
+	@Override
+	public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+	{
+		if (m_skipDepth > 0 || (m_sections != null && m_current.getParentNode() == m_document && !m_sections.contains(qName)))
+		{
+			m_skipDepth++;
+			return;
+		}
+		final Element element = m_document.createElement(qName);
+		for (int i = 0; i < attributes.getLength(); i++)
+		{
+			element.setAttribute(attributes.getQName(i), attributes.getValue(i));
+		}
+		m_current.appendChild(element);
+		m_current = element;
+	}
+	
+	@Override
+	public void endElement(final String uri, final String localName, final String qName)
+	{
+		if (m_skipDepth > 0)
+		{
+			m_skipDepth--;
+			return;
+		}
+		m_current = m_current.getParentNode();
+	}
+	
+	@Override
+	public void characters(final char[] ch, final int start, final int length)
+	{
+		if (m_skipDepth > 0 || m_current == m_document)
+			return;
+		final String text = new String(ch, start, length);
+		if (m_cdata != null)
+		{
+			m_cdata.appendData(text);
+			return;
+		}
+		final Node last = m_current.getLastChild();
+		if (last != null && last.getNodeType() == Node.TEXT_NODE)
+			((Text) last).appendData(text);
+		else
+			m_current.appendChild(m_document.createTextNode(text));
+	}
+	
+	@Override
+	public void processingInstruction(final String target, final String data)
+	{
+		if (m_skipDepth > 0)
+			return;
+		m_current.appendChild(m_document.createProcessingInstruction(target, data));
+	}
+	
+	@Override
+	public void error(final SAXParseException exception)
+	{
+		m_errors.add(exception);
+	}
+	
+	@Override
+	public void fatalError(final SAXParseException exception)
+	{
+		m_errors.add(exception);
+	}
+	
+	@Override
+	public void warning(final SAXParseException exception)
+	{
+		m_errors.add(exception);
+	}
+	
+	public void comment(final char[] ch, final int start, final int length)
+	{
+		if (m_skipDepth > 0 || m_inDTD)
+			return;
+		m_current.appendChild(m_document.createComment(new String(ch, start, length)));
+	}
+	
+	public void startCDATA()
+	{
+		if (m_skipDepth > 0)
+			return;
+		m_cdata = m_document.createCDATASection("");
+		m_current.appendChild(m_cdata);
+	}
+	
+	public void endCDATA()
+	{
+		m_cdata = null;
+	}
+	
+	public void startDTD(final String name, final String publicId, final String systemId)
+	{
+		m_inDTD = true;
+	}
+	
+	public void endDTD()
+	{
+		m_inDTD = false;
+	}
+	
+	public void startEntity(final String name) throws SAXException
+	{
+	}
+	
+	public void endEntity(final String name) throws SAXException
+	{
+	}
+}
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * 
@@ -57,6 +58,16 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 	// otherwise, m_gridDimensions.length is the number of dimensions,
 	// and each element is the size of a dimension
 	private int[] m_gridDimensions = null;
+	// built the first time a distance or route is asked for, and thrown away whenever the map changes
+	private transient volatile TerritoryDistanceIndex m_distanceIndex = null;
+	// conditions whose distances are kept in the index, matched by identity. null means any territory
+	private static final List<Match<Territory>> s_staticConditions = new CopyOnWriteArrayList<Match<Territory>>();
+	static
+	{
+		s_staticConditions.add(Matches.TerritoryIsLandOrWater);
+		s_staticConditions.add(Matches.TerritoryIsLand);
+		s_staticConditions.add(Matches.TerritoryIsWater);
+	}
 	
 	GameMap(final GameData data)
 	{
@@ -193,6 +204,7 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		m_territories.add(t1);
 		m_connections.put(t1, Collections.<Territory> emptySet());
 		m_territoryLookup.put(t1.getName(), t1);
+		m_distanceIndex = null;
 	}
 	
 	protected void removeTerritory(final Territory t1)
@@ -202,6 +214,7 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		m_territories.remove(t1);
 		m_connections.remove(t1);
 		m_territoryLookup.remove(t1.getName());
+		m_distanceIndex = null;
 		// remove territory from other connections
 		final Map<Territory, Set<Territory>> tempConnections = new HashMap<Territory, Set<Territory>>();
 		for (final Entry<Territory, Set<Territory>> entry : m_connections.entrySet())
@@ -261,6 +274,83 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		final Set<Territory> modified = new HashSet<Territory>(current);
 		modified.add(to);
 		m_connections.put(from, Collections.unmodifiableSet(modified));
+		m_distanceIndex = null;
+	}
+	
+	/**
+	 * Registers a condition whose result for a territory never changes during a game (whether it is water, for example).
+	 * Distances and routes for registered conditions are worked out once per territory and kept, instead of being searched for every time.
+	 * Conditions are matched by identity, so register and use the same instance.
+	 */
+	public static void registerStaticCondition(final Match<Territory> condition)
+	{
+		if (!s_staticConditions.contains(condition))
+			s_staticConditions.add(condition);
+	}
+	
+	/**
+	 * @return the index of distances for the condition, or null if it is not a registered static condition
+	 */
+	private TerritoryDistanceIndex.ConditionDistances getStaticDistances(final Match<Territory> cond)
+	{
+		if (cond != null && !s_staticConditions.contains(cond))
+			return null;
+		// any territory matches TerritoryIsLandOrWater, so it shares its distances with no condition at all
+		return getDistanceIndex().getDistances(cond == Matches.TerritoryIsLandOrWater ? null : cond);
+	}
+	
+	TerritoryDistanceIndex getDistanceIndex()
+	{
+		TerritoryDistanceIndex index = m_distanceIndex;
+		if (index == null)
+		{
+			index = new TerritoryDistanceIndex(m_territories, m_connections);
+			m_distanceIndex = index;
+		}
+		return index;
+	}
+	
+	/**
+	 * @return an empty set that can hold the territories of this map. It should not be kept after the map changes.
+	 */
+	public TerritorySet newTerritorySet()
+	{
+		return new TerritorySet(getDistanceIndex());
+	}
+	
+	/**
+	 * @return a set of the territories of this map in the collection. Territories that are not on this map are left out.
+	 */
+	public TerritorySet newTerritorySet(final Collection<Territory> territories)
+	{
+		final TerritoryDistanceIndex index = getDistanceIndex();
+		final TerritorySet rVal = new TerritorySet(index);
+		for (final Territory t : territories)
+		{
+			final int id = index.getId(t);
+			if (id >= 0)
+				rVal.getBits().set(id);
+		}
+		return rVal;
+	}
+	
+	/**
+	 * Searches outward from all of the territories in the frontier at once.
+	 * 
+	 * @return the territories within distance of the frontier, reached through territories that match the condition, without the frontier itself
+	 */
+	private TerritorySet searchNeighbors(final Collection<Territory> frontier, final int distance, final Match<Territory> cond)
+	{
+		final TerritorySet start = newTerritorySet(frontier);
+		final TerritorySet rVal = newTerritorySet();
+		if (distance > 0)
+			getDistanceIndex().search(start.getBits(), toIndexCondition(cond), getStaticDistances(cond) != null, distance, -1, rVal.getBits());
+		return rVal;
+	}
+	
+	private static Match<Territory> toIndexCondition(final Match<Territory> cond)
+	{
+		return cond == Matches.TerritoryIsLandOrWater ? null : cond;
 	}
 	
 	/**
@@ -332,9 +422,7 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		final Set<Territory> start = getNeighbors(territory);
 		if (distance == 1)
 			return start;
-		final Set<Territory> neighbors = getNeighbors(start, new HashSet<Territory>(start), --distance);
-		neighbors.remove(territory);
-		return neighbors;
+		return getStaticDistances(null).getNeighbors(territory, distance);
 	}
 	
 	/**
@@ -354,9 +442,10 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		final Set<Territory> start = getNeighbors(territory, cond);
 		if (distance == 1)
 			return start;
-		final Set<Territory> neighbors = getNeighbors(start, new HashSet<Territory>(start), --distance, cond);
-		neighbors.remove(territory);
-		return neighbors;
+		final TerritoryDistanceIndex.ConditionDistances distances = getStaticDistances(cond);
+		if (distances != null)
+			return distances.getNeighbors(territory, distance);
+		return searchNeighbors(Collections.singleton(territory), distance, cond);
 	}
 	
 	/**
@@ -366,11 +455,9 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 	 * @return All neighbors within a certain distance of the starting territory set that match the condition.
 	 *         Does NOT include the original/starting territories in the returned Set, even if they are neighbors of each other.
 	 */
-	public Set<Territory> getNeighbors(final Set<Territory> frontier, final int distance, final Match<Territory> cond)
+	public TerritorySet getNeighbors(final Set<Territory> frontier, final int distance, final Match<Territory> cond)
 	{
-		final Set<Territory> rVal = getNeighbors(frontier, new HashSet<Territory>(frontier), distance, cond);
-		rVal.removeAll(frontier);
-		return rVal;
+		return searchNeighbors(frontier, distance, cond);
 	}
 	
 	/**
@@ -379,43 +466,9 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 	 * @return All neighbors within a certain distance of the starting territory set.
 	 *         Does NOT include the original/starting territories in the returned Set, even if they are neighbors of each other.
 	 */
-	public Set<Territory> getNeighbors(final Set<Territory> frontier, final int distance)
+	public TerritorySet getNeighbors(final Set<Territory> frontier, final int distance)
 	{
-		final Set<Territory> rVal = getNeighbors(frontier, new HashSet<Territory>(frontier), distance);
-		rVal.removeAll(frontier);
-		return rVal;
-	}
-	
-	private Set<Territory> getNeighbors(final Set<Territory> frontier, final Set<Territory> searched, int distance, final Match<Territory> cond)
-	{
-		if (distance == 0)
-			return searched;
-		final Iterator<Territory> iter = frontier.iterator();
-		final Set<Territory> newFrontier = new HashSet<Territory>();
-		while (iter.hasNext())
-		{
-			final Territory t = iter.next();
-			newFrontier.addAll(getNeighbors(t, cond));
-		}
-		newFrontier.removeAll(searched);
-		searched.addAll(newFrontier);
-		return getNeighbors(newFrontier, searched, --distance, cond);
-	}
-	
-	private Set<Territory> getNeighbors(final Set<Territory> frontier, final Set<Territory> searched, int distance)
-	{
-		if (distance == 0)
-			return searched;
-		final Iterator<Territory> iter = frontier.iterator();
-		final Set<Territory> newFrontier = new HashSet<Territory>();
-		while (iter.hasNext())
-		{
-			final Territory t = iter.next();
-			newFrontier.addAll(getNeighbors(t));
-		}
-		newFrontier.removeAll(searched);
-		searched.addAll(newFrontier);
-		return getNeighbors(newFrontier, searched, --distance);
+		return searchNeighbors(frontier, distance, null);
 	}
 	
 	/**
@@ -470,6 +523,9 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		{
 			return new Route(t1);
 		}
+		final TerritoryDistanceIndex.ConditionDistances distances = getStaticDistances(cond);
+		if (distances != null)
+			return distances.getRoute(t1, t2);
 		if (getNeighbors(t1, cond).contains(t2))
 		{
 			return new Route(t1, t2);
@@ -573,9 +629,30 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 	{
 		if (t1.equals(t2))
 			return 0;
-		final Set<Territory> frontier = new HashSet<Territory>();
-		frontier.add(t1);
-		return getDistance(0, new HashSet<Territory>(), frontier, t2, cond);
+		final TerritoryDistanceIndex.ConditionDistances distances = getStaticDistances(cond);
+		if (distances != null)
+			return distances.getDistance(t1, t2);
+		return getDistance(Collections.singleton(t1), t2, cond);
+	}
+	
+	/**
+	 * @param from
+	 *            start territories of the route
+	 * @param to
+	 *            end territory of the route
+	 * @param cond
+	 *            condition that covered territories of the route must match
+	 * @return the distance from the closest start territory to the end, where the covered territories of the route satisfy the condition,
+	 *         or -1 if they are not connected. Start territories that are not on this map are ignored.
+	 */
+	public int getDistance(final Collection<Territory> from, final Territory to, final Match<Territory> cond)
+	{
+		final TerritoryDistanceIndex index = getDistanceIndex();
+		final int target = index.getId(to);
+		if (target < 0)
+			return -1;
+		final TerritorySet start = newTerritorySet(from);
+		return index.search(start.getBits(), toIndexCondition(cond), getStaticDistances(cond) != null, -1, target, null);
 	}
 	
 	/**
@@ -594,38 +671,6 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 		return getDistance(t1, t2, new CompositeMatchOr<Territory>(Matches.territoryIs(t2), cond));
 	}
 	
-	/**
-	 * Guaranteed that frontier doesn't contain target.
-	 * Territories on the frontier are not target. They represent the extent of paths already searched.
-	 * Territories in searched have already been on the frontier.
-	 */
-	private int getDistance(final int distance, final Set<Territory> searched, final Set<Territory> frontier, final Territory target, final Match<Territory> cond)
-	{
-		// add the frontier to the searched
-		searched.addAll(frontier);
-		// find the new frontier
-		final Set<Territory> newFrontier = new HashSet<Territory>();
-		final Iterator<Territory> frontierIterator = frontier.iterator();
-		while (frontierIterator.hasNext())
-		{
-			final Territory onFrontier = frontierIterator.next();
-			final Set<Territory> connections = m_connections.get(onFrontier);
-			final Iterator<Territory> connectionIterator = connections.iterator();
-			while (connectionIterator.hasNext())
-			{
-				final Territory nextFrontier = connectionIterator.next();
-				if (cond == null || cond.match(nextFrontier))
-					newFrontier.add(nextFrontier);
-			}
-		}
-		if (newFrontier.contains(target))
-			return distance + 1;
-		newFrontier.removeAll(searched);
-		if (newFrontier.isEmpty())
-			return -1;
-		return getDistance(distance + 1, searched, newFrontier, target, cond);
-	}
-	
 	public IntegerMap<Territory> getDistance(final Territory target, final Collection<Territory> territories, final Match<Territory> condition)
 	{
 		final IntegerMap<Territory> rVal = new IntegerMap<Territory>();
@@ -690,6 +735,7 @@ public class GameMap extends GameDataComponent implements Iterable<Territory>
 	 */
 	public void notifyChanged()
 	{
+		m_distanceIndex = null;
 		getData().notifyMapDataChanged();
 	}
 }
@@ -47,26 +47,30 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
-import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
@@ -77,11 +81,18 @@ import org.xml.sax.SAXParseException;
 public class GameParser
 {
 	private static final Class<?>[] SETTER_ARGS = { String.class };
+	// the children of the root element that are read before a delayed parse returns
+	private static final Set<String> DELAYED_PARSING_SECTIONS = new HashSet<String>(Arrays.asList("info", "triplea", "loader", "diceSides", "playerList", "propertyList"));
+	// attachment class -> option name -> setter, shared by all parsers since maps set the same few options thousands of times
+	private static final Map<Class<?>, Map<String, Method>> s_setters = new ConcurrentHashMap<Class<?>, Map<String, Method>>();
 	private GameData data;
 	private final Collection<SAXParseException> errorsSAX = new ArrayList<SAXParseException>();
 	
 	// public static final String OPTION_SEPARATOR = "<>";
-	private static HashMap<String, String> newClassesForOldNames;
+	// put in here class names that have been changed like //newClassesForOldNames.put("<oldClassName>", "<newClassName>"), e.g.
+	// newClassesForOldNames.put("attatchment", "attachment")
+	// filled in up front since games may be parsed on several threads at once
+	private static final HashMap<String, String> newClassesForOldNames = new HashMap<String, String>();
 	
 	public GameParser()
 	{
@@ -108,7 +119,7 @@ public class GameParser
 		Document doc = null;
 		try
 		{
-			doc = getDocument(stream);
+			doc = getDocument(stream, delayParsing);
 		} catch (final IOException e)
 		{
 			throw new IllegalStateException(e);
@@ -312,9 +323,12 @@ public class GameParser
 		return list;
 	}
 	
-	private Document getDocument(final InputStream input) throws SAXException, IOException, ParserConfigurationException
+	/**
+	 * Build the document as the xml streams in. For a delayed parse only the sections needed to select a game are built.
+	 */
+	private Document getDocument(final InputStream input, final boolean delayParsing) throws SAXException, IOException, ParserConfigurationException
 	{
-		final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		final SAXParserFactory factory = SAXParserFactory.newInstance();
 		factory.setValidating(true);
 		// get the dtd location
 		final String dtdFile = "/games/strategy/engine/xml/game.dtd";
@@ -325,25 +339,14 @@ public class GameParser
 		}
 		final String dtdSystem = url.toExternalForm();
 		final String system = dtdSystem.substring(0, dtdSystem.length() - 8);
-		final DocumentBuilder builder = factory.newDocumentBuilder();
-		builder.setErrorHandler(new ErrorHandler()
-		{
-			public void fatalError(final SAXParseException exception) throws SAXException
-			{
-				errorsSAX.add(exception);
-			}
-			
-			public void error(final SAXParseException exception) throws SAXException
-			{
-				errorsSAX.add(exception);
-			}
-			
-			public void warning(final SAXParseException exception) throws SAXException
-			{
-				errorsSAX.add(exception);
-			}
-		});
-		return builder.parse(input, system);
+		final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		final GameDocumentHandler handler = new GameDocumentHandler(document, delayParsing ? DELAYED_PARSING_SECTIONS : null, errorsSAX);
+		final SAXParser parser = factory.newSAXParser();
+		parser.setProperty("http://xml.org/sax/properties/lexical-handler", handler);
+		final InputSource source = new InputSource(input);
+		source.setSystemId(system);
+		parser.parse(source, handler);
+		return document;
 	}
 	
 	/**
@@ -558,12 +561,6 @@ public class GameParser
 		// if class cannot be found than it is either not a valid class or an old class that was deleted/renamed
 		catch (final ClassNotFoundException cnfe)
 		{
-			if (newClassesForOldNames == null)
-			{
-				newClassesForOldNames = new HashMap<String, String>();
-				// put in here class names that have been changed like //newClassesForOldNames.put("<oldClassName>", "<newClassName>"), e.g.
-				// newClassesForOldNames.put("attatchment", "attachment")
-			}
 			final String newClassName = newClassesForOldNames.get(className);
 			if (newClassName != null)
 			{
@@ -1691,6 +1688,23 @@ public class GameParser
 		return first + aString.substring(1);
 	}
 	
+	private Method getSetter(final Class<?> attachmentClass, final String name) throws NoSuchMethodException
+	{
+		Map<String, Method> setters = s_setters.get(attachmentClass);
+		if (setters == null)
+		{
+			setters = new ConcurrentHashMap<String, Method>();
+			s_setters.put(attachmentClass, setters);
+		}
+		Method setter = setters.get(name);
+		if (setter == null)
+		{
+			setter = attachmentClass.getMethod("set" + capitalizeFirstLetter(name), SETTER_ARGS);
+			setters.put(name, setter);
+		}
+		return setter;
+	}
+	
 	private ArrayList<Tuple<String, String>> setValues(final IAttachment attachment, final List<Element> values) throws GameParseException
 	{
 		final ArrayList<Tuple<String, String>> options = new ArrayList<Tuple<String, String>>();
@@ -1706,7 +1720,7 @@ public class GameParser
 				{
 					throw new GameParseException("Option name with 0 length");
 				}
-				setter = attachment.getClass().getMethod("set" + capitalizeFirstLetter(name), SETTER_ARGS);
+				setter = getSetter(attachment.getClass(), name);
 			} catch (final NoSuchMethodException nsme)
 			{
 				throw new GameParseException("The following option name of " + attachment.getName() + " of class "
@@ -16,82 +16,284 @@ package games.strategy.engine.data;
 import games.strategy.util.Match;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
-// TODO this class doesn't take movementcost into account... typically the shortest route is the fastest route, but not always...
+/**
+ * Finds the cheapest route between two territories.
+ * <p>
+ * The cost of a route is the sum of the costs of its steps, which by default are all 1, so the cheapest route is the shortest one.
+ * Every territory entered has to match the condition; the start does not.
+ * The search is Dijkstra's, or A* when a heuristic is given. It stops as soon as the end is reached.
+ * <p>
+ * A route finder keeps its search state between searches, so one that is reused does not have to allocate it again.
+ * It is not thread safe.
+ */
 public class RouteFinder
 {
+	/**
+	 * The cost of one step of a route.
+	 */
+	public interface Cost
+	{
+		/**
+		 * @return the cost of moving from one territory to its neighbor. A negative cost means the neighbor can not be entered from there.
+		 */
+		int getCost(Territory from, Territory to);
+	}
+	
+	/**
+	 * An estimate of the cost left to reach the end. It must be consistent: zero at the end, and never more than the cost of a step to a neighbor plus the estimate from that neighbor.
+	 * A territory is not searched again once it has been taken off the queue, so an estimate that is only admissible (never more than the actual cost left) is not enough,
+	 * and the route found may not be the cheapest.
+	 */
+	public interface Heuristic
+	{
+		/**
+		 * @return the estimated cost from the territory to the end, or a negative number if the end can not be reached from it
+		 */
+		int getEstimate(Territory territory, Territory end);
+	}
+	
+	public static final Cost STEPS = new Cost()
+	{
+		public int getCost(final Territory from, final Territory to)
+		{
+			return 1;
+		}
+	};
+	
+	/**
+	 * @param minimumCost
+	 *            the lowest cost any step can have
+	 * @return a heuristic that estimates the cost left as the number of steps left to the end times the minimum cost
+	 */
+	public static Heuristic stepsToEnd(final GameMap map, final int minimumCost)
+	{
+		return new StepsToEnd(map, minimumCost);
+	}
+	
 	private final GameMap m_map;
 	private final Match<Territory> m_condition;
-	private final Map<Territory, Territory> m_previous;
+	private final Cost m_cost;
+	private final Heuristic m_heuristic;
+	private int m_lastCost = -1;
+	// the search state, for the index it was allocated for
+	private TerritoryDistanceIndex m_index = null;
+	private int m_search = 0;
+	private int[] m_reached;
+	private int[] m_closed;
+	private int[] m_checked;
+	private boolean[] m_matches;
+	private int[] m_costs;
+	private int[] m_previous;
+	// the open territories, ordered by estimated total cost, then by when they were added
+	private long[] m_queue = new long[64];
+	private int[] m_queuedIds = new int[64];
+	private int m_queueSize;
+	private int m_queuedCount;
 	
 	public RouteFinder(final GameMap map, final Match<Territory> condition)
+	{
+		this(map, condition, STEPS, null);
+	}
+	
+	/**
+	 * @param condition
+	 *            condition that the territories entered must match, or null for any territory
+	 * @param cost
+	 *            the cost of each step
+	 * @param heuristic
+	 *            the estimate of the cost left, or null to search without one
+	 */
+	public RouteFinder(final GameMap map, final Match<Territory> condition, final Cost cost, final Heuristic heuristic)
 	{
 		m_map = map;
 		m_condition = condition;
-		m_previous = new HashMap<Territory, Territory>();
+		m_cost = cost;
+		m_heuristic = heuristic;
 	}
 	
+	/**
+	 * @return the cheapest route from start to end, or null if there is none
+	 */
 	public Route findRoute(final Territory start, final Territory end)
 	{
-		final Set<Territory> startSet = m_map.getNeighbors(start, m_condition);
-		for (final Territory t : startSet)
+		m_lastCost = -1;
+		if (start.equals(end))
 		{
-			m_previous.put(t, start);
+			m_lastCost = 0;
+			return new Route(start);
 		}
-		if (calculate(startSet, end))
+		startSearch();
+		final int from = m_index.getId(start);
+		final int to = m_index.getId(end);
+		if (from < 0 || to < 0)
+			return null;
+		final int[] stepsToEnd = m_heuristic instanceof StepsToEnd ? ((StepsToEnd) m_heuristic).getStepsTo(m_index, to) : null;
+		m_reached[from] = m_search;
+		m_costs[from] = 0;
+		m_previous[from] = -1;
+		push(0, from);
+		while (m_queueSize > 0)
 		{
-			return getRoute(start, end);
+			final int current = pop();
+			if (m_closed[current] == m_search)
+				continue;
+			m_closed[current] = m_search;
+			if (current == to)
+			{
+				m_lastCost = m_costs[to];
+				return getRoute(to);
+			}
+			for (final int neighbor : m_index.getConnections(current))
+			{
+				if (m_closed[neighbor] == m_search || !matches(neighbor))
+					continue;
+				final int stepCost = m_cost.getCost(m_index.getTerritory(current), m_index.getTerritory(neighbor));
+				if (stepCost < 0)
+					continue;
+				final int cost = m_costs[current] + stepCost;
+				if (m_reached[neighbor] == m_search && cost >= m_costs[neighbor])
+					continue;
+				final int estimate;
+				if (stepsToEnd != null)
+					estimate = stepsToEnd[neighbor] < 0 ? -1 : stepsToEnd[neighbor] * ((StepsToEnd) m_heuristic).m_minimumCost;
+				else if (m_heuristic != null)
+					estimate = m_heuristic.getEstimate(m_index.getTerritory(neighbor), end);
+				else
+					estimate = 0;
+				if (estimate < 0)
+					continue;
+				m_reached[neighbor] = m_search;
+				m_costs[neighbor] = cost;
+				m_previous[neighbor] = current;
+				push(cost + estimate, neighbor);
+			}
 		}
 		return null;
 	}
 	
-	private boolean calculate(final Set<Territory> startSet, final Territory end)
+	/**
+	 * @return the cost of the route found by the last search, or -1 if it found none
+	 */
+	public int getLastCost()
+	{
+		return m_lastCost;
+	}
+	
+	private void startSearch()
 	{
-		final Set<Territory> nextSet = new HashSet<Territory>();
-		for (final Territory t : startSet)
+		final TerritoryDistanceIndex index = m_map.getDistanceIndex();
+		if (index != m_index || m_search == Integer.MAX_VALUE)
 		{
-			final Set<Territory> neighbors = m_map.getNeighbors(t, m_condition);
-			for (final Territory neighbor : neighbors)
-			{
-				if (!m_previous.containsKey(neighbor))
-				{
-					m_previous.put(neighbor, t);
-					if (neighbor.equals(end))
-					{
-						return true;
-					}
-					nextSet.add(neighbor);
-				}
-			}
+			m_index = index;
+			final int size = index.size();
+			m_reached = new int[size];
+			m_closed = new int[size];
+			m_checked = new int[size];
+			m_matches = new boolean[size];
+			m_costs = new int[size];
+			m_previous = new int[size];
+			m_search = 0;
 		}
-		if (nextSet.isEmpty())
+		m_search++;
+		m_queueSize = 0;
+		m_queuedCount = 0;
+	}
+	
+	private boolean matches(final int id)
+	{
+		if (m_condition == null)
+			return true;
+		if (m_checked[id] != m_search)
 		{
-			return false;
+			m_checked[id] = m_search;
+			m_matches[id] = m_condition.match(m_index.getTerritory(id));
 		}
-		return calculate(nextSet, end);
+		return m_matches[id];
 	}
 	
-	private Route getRoute(final Territory start, final Territory destination)
+	private Route getRoute(final int to)
 	{
 		final List<Territory> route = new ArrayList<Territory>();
-		Territory current = destination;
-		while (current != start)
+		for (int current = to; current >= 0; current = m_previous[current])
 		{
-			if (current == null)
-			{
-				return null;
-			}
-			route.add(current);
-			current = m_previous.get(current);
+			route.add(m_index.getTerritory(current));
 		}
-		route.add(start);
 		Collections.reverse(route);
 		return new Route(route);
 	}
+	
+	private void push(final int priority, final int id)
+	{
+		if (m_queuedCount == m_queuedIds.length)
+			m_queuedIds = Arrays.copyOf(m_queuedIds, m_queuedCount * 2);
+		if (m_queueSize == m_queue.length)
+			m_queue = Arrays.copyOf(m_queue, m_queueSize * 2);
+		m_queuedIds[m_queuedCount] = id;
+		// ties are broken by the order territories were added in, which keeps unit cost searches breadth first
+		final long entry = ((long) priority << 32) | m_queuedCount++;
+		int child = m_queueSize++;
+		while (child > 0)
+		{
+			final int parent = (child - 1) >>> 1;
+			if (m_queue[parent] <= entry)
+				break;
+			m_queue[child] = m_queue[parent];
+			child = parent;
+		}
+		m_queue[child] = entry;
+	}
+	
+	private int pop()
+	{
+		final long first = m_queue[0];
+		final long last = m_queue[--m_queueSize];
+		int parent = 0;
+		while (true)
+		{
+			int child = parent * 2 + 1;
+			if (child >= m_queueSize)
+				break;
+			if (child + 1 < m_queueSize && m_queue[child + 1] < m_queue[child])
+				child++;
+			if (last <= m_queue[child])
+				break;
+			m_queue[parent] = m_queue[child];
+			parent = child;
+		}
+		if (m_queueSize > 0)
+			m_queue[parent] = last;
+		return m_queuedIds[(int) first];
+	}
+	
+	private static class StepsToEnd implements Heuristic
+	{
+		private final GameMap m_map;
+		private final int m_minimumCost;
+		
+		StepsToEnd(final GameMap map, final int minimumCost)
+		{
+			m_map = map;
+			m_minimumCost = Math.max(0, minimumCost);
+		}
+		
+		int[] getStepsTo(final TerritoryDistanceIndex index, final int to)
+		{
+			return index.getDistances(null).getDistancesTo(to);
+		}
+		
+		public int getEstimate(final Territory territory, final Territory end)
+		{
+			final TerritoryDistanceIndex index = m_map.getDistanceIndex();
+			final int from = index.getId(territory);
+			final int to = index.getId(end);
+			if (from < 0 || to < 0)
+				return -1;
+			final int steps = getStepsTo(index, to)[from];
+			return steps < 0 ? -1 : steps * m_minimumCost;
+		}
+	}
 }
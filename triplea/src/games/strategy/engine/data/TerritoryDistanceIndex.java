@@ -0,0 +1,343 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.data;
+
+import games.strategy.util.Match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Distances between the territories of a GameMap, for the conditions registered with GameMap.registerStaticCondition().
+ * 
+ * Territories are given dense ids, and their connections are kept as arrays of ids.
+ * The distances from a territory are found with one breadth first search the first time they are needed, and kept until the map changes.
+ */
+class TerritoryDistanceIndex
+{
+	static final int UNREACHABLE = -1;
+	private final Territory[] m_territories;
+	private final Map<Territory, Integer> m_ids;
+	private final int[][] m_connections;
+	private final int[][] m_reverseConnections;
+	private final Map<Match<Territory>, ConditionDistances> m_distances = new IdentityHashMap<Match<Territory>, ConditionDistances>();
+	
+	TerritoryDistanceIndex(final List<Territory> territories, final Map<Territory, Set<Territory>> connections)
+	{
+		final int size = territories.size();
+		m_territories = territories.toArray(new Territory[size]);
+		m_ids = new HashMap<Territory, Integer>(size * 2);
+		for (int i = 0; i < size; i++)
+		{
+			m_ids.put(m_territories[i], i);
+		}
+		m_connections = new int[size][];
+		final List<List<Integer>> reverse = new ArrayList<List<Integer>>(size);
+		for (int i = 0; i < size; i++)
+		{
+			reverse.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < size; i++)
+		{
+			final Set<Territory> neighbors = connections.get(m_territories[i]);
+			final int[] ids = new int[neighbors == null ? 0 : neighbors.size()];
+			int count = 0;
+			if (neighbors != null)
+			{
+				for (final Territory neighbor : neighbors)
+				{
+					final Integer id = m_ids.get(neighbor);
+					if (id == null)
+						continue;
+					ids[count++] = id;
+					reverse.get(id).add(i);
+				}
+			}
+			m_connections[i] = count == ids.length ? ids : Arrays.copyOf(ids, count);
+		}
+		m_reverseConnections = new int[size][];
+		for (int i = 0; i < size; i++)
+		{
+			final List<Integer> from = reverse.get(i);
+			m_reverseConnections[i] = new int[from.size()];
+			for (int j = 0; j < from.size(); j++)
+			{
+				m_reverseConnections[i][j] = from.get(j);
+			}
+		}
+	}
+	
+	private int getStartId(final Territory territory)
+	{
+		final Integer id = m_ids.get(territory);
+		if (id == null)
+			throw new IllegalArgumentException("No neighbors for:" + territory);
+		return id;
+	}
+	
+	/**
+	 * @return the id of the territory, or -1 if it is not on the map
+	 */
+	int getId(final Territory territory)
+	{
+		final Integer id = m_ids.get(territory);
+		return id == null ? -1 : id;
+	}
+	
+	Territory getTerritory(final int id)
+	{
+		return m_territories[id];
+	}
+	
+	int size()
+	{
+		return m_territories.length;
+	}
+	
+	/**
+	 * @return the ids of the territories connected to the territory. Do not modify it.
+	 */
+	int[] getConnections(final int id)
+	{
+		return m_connections[id];
+	}
+	
+	/**
+	 * Breadth first search from all of the starting territories at once.
+	 * 
+	 * @param starts
+	 *            the ids of the territories to start from
+	 * @param condition
+	 *            condition that every territory entered has to match. Unless it is static, it is asked at most once for each territory.
+	 * @param isStatic
+	 *            whether the condition is one of the static conditions, whose matches are kept
+	 * @param maxDistance
+	 *            how far to search, or -1 for no limit
+	 * @param target
+	 *            the id of the territory to stop at, or -1 to search everything in range
+	 * @param reached
+	 *            if not null, the ids of all territories entered are set in it. The starting territories are not entered.
+	 * @return the distance to the target, or UNREACHABLE if it was not found
+	 */
+	int search(final BitSet starts, final Match<Territory> condition, final boolean isStatic, final int maxDistance, final int target, final BitSet reached)
+	{
+		if (target >= 0 && starts.get(target))
+			return 0;
+		final boolean[] staticMatches = isStatic ? getDistances(condition).m_matches : null;
+		final BitSet searched = (BitSet) starts.clone();
+		final BitSet rejected = new BitSet(m_territories.length);
+		int[] frontier = new int[m_territories.length];
+		int[] next = new int[m_territories.length];
+		int frontierSize = 0;
+		for (int id = starts.nextSetBit(0); id >= 0; id = starts.nextSetBit(id + 1))
+		{
+			frontier[frontierSize++] = id;
+		}
+		for (int distance = 1; frontierSize > 0 && (maxDistance < 0 || distance <= maxDistance); distance++)
+		{
+			int nextSize = 0;
+			for (int i = 0; i < frontierSize; i++)
+			{
+				for (final int neighbor : m_connections[frontier[i]])
+				{
+					if (searched.get(neighbor) || rejected.get(neighbor))
+						continue;
+					final boolean matches = staticMatches != null ? staticMatches[neighbor] : (condition == null || condition.match(m_territories[neighbor]));
+					if (!matches)
+					{
+						rejected.set(neighbor);
+						continue;
+					}
+					searched.set(neighbor);
+					if (reached != null)
+						reached.set(neighbor);
+					if (neighbor == target)
+						return distance;
+					next[nextSize++] = neighbor;
+				}
+			}
+			final int[] swap = frontier;
+			frontier = next;
+			next = swap;
+			frontierSize = nextSize;
+		}
+		return UNREACHABLE;
+	}
+	
+	/**
+	 * @param condition
+	 *            one of the static conditions, which all territories on a route except the first have to match
+	 * @return the distances for the condition
+	 */
+	synchronized ConditionDistances getDistances(final Match<Territory> condition)
+	{
+		ConditionDistances distances = m_distances.get(condition);
+		if (distances == null)
+		{
+			final boolean[] matches = new boolean[m_territories.length];
+			for (int i = 0; i < m_territories.length; i++)
+			{
+				matches[i] = condition == null || condition.match(m_territories[i]);
+			}
+			distances = new ConditionDistances(matches);
+			m_distances.put(condition, distances);
+		}
+		return distances;
+	}
+	
+	class ConditionDistances
+	{
+		private final boolean[] m_matches;
+		private final int[][] m_rows;
+		private final int[][] m_reverseRows;
+		
+		ConditionDistances(final boolean[] matches)
+		{
+			m_matches = matches;
+			m_rows = new int[matches.length][];
+			m_reverseRows = new int[matches.length][];
+		}
+		
+		/**
+		 * @return the distance from one territory to every other, UNREACHABLE for those that can not be reached
+		 */
+		synchronized int[] getDistancesFrom(final int from)
+		{
+			int[] row = m_rows[from];
+			if (row == null)
+			{
+				row = new int[m_territories.length];
+				Arrays.fill(row, UNREACHABLE);
+				row[from] = 0;
+				final int[] queue = new int[m_territories.length];
+				int head = 0;
+				int tail = 0;
+				queue[tail++] = from;
+				while (head < tail)
+				{
+					final int current = queue[head++];
+					for (final int neighbor : m_connections[current])
+					{
+						if (row[neighbor] == UNREACHABLE && m_matches[neighbor])
+						{
+							row[neighbor] = row[current] + 1;
+							queue[tail++] = neighbor;
+						}
+					}
+				}
+				m_rows[from] = row;
+			}
+			return row;
+		}
+		
+		/**
+		 * @return the distance from every territory to one territory, UNREACHABLE for those that can not reach it
+		 */
+		synchronized int[] getDistancesTo(final int to)
+		{
+			int[] row = m_reverseRows[to];
+			if (row == null)
+			{
+				row = new int[m_territories.length];
+				Arrays.fill(row, UNREACHABLE);
+				row[to] = 0;
+				final int[] queue = new int[m_territories.length];
+				int head = 0;
+				int tail = 0;
+				queue[tail++] = to;
+				while (head < tail)
+				{
+					final int current = queue[head++];
+					// every territory on the way, the end included, is entered and has to match
+					if (!m_matches[current])
+						continue;
+					for (final int previous : m_reverseConnections[current])
+					{
+						if (row[previous] == UNREACHABLE)
+						{
+							row[previous] = row[current] + 1;
+							queue[tail++] = previous;
+						}
+					}
+				}
+				m_reverseRows[to] = row;
+			}
+			return row;
+		}
+		
+		int getDistance(final Territory from, final Territory to)
+		{
+			final Integer id = m_ids.get(to);
+			if (id == null)
+				return UNREACHABLE;
+			return getDistancesFrom(getStartId(from))[id];
+		}
+		
+		/**
+		 * @return the territories within the distance, not including the starting territory
+		 */
+		TerritorySet getNeighbors(final Territory territory, final int distance)
+		{
+			final TerritorySet neighbors = new TerritorySet(TerritoryDistanceIndex.this);
+			final Integer from = m_ids.get(territory);
+			if (from == null)
+				return neighbors;
+			final int[] row = getDistancesFrom(from);
+			for (int i = 0; i < row.length; i++)
+			{
+				if (row[i] > 0 && row[i] <= distance)
+					neighbors.getBits().set(i);
+			}
+			return neighbors;
+		}
+		
+		/**
+		 * @return one of the shortest routes between the territories, or null if there is none
+		 */
+		Route getRoute(final Territory start, final Territory end)
+		{
+			final Integer from = m_ids.get(start);
+			final Integer to = m_ids.get(end);
+			if (from == null || to == null)
+				return null;
+			final int[] row = getDistancesFrom(from);
+			if (row[to] == UNREACHABLE)
+				return null;
+			final Territory[] route = new Territory[row[to] + 1];
+			int current = to;
+			route[row[to]] = m_territories[to];
+			while (row[current] > 0)
+			{
+				int previous = -1;
+				for (final int candidate : m_reverseConnections[current])
+				{
+					if (row[candidate] == row[current] - 1)
+					{
+						previous = candidate;
+						break;
+					}
+				}
+				current = previous;
+				route[row[current]] = m_territories[current];
+			}
+			return new Route(Arrays.asList(route));
+		}
+	}
+}
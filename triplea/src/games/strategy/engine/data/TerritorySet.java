@@ -0,0 +1,176 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.data;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A set of the territories of one map, kept as one bit per territory.
+ * <p>
+ * Sets from the same map are combined with bit operations instead of hashing, so unions and intersections of large neighborhoods are cheap.
+ * Only territories on the map can be added. A set is only valid as long as the map does not change, so do not keep it across map changes.
+ * <p>
+ * Get one from GameMap.newTerritorySet(), or from the GameMap methods that search many territories at once.
+ */
+public class TerritorySet extends AbstractSet<Territory>
+{
+	private final TerritoryDistanceIndex m_index;
+	private final BitSet m_bits;
+	
+	TerritorySet(final TerritoryDistanceIndex index)
+	{
+		m_index = index;
+		m_bits = new BitSet(index.size());
+	}
+	
+	public TerritorySet(final TerritorySet other)
+	{
+		m_index = other.m_index;
+		m_bits = (BitSet) other.m_bits.clone();
+	}
+	
+	BitSet getBits()
+	{
+		return m_bits;
+	}
+	
+	private boolean isSameMap(final Collection<?> c)
+	{
+		return c instanceof TerritorySet && ((TerritorySet) c).m_index == m_index;
+	}
+	
+	@Override
+	public boolean contains(final Object o)
+	{
+		if (!(o instanceof Territory))
+			return false;
+		final int id = m_index.getId((Territory) o);
+		return id >= 0 && m_bits.get(id);
+	}
+	
+	@Override
+	public boolean add(final Territory territory)
+	{
+		final int id = m_index.getId(territory);
+		if (id < 0)
+			throw new IllegalArgumentException("Not on the map:" + territory);
+		if (m_bits.get(id))
+			return false;
+		m_bits.set(id);
+		return true;
+	}
+	
+	@Override
+	public boolean remove(final Object o)
+	{
+		if (!contains(o))
+			return false;
+		m_bits.clear(m_index.getId((Territory) o));
+		return true;
+	}
+	
+	@Override
+	public int size()
+	{
+		return m_bits.cardinality();
+	}
+	
+	@Override
+	public boolean isEmpty()
+	{
+		return m_bits.isEmpty();
+	}
+	
+	@Override
+	public void clear()
+	{
+		m_bits.clear();
+	}
+	
+	@Override
+	public boolean containsAll(final Collection<?> c)
+	{
+		if (!isSameMap(c))
+			return super.containsAll(c);
+		final BitSet missing = (BitSet) ((TerritorySet) c).m_bits.clone();
+		missing.andNot(m_bits);
+		return missing.isEmpty();
+	}
+	
+	@Override
+	public boolean addAll(final Collection<? extends Territory> c)
+	{
+		if (!isSameMap(c))
+			return super.addAll(c);
+		final int size = size();
+		m_bits.or(((TerritorySet) c).m_bits);
+		return size != size();
+	}
+	
+	@Override
+	public boolean retainAll(final Collection<?> c)
+	{
+		if (!isSameMap(c))
+			return super.retainAll(c);
+		final int size = size();
+		m_bits.and(((TerritorySet) c).m_bits);
+		return size != size();
+	}
+	
+	@Override
+	public boolean removeAll(final Collection<?> c)
+	{
+		if (!isSameMap(c))
+			return super.removeAll(c);
+		final int size = size();
+		m_bits.andNot(((TerritorySet) c).m_bits);
+		return size != size();
+	}
+	
+	@Override
+	public Iterator<Territory> iterator()
+	{
+		return new Iterator<Territory>()
+		{
+			private int m_next = m_bits.nextSetBit(0);
+			private int m_last = -1;
+			
+			public boolean hasNext()
+			{
+				return m_next >= 0;
+			}
+			
+			public Territory next()
+			{
+				if (m_next < 0)
+					throw new NoSuchElementException();
+				m_last = m_next;
+				m_next = m_bits.nextSetBit(m_next + 1);
+				return m_index.getTerritory(m_last);
+			}
+			
+			public void remove()
+			{
+				if (m_last < 0)
+					throw new IllegalStateException();
+				m_bits.clear(m_last);
+				m_last = -1;
+			}
+		};
+	}
+}
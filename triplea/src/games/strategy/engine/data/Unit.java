@@ -71,6 +71,17 @@ public class Unit extends GameDataComponent implements Serializable
 		return m_owner;
 	}
 	
+	/**
+	 * The unit carrying this unit, for games where units can carry other units.
+	 * Units that can be carried must tell the UnitIndex when this changes.
+	 * 
+	 * @return null, unless overridden
+	 */
+	public Unit getTransportedBy()
+	{
+		return null;
+	}
+	
 	/**
 	 * DO NOT USE THIS METHOD if at all possible. It is very slow.
 	 * This can return null if the unit is not in any territories.
@@ -113,7 +124,10 @@ public class Unit extends GameDataComponent implements Serializable
 	{
 		if (player == null)
 			player = PlayerID.NULL_PLAYERID;
+		final PlayerID oldOwner = m_owner;
 		m_owner = player;
+		if (oldOwner != null && !oldOwner.equals(player) && getData() != null)
+			getData().unitOwnerChanged();
 	}
 	
 	@Override
@@ -24,9 +24,11 @@ import games.strategy.util.Match;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -35,12 +37,18 @@ import java.util.Set;
  * @version 1.0
  * 
  *          A collection of units.
+ *          <p>
+ * 
+ *          The number of units of each type, for each owner, is kept alongside the units so that counting them does not look at every unit. The counts are not serialized, they are worked out again when first needed.
+ *          Changes to the units, and building and reading the counts, are synchronized on the collection so the counts always match the units.
  */
 public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 {
 	private static final long serialVersionUID = -3534037864426122864L;
 	private final List<Unit> m_units = new ArrayList<Unit>();
 	private final NamedUnitHolder m_holder;
+	// guarded by this
+	private transient UnitCounts m_counts;
 	
 	/**
 	 * Creates new UnitCollection
@@ -58,68 +66,120 @@ public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 	
 	void addUnit(final Unit unit)
 	{
-		m_units.add(unit);
+		synchronized (this)
+		{
+			m_units.add(unit);
+			if (m_counts != null)
+				m_counts.add(unit, 1);
+		}
+		final UnitIndex index = getUnitIndex();
+		if (index != null)
+			index.unitsAdded(m_holder, Collections.singleton(unit));
 		m_holder.notifyChanged();
 	}
 	
 	void addAllUnits(final UnitCollection collection)
 	{
-		m_units.addAll(collection.m_units);
-		m_holder.notifyChanged();
+		addAllUnits(collection.m_units);
 	}
 	
 	void addAllUnits(final Collection<Unit> units)
 	{
-		m_units.addAll(units);
+		synchronized (this)
+		{
+			m_units.addAll(units);
+			if (m_counts != null)
+			{
+				for (final Unit unit : units)
+				{
+					m_counts.add(unit, 1);
+				}
+			}
+		}
+		final UnitIndex index = getUnitIndex();
+		if (index != null)
+			index.unitsAdded(m_holder, units);
 		m_holder.notifyChanged();
 	}
 	
 	void removeAllUnits(final Collection<Unit> units)
 	{
-		m_units.removeAll(units);
+		// update the index first, units may be our own list
+		final UnitIndex index = getUnitIndex();
+		if (index != null)
+			index.unitsRemoved(m_holder, units);
+		// one pass over our units, rather than ArrayList.removeAll which can look through the units to remove once for each of our units
+		final Collection<Unit> toRemove = units.size() > 1 ? new HashSet<Unit>(units) : units;
+		synchronized (this)
+		{
+			final int size = m_units.size();
+			int kept = 0;
+			for (int i = 0; i < size; i++)
+			{
+				final Unit unit = m_units.get(i);
+				if (toRemove.contains(unit))
+				{
+					if (m_counts != null)
+						m_counts.add(unit, -1);
+				}
+				else
+				{
+					m_units.set(kept++, unit);
+				}
+			}
+			m_units.subList(kept, size).clear();
+		}
 		m_holder.notifyChanged();
 	}
 	
-	public int getUnitCount()
+	/**
+	 * The units of the player used for null owners are not tracked, since that player is not part of any game data.
+	 */
+	private UnitIndex getUnitIndex()
 	{
-		return m_units.size();
+		final GameData data = getData();
+		return data == null ? null : data.getUnitIndex();
 	}
 	
-	public int getUnitCount(final UnitType type)
+	/**
+	 * The counts are worked out again if they have not been yet, or if the owner of any unit in the game has changed since they were.
+	 * Must be called while synchronized on this collection, and the counts only read while still synchronized.
+	 */
+	private UnitCounts getCounts()
 	{
-		int count = 0;
-		final Iterator<Unit> iterator = m_units.iterator();
-		while (iterator.hasNext())
+		final GameData data = getData();
+		final int ownerChanges = data == null ? 0 : data.getUnitOwnerChanges();
+		if (m_counts == null || m_counts.m_ownerChanges != ownerChanges)
 		{
-			if (iterator.next().getType().equals(type))
-				count++;
+			m_counts = new UnitCounts(ownerChanges);
+			for (final Unit unit : m_units)
+			{
+				m_counts.add(unit, 1);
+			}
 		}
-		return count;
+		return m_counts;
 	}
 	
-	public int getUnitCount(final UnitType type, final PlayerID owner)
+	public int getUnitCount()
 	{
-		int count = 0;
-		final Iterator<Unit> iterator = m_units.iterator();
-		while (iterator.hasNext())
-		{
-			final Unit current = iterator.next();
-			if (current.getType().equals(type) && current.getOwner().equals(owner))
-				count++;
-		}
-		return count;
+		return m_units.size();
 	}
 	
-	public int getUnitCount(final PlayerID owner)
+	public synchronized int getUnitCount(final UnitType type)
 	{
-		int count = 0;
-		final Iterator<Unit> iterator = m_units.iterator();
-		while (iterator.hasNext())
-		{
-			if (iterator.next().getOwner().equals(owner))
-				count++;
-		}
-		return count;
+		return getCounts().m_byType.getInt(type);
+	}
+	
+	public synchronized int getUnitCount(final UnitType type, final PlayerID owner)
+	{
+		final IntegerMap<UnitType> owned = getCounts().m_byOwner.get(owner);
+		return owned == null ? 0 : owned.getInt(type);
+	}
+	
+	public synchronized int getUnitCount(final PlayerID owner)
+	{
+		final IntegerMap<UnitType> owned = getCounts().m_byOwner.get(owner);
+		return owned == null ? 0 : owned.totalValues();
 	}
 	
 	public boolean containsAll(final Collection<Unit> units)
@@ -146,6 +206,8 @@ public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 		if (max_units < 0)
 			throw new IllegalArgumentException("value must be positiive.  Instead its:" + max_units);
 		final Collection<Unit> rVal = new ArrayList<Unit>();
+		if (getUnitCount(type) == 0)
+			return rVal;
 		for (final Unit current : m_units)
 		{
 			if (current.getType().equals(type))
@@ -161,16 +223,9 @@ public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 	/**
 	 * @return integer map of UnitType
 	 */
-	public IntegerMap<UnitType> getUnitsByType()
+	public synchronized IntegerMap<UnitType> getUnitsByType()
 	{
-		final IntegerMap<UnitType> units = new IntegerMap<UnitType>();
-		for (final UnitType type : getData().getUnitTypeList())
-		{
-			final int count = getUnitCount(type);
-			if (count > 0)
-				units.put(type, count);
-		}
-		return units;
+		return getCounts().m_byType.copy();
 	}
 	
 	/**
@@ -178,15 +233,10 @@ public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 	 *            referring player ID
 	 * @return map of UnitType (only of units for the specified player)
 	 */
-	public IntegerMap<UnitType> getUnitsByType(final PlayerID id)
+	public synchronized IntegerMap<UnitType> getUnitsByType(final PlayerID id)
 	{
-		final IntegerMap<UnitType> count = new IntegerMap<UnitType>();
-		for (final Unit unit : m_units)
-		{
-			if (unit.getOwner().equals(id))
-				count.add(unit.getType(), 1);
-		}
-		return count;
+		final IntegerMap<UnitType> owned = getCounts().m_byOwner.get(id);
+		return owned == null ? new IntegerMap<UnitType>() : owned.copy();
 	}
 	
 	/**
@@ -223,34 +273,29 @@ public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 	 * 
 	 * @return a Set of all players who have units in this collection.
 	 */
-	public Set<PlayerID> getPlayersWithUnits()
+	public synchronized Set<PlayerID> getPlayersWithUnits()
 	{
 		// note nulls are handled by PlayerID.NULL_PLAYERID
-		final Set<PlayerID> ids = new HashSet<PlayerID>();
-		for (final Unit unit : m_units)
-		{
-			ids.add(unit.getOwner());
-		}
-		return ids;
+		return new HashSet<PlayerID>(getCounts().m_byOwner.keySet());
 	}
 	
 	/**
 	 * 
 	 * @return the count of units each player has in this collection.
 	 */
-	public IntegerMap<PlayerID> getPlayerUnitCounts()
+	public synchronized IntegerMap<PlayerID> getPlayerUnitCounts()
 	{
 		final IntegerMap<PlayerID> count = new IntegerMap<PlayerID>();
-		for (final Unit unit : m_units)
+		for (final Map.Entry<PlayerID, IntegerMap<UnitType>> entry : getCounts().m_byOwner.entrySet())
 		{
-			count.add(unit.getOwner(), 1);
+			count.put(entry.getKey(), entry.getValue().totalValues());
 		}
 		return count;
 	}
 	
-	public boolean hasUnitsFromMultiplePlayers()
+	public synchronized boolean hasUnitsFromMultiplePlayers()
 	{
-		return getPlayersWithUnits().size() > 1;
+		return getCounts().m_byOwner.size() > 1;
 	}
 	
 	public NamedUnitHolder getHolder()
@@ -312,4 +357,43 @@ public class UnitCollection extends GameDataComponent implements Iterable<Unit>
 	{
 		return Collections.unmodifiableList(m_units).iterator();
 	}
+	
+	/**
+	 * The number of units of each type, in total and for each owner.
+	 * Types and owners with no units are left out.
+	 */
+	private static class UnitCounts
+	{
+		private final int m_ownerChanges;
+		private final IntegerMap<UnitType> m_byType = new IntegerMap<UnitType>();
+		private final Map<PlayerID, IntegerMap<UnitType>> m_byOwner = new HashMap<PlayerID, IntegerMap<UnitType>>();
+		
+		UnitCounts(final int ownerChanges)
+		{
+			m_ownerChanges = ownerChanges;
+		}
+		
+		void add(final Unit unit, final int count)
+		{
+			final UnitType type = unit.getType();
+			final PlayerID owner = unit.getOwner();
+			add(m_byType, type, count);
+			IntegerMap<UnitType> owned = m_byOwner.get(owner);
+			if (owned == null)
+			{
+				owned = new IntegerMap<UnitType>();
+				m_byOwner.put(owner, owned);
+			}
+			add(owned, type, count);
+			if (owned.isEmpty())
+				m_byOwner.remove(owner);
+		}
+		
+		private static void add(final IntegerMap<UnitType> counts, final UnitType type, final int count)
+		{
+			counts.add(type, count);
+			if (counts.getInt(type) == 0)
+				counts.removeKey(type);
+		}
+	}
 }
@@ -68,4 +68,10 @@ public class UnitHitsChange extends Change
 	{
 		return new UnitHitsChange(m_undoHits, m_hits);
 	}
+	
+	@Override
+	void addTo(final ChangeImpact impact)
+	{
+		impact.touchUnitProperty("hits");
+	}
 }
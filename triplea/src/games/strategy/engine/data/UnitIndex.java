@@ -0,0 +1,256 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of which unit holder each unit is in, and which units each unit is carrying, so that neither has to be found by looking through every territory.
+ * <p>
+ * 
+ * The index is kept up to date by UnitCollection and by the units whose carrier changes, which means it follows every change made to the game data, including undo and moving through the history.
+ * It is not serialized. It starts out empty, and is built from the game data the first time it is asked for anything. Updates made before then are ignored, since building the index picks them up.
+ * <p>
+ * 
+ * The index is built while holding the game data read lock, so no change can be made while it is being built, and every read and update of the index is synchronized.
+ * As with the game data itself, callers should hold the game data read lock when asking the index anything, or the answer may be out of date by the time it is used.
+ * The game data lock is always acquired before the lock on the index, never after.
+ * <p>
+ * 
+ * A unit is normally in one unit holder, but can be in two while it is being moved from one to the other.
+ */
+public class UnitIndex
+{
+	private final GameData m_data;
+	// guarded by this
+	private boolean m_built = false;
+	private final Map<Unit, UnitHolder> m_holders = new HashMap<Unit, UnitHolder>();
+	// holders beyond the first, for units in more than one holder
+	private final Map<Unit, List<UnitHolder>> m_otherHolders = new HashMap<Unit, List<UnitHolder>>();
+	// carrier -> the units it carries
+	private final Map<Unit, List<Unit>> m_carried = new HashMap<Unit, List<Unit>>();
+	
+	UnitIndex(final GameData data)
+	{
+		m_data = data;
+	}
+	
+	/**
+	 * Must not be called while holding the lock on this index, since it acquires the game data read lock.
+	 */
+	private void ensureBuilt()
+	{
+		synchronized (this)
+		{
+			if (m_built)
+				return;
+		}
+		m_data.acquireReadLock();
+		try
+		{
+			synchronized (this)
+			{
+				if (m_built)
+					return;
+				for (final Territory t : m_data.getMap().getTerritories())
+				{
+					addHolder(t);
+				}
+				for (final PlayerID player : m_data.getPlayerList().getPlayers())
+				{
+					addHolder(player);
+				}
+				m_built = true;
+			}
+		} finally
+		{
+			m_data.releaseReadLock();
+		}
+	}
+	
+	private void addHolder(final UnitHolder holder)
+	{
+		for (final Unit unit : holder.getUnits().getUnits())
+		{
+			addUnit(holder, unit);
+			final Unit carrier = unit.getTransportedBy();
+			if (carrier != null)
+				addCarried(carrier, unit);
+		}
+	}
+	
+	synchronized void unitsAdded(final UnitHolder holder, final Collection<Unit> units)
+	{
+		if (!m_built)
+			return;
+		for (final Unit unit : units)
+		{
+			addUnit(holder, unit);
+		}
+	}
+	
+	synchronized void unitsRemoved(final UnitHolder holder, final Collection<Unit> units)
+	{
+		if (!m_built)
+			return;
+		for (final Unit unit : units)
+		{
+			removeUnit(holder, unit);
+		}
+	}
+	
+	/**
+	 * To be called by a unit when the unit carrying it changes.
+	 */
+	public synchronized void carrierChanged(final Unit unit, final Unit oldCarrier, final Unit newCarrier)
+	{
+		if (!m_built || oldCarrier == newCarrier)
+			return;
+		if (oldCarrier != null)
+		{
+			final List<Unit> carried = m_carried.get(oldCarrier);
+			if (carried != null)
+			{
+				carried.remove(unit);
+				if (carried.isEmpty())
+					m_carried.remove(oldCarrier);
+			}
+		}
+		if (newCarrier != null)
+			addCarried(newCarrier, unit);
+	}
+	
+	private void addUnit(final UnitHolder holder, final Unit unit)
+	{
+		final UnitHolder current = m_holders.get(unit);
+		if (current == null)
+		{
+			m_holders.put(unit, holder);
+		}
+		else if (current != holder)
+		{
+			List<UnitHolder> others = m_otherHolders.get(unit);
+			if (others == null)
+			{
+				others = new ArrayList<UnitHolder>(1);
+				m_otherHolders.put(unit, others);
+			}
+			if (!others.contains(holder))
+				others.add(holder);
+		}
+	}
+	
+	private void removeUnit(final UnitHolder holder, final Unit unit)
+	{
+		final List<UnitHolder> others = m_otherHolders.get(unit);
+		if (m_holders.get(unit) == holder)
+		{
+			if (others == null)
+			{
+				m_holders.remove(unit);
+				return;
+			}
+			m_holders.put(unit, others.remove(0));
+		}
+		else if (others != null)
+		{
+			others.remove(holder);
+		}
+		if (others != null && others.isEmpty())
+			m_otherHolders.remove(unit);
+	}
+	
+	private void addCarried(final Unit carrier, final Unit unit)
+	{
+		List<Unit> carried = m_carried.get(carrier);
+		if (carried == null)
+		{
+			carried = new ArrayList<Unit>(4);
+			m_carried.put(carrier, carried);
+		}
+		if (!carried.contains(unit))
+			carried.add(unit);
+	}
+	
+	/**
+	 * @return the unit holder the unit is in, or null if the unit is not in any. If the unit is in more than one, the one it was added to first.
+	 */
+	public UnitHolder getHolder(final Unit unit)
+	{
+		ensureBuilt();
+		synchronized (this)
+		{
+			return m_holders.get(unit);
+		}
+	}
+	
+	/**
+	 * @return the territory the unit is in, or null if the unit is not in a territory.
+	 */
+	public Territory getTerritory(final Unit unit)
+	{
+		ensureBuilt();
+		synchronized (this)
+		{
+			final UnitHolder holder = m_holders.get(unit);
+			if (holder instanceof Territory)
+				return (Territory) holder;
+			final List<UnitHolder> others = m_otherHolders.get(unit);
+			if (others != null)
+			{
+				for (final UnitHolder other : others)
+				{
+					if (other instanceof Territory)
+						return (Territory) other;
+				}
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * @return true if the unit is in the given unit holder.
+	 */
+	public boolean isIn(final Unit unit, final UnitHolder holder)
+	{
+		ensureBuilt();
+		synchronized (this)
+		{
+			if (m_holders.get(unit) == holder)
+				return true;
+			final List<UnitHolder> others = m_otherHolders.get(unit);
+			return others != null && others.contains(holder);
+		}
+	}
+	
+	/**
+	 * @return the units whose carrier is the given unit, wherever they are.
+	 */
+	public List<Unit> getCarried(final Unit carrier)
+	{
+		ensureBuilt();
+		synchronized (this)
+		{
+			final List<Unit> carried = m_carried.get(carrier);
+			if (carried == null)
+				return Collections.emptyList();
+			return new ArrayList<Unit>(carried);
+		}
+	}
+}
@@ -18,6 +18,7 @@
  */
 package games.strategy.engine.data;
 
+import games.strategy.triplea.Constants;
 import games.strategy.triplea.TripleAUnit;
 import games.strategy.triplea.attatchments.UnitAttachment;
 import games.strategy.triplea.image.UnitImageFactory;
@@ -45,12 +46,42 @@ import java.util.Set;
 public class UnitType extends NamedAttachable implements Serializable
 {
 	private static final long serialVersionUID = 4885339076798905247L;
+	// nearly every unit match reads this, so it is kept here instead of being looked up in the attachment map each time
+	private transient UnitAttachment m_unitAttachment;
 	
 	public UnitType(final String name, final GameData data)
 	{
 		super(name, data);
 	}
 	
+	/**
+	 * The attachment holding this type's unit properties, or null if it has none.
+	 */
+	public UnitAttachment getUnitAttachment()
+	{
+		UnitAttachment rVal = m_unitAttachment;
+		if (rVal == null)
+		{
+			rVal = (UnitAttachment) getAttachment(Constants.UNIT_ATTACHMENT_NAME);
+			m_unitAttachment = rVal;
+		}
+		return rVal;
+	}
+	
+	@Override
+	public void addAttachment(final String key, final IAttachment value)
+	{
+		super.addAttachment(key, value);
+		m_unitAttachment = null;
+	}
+	
+	@Override
+	public void removeAttachment(final String keyString)
+	{
+		super.removeAttachment(keyString);
+		m_unitAttachment = null;
+	}
+	
 	public List<Unit> create(final int quantity, final PlayerID owner)
 	{
 		return create(quantity, owner, false);
@@ -0,0 +1,400 @@
+package games.strategy.engine.framework;
+
+import games.strategy.engine.data.Change;
+import games.strategy.engine.data.ChangePerformer;
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.GameObjectInputStream;
+import games.strategy.engine.data.GameObjectOutputStream;
+import games.strategy.engine.data.GameSequence;
+import games.strategy.engine.data.GameStep;
+import games.strategy.engine.data.PlayerID;
+import games.strategy.engine.delegate.IDelegate;
+import games.strategy.engine.history.EventChild;
+import games.strategy.engine.history.HistoryWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the changes made to a game since its last full save, so that an autosave can write those changes instead of the whole game.
+ * <p>
+ * The server records everything that comes through the game modification channel (changes, history events and step changes), serializing each one as it happens. A delta save
+ * is the last full save, copied as is, followed by those records and by the state that is not kept in game data changes (the current step, step run counts, and delegate states).
+ * Loading a delta save loads the full save, then replays the records against it the same way the server applied them.
+ * <p>
+ * Once the records get larger than the full save, canWriteDelta() returns false, and the next save should be a full one, which starts a new log.
+ * <p>
+ * Engines older than this one only read gzipped full saves, and can not even tell which engine wrote a delta save, so they can not open one (or offer to run the older engine
+ * it needs). Delta autosaves are therefore off unless DELTA_AUTOSAVE_PROPERTY is set. While they are off, nothing is recorded, and every save is a full save.
+ */
+public class DeltaSaveLog
+{
+	/**
+	 * Set this system property to true to write autosaves as delta saves.
+	 */
+	public static final String DELTA_AUTOSAVE_PROPERTY = "triplea.autosave.delta";
+	/**
+	 * The first bytes of a delta save. A gzipped full save always starts with 0x1f8b, so the two can not be confused.
+	 */
+	static final int MAGIC = 0x54414453;
+	private static final int FORMAT_VERSION = 1;
+	private static final byte CHANGE = 1;
+	private static final byte START_EVENT = 2;
+	private static final byte RENDERING_DATA = 3;
+	private static final byte EVENT_CHILD = 4;
+	private static final byte STEP_CHANGED = 5;
+	
+	private final GameData m_data;
+	private final boolean m_enabled;
+	private final List<byte[]> m_records = new ArrayList<byte[]>();
+	private byte[] m_base = null;
+	private long m_recordBytes = 0;
+	
+	/**
+	 * @param enabled
+	 *            false to never record anything, so that every save is a full save
+	 */
+	public DeltaSaveLog(final GameData data, final boolean enabled)
+	{
+		m_data = data;
+		m_enabled = enabled;
+	}
+	
+	public static boolean isDeltaAutosaveEnabled()
+	{
+		return "true".equalsIgnoreCase(System.getProperty(DELTA_AUTOSAVE_PROPERTY));
+	}
+	
+	public void gameDataChanged(final Change change)
+	{
+		record(CHANGE, change);
+	}
+	
+	public void startHistoryEvent(final String event)
+	{
+		record(START_EVENT, event);
+	}
+	
+	public void setRenderingData(final Object renderingData)
+	{
+		record(RENDERING_DATA, renderingData);
+	}
+	
+	public void addChildToEvent(final String text, final Object renderingData)
+	{
+		record(EVENT_CHILD, text, renderingData);
+	}
+	
+	public void stepChanged(final String stepName, final String delegateName, final PlayerID player, final int round, final String displayName, final boolean loadedFromSavedGame)
+	{
+		record(STEP_CHANGED, stepName, delegateName, player, round, displayName, loadedFromSavedGame);
+	}
+	
+	private synchronized void record(final byte type, final Object... values)
+	{
+		// without a base there is nothing to replay the record against
+		if (m_base == null)
+			return;
+		try
+		{
+			final ByteArrayOutputStream sink = new ByteArrayOutputStream(256);
+			final ObjectOutputStream out = new DeltaObjectOutputStream(sink, m_data);
+			out.writeByte(type);
+			for (final Object value : values)
+			{
+				out.writeObject(value);
+			}
+			out.close();
+			final byte[] bytes = sink.toByteArray();
+			m_records.add(bytes);
+			m_recordBytes += bytes.length;
+		} catch (final IOException e)
+		{
+			// the next save will be a full one
+			e.printStackTrace();
+			reset();
+		}
+	}
+	
+	private void reset()
+	{
+		m_base = null;
+		m_records.clear();
+		m_recordBytes = 0;
+	}
+	
+	/**
+	 * @return true if there is a full save to write a delta against, and the changes since then are smaller than it
+	 */
+	public synchronized boolean canWriteDelta()
+	{
+		return m_base != null && m_recordBytes < m_base.length;
+	}
+	
+	public synchronized int getRecordCount()
+	{
+		return m_records.size();
+	}
+	
+	/**
+	 * Writes a full save, and starts a new log from it if the log is enabled. Delegate execution must be blocked while this is called.
+	 */
+	public synchronized void writeFull(final OutputStream out) throws IOException
+	{
+		reset();
+		if (!m_enabled)
+		{
+			new GameDataManager().saveGame(out, m_data);
+			return;
+		}
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream(25000);
+		new GameDataManager().saveGame(sink, m_data);
+		final byte[] base = sink.toByteArray();
+		out.write(base);
+		out.flush();
+		m_base = base;
+	}
+	
+	/**
+	 * Writes a delta save. Delegate execution must be blocked while this is called.
+	 */
+	public synchronized void writeDelta(final OutputStream out) throws IOException
+	{
+		if (!canWriteDelta())
+			throw new IllegalStateException("Can not write a delta save");
+		final DataOutputStream header = new DataOutputStream(out);
+		header.writeInt(MAGIC);
+		header.writeInt(FORMAT_VERSION);
+		header.writeInt(m_base.length);
+		header.write(m_base);
+		header.flush();
+		final GZIPOutputStream zippedOut = new GZIPOutputStream(out);
+		final DataOutputStream log = new DataOutputStream(zippedOut);
+		log.writeInt(m_records.size());
+		for (final byte[] record : m_records)
+		{
+			log.writeInt(record.length);
+			log.write(record);
+		}
+		final ObjectOutputStream trailer = new DeltaObjectOutputStream(log, m_data);
+		writeTrailer(trailer);
+		trailer.flush();
+		zippedOut.finish();
+		out.flush();
+	}
+	
+	private void writeTrailer(final ObjectOutputStream out) throws IOException
+	{
+		m_data.acquireReadLock();
+		try
+		{
+			final GameSequence sequence = m_data.getSequence();
+			out.writeInt(sequence.getRound() - sequence.getRoundOffset());
+			out.writeObject(sequence.getStep().getDisplayName());
+			out.writeObject(sequence.getStep().getPlayerID());
+			final HashMap<String, Integer> runCounts = new HashMap<String, Integer>();
+			for (final GameStep step : sequence)
+			{
+				runCounts.put(step.getName(), step.getRunCount());
+			}
+			out.writeObject(runCounts);
+			final HashMap<String, Serializable> delegateStates = new HashMap<String, Serializable>();
+			final Iterator<IDelegate> delegates = m_data.getDelegateList().iterator();
+			while (delegates.hasNext())
+			{
+				final IDelegate delegate = delegates.next();
+				delegateStates.put(delegate.getName(), delegate.saveState());
+			}
+			out.writeObject(delegateStates);
+		} finally
+		{
+			m_data.releaseReadLock();
+		}
+	}
+	
+	/**
+	 * Loads a delta save written by writeDelta().
+	 * 
+	 * @return the game data, or null if the full save it contains could not be loaded
+	 */
+	static GameData load(final InputStream input, final String path) throws IOException
+	{
+		final DataInputStream header = new DataInputStream(input);
+		if (header.readInt() != MAGIC)
+			throw new IOException("Not a delta save");
+		final int formatVersion = header.readInt();
+		if (formatVersion != FORMAT_VERSION)
+			throw new IOException("Unknown delta save format: " + formatVersion);
+		final byte[] base = new byte[header.readInt()];
+		header.readFully(base);
+		final GameData data = new GameDataManager().loadGame(new ByteArrayInputStream(base), path);
+		if (data == null)
+			return null;
+		final GameObjectStreamFactory factory = new GameObjectStreamFactory(data);
+		final DataInputStream log = new DataInputStream(new GZIPInputStream(input));
+		try
+		{
+			final Replayer replayer = new Replayer(data);
+			final int recordCount = log.readInt();
+			for (int i = 0; i < recordCount; i++)
+			{
+				final byte[] record = new byte[log.readInt()];
+				log.readFully(record);
+				replayer.replay(new DeltaObjectInputStream(factory, new ByteArrayInputStream(record)));
+			}
+			readTrailer(new DeltaObjectInputStream(factory, log), data);
+		} catch (final ClassNotFoundException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+		return data;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static void readTrailer(final ObjectInputStream in, final GameData data) throws IOException, ClassNotFoundException
+	{
+		final int round = in.readInt();
+		final String stepDisplayName = (String) in.readObject();
+		final PlayerID player = (PlayerID) in.readObject();
+		final Map<String, Integer> runCounts = (Map<String, Integer>) in.readObject();
+		final Map<String, Serializable> delegateStates = (Map<String, Serializable>) in.readObject();
+		data.acquireWriteLock();
+		try
+		{
+			data.getSequence().setRoundAndStep(round, stepDisplayName, player);
+			for (final GameStep step : data.getSequence())
+			{
+				final Integer runCount = runCounts.get(step.getName());
+				while (runCount != null && step.getRunCount() < runCount)
+				{
+					step.incrementRunCount();
+				}
+			}
+			for (final Map.Entry<String, Serializable> entry : delegateStates.entrySet())
+			{
+				final IDelegate delegate = data.getDelegateList().getDelegate(entry.getKey());
+				if (delegate != null)
+					delegate.loadState(entry.getValue());
+			}
+		} finally
+		{
+			data.releaseWriteLock();
+		}
+	}
+	
+	/**
+	 * Applies records to game data the way ServerGame applies the messages they were recorded from.
+	 */
+	private static class Replayer
+	{
+		private final ChangePerformer m_changePerformer;
+		private final HistoryWriter m_historyWriter;
+		private int m_round;
+		
+		Replayer(final GameData data)
+		{
+			m_changePerformer = new ChangePerformer(data);
+			m_historyWriter = data.getHistory().getHistoryWriter();
+			m_round = data.getSequence().getRound();
+		}
+		
+		void replay(final ObjectInputStream in) throws IOException, ClassNotFoundException
+		{
+			final byte type = in.readByte();
+			switch (type)
+			{
+				case CHANGE:
+					final Change change = (Change) in.readObject();
+					m_changePerformer.perform(change);
+					m_historyWriter.addChange(change);
+					break;
+				case START_EVENT:
+					m_historyWriter.startEvent((String) in.readObject());
+					break;
+				case RENDERING_DATA:
+					m_historyWriter.setRenderingData(in.readObject());
+					break;
+				case EVENT_CHILD:
+					m_historyWriter.addChildToEvent(new EventChild((String) in.readObject(), in.readObject()));
+					break;
+				case STEP_CHANGED:
+					final String stepName = (String) in.readObject();
+					final String delegateName = (String) in.readObject();
+					final PlayerID player = (PlayerID) in.readObject();
+					final int round = (Integer) in.readObject();
+					final String displayName = (String) in.readObject();
+					final boolean loadedFromSavedGame = (Boolean) in.readObject();
+					if (loadedFromSavedGame)
+						break;
+					// the server starts new rounds in the history directly, not through the channel
+					if (round != m_round)
+					{
+						m_historyWriter.startNextRound(round);
+						m_round = round;
+					}
+					m_historyWriter.startNextStep(stepName, delegateName, player, displayName);
+					break;
+				default:
+					throw new IOException("Unknown record type: " + type);
+			}
+		}
+	}
+	
+	/**
+	 * Marks where the game data itself is referenced (by battles in delegate states, for example), so that we do not write the whole game again.
+	 */
+	private static class GameDataReference implements Serializable
+	{
+		private static final long serialVersionUID = -2287365937464361590L;
+	}
+	
+	private static class DeltaObjectOutputStream extends GameObjectOutputStream
+	{
+		private final GameData m_data;
+		
+		DeltaObjectOutputStream(final OutputStream output, final GameData data) throws IOException
+		{
+			super(output);
+			m_data = data;
+		}
+		
+		@Override
+		protected Object replaceObject(final Object obj) throws IOException
+		{
+			if (obj == m_data)
+				return new GameDataReference();
+			return super.replaceObject(obj);
+		}
+	}
+	
+	private static class DeltaObjectInputStream extends GameObjectInputStream
+	{
+		DeltaObjectInputStream(final GameObjectStreamFactory dataSource, final InputStream input) throws IOException
+		{
+			super(dataSource, input);
+		}
+		
+		@Override
+		protected Object resolveObject(final Object obj) throws IOException
+		{
+			if (obj instanceof GameDataReference)
+				return getData();
+			return super.resolveObject(obj);
+		}
+	}
+}
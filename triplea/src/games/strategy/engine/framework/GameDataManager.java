@@ -9,6 +9,7 @@ import games.strategy.util.Version;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -72,9 +73,18 @@ public class GameDataManager
 		}
 	}
 	
+	/**
+	 * Loads either a gzipped full save, or a delta save written by DeltaSaveLog (which engines older than this one can not open).
+	 */
 	public GameData loadGame(final InputStream input, final String path) throws IOException
 	{
-		return loadGame(new ObjectInputStream(new GZIPInputStream(input)), path);
+		final InputStream buffered = input.markSupported() ? input : new BufferedInputStream(input);
+		buffered.mark(4);
+		final int magic = new DataInputStream(buffered).readInt();
+		buffered.reset();
+		if (magic == DeltaSaveLog.MAGIC)
+			return DeltaSaveLog.load(buffered, path);
+		return loadGame(new ObjectInputStream(new GZIPInputStream(buffered)), path);
 	}
 	
 	public GameData loadGame(final ObjectInputStream input, final String savegamePath) throws IOException
@@ -268,7 +278,20 @@ public class GameDataManager
 	{
 		// write internally first in case of error
 		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(25000);
-		final ObjectOutputStream outStream = new ObjectOutputStream(bytes);
+		writeGame(bytes, data, saveDelegateInfo);
+		final GZIPOutputStream zippedOut = new GZIPOutputStream(sink);
+		// now write to file
+		zippedOut.write(bytes.toByteArray());
+		zippedOut.flush();
+		zippedOut.close();
+	}
+	
+	/**
+	 * Writes the game without compression, in the format expected by loadGame(ObjectInputStream, String).
+	 */
+	void writeGame(final OutputStream sink, final GameData data, final boolean saveDelegateInfo) throws IOException
+	{
+		final ObjectOutputStream outStream = new ObjectOutputStream(sink);
 		outStream.writeObject(games.strategy.engine.EngineVersion.VERSION);
 		data.acquireReadLock();
 		try
@@ -282,11 +305,7 @@ public class GameDataManager
 		{
 			data.releaseReadLock();
 		}
-		final GZIPOutputStream zippedOut = new GZIPOutputStream(sink);
-		// now write to file
-		zippedOut.write(bytes.toByteArray());
-		zippedOut.flush();
-		zippedOut.close();
+		outStream.flush();
 	}
 	
 	private void writeDelegates(final GameData data, final ObjectOutputStream out) throws IOException
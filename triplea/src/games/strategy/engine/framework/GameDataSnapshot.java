@@ -0,0 +1,59 @@
+package games.strategy.engine.framework;
+
+import games.strategy.engine.data.GameData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+
+/**
+ * An immutable, serialized image of a GameData taken at one point in time.
+ * <p>
+ * Taking the snapshot is the only step that needs the source data's read lock. After that, any number of threads may call materialize() at the same time, and each gets its own
+ * independent deep copy of the data. This lets us pay for serializing a large game once, instead of once per copy (which is what repeated calls to
+ * GameDataUtils.cloneGameData() would do). The snapshot is also not gzipped, since it never leaves memory.
+ */
+public class GameDataSnapshot
+{
+	private final byte[] m_bytes;
+	
+	private GameDataSnapshot(final byte[] bytes)
+	{
+		m_bytes = bytes;
+	}
+	
+	/**
+	 * Serializes the game data. Acquires the data's read lock while doing so.
+	 */
+	public static GameDataSnapshot create(final GameData data, final boolean copyDelegates) throws IOException
+	{
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream(25000);
+		new GameDataManager().writeGame(sink, data, copyDelegates);
+		sink.close();
+		return new GameDataSnapshot(sink.toByteArray());
+	}
+	
+	/**
+	 * Create a new deep copy of the game data this snapshot was taken from. Safe to call from multiple threads at once.
+	 */
+	public GameData materialize() throws IOException
+	{
+		final ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(m_bytes));
+		try
+		{
+			return new GameDataManager().loadGame(input, null);
+		} finally
+		{
+			input.close();
+		}
+	}
+	
+	/**
+	 * @return the size of the serialized game data, in bytes
+	 */
+	public int getSize()
+	{
+		return m_bytes.length;
+	}
+}
@@ -24,13 +24,7 @@ public class GameDataUtils
 	{
 		try
 		{
-			final GameDataManager manager = new GameDataManager();
-			ByteArrayOutputStream sink = new ByteArrayOutputStream(10000);
-			manager.saveGame(sink, data, copyDelegates);
-			sink.close();
-			final ByteArrayInputStream source = new ByteArrayInputStream(sink.toByteArray());
-			sink = null;
-			return manager.loadGame(source, null);
+			return GameDataSnapshot.create(data, copyDelegates).materialize();
 		} catch (final IOException ex)
 		{
 			ex.printStackTrace();
@@ -18,6 +18,9 @@ import games.strategy.engine.data.GameData;
 import games.strategy.engine.data.PlayerID;
 import games.strategy.engine.history.EventChild;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+
 import javax.swing.SwingUtilities;
 
 /**
@@ -25,9 +28,15 @@ import javax.swing.SwingUtilities;
  * 
  * All modifications to the History are done in the SwingEventThread, so
  * this class can be used to display a history tree to the user.
+ * 
+ * Messages are queued in the order they arrive, and the queue is run in batches by a single task in the SwingEventThread,
+ * rather than by a task for each message. A batch stops after MAX_BATCH_MILLIS so the user interface stays responsive,
+ * and territory listeners hear about each territory that changed once per batch.
  */
 public class HistorySynchronizer
 {
+	// how long a batch of messages may keep the swing event thread busy before letting it paint and handle input
+	private static final long MAX_BATCH_MILLIS = 50;
 	// Note the GameData here and the game are not the same
 	// we are keeping m_data in synch with the history of the game by listening
 	// for changes
@@ -37,6 +46,9 @@ public class HistorySynchronizer
 	private final GameData m_data;
 	private int m_currentRound;
 	private final IGame m_game;
+	// messages waiting to be run in the swing event thread, guarded by itself
+	private final Queue<Runnable> m_pending = new ArrayDeque<Runnable>();
+	private boolean m_batchScheduled = false;
 	
 	public HistorySynchronizer(final GameData data, final IGame game)
 	{
@@ -61,7 +73,7 @@ public class HistorySynchronizer
 	{
 		public void gameDataChanged(final Change aChange)
 		{
-			SwingUtilities.invokeLater(new Runnable()
+			invokeLater(new Runnable()
 			{
 				public void run()
 				{
@@ -80,7 +92,7 @@ public class HistorySynchronizer
 		
 		public void startHistoryEvent(final String event)
 		{
-			SwingUtilities.invokeLater(new Runnable()
+			invokeLater(new Runnable()
 			{
 				public void run()
 				{
@@ -91,7 +103,7 @@ public class HistorySynchronizer
 		
 		public void addChildToEvent(final String text, final Object renderingData)
 		{
-			SwingUtilities.invokeLater(new Runnable()
+			invokeLater(new Runnable()
 			{
 				public void run()
 				{
@@ -103,7 +115,7 @@ public class HistorySynchronizer
 		
 		protected void setRenderingData(final Object renderingData)
 		{
-			SwingUtilities.invokeLater(new Runnable()
+			invokeLater(new Runnable()
 			{
 				public void run()
 				{
@@ -118,7 +130,7 @@ public class HistorySynchronizer
 			// we dont need to advance the game step in this case
 			if (loadedFromSavedGame)
 				return;
-			SwingUtilities.invokeLater(new Runnable()
+			invokeLater(new Runnable()
 			{
 				public void run()
 				{
@@ -137,6 +149,67 @@ public class HistorySynchronizer
 		}
 	};
 	
+	/**
+	 * Queue the runnable to be run in the swing event thread, after the runnables queued before it.
+	 */
+	private void invokeLater(final Runnable runnable)
+	{
+		synchronized (m_pending)
+		{
+			m_pending.add(runnable);
+			if (m_batchScheduled)
+				return;
+			m_batchScheduled = true;
+		}
+		SwingUtilities.invokeLater(m_runBatch);
+	}
+	
+	private final Runnable m_runBatch = new Runnable()
+	{
+		public void run()
+		{
+			m_data.mergeTerritoryNotifications(new Runnable()
+			{
+				public void run()
+				{
+					runPending();
+				}
+			});
+		}
+	};
+	
+	private void runPending()
+	{
+		final long end = System.currentTimeMillis() + MAX_BATCH_MILLIS;
+		while (true)
+		{
+			final Runnable next;
+			synchronized (m_pending)
+			{
+				if (m_pending.isEmpty())
+				{
+					m_batchScheduled = false;
+					return;
+				}
+				if (System.currentTimeMillis() >= end)
+				{
+					// the rest are run in a later batch
+					SwingUtilities.invokeLater(m_runBatch);
+					return;
+				}
+				next = m_pending.poll();
+			}
+			try
+			{
+				next.run();
+			} catch (final Throwable t)
+			{
+				// keep running the rest, as we would if each was its own task
+				t.printStackTrace();
+			}
+		}
+	}
+	
 	public void deactivate()
 	{
 		m_game.getChannelMessenger().unregisterChannelSubscriber(m_gameModifiedChannelListener, IGame.GAME_MODIFICATION_CHANNEL);
@@ -84,6 +84,7 @@ public class ServerGame extends AbstractGame
 	private IRandomSource m_randomSource = new PlainRandomSource();
 	private IRandomSource m_delegateRandomSource;
 	private final DelegateExecutionManager m_delegateExecutionManager = new DelegateExecutionManager();
+	private final DeltaSaveLog m_deltaSaveLog;
 	private InGameLobbyWatcherWrapper m_inGameLobbyWatcher;
 	private boolean m_needToInitialize = true;
 	/**
@@ -126,11 +127,13 @@ public class ServerGame extends AbstractGame
 	public ServerGame(final GameData data, final Set<IGamePlayer> localPlayers, final Map<String, INode> remotePlayerMapping, final Messengers messengers)
 	{
 		super(data, localPlayers, remotePlayerMapping, messengers);
+		m_deltaSaveLog = new DeltaSaveLog(data, DeltaSaveLog.isDeltaAutosaveEnabled());
 		m_gameModifiedChannel = new IGameModifiedChannel()
 		{
 			public void gameDataChanged(final Change aChange)
 			{
 				assertCorrectCaller();
+				m_deltaSaveLog.gameDataChanged(aChange);
 				m_changePerformer.perform(aChange);
 				m_data.getHistory().getHistoryWriter().addChange(aChange);
 			}
@@ -153,24 +156,28 @@ public class ServerGame extends AbstractGame
 			public void startHistoryEvent(final String event)
 			{
 				assertCorrectCaller();
+				m_deltaSaveLog.startHistoryEvent(event);
 				m_data.getHistory().getHistoryWriter().startEvent(event);
 			}
 			
 			public void addChildToEvent(final String text, final Object renderingData)
 			{
 				assertCorrectCaller();
+				m_deltaSaveLog.addChildToEvent(text, renderingData);
 				m_data.getHistory().getHistoryWriter().addChildToEvent(new EventChild(text, renderingData));
 			}
 			
 			protected void setRenderingData(final Object renderingData)
 			{
 				assertCorrectCaller();
+				m_deltaSaveLog.setRenderingData(renderingData);
 				m_data.getHistory().getHistoryWriter().setRenderingData(renderingData);
 			}
 			
 			public void stepChanged(final String stepName, final String delegateName, final PlayerID player, final int round, final String displayName, final boolean loadedFromSavedGame)
 			{
 				assertCorrectCaller();
+				m_deltaSaveLog.stepChanged(stepName, delegateName, player, round, displayName, loadedFromSavedGame);
 				if (loadedFromSavedGame)
 					return;
 				m_data.getHistory().getHistoryWriter().startNextStep(stepName, delegateName, player, displayName);
@@ -434,7 +441,7 @@ public class ServerGame extends AbstractGame
 			else
 				f = f1;
 			out = new FileOutputStream(f);
-			saveGame(out);
+			saveGame(out, true);
 		} catch (final Exception e)
 		{
 			e.printStackTrace();
@@ -506,6 +513,15 @@ public class ServerGame extends AbstractGame
 	}
 	
 	public void saveGame(final OutputStream out) throws IOException
+	{
+		saveGame(out, false);
+	}
+	
+	/**
+	 * @param delta
+	 *            true to only write the changes since the last full save, if there are few enough of them (see DeltaSaveLog)
+	 */
+	private void saveGame(final OutputStream out, final boolean delta) throws IOException
 	{
 		try
 		{
@@ -519,7 +535,10 @@ public class ServerGame extends AbstractGame
 		}
 		try
 		{
-			new GameDataManager().saveGame(out, m_data);
+			if (delta && m_deltaSaveLog.canWriteDelta())
+				m_deltaSaveLog.writeDelta(out);
+			else
+				m_deltaSaveLog.writeFull(out);
 		} finally
 		{
 			m_delegateExecutionManager.resumeDelegateExecution();
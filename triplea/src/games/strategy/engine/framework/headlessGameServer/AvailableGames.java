@@ -5,16 +5,11 @@ import games.strategy.engine.data.GameParser;
 import games.strategy.engine.framework.GameRunner2;
 import games.strategy.engine.framework.ui.NewGameChooserModel;
 import games.strategy.triplea.Constants;
-import games.strategy.util.ClassLoaderUtil;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -24,8 +19,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
 
 /**
  * A list of all available games. We make sure we can parse them all, but we don't keep them in memory.
@@ -34,7 +27,6 @@ import java.util.zip.ZipInputStream;
  */
 public class AvailableGames
 {
-	private static final boolean s_delayedParsing = false;
 	private static final String ZIP_EXTENSION = ".zip";
 	private final TreeMap<String, URI> m_availableGames = new TreeMap<String, URI>();
 	private final Set<String> m_availableMapFolderOrZipNames = new HashSet<String>();
@@ -77,22 +69,58 @@ public class AvailableGames
 		return getGameXMLLocation(m_availableGames.get(gameName));
 	}
 	
+	/**
+	 * Games already listed in the catalogue, whose files have not changed, are not parsed again.
+	 */
 	private static void populateAvailableGames(final Map<String, URI> availableGames, final Set<String> availableMapFolderOrZipNames,
 				final Set<String> mapNamePropertyList)
 	{
-		System.out.println("Parsing all available games (this could take a while). ");
+		System.out.println("Finding all available games. ");
+		// the game xmls and zips, and the map folder or zip each belongs to
+		final List<File> gameFiles = new ArrayList<File>();
+		final List<String> mapFolderOrZipNames = new ArrayList<String>();
 		for (final File map : allMapFiles())
 		{
 			if (map.isDirectory())
 			{
-				populateFromDirectory(map, availableGames, availableMapFolderOrZipNames, mapNamePropertyList);
+				final File games = new File(map, "games");
+				for (final File game : safeListFiles(games))
+				{
+					if (game.isFile() && game.getName().toLowerCase().endsWith("xml"))
+					{
+						gameFiles.add(game);
+						mapFolderOrZipNames.add(map.getName());
+					}
+				}
 			}
 			else if (map.isFile() && map.getName().toLowerCase().endsWith(ZIP_EXTENSION))
 			{
-				populateFromZip(map, availableGames, availableMapFolderOrZipNames, mapNamePropertyList);
+				gameFiles.add(map);
+				mapFolderOrZipNames.add(map.getName().substring(0, map.getName().length() - ZIP_EXTENSION.length()));
+			}
+		}
+		final GameCatalogue catalogue = new GameCatalogue();
+		final List<List<GameCatalogue.Game>> gamesPerFile = catalogue.getGames(gameFiles);
+		catalogue.save();
+		for (int i = 0; i < gameFiles.size(); i++)
+		{
+			for (final GameCatalogue.Game game : gamesPerFile.get(i))
+			{
+				if (!availableGames.containsKey(game.getName()))
+				{
+					availableGames.put(game.getName(), game.getURI());
+					if (game.getMapName().length() > 0)
+					{
+						mapNamePropertyList.add(game.getMapName());
+					}
+					if (mapFolderOrZipNames.get(i).length() > 0)
+					{
+						availableMapFolderOrZipNames.add(mapFolderOrZipNames.get(i));
+					}
+				}
 			}
 		}
-		System.out.println("Finished parsing all available game xmls. ");
+		System.out.println("Finished finding all available games. ");
 	}
 	
 	private static List<File> allMapFiles()
@@ -114,120 +142,23 @@ public class AvailableGames
 		return Arrays.asList(files);
 	}
 	
-	private static void populateFromDirectory(final File mapDir, final Map<String, URI> availableGames,
-				final Set<String> availableMapFolderOrZipNames, final Set<String> mapNamePropertyList)
-	{
-		final File games = new File(mapDir, "games");
-		if (!games.exists())
-		{
-			return;// no games in this map dir
-		}
-		for (final File game : games.listFiles())
-		{
-			if (game.isFile() && game.getName().toLowerCase().endsWith("xml"))
-			{
-				final boolean added = addToAvailableGames(game.toURI(), availableGames, mapNamePropertyList);
-				if (added)
-				{
-					availableMapFolderOrZipNames.add(mapDir.getName());
-				}
-			}
-		}
-	}
-	
-	private static void populateFromZip(final File map, final Map<String, URI> availableGames,
-				final Set<String> availableMapFolderOrZipNames, final Set<String> mapNamePropertyList)
-	{
-		try
-		{
-			final FileInputStream fis = new FileInputStream(map);
-			try
-			{
-				final ZipInputStream zis = new ZipInputStream(fis);
-				try
-				{
-					ZipEntry entry = zis.getNextEntry();
-					while (entry != null)
-					{
-						if (entry.getName().startsWith("games/") && entry.getName().toLowerCase().endsWith(".xml"))
-						{
-							final URLClassLoader loader = new URLClassLoader(new URL[] { map.toURI().toURL() });
-							final URL url = loader.getResource(entry.getName());
-							// we have to close the loader to allow files to be deleted on windows
-							ClassLoaderUtil.closeLoader(loader);
-							try
-							{
-								final boolean added = addToAvailableGames(new URI(url.toString().replace(" ", "%20")), availableGames, mapNamePropertyList);
-								if (added && map.getName().length() > 4)
-								{
-									availableMapFolderOrZipNames.add(map.getName().substring(0, map.getName().length() - ZIP_EXTENSION.length()));
-								}
-							} catch (final URISyntaxException e)
-							{
-								// only happens when URI couldn't be build and therefore no entry was added. That's fine
-							}
-						}
-						zis.closeEntry();
-						entry = zis.getNextEntry();
-					}
-				} finally
-				{
-					zis.close();
-				}
-			} finally
-			{
-				fis.close();
-			}
-		} catch (final IOException ioe)
-		{
-			ioe.printStackTrace();
-		}
-	}
-	
 	public static boolean addToAvailableGames(final URI uri, final Map<String, URI> availableGames, final Set<String> mapNamePropertyList)
 	{
-		if (uri == null)
+		final GameData data = getGameDataFromXML(uri);
+		if (data == null)
 		{
 			return false;
 		}
-		InputStream input = null;
-		final AtomicReference<String> gameName = new AtomicReference<String>();
-		try
+		final String name = data.getGameName();
+		final String mapName = data.getProperties().get(Constants.MAP_NAME, "");
+		if (!availableGames.containsKey(name))
 		{
-			input = uri.toURL().openStream();
-			try
+			availableGames.put(name, uri);
+			if (mapName.length() > 0)
 			{
-				final GameData data = new GameParser().parse(input, gameName, s_delayedParsing);
-				final String name = data.getGameName();
-				final String mapName = data.getProperties().get(Constants.MAP_NAME, "");
-				if (!availableGames.containsKey(name))
-				{
-					availableGames.put(name, uri);
-					if (mapName.length() > 0)
-					{
-						mapNamePropertyList.add(mapName);
-					}
-					return true;
-				}
-			} catch (final Exception e2)
-			{// ignore
-				System.err.println("Exception while parsing: " + uri.toString() + " : " + (gameName.get() != null ? gameName.get() + " : " : "")
-							+ e2.getMessage());
-			}
-		} catch (final Exception e1)
-		{// ignore
-			System.err.println("Exception while opening: " + uri.toString() + " : " + e1.getMessage());
-		} finally
-		{
-			try
-			{
-				if (input != null)
-				{
-					input.close();
-				}
-			} catch (final IOException e3)
-			{// ignore
+				mapNamePropertyList.add(mapName);
 			}
+			return true;
 		}
 		return false;
 	}
@@ -251,6 +182,9 @@ public class AvailableGames
 		return raw;
 	}
 	
+	/**
+	 * Parses the whole game. Problems opening or parsing it are printed, and give null.
+	 */
 	public static GameData getGameDataFromXML(final URI uri)
 	{
 		if (uri == null)
@@ -0,0 +1,332 @@
+package games.strategy.engine.framework.headlessGameServer;
+
+import games.strategy.engine.EngineVersion;
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.framework.GameRunner2;
+import games.strategy.triplea.Constants;
+import games.strategy.util.ClassLoaderUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A record of the games found in each game xml and map zip, kept on disk between runs.
+ * <p>
+ * 
+ * A file is only parsed again when its path, last modified time or size changes, and the files that do need parsing are parsed in parallel.
+ * Files that could not be parsed are remembered as having no games, so they are not parsed again until they change.
+ * <p>
+ * 
+ * This class is not thread safe.
+ */
+public class GameCatalogue
+{
+	private static final String CATALOGUE_FILE_NAME = "gameCatalogue.ser";
+	private static final String ZIP_EXTENSION = ".zip";
+	private final File m_file;
+	private Map<String, Source> m_sources;
+	private boolean m_changed = false;
+	
+	/**
+	 * A game found while parsing, with what is needed to list and select it without keeping its GameData.
+	 */
+	public static class Game implements Serializable
+	{
+		private static final long serialVersionUID = 4164418536960328916L;
+		private final String m_name;
+		private final String m_version;
+		private final String m_mapName;
+		private final URI m_uri;
+		
+		Game(final String name, final String version, final String mapName, final URI uri)
+		{
+			m_name = name;
+			m_version = version;
+			m_mapName = mapName;
+			m_uri = uri;
+		}
+		
+		public String getName()
+		{
+			return m_name;
+		}
+		
+		/**
+		 * Can return null.
+		 */
+		public String getVersion()
+		{
+			return m_version;
+		}
+		
+		/**
+		 * The map name property of the game, or an empty string if it is not set.
+		 */
+		public String getMapName()
+		{
+			return m_mapName;
+		}
+		
+		public URI getURI()
+		{
+			return m_uri;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return m_name + " (" + m_uri + ")";
+		}
+	}
+	
+	private static class Source implements Serializable
+	{
+		private static final long serialVersionUID = -6316478795316424617L;
+		private final long m_lastModified;
+		private final long m_length;
+		private final List<Game> m_games;
+		
+		Source(final File file, final List<Game> games)
+		{
+			m_lastModified = file.lastModified();
+			m_length = file.length();
+			m_games = games;
+		}
+		
+		boolean isCurrent(final File file)
+		{
+			return file.lastModified() == m_lastModified && file.length() == m_length;
+		}
+	}
+	
+	public GameCatalogue()
+	{
+		this(new File(GameRunner2.getUserRootFolder(), CATALOGUE_FILE_NAME));
+	}
+	
+	public GameCatalogue(final File file)
+	{
+		m_file = file;
+		m_sources = read(file);
+	}
+	
+	/**
+	 * Find the games in each of the given game xml files and map zips.
+	 * Files that are new or have changed since they were last parsed are parsed now, in parallel.
+	 * Files that are not in the list are forgotten.
+	 * 
+	 * @return the games of each file, in the same order as the files
+	 */
+	public List<List<Game>> getGames(final List<File> files)
+	{
+		final Map<String, Source> sources = new HashMap<String, Source>();
+		final List<File> toParse = new ArrayList<File>();
+		for (final File file : files)
+		{
+			final String key = file.getAbsolutePath();
+			final Source known = m_sources.get(key);
+			if (known != null && known.isCurrent(file))
+				sources.put(key, known);
+			else if (!toParse.contains(file))
+				toParse.add(file);
+		}
+		if (!toParse.isEmpty())
+		{
+			System.out.println("Parsing " + toParse.size() + " new or changed game files (this could take a while). ");
+			final List<List<Game>> parsed = parseAll(toParse);
+			for (int i = 0; i < toParse.size(); i++)
+			{
+				sources.put(toParse.get(i).getAbsolutePath(), new Source(toParse.get(i), parsed.get(i)));
+			}
+		}
+		m_changed = m_changed || !toParse.isEmpty() || sources.size() != m_sources.size();
+		m_sources = sources;
+		final List<List<Game>> rVal = new ArrayList<List<Game>>(files.size());
+		for (final File file : files)
+		{
+			rVal.add(Collections.unmodifiableList(sources.get(file.getAbsolutePath()).m_games));
+		}
+		return rVal;
+	}
+	
+	/**
+	 * Write the catalogue to disk, if anything has changed since it was read.
+	 */
+	public void save()
+	{
+		if (!m_changed)
+			return;
+		try
+		{
+			if (!m_file.getParentFile().exists())
+			{
+				m_file.getParentFile().mkdirs();
+			}
+			final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(m_file));
+			try
+			{
+				out.writeObject(EngineVersion.VERSION.toString());
+				out.writeObject(m_sources);
+			} finally
+			{
+				out.close();
+			}
+			m_changed = false;
+		} catch (final IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * A catalogue written by a different engine version is not used, since games that could not be parsed then may be parsable now.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Source> read(final File file)
+	{
+		if (!file.exists())
+			return new HashMap<String, Source>();
+		try
+		{
+			final ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+			try
+			{
+				if (EngineVersion.VERSION.toString().equals(in.readObject()))
+					return (Map<String, Source>) in.readObject();
+			} finally
+			{
+				in.close();
+			}
+		} catch (final Exception e)
+		{
+			System.err.println("Could not read game catalogue: " + file + " : " + e.getMessage());
+		}
+		return new HashMap<String, Source>();
+	}
+	
+	private static List<List<Game>> parseAll(final List<File> files)
+	{
+		final int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors()));
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			final List<Future<List<Game>>> futures = new ArrayList<Future<List<Game>>>(files.size());
+			for (final File file : files)
+			{
+				futures.add(executor.submit(new Callable<List<Game>>()
+				{
+					public List<Game> call()
+					{
+						return parse(file);
+					}
+				}));
+			}
+			final List<List<Game>> rVal = new ArrayList<List<Game>>(files.size());
+			for (final Future<List<Game>> future : futures)
+			{
+				try
+				{
+					rVal.add(future.get());
+				} catch (final ExecutionException e)
+				{
+					e.printStackTrace();
+					rVal.add(new ArrayList<Game>());
+				} catch (final InterruptedException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			}
+			return rVal;
+		} finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	private static List<Game> parse(final File file)
+	{
+		final List<Game> games = new ArrayList<Game>();
+		if (file.getName().toLowerCase().endsWith(ZIP_EXTENSION))
+			parseZip(file, games);
+		else
+			parseGame(file.toURI(), games);
+		return games;
+	}
+	
+	private static void parseZip(final File map, final List<Game> games)
+	{
+		try
+		{
+			final FileInputStream fis = new FileInputStream(map);
+			try
+			{
+				final ZipInputStream zis = new ZipInputStream(fis);
+				try
+				{
+					ZipEntry entry = zis.getNextEntry();
+					while (entry != null)
+					{
+						if (entry.getName().startsWith("games/") && entry.getName().toLowerCase().endsWith(".xml"))
+						{
+							final URLClassLoader loader = new URLClassLoader(new URL[] { map.toURI().toURL() });
+							final URL url = loader.getResource(entry.getName());
+							// we have to close the loader to allow files to be deleted on windows
+							ClassLoaderUtil.closeLoader(loader);
+							if (url != null)
+							{
+								try
+								{
+									parseGame(new URI(url.toString().replace(" ", "%20")), games);
+								} catch (final URISyntaxException e)
+								{
+									// only happens when URI couldn't be build and therefore no entry was added. That's fine
+								}
+							}
+						}
+						zis.closeEntry();
+						entry = zis.getNextEntry();
+					}
+				} finally
+				{
+					zis.close();
+				}
+			} finally
+			{
+				fis.close();
+			}
+		} catch (final IOException ioe)
+		{
+			ioe.printStackTrace();
+		}
+	}
+	
+	private static void parseGame(final URI uri, final List<Game> games)
+	{
+		final GameData data = AvailableGames.getGameDataFromXML(uri);
+		if (data == null)
+			return;
+		final String version = data.getGameVersion() == null ? null : data.getGameVersion().toString();
+		games.add(new Game(data.getGameName(), version, data.getProperties().get(Constants.MAP_NAME, ""), uri));
+	}
+}
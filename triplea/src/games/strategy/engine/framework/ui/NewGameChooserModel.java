@@ -18,6 +18,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -84,18 +89,24 @@ public class NewGameChooserModel extends DefaultListModel
 	
 	private void populate()
 	{
-		final List<NewGameChooserEntry> entries = new ArrayList<NewGameChooserEntry>();
+		final List<URI> uris = new ArrayList<URI>();
 		for (final File map : allMapFiles())
 		{
 			if (map.isDirectory())
 			{
-				populateFromDirectory(map, entries);
+				populateFromDirectory(map, uris);
 			}
 			else if (map.isFile() && map.getName().toLowerCase().endsWith(".zip"))
 			{
-				populateFromZip(map, entries);
+				populateFromZip(map, uris);
 			}
 		}
+		final List<NewGameChooserEntry> entries = new ArrayList<NewGameChooserEntry>();
+		for (final NewGameChooserEntry newEntry : createEntries(uris))
+		{
+			if (!entries.contains(newEntry))
+				entries.add(newEntry);
+		}
 		// remove any null entries
 		do
 		{
@@ -113,7 +124,51 @@ public class NewGameChooserModel extends DefaultListModel
 		}
 	}
 	
-	private void populateFromZip(final File map, final List<NewGameChooserEntry> entries)
+	/**
+	 * Parse the games in parallel, since parsing is the slow part of finding them.
+	 * 
+	 * @return the entry for each uri in order, or null where the game could not be parsed
+	 */
+	private List<NewGameChooserEntry> createEntries(final List<URI> uris)
+	{
+		final int threads = Math.max(1, Math.min(uris.size(), Runtime.getRuntime().availableProcessors()));
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try
+		{
+			final List<Future<NewGameChooserEntry>> futures = new ArrayList<Future<NewGameChooserEntry>>(uris.size());
+			for (final URI uri : uris)
+			{
+				futures.add(executor.submit(new Callable<NewGameChooserEntry>()
+				{
+					public NewGameChooserEntry call()
+					{
+						return createEntrySafely(uri);
+					}
+				}));
+			}
+			final List<NewGameChooserEntry> rVal = new ArrayList<NewGameChooserEntry>(uris.size());
+			for (final Future<NewGameChooserEntry> future : futures)
+			{
+				try
+				{
+					rVal.add(future.get());
+				} catch (final ExecutionException e)
+				{
+					e.printStackTrace();
+					rVal.add(null);
+				} catch (final InterruptedException e)
+				{
+					throw new IllegalStateException(e);
+				}
+			}
+			return rVal;
+		} finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	private void populateFromZip(final File map, final List<URI> uris)
 	{
 		try
 		{
@@ -132,14 +187,15 @@ public class NewGameChooserModel extends DefaultListModel
 							final URL url = loader.getResource(entry.getName());
 							// we have to close the loader to allow files to be deleted on windows
 							ClassLoaderUtil.closeLoader(loader);
-							if (url == null)
-								continue;
-							try
-							{
-								addNewGameChooserEntry(entries, new URI(url.toString().replace(" ", "%20")));
-							} catch (final URISyntaxException e)
+							if (url != null)
 							{
-								// only happens when URI couldn't be build and therefore no entry was added. That's fine
+								try
+								{
+									uris.add(new URI(url.toString().replace(" ", "%20")));
+								} catch (final URISyntaxException e)
+								{
+									// only happens when URI couldn't be build and therefore no entry was added. That's fine
+								}
 							}
 						}
 						zis.closeEntry();
@@ -160,18 +216,15 @@ public class NewGameChooserModel extends DefaultListModel
 	}
 	
 	/**
-	 * @param entries
-	 *            list of entries where to add the new entry
 	 * @param uri
 	 *            URI of the new entry
+	 * @return the new entry, or null if the game could not be parsed
 	 */
-	private void addNewGameChooserEntry(final List<NewGameChooserEntry> entries, final URI uri)
+	private NewGameChooserEntry createEntrySafely(final URI uri)
 	{
 		try
 		{
-			final NewGameChooserEntry newEntry = createEntry(uri);
-			if (!entries.contains(newEntry))
-				entries.add(newEntry);
+			return createEntry(uri);
 		} catch (final EngineVersionException e)
 		{
 			System.out.println(e.getMessage());
@@ -184,6 +237,7 @@ public class NewGameChooserModel extends DefaultListModel
 			System.err.println("Could not parse:" + uri);
 			e.printStackTrace();
 		}
+		return null;
 	}
 	
 	public NewGameChooserEntry findByName(final String name)
@@ -203,7 +257,7 @@ public class NewGameChooserModel extends DefaultListModel
 		return new NewGameChooserEntry(uri);
 	}
 	
-	private void populateFromDirectory(final File mapDir, final List<NewGameChooserEntry> entries)
+	private void populateFromDirectory(final File mapDir, final List<URI> uris)
 	{
 		final File games = new File(mapDir, "games");
 		if (!games.exists())
@@ -214,7 +268,7 @@ public class NewGameChooserModel extends DefaultListModel
 		for (final File game : games.listFiles())
 		{
 			if (game.isFile() && game.getName().toLowerCase().endsWith("xml"))
-				addNewGameChooserEntry(entries, game.toURI());
+				uris.add(game.toURI());
 		}
 	}
 	
@@ -31,8 +31,12 @@ package games.strategy.engine.history;
  * Event - an event that happened in the game, eg Russia buys 8 inf.
  * 
  * 
+ * Moving across whole rounds uses a compacted copy of each round's changes, see ChangeFactory.compact().
+ * The compacted rounds are kept up to a budget of changes, so that jumping between distant nodes does not replay every change made in between.
+ * 
  */
 import games.strategy.engine.data.Change;
+import games.strategy.engine.data.ChangeFactory;
 import games.strategy.engine.data.ChangePerformer;
 import games.strategy.engine.data.CompositeChange;
 import games.strategy.engine.data.GameData;
@@ -42,7 +46,10 @@ import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.swing.SwingUtilities;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -50,10 +57,15 @@ import javax.swing.tree.DefaultTreeModel;
 
 public class History extends DefaultTreeModel implements java.io.Serializable
 {
+	// the most changes kept in compacted rounds, allowing about 100 bytes a change and a 32nd of the heap
+	private static final int KEYFRAME_CHANGE_BUDGET = (int) Math.max(10000, Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 32 / 100));
 	private final HistoryWriter m_writer = new HistoryWriter(this);
 	private final List<Change> m_changes = new ArrayList<Change>();
 	private final GameData m_data;
 	private HistoryNode m_currentNode;
+	// first change of a round -> the round's changes compacted
+	private final Map<Integer, Keyframe> m_keyframes = new HashMap<Integer, Keyframe>();
+	private int m_keyframeChanges = 0;
 	
 	private void assertCorrectThread()
 	{
@@ -123,7 +135,7 @@ public class History extends DefaultTreeModel implements java.io.Serializable
 		final int lastChange = getLastChange(end);
 		if (firstChange == lastChange)
 			return null;
-		final List<Change> changes = m_changes.subList(Math.min(firstChange, lastChange), Math.max(firstChange, lastChange));
+		final List<Change> changes = getChanges(Math.min(firstChange, lastChange), Math.max(firstChange, lastChange));
 		final Change compositeChange = new CompositeChange(changes);
 		if (lastChange >= firstChange)
 		{
@@ -135,6 +147,68 @@ public class History extends DefaultTreeModel implements java.io.Serializable
 		}
 	}
 	
+	/**
+	 * @return the changes from start up to end, with the compacted changes of each whole round in between
+	 */
+	private synchronized List<Change> getChanges(final int start, final int end)
+	{
+		final List<Change> rVal = new ArrayList<Change>();
+		int current = start;
+		final HistoryNode root = (HistoryNode) getRoot();
+		for (int i = 0; i < root.getChildCount() - 1; i++)
+		{
+			if (!(root.getChildAt(i) instanceof Round) || !(root.getChildAt(i + 1) instanceof Round))
+				continue;
+			final int roundStart = ((Round) root.getChildAt(i)).getChangeStartIndex();
+			final int roundEnd = ((Round) root.getChildAt(i + 1)).getChangeStartIndex();
+			if (roundStart < current || roundEnd > end)
+				continue;
+			final Change keyframe = getKeyframe(roundStart, roundEnd);
+			if (keyframe == null)
+				continue;
+			rVal.addAll(m_changes.subList(current, roundStart));
+			rVal.add(keyframe);
+			current = roundEnd;
+		}
+		rVal.addAll(m_changes.subList(current, end));
+		return rVal;
+	}
+	
+	/**
+	 * @return the compacted changes of a finished round, or null if compacting does not help or there is no room left to keep them
+	 */
+	private Change getKeyframe(final int roundStart, final int roundEnd)
+	{
+		Keyframe keyframe = m_keyframes.get(roundStart);
+		if (keyframe == null || keyframe.m_end != roundEnd)
+		{
+			if (keyframe != null)
+				removeKeyframe(roundStart);
+			if (m_keyframeChanges >= KEYFRAME_CHANGE_BUDGET)
+				return null;
+			final List<Change> changes = m_changes.subList(roundStart, roundEnd);
+			Change compacted = ChangeFactory.compact(changes);
+			int size = ChangeFactory.countChanges(((CompositeChange) compacted).getChanges());
+			if (size >= ChangeFactory.countChanges(changes) || m_keyframeChanges + size > KEYFRAME_CHANGE_BUDGET)
+			{
+				// remember it is not worth keeping, so we don't compact it again
+				compacted = null;
+				size = 0;
+			}
+			keyframe = new Keyframe(roundEnd, compacted, size);
+			m_keyframes.put(roundStart, keyframe);
+			m_keyframeChanges += size;
+		}
+		return keyframe.m_change;
+	}
+	
+	private void removeKeyframe(final int roundStart)
+	{
+		final Keyframe removed = m_keyframes.remove(roundStart);
+		if (removed != null)
+			m_keyframeChanges -= removed.m_size;
+	}
+	
 	public synchronized void gotoNode(final HistoryNode node)
 	{
 		assertCorrectThread();
@@ -167,6 +241,16 @@ public class History extends DefaultTreeModel implements java.io.Serializable
 			{
 				m_changes.remove(lastChange);
 			}
+			final Iterator<Map.Entry<Integer, Keyframe>> keyframes = m_keyframes.entrySet().iterator();
+			while (keyframes.hasNext())
+			{
+				final Map.Entry<Integer, Keyframe> entry = keyframes.next();
+				if (entry.getValue().m_end > lastChange)
+				{
+					m_keyframeChanges -= entry.getValue().m_size;
+					keyframes.remove();
+				}
+			}
 			final List<HistoryNode> nodesToRemove = new ArrayList<HistoryNode>();
 			final Enumeration enumeration = ((DefaultMutableTreeNode) this.getRoot()).preorderEnumeration();
 			enumeration.nextElement();
@@ -225,6 +309,23 @@ public class History extends DefaultTreeModel implements java.io.Serializable
 	{
 		return m_data;
 	}
+	
+	
+	private static class Keyframe
+	{
+		// points after the last change of the round
+		private final int m_end;
+		// null if the round is replayed change by change
+		private final Change m_change;
+		private final int m_size;
+		
+		Keyframe(final int end, final Change change, final int size)
+		{
+			m_end = end;
+			m_change = change;
+			m_size = size;
+		}
+	}
 }
 
 
@@ -95,6 +95,7 @@ public class DBExplorerPanel extends JPanel
 			if (isNotQuery(sql))
 			{
 				final int rs = ps.executeUpdate(sql);
+				Database.clearCaches();
 				final DefaultTableModel model = new DefaultTableModel();
 				model.addColumn("COUNT");
 				model.addRow(new Object[] { rs });
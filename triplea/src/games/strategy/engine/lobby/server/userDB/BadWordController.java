@@ -30,6 +30,9 @@ import java.util.logging.Logger;
 public class BadWordController
 {
 	private static final Logger s_logger = Logger.getLogger(BadWordController.class.getName());
+	private static final Object s_wordsLock = new Object();
+	// the bad words as last read from the database, null until read
+	private static List<String> s_words;
 	
 	public void addBadWord(final String word)
 	{
@@ -42,6 +45,7 @@ public class BadWordController
 			ps.execute();
 			ps.close();
 			con.commit();
+			clearCache();
 		} catch (final SQLException sqle)
 		{
 			if (sqle.getErrorCode() == 30000)
@@ -70,6 +74,7 @@ public class BadWordController
 			ps.execute();
 			ps.close();
 			con.commit();
+			clearCache();
 		} catch (final SQLException sqle)
 		{
 			s_logger.log(Level.SEVERE, "Error deleting banned word:" + word, sqle);
@@ -80,7 +85,31 @@ public class BadWordController
 		}
 	}
 	
+	/**
+	 * Forget the bad words read so far, the next call to list() will read them again.
+	 */
+	static void clearCache()
+	{
+		synchronized (s_wordsLock)
+		{
+			s_words = null;
+		}
+	}
+	
+	/**
+	 * The words are read from the database once and then answered from memory.
+	 */
 	public List<String> list()
+	{
+		synchronized (s_wordsLock)
+		{
+			if (s_words == null)
+				s_words = read();
+			return new ArrayList<String>(s_words);
+		}
+	}
+	
+	private List<String> read()
 	{
 		final String sql = "select word from bad_words";
 		final Connection con = Database.getConnection();
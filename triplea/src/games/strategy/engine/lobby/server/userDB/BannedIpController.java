@@ -17,7 +17,6 @@ import games.strategy.util.Tuple;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
@@ -32,6 +31,7 @@ import java.util.logging.Logger;
 public class BannedIpController
 {
 	private static final Logger s_logger = Logger.getLogger(BannedIpController.class.getName());
+	private static final ExpiringTableCache s_bans = new ExpiringTableCache("banned_ips", "ip", "ban_till");
 	
 	/**
 	 * Ban the ip permanently
@@ -68,6 +68,7 @@ public class BannedIpController
 			ps.execute();
 			ps.close();
 			con.commit();
+			s_bans.put(ip, banTillTs);
 		} catch (final SQLException sqle)
 		{
 			if (sqle.getErrorCode() == 30000)
@@ -75,6 +76,7 @@ public class BannedIpController
 				// this is ok
 				// the ip is banned as expected
 				s_logger.info("Tried to create duplicate banned ip:" + ip + " error:" + sqle.getMessage());
+				s_bans.clear();
 				return;
 			}
 			s_logger.log(Level.SEVERE, "Error inserting banned ip:" + ip, sqle);
@@ -96,6 +98,7 @@ public class BannedIpController
 			ps.execute();
 			ps.close();
 			con.commit();
+			s_bans.remove(ip);
 		} catch (final SQLException sqle)
 		{
 			s_logger.log(Level.SEVERE, "Error deleting banned ip:" + ip, sqle);
@@ -108,46 +111,22 @@ public class BannedIpController
 	
 	/**
 	 * Is the given ip banned? This may have the side effect of removing from the
-	 * database any ip's whose ban has expired
+	 * database any ip's whose ban has expired.
+	 * <p>
+	 * 
+	 * The bans are read from the database once and then answered from memory.
 	 */
 	public Tuple<Boolean, Timestamp> isIpBanned(final String ip)
 	{
-		boolean found = false;
-		boolean expired = false;
-		Timestamp banTill = null;
-		final String sql = "select ip, ban_till from banned_ips where ip = ?";
-		final Connection con = Database.getConnection();
-		try
-		{
-			final PreparedStatement ps = con.prepareStatement(sql);
-			ps.setString(1, ip);
-			final ResultSet rs = ps.executeQuery();
-			found = rs.next();
-			// if the ban has expird, allow the ip
-			if (found)
-			{
-				banTill = rs.getTimestamp(2);
-				if (banTill != null && banTill.getTime() < System.currentTimeMillis())
-				{
-					s_logger.fine("Ban expired for:" + ip);
-					expired = true;
-				}
-			}
-			rs.close();
-			ps.close();
-		} catch (final SQLException sqle)
-		{
-			s_logger.info("Error for testing banned ip existence:" + ip + " error:" + sqle.getMessage());
-			throw new IllegalStateException(sqle.getMessage());
-		} finally
-		{
-			DbUtil.closeConnection(con);
-		}
-		if (expired)
+		final Tuple<Boolean, Timestamp> ban = s_bans.get(ip);
+		final Timestamp banTill = ban.getSecond();
+		// if the ban has expired, allow the ip
+		if (ban.getFirst() && banTill != null && banTill.getTime() < System.currentTimeMillis())
 		{
+			s_logger.fine("Ban expired for:" + ip);
 			removeBannedIp(ip);
 			return new Tuple<Boolean, Timestamp>(false, banTill);
 		}
-		return new Tuple<Boolean, Timestamp>(found, banTill);
+		return ban;
 	}
 }
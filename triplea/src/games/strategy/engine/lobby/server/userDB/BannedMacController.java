@@ -17,7 +17,6 @@ import games.strategy.util.Tuple;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
@@ -32,6 +31,7 @@ import java.util.logging.Logger;
 public class BannedMacController
 {
 	private static final Logger s_logger = Logger.getLogger(BannedMacController.class.getName());
+	private static final ExpiringTableCache s_bans = new ExpiringTableCache("banned_macs", "mac", "ban_till");
 	
 	/**
 	 * Ban the mac permanently
@@ -68,6 +68,7 @@ public class BannedMacController
 			ps.execute();
 			ps.close();
 			con.commit();
+			s_bans.put(mac, banTillTs);
 		} catch (final SQLException sqle)
 		{
 			if (sqle.getErrorCode() == 30000)
@@ -75,6 +76,7 @@ public class BannedMacController
 				// this is ok
 				// the mac is banned as expected
 				s_logger.info("Tried to create duplicate banned mac:" + mac + " error:" + sqle.getMessage());
+				s_bans.clear();
 				return;
 			}
 			s_logger.log(Level.SEVERE, "Error inserting banned mac:" + mac, sqle);
@@ -96,6 +98,7 @@ public class BannedMacController
 			ps.execute();
 			ps.close();
 			con.commit();
+			s_bans.remove(mac);
 		} catch (final SQLException sqle)
 		{
 			s_logger.log(Level.SEVERE, "Error deleting banned mac:" + mac, sqle);
@@ -108,46 +111,22 @@ public class BannedMacController
 	
 	/**
 	 * Is the given mac banned? This may have the side effect of removing from the
-	 * database any mac's whose ban has expired
+	 * database any mac's whose ban has expired.
+	 * <p>
+	 * 
+	 * The bans are read from the database once and then answered from memory.
 	 */
 	public Tuple<Boolean, Timestamp> isMacBanned(final String mac)
 	{
-		boolean found = false;
-		boolean expired = false;
-		Timestamp banTill = null;
-		final String sql = "select mac, ban_till from banned_macs where mac = ?";
-		final Connection con = Database.getConnection();
-		try
-		{
-			final PreparedStatement ps = con.prepareStatement(sql);
-			ps.setString(1, mac);
-			final ResultSet rs = ps.executeQuery();
-			found = rs.next();
-			// If the ban has expired, allow the mac
-			if (found)
-			{
-				banTill = rs.getTimestamp(2);
-				if (banTill != null && banTill.getTime() < System.currentTimeMillis())
-				{
-					s_logger.fine("Ban expired for:" + mac);
-					expired = true;
-				}
-			}
-			rs.close();
-			ps.close();
-		} catch (final SQLException sqle)
-		{
-			s_logger.info("Error for testing banned mac existence:" + mac + " error:" + sqle.getMessage());
-			throw new IllegalStateException(sqle.getMessage());
-		} finally
-		{
-			DbUtil.closeConnection(con);
-		}
-		if (expired)
+		final Tuple<Boolean, Timestamp> ban = s_bans.get(mac);
+		final Timestamp banTill = ban.getSecond();
+		// if the ban has expired, allow the mac
+		if (ban.getFirst() && banTill != null && banTill.getTime() < System.currentTimeMillis())
 		{
+			s_logger.fine("Ban expired for:" + mac);
 			removeBannedMac(mac);
 			return new Tuple<Boolean, Timestamp>(false, banTill);
 		}
-		return new Tuple<Boolean, Timestamp>(found, banTill);
+		return ban;
 	}
 }
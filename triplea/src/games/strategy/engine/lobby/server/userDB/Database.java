@@ -17,6 +17,10 @@ import games.strategy.engine.framework.GameRunner2;
 import games.strategy.engine.framework.startup.launcher.ServerLauncher;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
@@ -25,6 +29,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
@@ -49,6 +54,9 @@ import javax.swing.JOptionPane;
  * Getting a connection will also schedule backups at regular intervals.
  * <p>
  * 
+ * Connections are pooled, closing a connection returns it to the pool rather than closing the underlying database connection.
+ * <p>
+ * 
  * 
  * @author sgb
  */
@@ -58,6 +66,9 @@ public class Database
 	private static final Object s_dbSetupLock = new Object();
 	private static boolean s_isDbSetup = false;
 	private static boolean s_areDBTablesCreated = false;
+	private static final int MAX_IDLE_CONNECTIONS = 8;
+	// connections closed by their users, waiting to be handed out again
+	private static final LinkedList<Connection> s_idleConnections = new LinkedList<Connection>();
 	
 	private static File getCurrentDataBaseDir()
 	{
@@ -90,9 +101,15 @@ public class Database
 		return dbRootDir;
 	}
 	
+	/**
+	 * The connection returned must be closed when it is no longer needed, which returns it to the pool.
+	 */
 	public static Connection getConnection()
 	{
 		ensureDbIsSetup();
+		final Connection idle = takeIdleConnection();
+		if (idle != null)
+			return createPooledConnection(idle);
 		Connection conn = null;
 		final Properties props = getDbProps();
 		/*
@@ -114,7 +131,143 @@ public class Database
 			throw new IllegalStateException("Could not create db connection");
 		}
 		ensureDbTablesAreCreated(conn);
-		return conn;
+		return createPooledConnection(conn);
+	}
+	
+	/**
+	 * Forget any ban, mute or bad word lists held in memory.
+	 * This must be called after changing those tables with sql that did not go through their controllers.
+	 */
+	public static void clearCaches()
+	{
+		ExpiringTableCache.clearAll();
+		BadWordController.clearCache();
+	}
+	
+	private static Connection takeIdleConnection()
+	{
+		synchronized (s_idleConnections)
+		{
+			while (!s_idleConnections.isEmpty())
+			{
+				final Connection conn = s_idleConnections.removeFirst();
+				try
+				{
+					if (!conn.isClosed())
+						return conn;
+				} catch (final SQLException e)
+				{
+					s_logger.log(Level.FINE, e.getMessage(), e);
+				}
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Undo anything the last user left uncommitted, and keep the connection for the next user if the pool has room.
+	 */
+	private static void releaseConnection(final Connection conn)
+	{
+		try
+		{
+			if (conn.isClosed())
+				return;
+			if (!conn.getAutoCommit())
+			{
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			conn.clearWarnings();
+			synchronized (s_idleConnections)
+			{
+				if (s_idleConnections.size() < MAX_IDLE_CONNECTIONS)
+				{
+					s_idleConnections.addFirst(conn);
+					return;
+				}
+			}
+			conn.close();
+		} catch (final SQLException sqle)
+		{
+			s_logger.log(Level.WARNING, "Could not return connection to the pool", sqle);
+			try
+			{
+				conn.close();
+			} catch (final SQLException e)
+			{
+			}
+		}
+	}
+	
+	private static void closeIdleConnections()
+	{
+		synchronized (s_idleConnections)
+		{
+			for (final Connection conn : s_idleConnections)
+			{
+				try
+				{
+					conn.close();
+				} catch (final SQLException e)
+				{
+					s_logger.log(Level.FINE, e.getMessage(), e);
+				}
+			}
+			s_idleConnections.clear();
+		}
+	}
+	
+	private static Connection createPooledConnection(final Connection conn)
+	{
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new PooledConnection(conn));
+	}
+	
+	/**
+	 * Hands every call to the underlying connection, except close which returns the connection to the pool.
+	 */
+	private static class PooledConnection implements InvocationHandler
+	{
+		private final Connection m_connection;
+		private volatile boolean m_released = false;
+		
+		PooledConnection(final Connection connection)
+		{
+			m_connection = connection;
+		}
+		
+		public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+		{
+			final String name = method.getName();
+			if (name.equals("close"))
+			{
+				synchronized (this)
+				{
+					if (m_released)
+						return null;
+					m_released = true;
+				}
+				releaseConnection(m_connection);
+				return null;
+			}
+			if (name.equals("isClosed"))
+				return m_released || m_connection.isClosed();
+			if (name.equals("equals"))
+				return proxy == args[0];
+			if (name.equals("hashCode"))
+				return System.identityHashCode(proxy);
+			if (name.equals("toString"))
+				return "Pooled:" + m_connection;
+			if (m_released)
+				throw new SQLException("Connection is closed");
+			try
+			{
+				return method.invoke(m_connection, args);
+			} catch (final InvocationTargetException e)
+			{
+				throw e.getTargetException();
+			}
+		}
 	}
 	
 	/**
@@ -269,6 +422,7 @@ public class Database
 		final Properties props = getDbProps();
 		final Connection con = DriverManager.getConnection(url, props);
 		con.close();
+		clearCaches();
 	}
 	
 	private static Properties getDbProps()
@@ -322,6 +476,7 @@ public class Database
 	
 	private static void shutDownDB()
 	{
+		closeIdleConnections();
 		try
 		{
 			DriverManager.getConnection("jdbc:derby:ta_users;shutdown=true");
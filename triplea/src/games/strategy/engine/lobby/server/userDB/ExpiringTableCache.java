@@ -0,0 +1,140 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.lobby.server.userDB;
+
+import games.strategy.util.Tuple;
+
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * An in memory copy of one of the ban or mute tables, mapping each key to the time its entry expires.
+ * <p>
+ * 
+ * The table is read in one query the first time it is needed, after which lookups do not touch the database.
+ * The controller that owns the table keeps the copy current through put and remove as it writes.
+ * <p>
+ * 
+ * A null expiry means the entry never expires.
+ */
+class ExpiringTableCache
+{
+	private static final Logger s_logger = Logger.getLogger(ExpiringTableCache.class.getName());
+	private static final List<WeakReference<ExpiringTableCache>> s_caches = new ArrayList<WeakReference<ExpiringTableCache>>();
+	private final String m_table;
+	private final String m_keyColumn;
+	private final String m_tillColumn;
+	// null until loaded
+	private Map<String, Timestamp> m_entries;
+	
+	ExpiringTableCache(final String table, final String keyColumn, final String tillColumn)
+	{
+		m_table = table;
+		m_keyColumn = keyColumn;
+		m_tillColumn = tillColumn;
+		synchronized (s_caches)
+		{
+			s_caches.add(new WeakReference<ExpiringTableCache>(this));
+		}
+	}
+	
+	/**
+	 * Forget the contents of every table, they will be read again when next needed.
+	 * Used when the tables may have been changed without going through the controllers.
+	 */
+	static void clearAll()
+	{
+		synchronized (s_caches)
+		{
+			for (final WeakReference<ExpiringTableCache> ref : s_caches)
+			{
+				final ExpiringTableCache cache = ref.get();
+				if (cache != null)
+					cache.clear();
+			}
+		}
+	}
+	
+	synchronized void clear()
+	{
+		m_entries = null;
+	}
+	
+	/**
+	 * @return whether the key has an entry, and when that entry expires. Expired entries are still returned.
+	 */
+	synchronized Tuple<Boolean, Timestamp> get(final String key)
+	{
+		final Map<String, Timestamp> entries = getEntries();
+		if (!entries.containsKey(key))
+			return new Tuple<Boolean, Timestamp>(false, null);
+		return new Tuple<Boolean, Timestamp>(true, entries.get(key));
+	}
+	
+	/**
+	 * Record an entry the owning controller has written to the database.
+	 */
+	synchronized void put(final String key, final Timestamp till)
+	{
+		if (m_entries != null)
+			m_entries.put(key, till);
+	}
+	
+	/**
+	 * Record an entry the owning controller has deleted from the database.
+	 */
+	synchronized void remove(final String key)
+	{
+		if (m_entries != null)
+			m_entries.remove(key);
+	}
+	
+	private Map<String, Timestamp> getEntries()
+	{
+		if (m_entries != null)
+			return m_entries;
+		final Map<String, Timestamp> entries = new HashMap<String, Timestamp>();
+		final String sql = "select " + m_keyColumn + ", " + m_tillColumn + " from " + m_table;
+		final Connection con = Database.getConnection();
+		try
+		{
+			final PreparedStatement ps = con.prepareStatement(sql);
+			final ResultSet rs = ps.executeQuery();
+			while (rs.next())
+			{
+				entries.put(rs.getString(1), rs.getTimestamp(2));
+			}
+			rs.close();
+			ps.close();
+		} catch (final SQLException sqle)
+		{
+			s_logger.info("Error reading " + m_table + " error:" + sqle.getMessage());
+			throw new IllegalStateException(sqle.getMessage());
+		} finally
+		{
+			DbUtil.closeConnection(con);
+		}
+		m_entries = entries;
+		return m_entries;
+	}
+}
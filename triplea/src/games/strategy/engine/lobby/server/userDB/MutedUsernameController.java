@@ -13,9 +13,10 @@
  */
 package games.strategy.engine.lobby.server.userDB;
 
+import games.strategy.util.Tuple;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
@@ -32,6 +33,7 @@ import java.util.logging.Logger;
 public class MutedUsernameController
 {
 	private static final Logger s_logger = Logger.getLogger(MutedUsernameController.class.getName());
+	private static final ExpiringTableCache s_mutes = new ExpiringTableCache("muted_usernames", "username", "mute_till");
 	
 	/**
 	 * Mute the username permanently
@@ -66,6 +68,7 @@ public class MutedUsernameController
 			ps.execute();
 			ps.close();
 			con.commit();
+			s_mutes.put(username, muteTillTs);
 		} catch (final SQLException sqle)
 		{
 			if (sqle.getErrorCode() == 30000)
@@ -73,6 +76,7 @@ public class MutedUsernameController
 				// this is ok
 				// the username is muted as expected
 				s_logger.info("Tried to create duplicate muted username:" + username + " error:" + sqle.getMessage());
+				s_mutes.clear();
 				return;
 			}
 			s_logger.log(Level.SEVERE, "Error inserting muted username:" + username, sqle);
@@ -94,6 +98,7 @@ public class MutedUsernameController
 			ps.execute();
 			ps.close();
 			con.commit();
+			s_mutes.remove(username);
 		} catch (final SQLException sqle)
 		{
 			s_logger.log(Level.SEVERE, "Error deleting muted username:" + username, sqle);
@@ -114,86 +119,37 @@ public class MutedUsernameController
 		return muteTill > System.currentTimeMillis();
 	}
 	
+	/**
+	 * @return when the mute on the given username ends, Long.MAX_VALUE if it never ends, or -1 if the username is not muted.
+	 *         The mutes are read from the database once and then answered from memory.
+	 */
 	public long getUsernameUnmuteTime(final String username)
 	{
-		long result = -1;
-		boolean expired = false;
-		final String sql = "select username, mute_till from muted_usernames where username = ?";
-		final Connection con = Database.getConnection();
-		try
-		{
-			final PreparedStatement ps = con.prepareStatement(sql);
-			ps.setString(1, username);
-			final ResultSet rs = ps.executeQuery();
-			final boolean found = rs.next();
-			if (found)
-			{
-				final Timestamp muteTill = rs.getTimestamp(2);
-				result = muteTill.getTime();
-				if (result < System.currentTimeMillis())
-				{
-					s_logger.fine("Mute expired for:" + username);
-					expired = true;
-				}
-			}
-			else
-				result = -1;
-			rs.close();
-			ps.close();
-		} catch (final SQLException sqle)
-		{
-			s_logger.info("Error for testing muted username existence:" + username + " error:" + sqle.getMessage());
-			throw new IllegalStateException(sqle.getMessage());
-		} finally
-		{
-			DbUtil.closeConnection(con);
-		}
+		final Tuple<Boolean, Timestamp> mute = s_mutes.get(username);
+		if (!mute.getFirst())
+			return -1;
+		final Timestamp muteTill = mute.getSecond();
+		if (muteTill == null)
+			return Long.MAX_VALUE;
 		// If the mute has expired, allow the username
-		if (expired)
+		if (muteTill.getTime() < System.currentTimeMillis())
 		{
+			s_logger.fine("Mute expired for:" + username);
 			removeMutedUsername(username);
-			result = -1; // Signal as not-muted
+			return -1; // Signal as not-muted
 		}
-		return result;
+		return muteTill.getTime();
 	}
 	
 	public List<String> getUsernamesThatAreStillMuted(final List<String> usernames)
 	{
 		final List<String> results = new ArrayList<String>();
-		final String sql = "select username, mute_till from muted_usernames where username = ?";
-		final Connection con = Database.getConnection();
-		try
+		for (final String username : usernames)
 		{
-			for (final String username : usernames)
-			{
-				boolean found = false;
-				boolean expired = false;
-				final PreparedStatement ps = con.prepareStatement(sql);
-				ps.setString(1, username);
-				final ResultSet rs = ps.executeQuery();
-				found = rs.next();
-				// If the mute has expired, allow the username
-				if (found)
-				{
-					final Timestamp muteTill = rs.getTimestamp(2);
-					if (muteTill != null && muteTill.getTime() < System.currentTimeMillis())
-					{
-						s_logger.fine("Mute expired for: " + username);
-						expired = true;
-					}
-				}
-				rs.close();
-				ps.close();
-				if (found && !expired)
-					results.add(username);
-			}
-		} catch (final SQLException sqle)
-		{
-			s_logger.info("Error testing whether usernames were muted: " + usernames);
-			throw new IllegalStateException(sqle.getMessage());
-		} finally
-		{
-			DbUtil.closeConnection(con);
+			final Tuple<Boolean, Timestamp> mute = s_mutes.get(username);
+			// If the mute has expired, allow the username
+			if (mute.getFirst() && (mute.getSecond() == null || mute.getSecond().getTime() >= System.currentTimeMillis()))
+				results.add(username);
 		}
 		return results;
 	}
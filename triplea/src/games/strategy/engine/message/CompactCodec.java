@@ -0,0 +1,159 @@
+package games.strategy.engine.message;
+
+import games.strategy.net.GUID;
+import games.strategy.net.Node;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Writes the values most often passed to and returned from remote methods, without the class descriptors that java serialization writes for each of them.
+ * <p>
+ * 
+ * Each value is written as a tag byte, followed by the value. Values of any other type are written with writeObject().
+ */
+public final class CompactCodec
+{
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte TRUE = 3;
+	private static final byte FALSE = 4;
+	private static final byte LONG = 5;
+	private static final byte DOUBLE = 6;
+	private static final byte FLOAT = 7;
+	private static final byte SHORT = 8;
+	private static final byte BYTE = 9;
+	private static final byte CHARACTER = 10;
+	private static final byte BYTE_ARRAY = 11;
+	private static final byte GUID_VALUE = 12;
+	private static final byte NODE = 13;
+	private static final byte OBJECT = Byte.MAX_VALUE;
+	// writeUTF can write at most 65535 bytes, and a char takes at most 3
+	private static final int MAX_UTF_LENGTH = 65535 / 3;
+	
+	private CompactCodec()
+	{
+	}
+	
+	public static void writeValue(final ObjectOutput out, final Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.write(NULL);
+		}
+		else if (value instanceof String && ((String) value).length() <= MAX_UTF_LENGTH)
+		{
+			out.write(STRING);
+			out.writeUTF((String) value);
+		}
+		else if (value instanceof Integer)
+		{
+			out.write(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Boolean)
+		{
+			out.write(((Boolean) value).booleanValue() ? TRUE : FALSE);
+		}
+		else if (value instanceof Long)
+		{
+			out.write(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Double)
+		{
+			out.write(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (value instanceof Float)
+		{
+			out.write(FLOAT);
+			out.writeFloat((Float) value);
+		}
+		else if (value instanceof Short)
+		{
+			out.write(SHORT);
+			out.writeShort((Short) value);
+		}
+		else if (value instanceof Byte)
+		{
+			out.write(BYTE);
+			out.writeByte((Byte) value);
+		}
+		else if (value instanceof Character)
+		{
+			out.write(CHARACTER);
+			out.writeChar((Character) value);
+		}
+		else if (value instanceof byte[])
+		{
+			final byte[] bytes = (byte[]) value;
+			out.write(BYTE_ARRAY);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		else if (value.getClass() == GUID.class)
+		{
+			out.write(GUID_VALUE);
+			((GUID) value).writeExternal(out);
+		}
+		else if (value.getClass() == Node.class)
+		{
+			out.write(NODE);
+			((Node) value).writeExternal(out);
+		}
+		else
+		{
+			out.write(OBJECT);
+			out.writeObject(value);
+		}
+	}
+	
+	public static Object readValue(final ObjectInput in) throws IOException, ClassNotFoundException
+	{
+		final int tag = in.read();
+		switch (tag)
+		{
+			case NULL:
+				return null;
+			case STRING:
+				return in.readUTF();
+			case INTEGER:
+				return in.readInt();
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case FLOAT:
+				return in.readFloat();
+			case SHORT:
+				return in.readShort();
+			case BYTE:
+				return in.readByte();
+			case CHARACTER:
+				return in.readChar();
+			case BYTE_ARRAY:
+				final byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return bytes;
+			case GUID_VALUE:
+				final GUID guid = new GUID();
+				guid.readExternal(in);
+				return guid;
+			case NODE:
+				final Node node = new Node();
+				node.readExternal(in);
+				return node;
+			case OBJECT:
+				return in.readObject();
+			default:
+				throw new IOException("Unknown value tag:" + tag);
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package games.strategy.engine.message;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+
+/**
+ * Reads the names of remote end points written by an IRemoteNameWriter in the compact protocol.
+ * <p>
+ * 
+ * The names are usually replaced by numbers that were sent earlier on the same connection, so implementations remember the names they have been told about.
+ */
+public interface IRemoteNameReader
+{
+	public String read(ObjectInput in) throws IOException;
+}
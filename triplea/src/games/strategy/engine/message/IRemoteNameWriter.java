@@ -0,0 +1,17 @@
+package games.strategy.engine.message;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+
+/**
+ * Writes the names of remote end points in the compact protocol.
+ * <p>
+ * 
+ * The names are usually replaced by numbers the other side of the connection has already been told about, so implementations keep track of what each connection knows.
+ * 
+ * @see IRemoteNameReader
+ */
+public interface IRemoteNameWriter
+{
+	public void write(String remoteName, ObjectOutput out) throws IOException;
+}
@@ -221,6 +221,42 @@ public class RemoteMethodCall implements Externalizable
 		}
 	}
 	
+	/**
+	 * Like writeExternal(), but the remote name is written by the name writer, and the args by the CompactCodec.
+	 */
+	public void writeCompact(final ObjectOutput out, final IRemoteNameWriter names) throws IOException
+	{
+		names.write(m_remoteName, out);
+		out.writeByte(m_methodNumber);
+		if (m_args == null)
+		{
+			out.writeByte(Byte.MAX_VALUE);
+		}
+		else
+		{
+			out.writeByte(m_args.length);
+			for (int i = 0; i < m_args.length; i++)
+			{
+				CompactCodec.writeValue(out, m_args[i]);
+			}
+		}
+	}
+	
+	public void readCompact(final ObjectInput in, final IRemoteNameReader names) throws IOException, ClassNotFoundException
+	{
+		m_remoteName = names.read(in);
+		m_methodNumber = in.readByte();
+		final byte count = in.readByte();
+		if (count != Byte.MAX_VALUE)
+		{
+			m_args = new Object[count];
+			for (int i = 0; i < count; i++)
+			{
+				m_args[i] = CompactCodec.readValue(in);
+			}
+		}
+	}
+	
 	/**
 	 * After we have been de-serialized, we do not transmit enough
 	 * informatin to determine the method without being told
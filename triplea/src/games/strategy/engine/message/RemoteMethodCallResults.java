@@ -90,4 +90,34 @@ class RemoteMethodCallResults implements Externalizable
 			m_exception = (Throwable) in.readObject();
 		}
 	}
+	
+	/**
+	 * Like writeExternal(), but the return value is written by the CompactCodec.
+	 */
+	public void writeCompact(final ObjectOutput out) throws IOException
+	{
+		if (m_rVal != null)
+		{
+			out.write(1);
+			CompactCodec.writeValue(out, m_rVal);
+		}
+		else
+		{
+			out.write(0);
+			out.writeObject(m_exception);
+		}
+	}
+	
+	public void readCompact(final ObjectInput in) throws IOException, ClassNotFoundException
+	{
+		final boolean rVal = in.read() == 1;
+		if (rVal)
+		{
+			m_rVal = CompactCodec.readValue(in);
+		}
+		else
+		{
+			m_exception = (Throwable) in.readObject();
+		}
+	}
 }
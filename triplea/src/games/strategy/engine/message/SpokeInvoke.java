@@ -55,4 +55,19 @@ public class SpokeInvoke extends Invoke
 		super.writeExternal(out);
 		((Node) m_invoker).writeExternal(out);
 	}
+	
+	@Override
+	public void readCompact(final ObjectInput in, final IRemoteNameReader names) throws IOException, ClassNotFoundException
+	{
+		super.readCompact(in, names);
+		m_invoker = new Node();
+		((Node) m_invoker).readExternal(in);
+	}
+	
+	@Override
+	public void writeCompact(final ObjectOutput out, final IRemoteNameWriter names) throws IOException
+	{
+		super.writeCompact(out, names);
+		((Node) m_invoker).writeExternal(out);
+	}
 }
@@ -789,6 +789,29 @@ abstract class Invoke implements Externalizable
 			out.writeObject(methodCallID);
 		call.writeExternal(out);
 	}
+	
+	/**
+	 * Like writeExternal(), for connections that use the compact protocol.
+	 */
+	public void writeCompact(final ObjectOutput out, final IRemoteNameWriter names) throws IOException
+	{
+		out.write(needReturnValues ? 1 : 0);
+		if (needReturnValues)
+			methodCallID.writeExternal(out);
+		call.writeCompact(out, names);
+	}
+	
+	public void readCompact(final ObjectInput in, final IRemoteNameReader names) throws IOException, ClassNotFoundException
+	{
+		needReturnValues = in.read() == 1;
+		if (needReturnValues)
+		{
+			methodCallID = new GUID();
+			methodCallID.readExternal(in);
+		}
+		call = new RemoteMethodCall();
+		call.readCompact(in, names);
+	}
 }
 
 
@@ -832,4 +855,21 @@ abstract class InvocationResults implements Externalizable
 		methodCallID = new GUID();
 		methodCallID.readExternal(in);
 	}
+	
+	/**
+	 * Like writeExternal(), for connections that use the compact protocol.
+	 */
+	public void writeCompact(final ObjectOutput out) throws IOException
+	{
+		results.writeCompact(out);
+		methodCallID.writeExternal(out);
+	}
+	
+	public void readCompact(final ObjectInput in) throws IOException, ClassNotFoundException
+	{
+		results = new RemoteMethodCallResults();
+		results.readCompact(in);
+		methodCallID = new GUID();
+		methodCallID.readExternal(in);
+	}
 }
@@ -569,11 +569,8 @@ public class ServerMessenger implements IServerMessenger, NIOSocketListener
 		{
 			s_logger.log(Level.FINEST, "broadcasting to" + nodes);
 		}
-		for (final SocketChannel channel : nodes)
-		{
-			if (channel != fromChannel)
-				m_nioSocket.send(channel, msg);
-		}
+		nodes.remove(fromChannel);
+		m_nioSocket.send(nodes, msg);
 	}
 	
 	private boolean isNameTaken(final String nodeName)
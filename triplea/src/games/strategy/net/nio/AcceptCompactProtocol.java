@@ -0,0 +1,33 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.net.nio;
+
+import java.io.Serializable;
+
+/**
+ * Sent by a client, to tell the server it can read messages written with the compact protocol the server offered while logging in.
+ * <p>
+ * 
+ * It is written as a single type byte, and the Decoder acts on it instead of passing it on.
+ */
+class AcceptCompactProtocol implements Serializable
+{
+	private static final long serialVersionUID = 1650282711370409544L;
+	
+	@Override
+	public String toString()
+	{
+		return "AcceptCompactProtocol";
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.net.nio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of ByteBuffers, so that reading and writing packets does not allocate new buffers for every packet.
+ * <p>
+ * 
+ * Buffers are pooled in size classes, each class twice the size of the one before it. Buffers of DIRECT_SIZE bytes or more are direct buffers, since the channels would otherwise
+ * copy them into a temporary direct buffer on every read and write. Buffers larger than MAX_POOLED_SIZE are allocated on the heap, and are not pooled.
+ * <p>
+ * 
+ * A released buffer must not be used again by whoever released it.
+ */
+final class BufferPool
+{
+	static final int MIN_SIZE = 16;
+	static final int MAX_POOLED_SIZE = 1024 * 1024;
+	static final int DIRECT_SIZE = 64 * 1024;
+	// how many bytes each size class may hold on to
+	private static final int MAX_BYTES_PER_CLASS = 4 * MAX_POOLED_SIZE;
+	private static final int MAX_BUFFERS_PER_CLASS = 256;
+	private static final ArrayDeque<ByteBuffer>[] s_pools = createPools();
+	
+	private BufferPool()
+	{
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static ArrayDeque<ByteBuffer>[] createPools()
+	{
+		final ArrayDeque<ByteBuffer>[] pools = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[getSizeClass(MAX_POOLED_SIZE) + 1];
+		for (int i = 0; i < pools.length; i++)
+		{
+			pools[i] = new ArrayDeque<ByteBuffer>();
+		}
+		return pools;
+	}
+	
+	private static int getSizeClass(final int size)
+	{
+		if (size <= MIN_SIZE)
+			return 0;
+		// the number of bits needed for size - 1, less the bits of MIN_SIZE
+		return (32 - Integer.numberOfLeadingZeros(size - 1)) - (32 - Integer.numberOfLeadingZeros(MIN_SIZE - 1));
+	}
+	
+	private static int getClassSize(final int sizeClass)
+	{
+		return MIN_SIZE << sizeClass;
+	}
+	
+	/**
+	 * @return a buffer whose position is 0 and whose limit is size. The capacity may be larger than size.
+	 */
+	static ByteBuffer acquire(final int size)
+	{
+		if (size > MAX_POOLED_SIZE)
+			return ByteBuffer.allocate(size);
+		final int sizeClass = getSizeClass(size);
+		final ArrayDeque<ByteBuffer> pool = s_pools[sizeClass];
+		ByteBuffer buffer;
+		synchronized (pool)
+		{
+			buffer = pool.poll();
+		}
+		if (buffer == null)
+		{
+			final int classSize = getClassSize(sizeClass);
+			buffer = classSize >= DIRECT_SIZE ? ByteBuffer.allocateDirect(classSize) : ByteBuffer.allocate(classSize);
+		}
+		buffer.clear();
+		buffer.limit(size);
+		return buffer;
+	}
+	
+	/**
+	 * Give a buffer from acquire() back to the pool.
+	 */
+	static void release(final ByteBuffer buffer)
+	{
+		if (buffer == null || buffer.isReadOnly() || buffer.capacity() > MAX_POOLED_SIZE)
+			return;
+		final int sizeClass = getSizeClass(buffer.capacity());
+		if (getClassSize(sizeClass) != buffer.capacity())
+			return;
+		final ArrayDeque<ByteBuffer> pool = s_pools[sizeClass];
+		synchronized (pool)
+		{
+			if (pool.size() < Math.min(MAX_BUFFERS_PER_CLASS, MAX_BYTES_PER_CLASS / buffer.capacity()))
+				pool.offer(buffer);
+		}
+	}
+	
+	/**
+	 * @return how many buffers of the size class that size falls in are waiting to be reused
+	 */
+	static int getPooledCount(final int size)
+	{
+		final ArrayDeque<ByteBuffer> pool = s_pools[getSizeClass(size)];
+		synchronized (pool)
+		{
+			return pool.size();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.net.nio;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Read the remaining bytes of a ByteBuffer as a stream, without copying them to a byte[] first.
+ */
+class ByteBufferInputStream extends InputStream
+{
+	private final ByteBuffer m_buffer;
+	
+	public ByteBufferInputStream(final ByteBuffer buffer)
+	{
+		m_buffer = buffer;
+	}
+	
+	@Override
+	public int read()
+	{
+		if (!m_buffer.hasRemaining())
+			return -1;
+		return m_buffer.get() & 0xFF;
+	}
+	
+	@Override
+	public int read(final byte[] b, final int off, int len)
+	{
+		if (len == 0)
+			return 0;
+		if (!m_buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, m_buffer.remaining());
+		m_buffer.get(b, off, len);
+		return len;
+	}
+	
+	@Override
+	public long skip(final long n)
+	{
+		final int skipped = (int) Math.max(0, Math.min(n, m_buffer.remaining()));
+		m_buffer.position(m_buffer.position() + skipped);
+		return skipped;
+	}
+	
+	@Override
+	public int available()
+	{
+		return m_buffer.remaining();
+	}
+}
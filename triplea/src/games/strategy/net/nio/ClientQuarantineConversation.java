@@ -181,6 +181,12 @@ public class ClientQuarantineConversation extends QuarantineConversation
 					}
 					m_localName = strings[0];
 					m_serverName = strings[1];
+					// the server offered the compact protocol
+					if (strings.length > 2 && NIOSocket.COMPACT_PROTOCOL.equals(strings[2]) && NIOSocket.isCompactProtocolEnabled())
+					{
+						send(new AcceptCompactProtocol());
+						m_socket.setCompact(m_channel);
+					}
 					m_step = STEP.READ_ADDRESS;
 					return ACTION.NONE;
 				case READ_ADDRESS:
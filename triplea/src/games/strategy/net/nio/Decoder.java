@@ -15,6 +15,7 @@ package games.strategy.net.nio;
 
 import games.strategy.engine.message.HubInvocationResults;
 import games.strategy.engine.message.HubInvoke;
+import games.strategy.engine.message.IRemoteNameReader;
 import games.strategy.engine.message.SpokeInvocationResults;
 import games.strategy.engine.message.SpokeInvoke;
 import games.strategy.net.CouldNotLogInException;
@@ -24,26 +25,50 @@ import games.strategy.net.MessageHeader;
 import games.strategy.net.Node;
 import games.strategy.net.nio.QuarantineConversation.ACTION;
 
-import java.io.ByteArrayInputStream;
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.ObjectInput;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.net.Socket;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * 
- * A thread to Decode messages from a reader.
+ * Threads to Decode messages from a reader.
+ * <p>
+ * 
+ * One thread takes packets from the reader, and hands each to one of several decoding threads. All the packets from a channel go to the same decoding thread, so messages from
+ * one channel are still decoded and delivered in the order they were read, but a large message from one channel does not hold up messages from the others.
  * 
  * @author sgb
  */
 public class Decoder
 {
 	private static final Logger s_logger = Logger.getLogger(Decoder.class.getName());
+	/**
+	 * System property for the number of decoding threads. The default is the number of processors, up to 4.
+	 */
+	public static final String DECODER_THREADS_PROPERTY = "triplea.decoder.threads";
+	// message types only used by connections that have agreed to the compact protocol
+	static final byte COMPACT_HUB_INVOKE = 5;
+	static final byte COMPACT_SPOKE_INVOKE = 6;
+	static final byte COMPACT_HUB_RESULTS = 7;
+	static final byte COMPACT_SPOKE_RESULTS = 8;
+	static final byte ACCEPT_COMPACT = 9;
+	// the most remote names a connection will number in the compact protocol
+	static final int MAX_REMOTE_NAMES = 4096;
+	// written instead of a number for names past MAX_REMOTE_NAMES
+	static final int UNNUMBERED_REMOTE_NAME = Integer.MIN_VALUE;
 	private final NIOReader m_reader;
 	private volatile boolean m_running = true;
 	private final IErrorReporter m_errorReporter;
@@ -55,13 +80,39 @@ public class Decoder
 	 */
 	private final ConcurrentHashMap<SocketChannel, QuarantineConversation> m_quarantine = new ConcurrentHashMap<SocketChannel, QuarantineConversation>();
 	private final Thread m_thread;
+	// the packets waiting for each decoding thread
+	private final List<LinkedBlockingQueue<SocketReadData>> m_stripes = new ArrayList<LinkedBlockingQueue<SocketReadData>>();
+	private final List<Thread> m_workers = new ArrayList<Thread>();
+	private final AtomicInteger m_maxQueueDepth = new AtomicInteger();
+	// the remote names each compact protocol connection has numbered
+	private final ConcurrentHashMap<SocketChannel, RemoteNameReader> m_remoteNames = new ConcurrentHashMap<SocketChannel, RemoteNameReader>();
 	
 	public Decoder(final NIOSocket nioSocket, final NIOReader reader, final IErrorReporter reporter, final IObjectStreamFactory objectStreamFactory, final String threadSuffix)
 	{
+		this(nioSocket, reader, reporter, objectStreamFactory, threadSuffix, getDefaultThreadCount());
+	}
+	
+	public Decoder(final NIOSocket nioSocket, final NIOReader reader, final IErrorReporter reporter, final IObjectStreamFactory objectStreamFactory, final String threadSuffix,
+				final int threadCount)
+	{
+		if (threadCount < 1)
+			throw new IllegalArgumentException("Need at least one decoding thread, not:" + threadCount);
 		m_reader = reader;
 		m_errorReporter = reporter;
 		m_objectStreamFactory = objectStreamFactory;
 		m_nioSocket = nioSocket;
+		for (int i = 0; i < threadCount; i++)
+		{
+			final LinkedBlockingQueue<SocketReadData> stripe = new LinkedBlockingQueue<SocketReadData>();
+			m_stripes.add(stripe);
+			m_workers.add(new Thread(new Runnable()
+			{
+				public void run()
+				{
+					decodeLoop(stripe);
+				}
+			}, "Decoder -" + threadSuffix + " -" + i));
+		}
 		m_thread = new Thread(new Runnable()
 		{
 			public void run()
@@ -69,13 +120,74 @@ public class Decoder
 				loop();
 			}
 		}, "Decoder -" + threadSuffix);
+		for (final Thread worker : m_workers)
+		{
+			worker.start();
+		}
 		m_thread.start();
 	}
 	
+	/**
+	 * @return the value of the DECODER_THREADS_PROPERTY, or the number of processors (up to 4) if it is not set
+	 */
+	public static int getDefaultThreadCount()
+	{
+		final int defaultCount = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		final String value = System.getProperty(DECODER_THREADS_PROPERTY);
+		if (value == null)
+			return defaultCount;
+		try
+		{
+			final int count = Integer.parseInt(value.trim());
+			if (count >= 1)
+				return count;
+		} catch (final NumberFormatException e)
+		{
+			// fall through
+		}
+		s_logger.log(Level.WARNING, "Invalid " + DECODER_THREADS_PROPERTY + ":" + value);
+		return defaultCount;
+	}
+	
 	public void shutDown()
 	{
 		m_running = false;
 		m_thread.interrupt();
+		for (final Thread worker : m_workers)
+		{
+			worker.interrupt();
+		}
+	}
+	
+	public int getThreadCount()
+	{
+		return m_workers.size();
+	}
+	
+	/**
+	 * @return how many packets have been read, but not yet decoded
+	 */
+	public int getQueueDepth()
+	{
+		int depth = 0;
+		for (final LinkedBlockingQueue<SocketReadData> stripe : m_stripes)
+		{
+			depth += stripe.size();
+		}
+		return depth;
+	}
+	
+	/**
+	 * @return the most packets that have been waiting for one decoding thread at the same time
+	 */
+	public int getMaxQueueDepth()
+	{
+		return m_maxQueueDepth.get();
+	}
+	
+	private LinkedBlockingQueue<SocketReadData> getStripe(final SocketChannel channel)
+	{
+		return m_stripes.get((System.identityHashCode(channel) & 0x7fffffff) % m_stripes.size());
 	}
 	
 	private void loop()
@@ -94,47 +206,40 @@ public class Decoder
 				}
 				if (data == null || !m_running)
 					continue;
-				if (s_logger.isLoggable(Level.FINEST))
+				final LinkedBlockingQueue<SocketReadData> stripe = getStripe(data.getChannel());
+				stripe.offer(data);
+				final int depth = stripe.size();
+				int max = m_maxQueueDepth.get();
+				while (depth > max && !m_maxQueueDepth.compareAndSet(max, depth))
 				{
-					s_logger.finest("Decoding packet:" + data);
+					max = m_maxQueueDepth.get();
 				}
-				final ByteArrayInputStream stream = new ByteArrayInputStream(data.getData());
+			} catch (final Exception e)
+			{
+				// catch unhandles exceptions to that the decoder
+				// thread doesnt die
+				s_logger.log(Level.WARNING, "error in decoder", e);
+			}
+		}
+	}
+	
+	private void decodeLoop(final LinkedBlockingQueue<SocketReadData> stripe)
+	{
+		while (m_running)
+		{
+			try
+			{
+				SocketReadData data;
 				try
 				{
-					final MessageHeader header = readMessageHeader(data.getChannel(), m_objectStreamFactory.create(stream));
-					if (s_logger.isLoggable(Level.FINEST))
-					{
-						s_logger.log(Level.FINEST, "header decoded:" + header);
-					}
-					// make sure we are still open
-					final Socket s = data.getChannel().socket();
-					if (!m_running || s == null || s.isInputShutdown())
-						continue;
-					final QuarantineConversation converstation = m_quarantine.get(data.getChannel());
-					if (converstation != null)
-					{
-						sendQuarantine(data.getChannel(), converstation, header);
-					}
-					else
-					{
-						if (m_nioSocket.getLocalNode() == null)
-							throw new IllegalStateException("we are writing messages, but no local node");
-						if (header.getFrom() == null)
-							throw new IllegalArgumentException("Null from:" + header);
-						if (s_logger.isLoggable(Level.FINER))
-						{
-							s_logger.log(Level.FINER, "decoded  msg:" + header.getMessage() + " size:" + data.size());
-						}
-						m_nioSocket.messageReceived(header, data.getChannel());
-					}
-				} catch (final Exception ioe)
+					data = stripe.take();
+				} catch (final InterruptedException e)
 				{
-					// we are reading from memory here
-					// there should be no network errors, something
-					// is odd
-					s_logger.log(Level.SEVERE, "error reading object", ioe);
-					m_errorReporter.error(data.getChannel(), ioe);
+					continue;
 				}
+				if (!m_running)
+					continue;
+				decode(data);
 			} catch (final Exception e)
 			{
 				// catch unhandles exceptions to that the decoder
@@ -144,6 +249,63 @@ public class Decoder
 		}
 	}
 	
+	private void decode(final SocketReadData data)
+	{
+		if (s_logger.isLoggable(Level.FINEST))
+		{
+			s_logger.finest("Decoding packet:" + data);
+		}
+		try
+		{
+			final MessageHeader header;
+			try
+			{
+				header = readMessageHeader(data.getChannel(), m_objectStreamFactory.create(data.getData()));
+			} finally
+			{
+				data.release();
+			}
+			if (s_logger.isLoggable(Level.FINEST))
+			{
+				s_logger.log(Level.FINEST, "header decoded:" + header);
+			}
+			if (header.getMessage() instanceof AcceptCompactProtocol)
+			{
+				if (NIOSocket.isCompactProtocolEnabled())
+					m_nioSocket.setCompact(data.getChannel());
+				return;
+			}
+			// make sure we are still open
+			final Socket s = data.getChannel().socket();
+			if (!m_running || s == null || s.isInputShutdown())
+				return;
+			final QuarantineConversation converstation = m_quarantine.get(data.getChannel());
+			if (converstation != null)
+			{
+				sendQuarantine(data.getChannel(), converstation, header);
+			}
+			else
+			{
+				if (m_nioSocket.getLocalNode() == null)
+					throw new IllegalStateException("we are writing messages, but no local node");
+				if (header.getFrom() == null)
+					throw new IllegalArgumentException("Null from:" + header);
+				if (s_logger.isLoggable(Level.FINER))
+				{
+					s_logger.log(Level.FINER, "decoded  msg:" + header.getMessage() + " size:" + data.size());
+				}
+				m_nioSocket.messageReceived(header, data.getChannel());
+			}
+		} catch (final Exception ioe)
+		{
+			// we are reading from memory here
+			// there should be no network errors, something
+			// is odd
+			s_logger.log(Level.SEVERE, "error reading object", ioe);
+			m_errorReporter.error(data.getChannel(), ioe);
+		}
+	}
+	
 	private void sendQuarantine(final SocketChannel channel, final QuarantineConversation conversation, final MessageHeader header)
 	{
 		final ACTION a = conversation.message(header.getMessage());
@@ -206,7 +368,11 @@ public class Decoder
 		}
 		Serializable message;
 		final byte type = (byte) objectInput.read();
-		if (type != Byte.MAX_VALUE)
+		if (type >= COMPACT_HUB_INVOKE && type <= ACCEPT_COMPACT)
+		{
+			message = readCompact(type, channel, objectInput);
+		}
+		else if (type != Byte.MAX_VALUE)
 		{
 			final Externalizable template = getTemplate(type);
 			template.readExternal(objectInput);
@@ -219,6 +385,43 @@ public class Decoder
 		return new MessageHeader(to, from, message);
 	}
 	
+	private Serializable readCompact(final byte type, final SocketChannel channel, final ObjectInputStream objectInput) throws IOException, ClassNotFoundException
+	{
+		switch (type)
+		{
+			case COMPACT_HUB_INVOKE:
+				final HubInvoke hubInvoke = new HubInvoke();
+				hubInvoke.readCompact(objectInput, getRemoteNames(channel));
+				return hubInvoke;
+			case COMPACT_SPOKE_INVOKE:
+				final SpokeInvoke spokeInvoke = new SpokeInvoke();
+				spokeInvoke.readCompact(objectInput, getRemoteNames(channel));
+				return spokeInvoke;
+			case COMPACT_HUB_RESULTS:
+				final HubInvocationResults hubResults = new HubInvocationResults();
+				hubResults.readCompact(objectInput);
+				return hubResults;
+			case COMPACT_SPOKE_RESULTS:
+				final SpokeInvocationResults spokeResults = new SpokeInvocationResults();
+				spokeResults.readCompact(objectInput);
+				return spokeResults;
+			case ACCEPT_COMPACT:
+				return new AcceptCompactProtocol();
+			default:
+				throw new IllegalStateException("not recognized, " + type);
+		}
+	}
+	
+	private RemoteNameReader getRemoteNames(final SocketChannel channel)
+	{
+		final RemoteNameReader names = m_remoteNames.get(channel);
+		if (names != null)
+			return names;
+		final RemoteNameReader created = new RemoteNameReader();
+		final RemoteNameReader existing = m_remoteNames.putIfAbsent(channel, created);
+		return existing == null ? created : existing;
+	}
+	
 	public static Externalizable getTemplate(final byte type)
 	{
 		switch (type)
@@ -253,9 +456,27 @@ public class Decoder
 			return 3;
 		else if (msg instanceof SpokeInvocationResults)
 			return 4;
+		else if (msg instanceof AcceptCompactProtocol)
+			return ACCEPT_COMPACT;
 		return Byte.MAX_VALUE;
 	}
 	
+	/**
+	 * Like getType(), for connections using the compact protocol.
+	 */
+	static byte getCompactType(final Object msg)
+	{
+		if (msg instanceof HubInvoke)
+			return COMPACT_HUB_INVOKE;
+		else if (msg instanceof SpokeInvoke)
+			return COMPACT_SPOKE_INVOKE;
+		else if (msg instanceof HubInvocationResults)
+			return COMPACT_HUB_RESULTS;
+		else if (msg instanceof SpokeInvocationResults)
+			return COMPACT_SPOKE_RESULTS;
+		return getType(msg);
+	}
+	
 	public void add(final SocketChannel channel, final QuarantineConversation conversation)
 	{
 		m_quarantine.put(channel, conversation);
@@ -267,5 +488,31 @@ public class Decoder
 		final QuarantineConversation conversation = m_quarantine.remove(channel);
 		if (conversation != null)
 			conversation.close();
+		m_remoteNames.remove(channel);
+	}
+	
+	/**
+	 * The remote names one channel has sent us, by number.
+	 */
+	private static class RemoteNameReader implements IRemoteNameReader
+	{
+		private final Map<Integer, String> m_names = new HashMap<Integer, String>();
+		
+		public String read(final ObjectInput in) throws IOException
+		{
+			final int id = in.readInt();
+			if (id == UNNUMBERED_REMOTE_NAME)
+				return in.readUTF();
+			if (id < 0)
+			{
+				final String name = in.readUTF();
+				m_names.put(-id - 1, name);
+				return name;
+			}
+			final String name = m_names.get(id);
+			if (name == null)
+				throw new IOException("Unknown remote name number:" + id);
+			return name;
+		}
 	}
 }
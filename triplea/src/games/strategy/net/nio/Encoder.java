@@ -13,14 +13,28 @@
  */
 package games.strategy.net.nio;
 
+import games.strategy.engine.message.HubInvocationResults;
+import games.strategy.engine.message.HubInvoke;
+import games.strategy.engine.message.IRemoteNameWriter;
+import games.strategy.engine.message.SpokeInvocationResults;
+import games.strategy.engine.message.SpokeInvoke;
 import games.strategy.net.IObjectStreamFactory;
 import games.strategy.net.MessageHeader;
 import games.strategy.net.Node;
 
 import java.io.Externalizable;
 import java.io.IOException;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +49,11 @@ public class Encoder
 	private final NIOWriter m_writer;
 	private final IObjectStreamFactory m_objectStreamFactory;
 	private final NIOSocket m_nioSocket;
+	// the numbers we have given to remote names, for connections using the compact protocol
+	private final ConcurrentHashMap<String, Integer> m_remoteNameIds = new ConcurrentHashMap<String, Integer>();
+	private final AtomicInteger m_nextRemoteNameId = new AtomicInteger();
+	// the numbers each connection has been sent the names of
+	private final ConcurrentHashMap<SocketChannel, Set<Integer>> m_sentRemoteNameIds = new ConcurrentHashMap<SocketChannel, Set<Integer>>();
 	
 	public Encoder(final NIOSocket nioSocket, final NIOWriter writer, final IObjectStreamFactory objectStreamFactory)
 	{
@@ -53,11 +72,12 @@ public class Encoder
 			throw new IllegalArgumentException("No from node");
 		if (to == null)
 			throw new IllegalArgumentException("No to channel!");
+		final RemoteNameWriter names = m_nioSocket.isCompact(to) ? new RemoteNameWriter(Collections.singletonList(to)) : null;
 		final ByteArrayOutputStream2 sink = new ByteArrayOutputStream2(512);
 		SocketWriteData data;
 		try
 		{
-			write(header, m_objectStreamFactory.create(sink), to);
+			write(header, m_objectStreamFactory.create(sink), to, names);
 			data = new SocketWriteData(sink.getBuffer(), sink.size());
 		} catch (final Exception e)
 		{
@@ -71,9 +91,91 @@ public class Encoder
 			s_logger.log(Level.FINER, "encoded  msg:" + header.getMessage() + " size:" + data.size());
 		}
 		m_writer.enque(data, to);
+		if (names != null)
+			names.sent();
 	}
 	
-	private void write(final MessageHeader header, final ObjectOutputStream out, final SocketChannel remote) throws IOException
+	/**
+	 * Write a broadcast to many channels.
+	 * <p>
+	 * The bytes of a broadcast do not depend on who it is sent to, so the message is serialized once for the channels that use the compact protocol, and once for the
+	 * rest, and every channel in each group is sent the same bytes.
+	 */
+	public void write(final Collection<SocketChannel> to, final MessageHeader header)
+	{
+		if (s_logger.isLoggable(Level.FINEST))
+		{
+			s_logger.log(Level.FINEST, "Encoding broadcast msg:" + header + " to:" + to);
+		}
+		if (header.getFrom() == null)
+			throw new IllegalArgumentException("No from node");
+		if (header.getFor() != null)
+			throw new IllegalArgumentException("Not a broadcast:" + header);
+		final List<SocketChannel> compact = new ArrayList<SocketChannel>();
+		final List<SocketChannel> plain = new ArrayList<SocketChannel>();
+		for (final SocketChannel channel : to)
+		{
+			if (m_nioSocket.isCompact(channel))
+				compact.add(channel);
+			else
+				plain.add(channel);
+		}
+		writeBroadcast(compact, header, new RemoteNameWriter(compact));
+		writeBroadcast(plain, header, null);
+	}
+	
+	private void writeBroadcast(final List<SocketChannel> to, final MessageHeader header, final RemoteNameWriter names)
+	{
+		if (to.isEmpty())
+			return;
+		final ByteArrayOutputStream2 sink = new ByteArrayOutputStream2(512);
+		SocketWriteData data;
+		try
+		{
+			write(header, m_objectStreamFactory.create(sink), null, names);
+			data = new SocketWriteData(sink.getBuffer(), sink.size());
+		} catch (final Exception e)
+		{
+			// we arent doing any io, just writing in memory
+			// so something is very wrong
+			s_logger.log(Level.SEVERE, "Error writing object:" + header, e);
+			return;
+		}
+		if (s_logger.isLoggable(Level.FINER))
+		{
+			s_logger.log(Level.FINER, "encoded  broadcast msg:" + header.getMessage() + " size:" + data.size() + " recipients:" + to.size());
+		}
+		// make all the copies before any are written, so the shared bytes can not be released too soon
+		final List<SocketWriteData> packets = new ArrayList<SocketWriteData>(to.size());
+		packets.add(data);
+		while (packets.size() < to.size())
+		{
+			packets.add(data.duplicate());
+		}
+		final Iterator<SocketWriteData> iter = packets.iterator();
+		for (final SocketChannel channel : to)
+		{
+			m_writer.enque(iter.next(), channel);
+		}
+		if (names != null)
+			names.sent();
+	}
+	
+	/**
+	 * Forget what we sent to this channel.
+	 */
+	public void closed(final SocketChannel channel)
+	{
+		m_sentRemoteNameIds.remove(channel);
+	}
+	
+	/**
+	 * @param remote
+	 *            the channel the message will be written to, only used if the message is not a broadcast
+	 * @param names
+	 *            how to write remote names if the message is written with the compact protocol, or null if the recipients do not use it
+	 */
+	private void write(final MessageHeader header, final ObjectOutputStream out, final SocketChannel remote, final RemoteNameWriter names) throws IOException
 	{
 		if (header.getFrom() == null)
 			throw new IllegalArgumentException("null from");
@@ -111,9 +213,29 @@ public class Encoder
 			out.write(0);
 			((Node) header.getFrom()).writeExternal(out);
 		}
-		final byte type = Decoder.getType(header.getMessage());
+		final byte type = names == null ? Decoder.getType(header.getMessage()) : Decoder.getCompactType(header.getMessage());
 		out.write(type);
-		if (type != Byte.MAX_VALUE)
+		if (type == Decoder.COMPACT_HUB_INVOKE)
+		{
+			((HubInvoke) header.getMessage()).writeCompact(out, names);
+		}
+		else if (type == Decoder.COMPACT_SPOKE_INVOKE)
+		{
+			((SpokeInvoke) header.getMessage()).writeCompact(out, names);
+		}
+		else if (type == Decoder.COMPACT_HUB_RESULTS)
+		{
+			((HubInvocationResults) header.getMessage()).writeCompact(out);
+		}
+		else if (type == Decoder.COMPACT_SPOKE_RESULTS)
+		{
+			((SpokeInvocationResults) header.getMessage()).writeCompact(out);
+		}
+		else if (type == Decoder.ACCEPT_COMPACT)
+		{
+			// nothing more to write
+		}
+		else if (type != Byte.MAX_VALUE)
 		{
 			((Externalizable) header.getMessage()).writeExternal(out);
 		}
@@ -123,4 +245,82 @@ public class Encoder
 		}
 		out.reset();
 	}
+	
+	/**
+	 * Writes remote names for one message, sent to some channels using the compact protocol.
+	 * <p>
+	 * A name is written as its number if every channel has already been sent the name for that number, otherwise the name is written too. Channels are only marked as having the
+	 * name once the message is queued, so that a message using only the number can never be queued ahead of the message carrying the name.
+	 */
+	private class RemoteNameWriter implements IRemoteNameWriter
+	{
+		private final Collection<SocketChannel> m_to;
+		private final List<Integer> m_newIds = new ArrayList<Integer>();
+		
+		RemoteNameWriter(final Collection<SocketChannel> to)
+		{
+			m_to = to;
+		}
+		
+		public void write(final String remoteName, final ObjectOutput out) throws IOException
+		{
+			Integer id = m_remoteNameIds.get(remoteName);
+			if (id == null)
+			{
+				if (m_remoteNameIds.size() >= Decoder.MAX_REMOTE_NAMES)
+				{
+					// too many names, do not number any more
+					out.writeInt(Decoder.UNNUMBERED_REMOTE_NAME);
+					out.writeUTF(remoteName);
+					return;
+				}
+				final Integer newId = m_nextRemoteNameId.getAndIncrement();
+				id = m_remoteNameIds.putIfAbsent(remoteName, newId);
+				if (id == null)
+					id = newId;
+			}
+			if (allSent(id))
+			{
+				out.writeInt(id);
+			}
+			else
+			{
+				out.writeInt(-id - 1);
+				out.writeUTF(remoteName);
+				m_newIds.add(id);
+			}
+		}
+		
+		private boolean allSent(final Integer id)
+		{
+			for (final SocketChannel channel : m_to)
+			{
+				final Set<Integer> sent = m_sentRemoteNameIds.get(channel);
+				if (sent == null || !sent.contains(id))
+					return false;
+			}
+			return true;
+		}
+		
+		/**
+		 * Called once the message is queued for all the channels.
+		 */
+		void sent()
+		{
+			if (m_newIds.isEmpty())
+				return;
+			for (final SocketChannel channel : m_to)
+			{
+				Set<Integer> sent = m_sentRemoteNameIds.get(channel);
+				if (sent == null)
+				{
+					final Set<Integer> newSet = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+					sent = m_sentRemoteNameIds.putIfAbsent(channel, newSet);
+					if (sent == null)
+						sent = newSet;
+				}
+				sent.addAll(m_newIds);
+			}
+		}
+	}
 }
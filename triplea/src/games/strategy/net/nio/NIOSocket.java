@@ -20,6 +20,10 @@ import games.strategy.net.MessageHeader;
 import java.io.IOException;
 import java.net.Socket;
 import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,8 +31,8 @@ import java.util.logging.Logger;
  * The threads needed for a group of sockets using NIO.
  * 
  * One thread reds socket data, one thread writes socket data
- * and one thread deserializes (decodes) packets read by the read
- * thread.
+ * and a few threads deserialize (decode) packets read by the read
+ * thread (see Decoder).
  * 
  * serializing (encoding) objects to be written across the network is done
  * by threads calling this object.
@@ -38,11 +42,21 @@ import java.util.logging.Logger;
 public class NIOSocket implements IErrorReporter
 {
 	private static final Logger s_logger = Logger.getLogger(NIOSocket.class.getName());
+	/**
+	 * The version of the compact protocol, offered by the server while logging in.
+	 */
+	public static final String COMPACT_PROTOCOL = "compact-1";
+	/**
+	 * Set this system property to false to neither offer nor accept the compact protocol.
+	 */
+	public static final String COMPACT_PROTOCOL_PROPERTY = "triplea.net.compact";
 	private final Encoder m_encoder;
 	private final Decoder m_decoder;
 	private final NIOWriter m_writer;
 	private final NIOReader m_reader;
 	private final NIOSocketListener m_listener;
+	// channels whose other side reads the compact protocol
+	private final Set<SocketChannel> m_compactChannels = Collections.newSetFromMap(new ConcurrentHashMap<SocketChannel, Boolean>());
 	
 	public NIOSocket(final IObjectStreamFactory factory, final NIOSocketListener listener, final String name)
 	{
@@ -53,6 +67,44 @@ public class NIOSocket implements IErrorReporter
 		m_encoder = new Encoder(this, m_writer, factory);
 	}
 	
+	/**
+	 * @return how many packets have been read, but are still waiting to be decoded
+	 */
+	public int getDecodeQueueDepth()
+	{
+		return m_decoder.getQueueDepth();
+	}
+	
+	/**
+	 * @return the most packets that have been waiting for one decoding thread at the same time
+	 */
+	public int getMaxDecodeQueueDepth()
+	{
+		return m_decoder.getMaxQueueDepth();
+	}
+	
+	public static boolean isCompactProtocolEnabled()
+	{
+		return !"false".equalsIgnoreCase(System.getProperty(COMPACT_PROTOCOL_PROPERTY));
+	}
+	
+	/**
+	 * From now on, write invocations and their results to this channel with the compact protocol.
+	 */
+	void setCompact(final SocketChannel channel)
+	{
+		if (s_logger.isLoggable(Level.FINE))
+		{
+			s_logger.log(Level.FINE, "using compact protocol for:" + channel.socket().getRemoteSocketAddress());
+		}
+		m_compactChannels.add(channel);
+	}
+	
+	public boolean isCompact(final SocketChannel channel)
+	{
+		return m_compactChannels.contains(channel);
+	}
+	
 	INode getLocalNode()
 	{
 		return m_listener.getLocalNode();
@@ -85,6 +137,18 @@ public class NIOSocket implements IErrorReporter
 		m_encoder.write(to, header);
 	}
 	
+	/**
+	 * Send a broadcast to each of the channels. The message is only serialized once.
+	 */
+	public void send(final Collection<SocketChannel> to, final MessageHeader header)
+	{
+		if (to == null)
+			throw new IllegalArgumentException("to cant be null!");
+		if (header == null)
+			throw new IllegalArgumentException("header cant be null");
+		m_encoder.write(to, header);
+	}
+	
 	/**
 	 * Add this channel.
 	 * 
@@ -135,6 +199,8 @@ public class NIOSocket implements IErrorReporter
 		{
 			s_logger.log(Level.FINE, "error closing channel", e1);
 		}
+		m_compactChannels.remove(channel);
+		m_encoder.closed(channel);
 		m_decoder.closed(channel);
 		m_writer.closed(channel);
 		m_reader.closed(channel);
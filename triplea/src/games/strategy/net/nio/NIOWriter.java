@@ -206,9 +206,17 @@ public class NIOWriter
 	
 	private void removeAll(final SocketChannel to)
 	{
+		final List<SocketWriteData> values;
 		synchronized (m_mutex)
 		{
-			m_writing.remove(to);
+			values = m_writing.remove(to);
+		}
+		if (values == null)
+			return;
+		// the first packet may be being written right now, so leave it to the garbage collector
+		for (int i = 1; i < values.size(); i++)
+		{
+			values.get(i).release();
 		}
 	}
 	
@@ -222,7 +230,7 @@ public class NIOWriter
 				s_logger.log(Level.SEVERE, "NO socket data to:" + to + " all:" + values);
 				return;
 			}
-			values.remove(0);
+			values.remove(0).release();
 			// remove empty lists, so we can detect that we need to wake up the socket
 			if (values.isEmpty())
 				m_writing.remove(to);
@@ -247,7 +255,10 @@ public class NIOWriter
 		synchronized (m_mutex)
 		{
 			if (!m_running)
+			{
+				data.release();
 				return;
+			}
 			if (m_writing.containsKey(channel))
 			{
 				m_writing.get(channel).add(data);
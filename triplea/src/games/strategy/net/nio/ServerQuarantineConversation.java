@@ -35,6 +35,7 @@ public class ServerQuarantineConversation extends QuarantineConversation
 	 * 2) server sends challenge (or null if no challenge is to be made)
 	 * 3) server reads response (or null if no challenge)
 	 * 4) server send null then client name and node info on success, or an error message if there is an error
+	 * The names may be followed by the compact protocol version, in which case the client may send an AcceptCompactProtocol once it is logged in
 	 * 5) if the client reads an error message, the client sends an acknowledgment (we need to make sur the client gets the message before closing the socket)
 	 */
 	private static final Logger s_logger = Logger.getLogger(ServerQuarantineConversation.class.getName());
@@ -135,8 +136,11 @@ public class ServerQuarantineConversation extends QuarantineConversation
 					{
 						s_logger.log(Level.FINER, "Sending name:" + m_remoteName);
 					}
-					// send the node its name and our name
-					send(new String[] { m_remoteName, m_serverMessenger.getLocalNode().getName() });
+					// send the node its name and our name, and offer the compact protocol (older clients only read the names)
+					if (NIOSocket.isCompactProtocolEnabled())
+						send(new String[] { m_remoteName, m_serverMessenger.getLocalNode().getName(), NIOSocket.COMPACT_PROTOCOL });
+					else
+						send(new String[] { m_remoteName, m_serverMessenger.getLocalNode().getName() });
 					// send the node its and our address as we see it
 					send(new InetSocketAddress[] { (InetSocketAddress) m_channel.socket().getRemoteSocketAddress(), m_serverMessenger.getLocalNode().getSocketAddress() });
 					// Login succeeded, so notify the ServerMessenger about the login with the name, mac, etc.
@@ -14,6 +14,7 @@
 package games.strategy.net.nio;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -70,7 +71,7 @@ class SocketReadData
 			// find out how big this packet is
 			if (m_sizeBuffer == null)
 			{
-				m_sizeBuffer = ByteBuffer.allocate(4);
+				m_sizeBuffer = BufferPool.acquire(4);
 			}
 			final int size = channel.read(m_sizeBuffer);
 			if (s_logger.isLoggable(Level.FINEST))
@@ -84,6 +85,8 @@ class SocketReadData
 			{
 				m_sizeBuffer.flip();
 				m_targetSize = m_sizeBuffer.getInt();
+				BufferPool.release(m_sizeBuffer);
+				m_sizeBuffer = null;
 				if ((m_targetSize & 0xFF000000) != MAGIC)
 					throw new IOException("Did not write magic!");
 				m_targetSize = m_targetSize & 0x00ffffff;
@@ -92,8 +95,7 @@ class SocketReadData
 				{
 					throw new IOException("Invalid triplea packet size:" + m_targetSize);
 				}
-				m_contentBuffer = ByteBuffer.allocate(m_targetSize);
-				m_sizeBuffer = null;
+				m_contentBuffer = BufferPool.acquire(m_targetSize);
 			}
 			else
 			{
@@ -118,18 +120,26 @@ class SocketReadData
 	}
 	
 	/**
-	 * Get the data as a byte[].
+	 * Get the data as a stream.
 	 * 
-	 * This method can only be called once.
+	 * This method can only be called once, and the stream can only be read until release() is called.
 	 * 
 	 */
-	public byte[] getData()
+	public InputStream getData()
 	{
-		final byte[] rVal = new byte[m_contentBuffer.capacity()];
 		m_contentBuffer.flip();
-		m_contentBuffer.get(rVal);
+		return new ByteBufferInputStream(m_contentBuffer);
+	}
+	
+	/**
+	 * Give our buffers back to the pool, once the data has been read.
+	 */
+	public void release()
+	{
+		BufferPool.release(m_sizeBuffer);
+		BufferPool.release(m_contentBuffer);
+		m_sizeBuffer = null;
 		m_contentBuffer = null;
-		return rVal;
 	}
 	
 	public int size()
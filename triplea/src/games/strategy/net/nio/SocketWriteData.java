@@ -35,28 +35,59 @@ public class SocketWriteData
 {
 	private static final Logger s_logger = Logger.getLogger(SocketWriteData.class.getName());
 	private static final AtomicInteger s_counter = new AtomicInteger();
-	private final ByteBuffer m_size;
-	private final ByteBuffer m_content;
+	// the size, then the content, framed in one buffer so they go out in one write
+	private final ByteBuffer m_frame;
+	// the pooled buffer behind m_frame, shared with our duplicates
+	private final ByteBuffer m_pooled;
+	// how many packets are still using m_pooled
+	private final AtomicInteger m_references;
 	private final int m_number = s_counter.incrementAndGet();
 	// how many times we called write before we finished writing ourselves
 	private int m_writeCalls = 0;
 	
-	public SocketWriteData(final byte[] data, int count)
+	public SocketWriteData(final byte[] data, final int count)
 	{
-		m_content = ByteBuffer.allocate(count);
-		m_content.put(data, 0, count);
-		m_size = ByteBuffer.allocate(4);
 		if (count < 0 || count > SocketReadData.MAX_MESSAGE_SIZE)
 			throw new IllegalStateException("Invalid message size:" + count);
-		count = count ^ SocketReadData.MAGIC;
-		m_size.putInt(count);
-		m_size.flip();
-		m_content.flip();
+		m_pooled = BufferPool.acquire(count + 4);
+		m_pooled.putInt(count ^ SocketReadData.MAGIC);
+		m_pooled.put(data, 0, count);
+		m_pooled.flip();
+		m_frame = m_pooled.duplicate();
+		m_references = new AtomicInteger(1);
+	}
+	
+	private SocketWriteData(final SocketWriteData original)
+	{
+		m_pooled = original.m_pooled;
+		m_references = original.m_references;
+		m_frame = m_pooled.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Create a packet with the same bytes as this one, that can be written to a different channel.
+	 * <p>
+	 * The bytes are shared, not copied, so this must be called before this packet is released.
+	 */
+	public SocketWriteData duplicate()
+	{
+		if (m_references.getAndIncrement() <= 0)
+			throw new IllegalStateException("Packet already released:" + this);
+		return new SocketWriteData(this);
+	}
+	
+	/**
+	 * Called once this packet is written, or will not be written. When neither this packet nor any of its duplicates need the bytes, they are given back to the pool.
+	 */
+	public void release()
+	{
+		if (m_references.decrementAndGet() == 0)
+			BufferPool.release(m_pooled);
 	}
 	
 	public int size()
 	{
-		return m_size.capacity() + m_content.capacity();
+		return m_frame.limit();
 	}
 	
 	public int getWriteCalls()
@@ -71,32 +102,19 @@ public class SocketWriteData
 	public boolean write(final SocketChannel channel) throws IOException
 	{
 		m_writeCalls++;
-		if (m_size.hasRemaining())
-		{
-			final int count = channel.write(m_size);
-			if (count == -1)
-				throw new IOException("triplea: end of stream detected");
-			if (s_logger.isLoggable(Level.FINEST))
-			{
-				s_logger.finest("wrote size_buffer bytes:" + count);
-			}
-			// we could not write everything
-			if (m_size.hasRemaining())
-				return false;
-		}
-		final int count = channel.write(m_content);
+		final int count = channel.write(m_frame);
 		if (count == -1)
 			throw new IOException("triplea: end of stream detected");
 		if (s_logger.isLoggable(Level.FINEST))
 		{
-			s_logger.finest("wrote content bytes:" + count);
+			s_logger.finest("wrote bytes:" + count);
 		}
-		return !m_content.hasRemaining();
+		return !m_frame.hasRemaining();
 	}
 	
 	@Override
 	public String toString()
 	{
-		return "<id:" + m_number + " size:" + m_content.capacity() + ">";
+		return "<id:" + m_number + " size:" + (m_frame.limit() - 4) + ">";
 	}
 }
@@ -14,7 +14,7 @@
 package games.strategy.thread;
 
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -24,13 +24,14 @@ import java.util.concurrent.locks.Lock;
 
 /**
  * 
- * Utility class for ensuring that locks are acquired in a consistent order.
+ * Utility class for keeping track of the locks each thread holds, and optionally for ensuring that locks are acquired in a consistent order.
  * <p>
  * 
- * Simply use this class and call acquireLock(aLock) releaseLock(aLock) instead of lock.lock(), lock.release(). If locks are acquired in an inconsistent order, an error message will be printed.
+ * Simply use this class and call acquireLock(aLock) releaseLock(aLock) instead of lock.lock(), lock.release().
  * <p>
  * 
- * This class is not terribly good for multithreading as it locks globally on all calls, but that is ok, as this code is meant more for when you are considering your ambitious multi-threaded code a mistake, and you are trying to limit the damage.
+ * The locks a thread holds are tracked in a thread local, so acquiring and releasing a lock does not synchronize with other threads. <br>
+ * Checking the lock order is off by default, as it locks globally on all calls. Run with -D{@value #CHECK_LOCK_ORDER_PROPERTY}=true to turn it on, if you are considering your ambitious multi-threaded code a mistake, and you are trying to limit the damage. If locks are then acquired in an inconsistent order, an error message will be printed.
  * <p>
  * 
  * @author sgb
@@ -38,93 +39,103 @@ import java.util.concurrent.locks.Lock;
  */
 public class LockUtil
 {
+	public static final String CHECK_LOCK_ORDER_PROPERTY = "triplea.lock.checkOrder";
+	private static final boolean s_checkLockOrderByDefault = Boolean.getBoolean(CHECK_LOCK_ORDER_PROPERTY);
 	// the locks the current thread has
 	// because locks can be re-entrant, store this as a count
-	private final static ThreadLocal<Map<Lock, Integer>> m_locksHeld = new ThreadLocal<Map<Lock, Integer>>();
+	private final static ThreadLocal<HeldLocks> m_locksHeld = new ThreadLocal<HeldLocks>()
+	{
+		@Override
+		protected HeldLocks initialValue()
+		{
+			return new HeldLocks();
+		}
+	};
 	// a map of all the locks ever held when a lock was acquired
 	// store weak references to everything so that locks don't linger here forever
 	private final static Map<Lock, Set<WeakLockRef>> m_locksHeldWhenAcquired = new WeakHashMap<Lock, Set<WeakLockRef>>();
-	private final Object m_mutex = new Object();
+	// guards m_locksHeldWhenAcquired, which is shared by all instances
+	private final static Object m_mutex = new Object();
 	private static ErrorReporter m_errorReporter = new ErrorReporter();
+	private final boolean m_checkLockOrder;
 	
+	/**
+	 * Checks the lock order only if the {@value #CHECK_LOCK_ORDER_PROPERTY} system property is true.
+	 */
 	public LockUtil()
 	{
+		this(s_checkLockOrderByDefault);
+	}
+	
+	public LockUtil(final boolean checkLockOrder)
+	{
+		m_checkLockOrder = checkLockOrder;
 	}
 	
 	public void acquireLock(final Lock aLock)
+	{
+		final HeldLocks held = m_locksHeld.get();
+		// if we already have the lock, this just increases the count
+		if (!held.acquired(aLock) && m_checkLockOrder)
+		{
+			checkLockOrder(aLock, held);
+		}
+		aLock.lock();
+	}
+	
+	/**
+	 * Called when the current thread is about to acquire a lock it does not hold.
+	 */
+	private void checkLockOrder(final Lock aLock, final HeldLocks held)
 	{
 		synchronized (m_mutex)
 		{
-			if (m_locksHeld.get() == null)
+			// all the locks currently held must be acquired before a lock
+			if (!m_locksHeldWhenAcquired.containsKey(aLock))
 			{
-				m_locksHeld.set(new HashMap<Lock, Integer>());
+				m_locksHeldWhenAcquired.put(aLock, new HashSet<WeakLockRef>());
 			}
-			// we already have the lock, increaase the count
-			if (m_locksHeld.get().containsKey(aLock))
+			for (int i = 0; i < held.m_size; i++)
 			{
-				final int current = m_locksHeld.get().get(aLock);
-				m_locksHeld.get().put(aLock, current + 1);
+				final Lock l = held.m_locks[i];
+				if (l != aLock)
+					m_locksHeldWhenAcquired.get(aLock).add(new WeakLockRef(l));
 			}
-			// we don't have it
-			else
+			// we are lock a, check to
+			// see if any lock we hold (b)
+			// has evern been acquired before a
+			for (int i = 0; i < held.m_size; i++)
 			{
-				// all the locks currently held must be acquired before a lock
-				if (!m_locksHeldWhenAcquired.containsKey(aLock))
+				final Lock l = held.m_locks[i];
+				final Set<WeakLockRef> heldBefore = m_locksHeldWhenAcquired.get(l);
+				if (l == aLock || heldBefore == null)
+					continue;
+				// clear out of date locks
+				final Iterator<WeakLockRef> iter = heldBefore.iterator();
+				while (iter.hasNext())
 				{
-					m_locksHeldWhenAcquired.put(aLock, new HashSet<WeakLockRef>());
-				}
-				for (final Lock l : m_locksHeld.get().keySet())
-				{
-					m_locksHeldWhenAcquired.get(aLock).add(new WeakLockRef(l));
-				}
-				// we are lock a, check to
-				// see if any lock we hold (b)
-				// has evern been acquired before a
-				for (final Lock l : m_locksHeld.get().keySet())
-				{
-					final Set<WeakLockRef> held = m_locksHeldWhenAcquired.get(l);
-					// clear out of date locks
-					final Iterator<WeakLockRef> iter = held.iterator();
-					while (iter.hasNext())
-					{
-						if (iter.next().get() == null)
-						{
-							iter.remove();
-						}
-					}
-					if (held.contains(new WeakLockRef(aLock)))
+					if (iter.next().get() == null)
 					{
-						m_errorReporter.reportError(aLock, l);
+						iter.remove();
 					}
 				}
-				m_locksHeld.get().put(aLock, 1);
+				if (heldBefore.contains(new WeakLockRef(aLock)))
+				{
+					m_errorReporter.reportError(aLock, l);
+				}
 			}
 		}
-		aLock.lock();
 	}
 	
 	public void releaseLock(final Lock aLock)
 	{
-		synchronized (m_mutex)
-		{
-			int count = m_locksHeld.get().get(aLock);
-			count--;
-			if (count == 0)
-				m_locksHeld.get().remove(aLock);
-			else
-				m_locksHeld.get().put(aLock, count);
-		}
+		m_locksHeld.get().released(aLock);
 		aLock.unlock();
 	}
 	
 	public boolean isLockHeld(final Lock aLock)
 	{
-		if (m_locksHeld.get() == null)
-			return false;
-		synchronized (m_mutex)
-		{
-			return m_locksHeld.get().containsKey(aLock);
-		}
+		return m_locksHeld.get().contains(aLock);
 	}
 	
 	public void setErrorReporter(final ErrorReporter reporter)
@@ -154,6 +165,69 @@ public class LockUtil
 	}
 	
 	
+	/**
+	 * The locks one thread holds, with how many times it holds each.
+	 * Threads hold few locks at once, so these are kept in arrays and searched by identity.
+	 */
+	private static final class HeldLocks
+	{
+		private Lock[] m_locks = new Lock[4];
+		private int[] m_counts = new int[4];
+		private int m_size = 0;
+		
+		private int indexOf(final Lock lock)
+		{
+			for (int i = 0; i < m_size; i++)
+			{
+				if (m_locks[i] == lock)
+					return i;
+			}
+			return -1;
+		}
+		
+		boolean contains(final Lock lock)
+		{
+			return indexOf(lock) != -1;
+		}
+		
+		/**
+		 * @return true if the lock was already held
+		 */
+		boolean acquired(final Lock lock)
+		{
+			final int index = indexOf(lock);
+			if (index != -1)
+			{
+				m_counts[index]++;
+				return true;
+			}
+			if (m_size == m_locks.length)
+			{
+				m_locks = Arrays.copyOf(m_locks, m_size * 2);
+				m_counts = Arrays.copyOf(m_counts, m_size * 2);
+			}
+			m_locks[m_size] = lock;
+			m_counts[m_size] = 1;
+			m_size++;
+			return false;
+		}
+		
+		void released(final Lock lock)
+		{
+			final int index = indexOf(lock);
+			if (index == -1)
+				throw new IllegalStateException("Lock not held:" + lock);
+			if (--m_counts[index] > 0)
+				return;
+			// keep the locks in the order they were acquired
+			m_size--;
+			System.arraycopy(m_locks, index + 1, m_locks, index, m_size - index);
+			System.arraycopy(m_counts, index + 1, m_counts, index, m_size - index);
+			m_locks[m_size] = null;
+		}
+	}
+	
+	
 	protected static final class WeakLockRef extends WeakReference<Lock>
 	{
 		// cache the hash code to make sure it doesn't change if our reference
@@ -20,6 +20,7 @@ import games.strategy.engine.data.GameData;
 import games.strategy.engine.data.PlayerID;
 import games.strategy.engine.data.Territory;
 import games.strategy.engine.data.Unit;
+import games.strategy.engine.data.UnitIndex;
 import games.strategy.engine.data.UnitType;
 import games.strategy.engine.data.annotations.GameProperty;
 import games.strategy.triplea.attatchments.TechAbilityAttachment;
@@ -34,6 +35,7 @@ import games.strategy.util.Tuple;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -107,6 +109,7 @@ public class TripleAUnit extends Unit
 		super(type, owner, data);
 	}
 	
+	@Override
 	public Unit getTransportedBy()
 	{
 		return m_transportedBy;
@@ -115,34 +118,33 @@ public class TripleAUnit extends Unit
 	@GameProperty(xmlProperty = false, gameProperty = true, adds = false)
 	public void setTransportedBy(final TripleAUnit transportedBy)
 	{
+		final TripleAUnit old = m_transportedBy;
 		m_transportedBy = transportedBy;
+		getData().getUnitIndex().carrierChanged(this, old, transportedBy);
 	}
 	
 	/**
-	 * This is a very slow method because it checks all territories on the map. Try not to use this method if possible.
+	 * The units in the same territory as this unit that are transported by it.
+	 * Found through the game data's UnitIndex, so this does not need to look at any territory.
 	 * 
 	 * @return
 	 */
 	public List<Unit> getTransporting()
 	{
 		// we don't store the units we are transporting
-		// rather we look at the transported by property of units
-		for (final Territory t : getData().getMap())
+		// rather we look at the transported by property of units, which the index keeps track of
+		final UnitIndex index = getData().getUnitIndex();
+		final Territory territory = index.getTerritory(this);
+		if (territory == null)
+			return Collections.emptyList();
+		final List<Unit> transporting = index.getCarried(this);
+		final Iterator<Unit> iter = transporting.iterator();
+		while (iter.hasNext())
 		{
-			// find the territory this transport is in
-			if (t.getUnits().getUnits().contains(this))
-			{
-				return t.getUnits().getMatches(new Match<Unit>()
-				{
-					@Override
-					public boolean match(final Unit o)
-					{
-						return TripleAUnit.get(o).getTransportedBy() == TripleAUnit.this;
-					}
-				});
-			}
+			if (!index.isIn(iter.next(), territory))
+				iter.remove();
 		}
-		return Collections.emptyList();
+		return transporting;
 	}
 	
 	public List<Unit> getTransporting(final Collection<Unit> transportedUnitsPossible)
@@ -28,6 +28,7 @@ import games.strategy.triplea.attatchments.RulesAttachment;
 import games.strategy.triplea.attatchments.TerritoryAttachment;
 import games.strategy.triplea.attatchments.UnitAttachment;
 import games.strategy.triplea.delegate.Matches;
+import games.strategy.triplea.oddsCalculator.ta.BattleResults;
 import games.strategy.util.CompositeMatchAnd;
 import games.strategy.util.Match;
 
@@ -701,4 +702,17 @@ public class DMatches
 		}
 	};
 	// /////////////////////////////////////////////End Territory Status Matches///////////////////////////////////////////////
+	// /////////////////////////////////////////////Battle Results Matches///////////////////////////////////////////////
+	public static Match<BattleResults> BattleResultsHasAttackingLandUnitsLeft(final int minLandUnits)
+	{
+		return new Match<BattleResults>()
+		{
+			@Override
+			public boolean match(final BattleResults result)
+			{
+				return Match.countMatches(result.getRemainingAttackingUnits(), Matches.UnitIsLand) >= minLandUnits;
+			}
+		};
+	}
+	// /////////////////////////////////////////////End Battle Results Matches///////////////////////////////////////////////
 }
@@ -53,8 +53,9 @@ import games.strategy.triplea.delegate.remote.IMoveDelegate;
 import games.strategy.triplea.delegate.remote.IPurchaseDelegate;
 import games.strategy.triplea.delegate.remote.ITechDelegate;
 import games.strategy.triplea.oddsCalculator.ta.AggregateResults;
-import games.strategy.triplea.oddsCalculator.ta.BattleResults;
+import games.strategy.triplea.oddsCalculator.ta.CachingOddsCalculator;
 import games.strategy.triplea.oddsCalculator.ta.ConcurrentOddsCalculator;
+import games.strategy.triplea.oddsCalculator.ta.ExactOddsCalculator;
 import games.strategy.triplea.oddsCalculator.ta.IOddsCalculator;
 import games.strategy.triplea.player.ITripleaPlayer;
 import games.strategy.triplea.ui.TripleAFrame;
@@ -81,7 +82,11 @@ public class Dynamix_AI extends AbstractAI implements IGamePlayer, ITripleaPlaye
 {
 	private final static Logger s_logger = Logger.getLogger(Dynamix_AI.class.getName());
 	
-	private static final IOddsCalculator s_battleCalculator = new ConcurrentOddsCalculator("Dynamix_AI"); // if non-static, then only need 1 for the entire AI instance and must be shutdown when AI is gc'ed.
+	private static final IOddsCalculator s_battleCalculator = new CachingOddsCalculator(new ExactOddsCalculator(new ConcurrentOddsCalculator("Dynamix_AI", true))); // if non-static, then only need 1 for the entire AI instance and must be shutdown when AI is gc'ed.
+	static
+	{
+		s_battleCalculator.setTargetMarginOfError(0.02); // the settings ask for up to 2000 runs, but knowing the odds to within 2% is plenty
+	}
 	
 	/**
 	 * Some notes on using the Dynamix logger:
@@ -440,13 +445,7 @@ public class Dynamix_AI extends AbstractAI implements IGamePlayer, ITripleaPlaye
 				return retreatTer;
 			}
 			final int leftoverLandUnitsWanted = 2; // TODO: Figure out the number determined in CM_Task
-			int timesWeReachLeftoverLUnitsGoal = 0;
-			for (final BattleResults result : simulatedAttack.getResults())
-			{
-				if (Match.getMatches(result.getRemainingAttackingUnits(), Matches.UnitIsLand).size() >= leftoverLandUnitsWanted)
-					timesWeReachLeftoverLUnitsGoal++;
-			}
-			final float certaintyOfReachingLUnitsCount = (float) timesWeReachLeftoverLUnitsGoal / (float) simulatedAttack.getResults().size();
+			final float certaintyOfReachingLUnitsCount = (float) simulatedAttack.getPercentMatching(DMatches.BattleResultsHasAttackingLandUnitsLeft(leftoverLandUnitsWanted));
 			if (certaintyOfReachingLUnitsCount < DUtils.ToFloat(DSettings.LoadSettings().TR_attackTrade_certaintyOfReachingDesiredNumberOfLeftoverLandUnitsRequired))
 			{
 				// Calculate best retreat ter and retreat to it
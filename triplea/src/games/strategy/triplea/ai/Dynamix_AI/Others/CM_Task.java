@@ -38,7 +38,6 @@ import games.strategy.triplea.attatchments.UnitAttachment;
 import games.strategy.triplea.delegate.Matches;
 import games.strategy.triplea.delegate.remote.IMoveDelegate;
 import games.strategy.triplea.oddsCalculator.ta.AggregateResults;
-import games.strategy.triplea.oddsCalculator.ta.BattleResults;
 import games.strategy.util.Match;
 
 import java.util.ArrayList;
@@ -425,13 +424,7 @@ public class CM_Task
 				m_recruitedUnits.add(ug);
 				continue;
 			}
-			int timesWeReachLeftoverLUnitsGoal = 0;
-			for (final BattleResults result : simulatedAttack.getResults())
-			{
-				if (Match.getMatches(result.getRemainingAttackingUnits(), Matches.UnitIsLand).size() >= m_attackTrade_leftoverLandUnits)
-					timesWeReachLeftoverLUnitsGoal++;
-			}
-			final float certaintyOfReachingLUnitsCount = (float) timesWeReachLeftoverLUnitsGoal / (float) simulatedAttack.getResults().size();
+			final float certaintyOfReachingLUnitsCount = (float) simulatedAttack.getPercentMatching(DMatches.BattleResultsHasAttackingLandUnitsLeft(m_attackTrade_leftoverLandUnits));
 			if (certaintyOfReachingLUnitsCount < certaintyOfReachingLeftoverLUnitsGoalRequired)
 			{
 				m_recruitedUnits.add(ug);
@@ -473,13 +466,7 @@ public class CM_Task
 				m_recruitedUnits.add(ug);
 				continue;
 			}
-			int timesWeReachLeftoverLUnitsGoal = 0;
-			for (final BattleResults result : simulatedAttack.getResults())
-			{
-				if (Match.getMatches(result.getRemainingAttackingUnits(), Matches.UnitIsLand).size() >= m_attackTrade_leftoverLandUnits)
-					timesWeReachLeftoverLUnitsGoal++;
-			}
-			final float certaintyOfReachingLUnitsCount = (float) timesWeReachLeftoverLUnitsGoal / (float) simulatedAttack.getResults().size();
+			final float certaintyOfReachingLUnitsCount = (float) simulatedAttack.getPercentMatching(DMatches.BattleResultsHasAttackingLandUnitsLeft(m_attackTrade_leftoverLandUnits));
 			if (certaintyOfReachingLUnitsCount < certaintyOfReachingLeftoverLUnitsGoalRequired)
 			{
 				m_recruitedUnits.add(ug);
@@ -707,13 +694,7 @@ public class CM_Task
 			DUtils.Log(Level.FINEST, "        Task trade score: {0} Needed: {1}", tradeScore, m_attackTrade_tradeScoreRequired);
 			if (tradeScore < m_attackTrade_tradeScoreRequired)
 				return false;
-			int timesWeReachLeftoverLUnitsGoal = 0;
-			for (final BattleResults result : simulatedAttack.getResults())
-			{
-				if (Match.getMatches(result.getRemainingAttackingUnits(), Matches.UnitIsLand).size() >= m_attackTrade_leftoverLandUnits)
-					timesWeReachLeftoverLUnitsGoal++;
-			}
-			final float certaintyOfReachingLUnitsCount = (float) timesWeReachLeftoverLUnitsGoal / (float) simulatedAttack.getResults().size();
+			final float certaintyOfReachingLUnitsCount = (float) simulatedAttack.getPercentMatching(DMatches.BattleResultsHasAttackingLandUnitsLeft(m_attackTrade_leftoverLandUnits));
 			DUtils.Log(Level.FINEST, "        Certainty of reaching leftover land units goal({0}): {1} Needed: {2}", m_attackTrade_leftoverLandUnits, certaintyOfReachingLUnitsCount,
 						m_attackTrade_certaintyOfReachingLeftoverLUnitsGoalRequired);
 			if (certaintyOfReachingLUnitsCount < m_attackTrade_certaintyOfReachingLeftoverLUnitsGoalRequired)
@@ -234,13 +234,14 @@ public abstract class AbstractConditionsAttachment extends DefaultAttachment imp
 	{
 		if (allConditionsTestedSoFar == null)
 			allConditionsTestedSoFar = new HashMap<ICondition, Boolean>();
+		final ConditionCache cache = aBridge == null ? null : ConditionCache.get(aBridge.getData());
 		
 		for (final ICondition c : rules)
 		{
 			if (!allConditionsTestedSoFar.containsKey(c))
 			{
 				testAllConditionsRecursive(new HashSet<ICondition>(c.getConditions()), allConditionsTestedSoFar, aBridge);
-				allConditionsTestedSoFar.put(c, c.isSatisfied(allConditionsTestedSoFar, aBridge));
+				allConditionsTestedSoFar.put(c, cache == null ? c.isSatisfied(allConditionsTestedSoFar, aBridge) : cache.isSatisfied(c, allConditionsTestedSoFar, aBridge));
 			}
 		}
 		
@@ -0,0 +1,239 @@
+package games.strategy.triplea.attatchments;
+
+import games.strategy.engine.data.Change;
+import games.strategy.engine.data.ChangeImpact;
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.IAttachment;
+import games.strategy.engine.data.Territory;
+import games.strategy.engine.data.events.GameDataChangeListener;
+import games.strategy.engine.delegate.IDelegateBridge;
+import games.strategy.triplea.TripleAUnit;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the results of conditions between tests, and tests a condition again only when the game data it reads has been changed.
+ * <p>
+ * Each RulesAttachment describes what it reads (see RulesAttachment.getCacheInputs()): the territories whose units or owners it counts, relationships, battle records, and
+ * whether it depends on the round. The changes made to the game data since a result was kept are summed up in a ChangeImpact, and results whose inputs were touched are dropped.
+ * Conditions that roll dice, count each, read game properties or contain other conditions are always tested again, as is anything that is not a plain RulesAttachment.
+ * <p>
+ * There is one cache for each GameData, which lives as long as the game data does.
+ */
+public class ConditionCache
+{
+	/**
+	 * Unit properties that no condition reads, so changing them does not drop any result.
+	 */
+	private static final Set<String> s_unreadUnitProperties = new HashSet<String>(Arrays.asList("hits", "unitDamage", TripleAUnit.ALREADY_MOVED, TripleAUnit.BONUS_MOVEMENT,
+				TripleAUnit.MOVEMENT_LEFT, TripleAUnit.LOADED_THIS_TURN, TripleAUnit.UNLOADED_TO, TripleAUnit.UNLOADED_IN_COMBAT_PHASE, TripleAUnit.WAS_IN_COMBAT,
+				TripleAUnit.LOADED_AFTER_COMBAT, TripleAUnit.UNLOADED_AMPHIBIOUS, TripleAUnit.ORIGINATED_FROM, TripleAUnit.WAS_SCRAMBLED, TripleAUnit.MAX_SCRAMBLE_COUNT,
+				TripleAUnit.WAS_IN_AIR_BATTLE, TripleAUnit.LAUNCHED, TripleAUnit.AIRBORNE));
+	// the caches are only held strongly by the change recorders of their game data, so that they can be collected with it
+	private static final Map<GameData, WeakReference<ConditionCache>> s_caches = new WeakHashMap<GameData, WeakReference<ConditionCache>>();
+	
+	private final Map<RulesAttachment, Result> m_results = new HashMap<RulesAttachment, Result>();
+	private final ChangeImpact m_pending;
+	private long m_changeCount = 0;
+	private final GameDataChangeListener m_recorder = new GameDataChangeListener()
+	{
+		public void gameDataChanged(final Change aChange)
+		{
+			synchronized (ConditionCache.this)
+			{
+				m_pending.add(aChange);
+				m_changeCount++;
+			}
+		}
+	};
+	
+	private ConditionCache(final GameData data)
+	{
+		m_pending = new ChangeImpact(data);
+	}
+	
+	public static ConditionCache get(final GameData data)
+	{
+		synchronized (s_caches)
+		{
+			final WeakReference<ConditionCache> reference = s_caches.get(data);
+			ConditionCache cache = reference == null ? null : reference.get();
+			if (cache == null)
+			{
+				cache = new ConditionCache(data);
+				data.addChangeRecorder(cache.m_recorder);
+				s_caches.put(data, new WeakReference<ConditionCache>(cache));
+			}
+			return cache;
+		}
+	}
+	
+	/**
+	 * Same as condition.isSatisfied(testedConditions, aBridge), but uses the result kept from the last test if nothing it reads has changed since.
+	 */
+	public boolean isSatisfied(final ICondition condition, final HashMap<ICondition, Boolean> testedConditions, final IDelegateBridge aBridge)
+	{
+		if (condition.getClass() != RulesAttachment.class)
+			return condition.isSatisfied(testedConditions, aBridge);
+		final RulesAttachment rule = (RulesAttachment) condition;
+		final GameData data = aBridge.getData();
+		final int round = data.getSequence().getRound();
+		final long changeCount;
+		synchronized (this)
+		{
+			dropTouchedResults();
+			final Result kept = m_results.get(rule);
+			if (kept != null && (!kept.m_inputs.m_round || kept.m_round == round))
+				return kept.m_satisfied;
+			changeCount = m_changeCount;
+		}
+		final Inputs inputs = rule.getCacheInputs(data);
+		final boolean satisfied = rule.isSatisfied(testedConditions, aBridge);
+		if (inputs != null)
+		{
+			synchronized (this)
+			{
+				// if the data changed while testing, we can not tell whether the result saw the change
+				if (changeCount == m_changeCount)
+					m_results.put(rule, new Result(satisfied, inputs, round));
+			}
+		}
+		return satisfied;
+	}
+	
+	public synchronized void clear()
+	{
+		m_results.clear();
+		m_pending.clear();
+	}
+	
+	private void dropTouchedResults()
+	{
+		if (m_pending.isEmpty())
+			return;
+		final Iterator<Map.Entry<RulesAttachment, Result>> iter = m_results.entrySet().iterator();
+		while (iter.hasNext())
+		{
+			final Map.Entry<RulesAttachment, Result> entry = iter.next();
+			if (entry.getValue().m_inputs.isTouchedBy(entry.getKey(), m_pending))
+				iter.remove();
+		}
+		m_pending.clear();
+	}
+	
+	private static class Result
+	{
+		private final boolean m_satisfied;
+		private final Inputs m_inputs;
+		private final int m_round;
+		
+		Result(final boolean satisfied, final Inputs inputs, final int round)
+		{
+			m_satisfied = satisfied;
+			m_inputs = inputs;
+			m_round = round;
+		}
+	}
+	
+	/**
+	 * What a condition reads. Territory sets that are null mean any territory.
+	 */
+	static class Inputs
+	{
+		private boolean m_units = false;
+		private Set<Territory> m_unitTerritories = new HashSet<Territory>();
+		private boolean m_owners = false;
+		private Set<Territory> m_ownerTerritories = new HashSet<Territory>();
+		private boolean m_relationships = false;
+		private boolean m_battleRecords = false;
+		private boolean m_round = false;
+		
+		/**
+		 * The condition counts units in the territories, or in any territory if null.
+		 */
+		void readUnits(final Collection<Territory> territories)
+		{
+			m_units = true;
+			// units are counted by whether they are allied or enemy
+			m_relationships = true;
+			if (territories == null)
+				m_unitTerritories = null;
+			else if (m_unitTerritories != null)
+				m_unitTerritories.addAll(territories);
+		}
+		
+		/**
+		 * The condition checks who owns the territories, or any territory if null.
+		 */
+		void readOwners(final Collection<Territory> territories)
+		{
+			m_owners = true;
+			if (territories == null)
+				m_ownerTerritories = null;
+			else if (m_ownerTerritories != null)
+				m_ownerTerritories.addAll(territories);
+		}
+		
+		void readRelationships()
+		{
+			m_relationships = true;
+		}
+		
+		void readBattleRecords()
+		{
+			m_battleRecords = true;
+		}
+		
+		void readRound()
+		{
+			m_round = true;
+		}
+		
+		boolean isTouchedBy(final RulesAttachment rule, final ChangeImpact impact)
+		{
+			// technology can change what units count as, and other attachments can be read by any condition
+			if (impact.touchesEverything() || impact.touchesTechs())
+				return true;
+			for (final IAttachment attachment : impact.getAttachments())
+			{
+				if (attachment == rule || !(attachment instanceof AbstractConditionsAttachment))
+					return true;
+			}
+			if (m_relationships && impact.touchesRelationships())
+				return true;
+			if (m_battleRecords && impact.touchesBattleRecords())
+				return true;
+			if (m_units)
+			{
+				if (intersects(m_unitTerritories, impact.getUnitTerritories()))
+					return true;
+				for (final String property : impact.getUnitProperties())
+				{
+					if (!s_unreadUnitProperties.contains(property))
+						return true;
+				}
+			}
+			if (m_owners && intersects(m_ownerTerritories, impact.getOwnerTerritories()))
+				return true;
+			return false;
+		}
+		
+		private static boolean intersects(final Set<Territory> read, final Set<Territory> touched)
+		{
+			if (touched.isEmpty())
+				return false;
+			if (read == null)
+				return true;
+			return !Collections.disjoint(read, touched);
+		}
+	}
+}
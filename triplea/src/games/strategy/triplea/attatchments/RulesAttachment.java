@@ -1004,6 +1004,67 @@ public class RulesAttachment extends AbstractPlayerRulesAttachment implements IC
 		return objectiveMet != m_invert;
 	}
 	
+	/**
+	 * Describes what isSatisfied() reads, for the ConditionCache.
+	 * 
+	 * @return what this condition reads from the game data, or null if its result can not be kept between tests
+	 */
+	ConditionCache.Inputs getCacheInputs(final GameData data)
+	{
+		// contained conditions are kept on their own, chance rolls dice, countEach sets the multiple, and game properties change without a change
+		if (!m_conditions.isEmpty() || m_gameProperty != null || getCountEach() || getChanceToHit() != getChanceDiceSides() || getChanceIncrementOnFailure() != 0
+					|| getChanceDecrementOnSuccess() != 0)
+			return null;
+		final ConditionCache.Inputs inputs = new ConditionCache.Inputs();
+		for (final String[] terrs : Arrays.asList(m_directPresenceTerritories, m_alliedPresenceTerritories, m_enemyPresenceTerritories, m_directExclusionTerritories,
+					m_alliedExclusionTerritories, m_enemyExclusionTerritories, m_enemySurfaceExclusionTerritories))
+		{
+			if (terrs == null)
+				continue;
+			final Collection<Territory> named = getNamedTerritories(terrs, data);
+			inputs.readUnits(named);
+			// territories listed as "controlled" or "original" depend on who owns what
+			if (named == null)
+				inputs.readOwners(null);
+		}
+		for (final String[] terrs : Arrays.asList(m_alliedOwnershipTerritories, m_directOwnershipTerritories))
+		{
+			if (terrs == null)
+				continue;
+			inputs.readOwners(getNamedTerritories(terrs, data));
+			inputs.readRelationships();
+		}
+		if (m_atWarPlayers != null || !m_relationship.isEmpty())
+			inputs.readRelationships();
+		if (m_turns != null || !m_relationship.isEmpty())
+			inputs.readRound();
+		if (m_destroyedTUV != null || !m_battle.isEmpty())
+		{
+			inputs.readBattleRecords();
+			inputs.readRound();
+		}
+		return inputs;
+	}
+	
+	/**
+	 * @return the territories named in the list, or null if the list is worked out from the game data, like "controlled"
+	 */
+	private static Collection<Territory> getNamedTerritories(final String[] terrs, final GameData data)
+	{
+		final Collection<Territory> rVal = new ArrayList<Territory>();
+		for (final String name : terrs)
+		{
+			if (name.equals("controlled") || name.equals("controlledNoWater") || name.equals("original") || name.equals("originalNoWater") || name.equals("all")
+						|| name.equals("map") || name.equals("enemy"))
+				return null;
+			// the first name may be a territory count
+			final Territory territory = data.getMap().getTerritory(name);
+			if (territory != null)
+				rVal.add(territory);
+		}
+		return rVal;
+	}
+	
 	/**
 	 * checks if all relationship requirements are set
 	 * 
@@ -71,7 +71,7 @@ public class UnitAttachment extends DefaultAttachment
 	 */
 	public static UnitAttachment get(final UnitType type)
 	{
-		final UnitAttachment rVal = (UnitAttachment) type.getAttachment(Constants.UNIT_ATTACHMENT_NAME);
+		final UnitAttachment rVal = type.getUnitAttachment();
 		if (rVal == null)
 			throw new IllegalStateException("No unit type attachment for:" + type.getName());
 		return rVal;
@@ -6,38 +6,188 @@ import games.strategy.engine.data.Unit;
 import games.strategy.engine.data.UnitType;
 import games.strategy.triplea.ai.Dynamix_AI.DUtils;
 import games.strategy.triplea.delegate.BattleCalculator;
+import games.strategy.triplea.delegate.IBattle.WhoWon;
 import games.strategy.util.IntegerMap;
+import games.strategy.util.Match;
 import games.strategy.util.Tuple;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Adds up the results of many battles as they come in.
+ * <p>
+ * Only running sums are kept for the averages and percentages, and results with the same remaining units and winner are only kept once (with a weight for how many times we have seen
+ * them). So adding a result, and reading any of the averages, takes about the same time however many battles have been fought.
+ */
 public class AggregateResults implements Serializable
 {
 	private static final long serialVersionUID = -556699626060414738L;
-	private final List<BattleResults> m_results; // can be empty!
+	private static final double s_confidenceZ = 1.96; // 95% of the time, the real answer is within the margin of error
+	private final List<BattleResults> m_results; // can be empty! one result for each different outcome
+	private final List<Double> m_weights; // one weight for each result
+	private final Map<Outcome, Integer> m_outcomeIndex = new HashMap<Outcome, Integer>();
+	private int m_rollCount = 0;
+	private double m_totalWeight = 0;
+	private double m_attackerWins = 0;
+	private double m_defenderWins = 0;
+	private double m_draws = 0;
+	private double m_attackingUnitsLeft = 0;
+	private double m_defendingUnitsLeft = 0;
+	private double m_attackingUnitsLeftWhenAttackerWon = 0;
+	private double m_defendingUnitsLeftWhenDefenderWon = 0;
+	private double m_battleRoundsFought = 0;
 	private long m_time;
 	
 	public AggregateResults(final int expectedCount)
 	{
-		m_results = new ArrayList<BattleResults>(expectedCount);
+		m_results = new ArrayList<BattleResults>(Math.min(expectedCount, 64));
+		m_weights = new ArrayList<Double>(Math.min(expectedCount, 64));
 	}
 	
 	public void addResult(final BattleResults result)
 	{
-		m_results.add(result);
+		addResult(result, 1.0);
+	}
+	
+	/**
+	 * Add a result that counts as 'weight' results. The exact odds calculator uses the probability of each outcome as its weight, instead of repeating the outcome.
+	 */
+	public void addResult(final BattleResults result, final double weight)
+	{
+		final Outcome outcome = new Outcome(result);
+		m_rollCount++;
+		m_totalWeight += weight;
+		final int attackingUnitsLeft = result.getAttackingCombatUnitsLeft();
+		final int defendingUnitsLeft = result.getDefendingCombatUnitsLeft();
+		m_attackingUnitsLeft += attackingUnitsLeft * weight;
+		m_defendingUnitsLeft += defendingUnitsLeft * weight;
+		m_battleRoundsFought += result.getBattleRoundsFought() * weight;
+		if (outcome.m_whoWon == WhoWon.ATTACKER)
+		{
+			m_attackerWins += weight;
+			m_attackingUnitsLeftWhenAttackerWon += attackingUnitsLeft * weight;
+		}
+		else if (outcome.m_whoWon == WhoWon.DEFENDER)
+		{
+			m_defenderWins += weight;
+			m_defendingUnitsLeftWhenDefenderWon += defendingUnitsLeft * weight;
+		}
+		else
+			m_draws += weight;
+		addOutcome(outcome, result, weight);
+	}
+	
+	private void addOutcome(final Outcome outcome, final BattleResults result, final double weight)
+	{
+		final Integer index = m_outcomeIndex.get(outcome);
+		if (index == null)
+		{
+			m_outcomeIndex.put(outcome, m_results.size());
+			m_results.add(result);
+			m_weights.add(weight);
+		}
+		else
+			m_weights.set(index, m_weights.get(index) + weight);
 	}
 	
 	public void addResults(final Collection<BattleResults> results)
 	{
-		m_results.addAll(results);
+		for (final BattleResults result : results)
+		{
+			addResult(result);
+		}
+	}
+	
+	/**
+	 * Add all the results of another aggregate, keeping their weights.
+	 */
+	public void addResults(final AggregateResults results)
+	{
+		addTotals(results);
+		for (int i = 0; i < results.m_results.size(); i++)
+		{
+			final BattleResults result = results.m_results.get(i);
+			addOutcome(new Outcome(result), result, results.m_weights.get(i));
+		}
 	}
 	
+	/**
+	 * A copy of these results, with each remaining unit swapped for the unit it maps to. Units that are not in the map are kept.
+	 */
+	AggregateResults copyWithUnits(final Map<Unit, Unit> unitMap)
+	{
+		final AggregateResults copy = new AggregateResults(m_results.size());
+		copy.addTotals(this);
+		for (int i = 0; i < m_results.size(); i++)
+		{
+			final BattleResults result = m_results.get(i);
+			final BattleResults swapped = new BattleResults(result, swapUnits(result.getRemainingAttackingUnits(), unitMap), swapUnits(result.getRemainingDefendingUnits(), unitMap));
+			copy.addOutcome(new Outcome(swapped), swapped, m_weights.get(i));
+		}
+		copy.m_time = m_time;
+		return copy;
+	}
+	
+	private static List<Unit> swapUnits(final List<Unit> units, final Map<Unit, Unit> unitMap)
+	{
+		final List<Unit> swapped = new ArrayList<Unit>(units.size());
+		for (final Unit unit : units)
+		{
+			final Unit other = unitMap.get(unit);
+			swapped.add(other == null ? unit : other);
+		}
+		return swapped;
+	}
+	
+	private void addTotals(final AggregateResults results)
+	{
+		m_rollCount += results.m_rollCount;
+		m_totalWeight += results.m_totalWeight;
+		m_attackerWins += results.m_attackerWins;
+		m_defenderWins += results.m_defenderWins;
+		m_draws += results.m_draws;
+		m_attackingUnitsLeft += results.m_attackingUnitsLeft;
+		m_defendingUnitsLeft += results.m_defendingUnitsLeft;
+		m_attackingUnitsLeftWhenAttackerWon += results.m_attackingUnitsLeftWhenAttackerWon;
+		m_defendingUnitsLeftWhenDefenderWon += results.m_defendingUnitsLeftWhenDefenderWon;
+		m_battleRoundsFought += results.m_battleRoundsFought;
+	}
+	
+	/**
+	 * One result for each different outcome (remaining units and winner), so use getWeight() or getPercentMatching() instead of counting them.
+	 */
 	public List<BattleResults> getResults()
 	{
-		return m_results;
+		return Collections.unmodifiableList(m_results);
+	}
+	
+	public double getWeight(final int index)
+	{
+		return m_weights.get(index);
+	}
+	
+	/**
+	 * The chance of the result matching, ie: the weight of the matching results divided by the total weight.
+	 */
+	public double getPercentMatching(final Match<BattleResults> match)
+	{
+		if (m_results.isEmpty()) // can be empty!
+		{
+			return 0.0;
+		}
+		double count = 0;
+		for (int i = 0; i < m_results.size(); i++)
+		{
+			if (match.match(m_results.get(i)))
+				count += m_weights.get(i);
+		}
+		return count / m_totalWeight;
 	}
 	
 	/**
@@ -45,12 +195,14 @@ public class AggregateResults implements Serializable
 	 */
 	public BattleResults GetBattleResultsClosestToAverage()
 	{
+		final double averageAttackingUnitsLeft = getAverageAttackingUnitsLeft();
+		final double averageDefendingUnitsLeft = getAverageDefendingUnitsLeft();
 		float closestBattleDif = Integer.MAX_VALUE;
 		BattleResults closestBattle = null;
 		for (final BattleResults results : m_results)
 		{
-			float dif = DUtils.MNN((float) (results.getAttackingCombatUnitsLeft() - getAverageAttackingUnitsLeft()));
-			dif += DUtils.MNN((float) (results.getDefendingCombatUnitsLeft() - getAverageDefendingUnitsLeft()));
+			float dif = DUtils.MNN((float) (results.getAttackingCombatUnitsLeft() - averageAttackingUnitsLeft));
+			dif += DUtils.MNN((float) (results.getDefendingCombatUnitsLeft() - averageDefendingUnitsLeft));
 			if (dif < closestBattleDif)
 			{
 				closestBattleDif = dif;
@@ -78,12 +230,7 @@ public class AggregateResults implements Serializable
 		{
 			return 0.0;
 		}
-		double count = 0;
-		for (final BattleResults result : m_results)
-		{
-			count += result.getAttackingCombatUnitsLeft();
-		}
-		return count / m_results.size();
+		return m_attackingUnitsLeft / m_totalWeight;
 	}
 	
 	/**
@@ -97,12 +244,14 @@ public class AggregateResults implements Serializable
 		}
 		double attackerTUV = 0;
 		double defenderTUV = 0;
-		for (final BattleResults result : m_results)
+		for (int i = 0; i < m_results.size(); i++)
 		{
-			attackerTUV += BattleCalculator.getTUV(result.getRemainingAttackingUnits(), attackerCostsForTUV);
-			defenderTUV += BattleCalculator.getTUV(result.getRemainingDefendingUnits(), defenderCostsForTUV);
+			final BattleResults result = m_results.get(i);
+			final double weight = m_weights.get(i);
+			attackerTUV += BattleCalculator.getTUV(result.getRemainingAttackingUnits(), attackerCostsForTUV) * weight;
+			defenderTUV += BattleCalculator.getTUV(result.getRemainingDefendingUnits(), defenderCostsForTUV) * weight;
 		}
-		return new Tuple<Double, Double>(attackerTUV / m_results.size(), defenderTUV / m_results.size());
+		return new Tuple<Double, Double>(attackerTUV / m_totalWeight, defenderTUV / m_totalWeight);
 	}
 	
 	public double getAverageTUVswing(final PlayerID attacker, final Collection<Unit> attackers, final PlayerID defender, final Collection<Unit> defenders, final GameData data)
@@ -124,23 +273,9 @@ public class AggregateResults implements Serializable
 	
 	public double getAverageAttackingUnitsLeftWhenAttackerWon()
 	{
-		if (m_results.isEmpty()) // can be empty!
-		{
-			return 0.0;
-		}
-		double count = 0;
-		double total = 0;
-		for (final BattleResults result : m_results)
-		{
-			if (result.attackerWon())
-			{
-				count += result.getAttackingCombatUnitsLeft();
-				total += 1;
-			}
-		}
-		if (total <= 0)
+		if (m_attackerWins <= 0)
 			return 0;
-		return count / total;
+		return m_attackingUnitsLeftWhenAttackerWon / m_attackerWins;
 	}
 	
 	public double getAverageDefendingUnitsLeft()
@@ -149,33 +284,14 @@ public class AggregateResults implements Serializable
 		{
 			return 0.0;
 		}
-		double count = 0;
-		for (final BattleResults result : m_results)
-		{
-			count += result.getDefendingCombatUnitsLeft();
-		}
-		return count / m_results.size();
+		return m_defendingUnitsLeft / m_totalWeight;
 	}
 	
 	public double getAverageDefendingUnitsLeftWhenDefenderWon()
 	{
-		if (m_results.isEmpty()) // can be empty!
-		{
-			return 0.0;
-		}
-		double count = 0;
-		double total = 0;
-		for (final BattleResults result : m_results)
-		{
-			if (result.defenderWon())
-			{
-				count += result.getDefendingCombatUnitsLeft();
-				total += 1;
-			}
-		}
-		if (total <= 0)
+		if (m_defenderWins <= 0)
 			return 0;
-		return count / total;
+		return m_defendingUnitsLeftWhenDefenderWon / m_defenderWins;
 	}
 	
 	public double getAttackerWinPercent()
@@ -184,13 +300,20 @@ public class AggregateResults implements Serializable
 		{
 			return 0.0;
 		}
-		double count = 0;
-		for (final BattleResults result : m_results)
-		{
-			if (result.attackerWon())
-				count++;
-		}
-		return count / m_results.size();
+		return m_attackerWins / m_totalWeight;
+	}
+	
+	/**
+	 * How far off getAttackerWinPercent() could be from the real odds, because we only fought a sample of battles (with 95% confidence).
+	 * Uses the variance of the sample, adjusted (Agresti-Coull) so that a small sample where every battle was won is not taken as certain.
+	 * Only means something for sampled results, exact results have no error.
+	 */
+	public double getAttackerWinPercentMarginOfError()
+	{
+		final double zSquared = s_confidenceZ * s_confidenceZ;
+		final double adjustedCount = m_totalWeight + zSquared;
+		final double adjustedPercent = (m_attackerWins + zSquared / 2) / adjustedCount;
+		return s_confidenceZ * Math.sqrt(adjustedPercent * (1 - adjustedPercent) / adjustedCount);
 	}
 	
 	public double getDefenderWinPercent()
@@ -199,13 +322,7 @@ public class AggregateResults implements Serializable
 		{
 			return 0.0;
 		}
-		double count = 0;
-		for (final BattleResults result : m_results)
-		{
-			if (result.defenderWon())
-				count++;
-		}
-		return count / m_results.size();
+		return m_defenderWins / m_totalWeight;
 	}
 	
 	public double getAverageBattleRoundsFought()
@@ -214,14 +331,9 @@ public class AggregateResults implements Serializable
 		{
 			return 0.0;
 		}
-		double count = 0;
-		for (final BattleResults result : m_results)
-		{
-			count += result.getBattleRoundsFought();
-		}
-		if (count == 0)
+		if (m_battleRoundsFought == 0)
 			return 1.0; // If this is a 'fake' aggregate result, return 1.0
-		return count / m_results.size();
+		return m_battleRoundsFought / m_totalWeight;
 	}
 	
 	public double getDrawPercent()
@@ -230,18 +342,15 @@ public class AggregateResults implements Serializable
 		{
 			return 0.0;
 		}
-		double count = 0;
-		for (final BattleResults result : m_results)
-		{
-			if (result.draw())
-				count++;
-		}
-		return count / m_results.size();
+		return m_draws / m_totalWeight;
 	}
 	
+	/**
+	 * The number of results added, not the number of different outcomes in getResults().
+	 */
 	public int getRollCount()
 	{
-		return m_results.size();
+		return m_rollCount;
 	}
 	
 	public long getTime()
@@ -253,4 +362,43 @@ public class AggregateResults implements Serializable
 	{
 		m_time = time;
 	}
+	
+	
+	/**
+	 * Results with equal remaining units and the same winner are the same outcome.
+	 */
+	private static final class Outcome implements Serializable
+	{
+		private static final long serialVersionUID = 3245862714589935116L;
+		private final List<Unit> m_remainingAttackingUnits;
+		private final List<Unit> m_remainingDefendingUnits;
+		private final WhoWon m_whoWon;
+		private final int m_hashCode;
+		
+		Outcome(final BattleResults result)
+		{
+			m_remainingAttackingUnits = result.getRemainingAttackingUnits();
+			m_remainingDefendingUnits = result.getRemainingDefendingUnits();
+			m_whoWon = result.attackerWon() ? WhoWon.ATTACKER : (result.defenderWon() ? WhoWon.DEFENDER : WhoWon.DRAW);
+			m_hashCode = (m_remainingAttackingUnits.hashCode() * 31 + m_remainingDefendingUnits.hashCode()) * 31 + m_whoWon.ordinal();
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return m_hashCode;
+		}
+		
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (o == this)
+				return true;
+			if (!(o instanceof Outcome))
+				return false;
+			final Outcome other = (Outcome) o;
+			return m_hashCode == other.m_hashCode && m_whoWon == other.m_whoWon && m_remainingAttackingUnits.equals(other.m_remainingAttackingUnits)
+						&& m_remainingDefendingUnits.equals(other.m_remainingDefendingUnits);
+		}
+	}
 }
@@ -62,6 +62,26 @@ public class BattleResults extends GameDataComponent implements Serializable
 		m_whoWon = scriptedWhoWon;
 	}
 	
+	/**
+	 * For battles that were simulated without an IBattle.
+	 */
+	public BattleResults(final int battleRoundsFought, final List<Unit> remainingAttackingUnits, final List<Unit> remainingDefendingUnits, final WhoWon whoWon, final GameData data)
+	{
+		super(data);
+		m_battleRoundsFought = battleRoundsFought;
+		m_remainingAttackingUnits = remainingAttackingUnits;
+		m_remainingDefendingUnits = remainingDefendingUnits;
+		m_whoWon = whoWon;
+	}
+	
+	/**
+	 * A copy of the result, with different (but equivalent) remaining units.
+	 */
+	BattleResults(final BattleResults result, final List<Unit> remainingAttackingUnits, final List<Unit> remainingDefendingUnits)
+	{
+		this(result.m_battleRoundsFought, remainingAttackingUnits, remainingDefendingUnits, result.m_whoWon, result.getData());
+	}
+	
 	public void setWhoWon(final WhoWon whoWon)
 	{
 		m_whoWon = whoWon;
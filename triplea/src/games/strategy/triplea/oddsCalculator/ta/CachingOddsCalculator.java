@@ -0,0 +1,411 @@
+package games.strategy.triplea.oddsCalculator.ta;
+
+import games.strategy.engine.data.Change;
+import games.strategy.engine.data.ChangeFactory;
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.PlayerID;
+import games.strategy.engine.data.Territory;
+import games.strategy.engine.data.TerritoryEffect;
+import games.strategy.engine.data.Unit;
+import games.strategy.engine.data.events.GameDataChangeListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the results of recent battles, so that asking for the same battle again does not mean fighting it again.
+ * <p>
+ * Two battles are the same if they have the same attacker and defender, the same unit types with the same owners and hits on each side, the same territory, the same
+ * territory effects, the same run count and the same settings. The territory is part of the key since its attachment, its neighbors (for retreats) and any AA or
+ * territory bonuses there can all change the result. The cached results are handed back with the units of the new battle swapped in, so callers never see units from an older battle.
+ * <p>
+ * The cache is emptied whenever the rules change (see ChangeFactory.changesRules()), or the game data is set to a different game, or to a copy of this game with different rules.
+ * It is not emptied between turns of the same game, or when switching between the game data and a copy of it (as the AI does when it plans on a copy).
+ */
+public class CachingOddsCalculator implements IOddsCalculator
+{
+	private static final Logger s_logger = Logger.getLogger(CachingOddsCalculator.class.getName());
+	public static final int DEFAULT_MAX_ENTRIES = 2000;
+	
+	private final IOddsCalculator m_calculator;
+	private final Map<String, CachedBattle> m_cache;
+	private final GameDataChangeListener m_rulesListener = new GameDataChangeListener()
+	{
+		public void gameDataChanged(final Change change)
+		{
+			if (ChangeFactory.changesRules(change))
+			{
+				clear();
+				m_rules = getRules(m_data);
+			}
+		}
+	};
+	private GameData m_data = null;
+	private volatile String m_rules = null; // which game, and which version of its rules, the cached battles were fought with
+	private PlayerID m_attacker = null;
+	private PlayerID m_defender = null;
+	private Territory m_location = null;
+	private Collection<Unit> m_attackingUnits = new ArrayList<Unit>();
+	private Collection<Unit> m_defendingUnits = new ArrayList<Unit>();
+	private Collection<Unit> m_bombardingUnits = new ArrayList<Unit>();
+	private Collection<TerritoryEffect> m_territoryEffects = new ArrayList<TerritoryEffect>();
+	private boolean m_keepOneAttackingLandUnit = false;
+	private boolean m_amphibious = false;
+	private int m_retreatAfterRound = -1;
+	private int m_retreatAfterXUnitsLeft = -1;
+	private boolean m_retreatWhenOnlyAirLeft = false;
+	private boolean m_retreatWhenMetaPowerIsLower = false;
+	private String m_attackerOrderOfLosses = null;
+	private String m_defenderOrderOfLosses = null;
+	private double m_targetMarginOfError = 0;
+	private int m_runCount = 0;
+	private volatile boolean m_isCalcSet = false;
+	private volatile boolean m_cancelled = false;
+	// statistics, guarded by m_cache
+	private long m_hits = 0;
+	private long m_misses = 0;
+	private long m_timeSaved = 0;
+	
+	public CachingOddsCalculator(final IOddsCalculator calculator)
+	{
+		this(calculator, DEFAULT_MAX_ENTRIES);
+	}
+	
+	public CachingOddsCalculator(final IOddsCalculator calculator, final int maxEntries)
+	{
+		m_calculator = calculator;
+		m_cache = new LinkedHashMap<String, CachedBattle>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = -3146402950826290337L;
+			
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CachedBattle> eldest)
+			{
+				return size() > maxEntries;
+			}
+		};
+	}
+	
+	public void setGameData(final GameData data)
+	{
+		m_isCalcSet = false;
+		if (data != m_data)
+		{
+			if (m_data != null)
+				m_data.removeDataChangeListener(m_rulesListener);
+			m_data = data;
+			if (m_data != null)
+				m_data.addDataChangeListener(m_rulesListener);
+		}
+		final String rules = getRules(data);
+		if (rules == null || !rules.equals(m_rules))
+		{
+			clear();
+			m_rules = rules;
+		}
+		m_calculator.setGameData(data);
+	}
+	
+	/**
+	 * @return the game's UUID and how many rule changes it has had, which are the same for a copy of the game data, or null if there is no game data.
+	 */
+	private static String getRules(final GameData data)
+	{
+		if (data == null)
+			return null;
+		return data.getProperties().get(GameData.GAME_UUID) + ":" + data.getRulesChanges();
+	}
+	
+	/**
+	 * Forget every cached battle.
+	 */
+	public void clear()
+	{
+		synchronized (m_cache)
+		{
+			if (!m_cache.isEmpty() && s_logger.isLoggable(Level.FINE))
+				s_logger.fine("Clearing battle results cache. " + getStatistics());
+			m_cache.clear();
+		}
+	}
+	
+	public long getHits()
+	{
+		synchronized (m_cache)
+		{
+			return m_hits;
+		}
+	}
+	
+	public long getMisses()
+	{
+		synchronized (m_cache)
+		{
+			return m_misses;
+		}
+	}
+	
+	/**
+	 * The time it took to calculate the battles that were later found in the cache, added up once for each time they were found.
+	 */
+	public long getTimeSavedMillis()
+	{
+		synchronized (m_cache)
+		{
+			return m_timeSaved;
+		}
+	}
+	
+	public String getStatistics()
+	{
+		synchronized (m_cache)
+		{
+			return "Hits: " + m_hits + ", Misses: " + m_misses + ", Time Saved: " + m_timeSaved + "ms, Size: " + m_cache.size();
+		}
+	}
+	
+	public void setCalculateData(final PlayerID attacker, final PlayerID defender, final Territory location, final Collection<Unit> attacking, final Collection<Unit> defending,
+				final Collection<Unit> bombarding, final Collection<TerritoryEffect> territoryEffects, final int runCount)
+	{
+		if (m_data == null)
+		{
+			throw new IllegalStateException("Called set calculation before setting game data!");
+		}
+		m_attacker = attacker;
+		m_defender = defender;
+		m_location = location;
+		m_attackingUnits = new ArrayList<Unit>(attacking);
+		m_defendingUnits = new ArrayList<Unit>(defending);
+		m_bombardingUnits = bombarding == null ? new ArrayList<Unit>() : new ArrayList<Unit>(bombarding);
+		m_territoryEffects = territoryEffects == null ? new ArrayList<TerritoryEffect>() : new ArrayList<TerritoryEffect>(territoryEffects);
+		m_runCount = runCount;
+		m_isCalcSet = true;
+	}
+	
+	public AggregateResults setCalculateDataAndCalculate(final PlayerID attacker, final PlayerID defender, final Territory location, final Collection<Unit> attacking,
+				final Collection<Unit> defending, final Collection<Unit> bombarding, final Collection<TerritoryEffect> territoryEffects, final int runCount)
+	{
+		setCalculateData(attacker, defender, location, attacking, defending, bombarding, territoryEffects, runCount);
+		return calculate();
+	}
+	
+	public AggregateResults calculate()
+	{
+		if (!getIsReady())
+		{
+			throw new IllegalStateException("Called calculate before setting calculate data!");
+		}
+		m_cancelled = false;
+		final long start = System.currentTimeMillis();
+		final List<Unit> attacking = sortUnits(m_attackingUnits);
+		final List<Unit> defending = sortUnits(m_defendingUnits);
+		final String key = getKey(attacking, defending);
+		synchronized (m_cache)
+		{
+			final CachedBattle cached = m_cache.get(key);
+			if (cached != null)
+			{
+				m_hits++;
+				m_timeSaved += cached.m_results.getTime();
+				final Map<Unit, Unit> unitMap = new HashMap<Unit, Unit>();
+				mapUnits(cached.m_attackingUnits, attacking, unitMap);
+				mapUnits(cached.m_defendingUnits, defending, unitMap);
+				final AggregateResults results = cached.m_results.copyWithUnits(unitMap);
+				results.setTime(System.currentTimeMillis() - start);
+				return results;
+			}
+			m_misses++;
+		}
+		final AggregateResults results = m_calculator.setCalculateDataAndCalculate(m_attacker, m_defender, m_location, m_attackingUnits, m_defendingUnits, m_bombardingUnits,
+					m_territoryEffects, m_runCount);
+		if (!m_cancelled && results.getRollCount() > 0)
+		{
+			synchronized (m_cache)
+			{
+				m_cache.put(key, new CachedBattle(attacking, defending, results));
+			}
+		}
+		return results;
+	}
+	
+	private static String getUnitKey(final Unit unit)
+	{
+		return unit.getType().getName() + "," + unit.getOwner().getName() + "," + unit.getHits();
+	}
+	
+	/**
+	 * Units in the same order as their keys, so that equivalent units line up between two battles.
+	 */
+	private static List<Unit> sortUnits(final Collection<Unit> units)
+	{
+		final List<Unit> sorted = new ArrayList<Unit>(units);
+		Collections.sort(sorted, new Comparator<Unit>()
+		{
+			public int compare(final Unit u1, final Unit u2)
+			{
+				return getUnitKey(u1).compareTo(getUnitKey(u2));
+			}
+		});
+		return sorted;
+	}
+	
+	private static void appendUnits(final StringBuilder key, final List<Unit> sortedUnits)
+	{
+		key.append('[');
+		for (final Unit unit : sortedUnits)
+		{
+			key.append(getUnitKey(unit)).append(';');
+		}
+		key.append(']');
+	}
+	
+	private String getKey(final List<Unit> sortedAttacking, final List<Unit> sortedDefending)
+	{
+		final StringBuilder key = new StringBuilder(256);
+		key.append(m_attacker == null ? "" : m_attacker.getName()).append('|').append(m_defender == null ? "" : m_defender.getName()).append('|');
+		key.append(m_location.getName()).append('|');
+		final List<String> effects = new ArrayList<String>();
+		for (final TerritoryEffect effect : m_territoryEffects)
+		{
+			effects.add(effect.getName());
+		}
+		Collections.sort(effects);
+		key.append(effects).append('|');
+		appendUnits(key, sortedAttacking);
+		appendUnits(key, sortedDefending);
+		appendUnits(key, sortUnits(m_bombardingUnits));
+		key.append('|').append(m_runCount).append('|').append(m_keepOneAttackingLandUnit).append(',').append(m_amphibious).append(',').append(m_retreatAfterRound).append(',')
+					.append(m_retreatAfterXUnitsLeft).append(',').append(m_retreatWhenOnlyAirLeft).append(',').append(m_retreatWhenMetaPowerIsLower).append(',')
+					.append(m_attackerOrderOfLosses).append(',').append(m_defenderOrderOfLosses).append(',').append(m_targetMarginOfError);
+		return key.toString();
+	}
+	
+	/**
+	 * Both lists are sorted by unit key and have the same keys, so the units at the same index are equivalent.
+	 */
+	private static void mapUnits(final List<Unit> cached, final List<Unit> current, final Map<Unit, Unit> unitMap)
+	{
+		for (int i = 0; i < cached.size() && i < current.size(); i++)
+		{
+			unitMap.put(cached.get(i), current.get(i));
+		}
+	}
+	
+	public int getRunCount()
+	{
+		return m_runCount;
+	}
+	
+	public boolean getIsReady()
+	{
+		return m_data != null && m_isCalcSet;
+	}
+	
+	public void setKeepOneAttackingLandUnit(final boolean bool)
+	{
+		m_keepOneAttackingLandUnit = bool;
+		m_calculator.setKeepOneAttackingLandUnit(bool);
+	}
+	
+	public void setAmphibious(final boolean bool)
+	{
+		m_amphibious = bool;
+		m_calculator.setAmphibious(bool);
+	}
+	
+	public void setRetreatAfterRound(final int value)
+	{
+		m_retreatAfterRound = value;
+		m_calculator.setRetreatAfterRound(value);
+	}
+	
+	public void setRetreatAfterXUnitsLeft(final int value)
+	{
+		m_retreatAfterXUnitsLeft = value;
+		m_calculator.setRetreatAfterXUnitsLeft(value);
+	}
+	
+	public void setRetreatWhenOnlyAirLeft(final boolean value)
+	{
+		m_retreatWhenOnlyAirLeft = value;
+		m_calculator.setRetreatWhenOnlyAirLeft(value);
+	}
+	
+	public void setRetreatWhenMetaPowerIsLower(final boolean value)
+	{
+		m_retreatWhenMetaPowerIsLower = value;
+		m_calculator.setRetreatWhenMetaPowerIsLower(value);
+	}
+	
+	public void setAttackerOrderOfLosses(final String attackerOrderOfLosses)
+	{
+		m_attackerOrderOfLosses = attackerOrderOfLosses;
+		m_calculator.setAttackerOrderOfLosses(attackerOrderOfLosses);
+	}
+	
+	public void setDefenderOrderOfLosses(final String defenderOrderOfLosses)
+	{
+		m_defenderOrderOfLosses = defenderOrderOfLosses;
+		m_calculator.setDefenderOrderOfLosses(defenderOrderOfLosses);
+	}
+	
+	public void setTargetMarginOfError(final double marginOfError)
+	{
+		m_targetMarginOfError = marginOfError;
+		m_calculator.setTargetMarginOfError(marginOfError);
+	}
+	
+	public void cancel()
+	{
+		m_cancelled = true; // do not cache results cut short
+		m_calculator.cancel();
+	}
+	
+	public void shutdown()
+	{
+		if (m_data != null)
+			m_data.removeDataChangeListener(m_rulesListener);
+		clear();
+		m_calculator.shutdown();
+	}
+	
+	public int getThreadCount()
+	{
+		return m_calculator.getThreadCount();
+	}
+	
+	public void addOddsCalculatorListener(final OddsCalculatorListener listener)
+	{
+		m_calculator.addOddsCalculatorListener(listener);
+	}
+	
+	public void removeOddsCalculatorListener(final OddsCalculatorListener listener)
+	{
+		m_calculator.removeOddsCalculatorListener(listener);
+	}
+	
+	/**
+	 * A cached battle: its units in key order, and its results.
+	 */
+	private static final class CachedBattle
+	{
+		private final List<Unit> m_attackingUnits;
+		private final List<Unit> m_defendingUnits;
+		private final AggregateResults m_results;
+		
+		CachedBattle(final List<Unit> attackingUnits, final List<Unit> defendingUnits, final AggregateResults results)
+		{
+			m_attackingUnits = attackingUnits;
+			m_defendingUnits = defendingUnits;
+			m_results = results;
+		}
+	}
+}
@@ -1,13 +1,19 @@
 package games.strategy.triplea.oddsCalculator.ta;
 
+import games.strategy.engine.data.Change;
 import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.GameObjectOutputStream;
 import games.strategy.engine.data.PlayerID;
 import games.strategy.engine.data.Territory;
 import games.strategy.engine.data.TerritoryEffect;
 import games.strategy.engine.data.Unit;
-import games.strategy.engine.framework.GameDataUtils;
+import games.strategy.engine.data.events.GameDataChangeListener;
+import games.strategy.engine.framework.GameDataSnapshot;
 import games.strategy.util.CountUpAndDownLatch;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -23,12 +29,16 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Concurrent wrapper class for the OddsCalculator. It spawns multiple worker threads and splits up the run count
  * across these workers. This is mainly to be used by AIs since they call the OddsCalculator a lot.
+ * <p>
+ * Each worker has its own copy of the game data. When setGameData is called again with the same game data, the workers are brought up to date by replaying the changes
+ * made to it since they were copied, instead of copying it again.
  * 
  * @author Ron Murhammer (redrum) & Mark Christopher Duncan (veqryn)
  * @since 2014
@@ -37,6 +47,7 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 {
 	private static final Logger s_logger = Logger.getLogger(ConcurrentOddsCalculator.class.getName());
 	private static final int MAX_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private static final int MAX_CHANGES_TO_REPLAY = 5000; // past this many changes, copying the game data again is likely to be cheaper than replaying them
 	
 	private int m_currentThreads = MAX_THREADS;
 	private final ExecutorService m_executor;
@@ -44,15 +55,30 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 	private volatile boolean m_isDataSet = false; // do not let calc be set up til data is set
 	private volatile boolean m_isCalcSet = false; // do not let calc start until it is set
 	private volatile boolean m_isShutDown = false; // shortcut everything if we are shutting down
+	private volatile double m_targetMarginOfError = 0; // kept here, since the workers are replaced every time the game data is set
+	private final boolean m_useNumericSimulation; // kept here for the same reason
 	private volatile int m_cancelCurrentOperation = 0; // shortcut setting of previous game data if we are trying to set it to a new one, or shutdown
 	private final CountUpAndDownLatch m_latchSetData = new CountUpAndDownLatch(); // do not let calcing happen while we are setting game data
 	private final CountUpAndDownLatch m_latchWorkerThreadsCreation = new CountUpAndDownLatch(); // do not let setting of game data happen multiple times while we offload creating workers and copying data to a different thread
 	private final Object m_mutexSetGameData = new Object(); // do not let setting of game data happen at same time
 	private final Object m_mutexCalcIsRunning = new Object(); // do not let multiple calculations or setting calc data happen at same time
 	private final List<OddsCalculatorListener> m_listeners = new ArrayList<OddsCalculatorListener>();
+	private final ReentrantLock m_lockWorkersInUse = new ReentrantLock(); // do not let the workers' game data be updated while they are being set up or calculating
+	private final ChangeRecorder m_changeRecorder = new ChangeRecorder();
+	private volatile GameData m_sourceData = null; // the game data our workers are copies of, if they can be updated by replaying changes
 	
 	public ConcurrentOddsCalculator(final String threadNamePrefix)
 	{
+		this(threadNamePrefix, false);
+	}
+	
+	/**
+	 * @param useNumericSimulation
+	 *            whether the workers may simulate plain battles with the NumericBattleSimulator (see OddsCalculator.setUseNumericSimulation())
+	 */
+	public ConcurrentOddsCalculator(final String threadNamePrefix, final boolean useNumericSimulation)
+	{
+		m_useNumericSimulation = useNumericSimulation;
 		m_executor = Executors.newFixedThreadPool(MAX_THREADS, new DaemonThreadFactory(true, threadNamePrefix + " ConcurrentOddsCalculator Worker"));
 		s_logger.fine("Initialized executor thread pool with size: " + MAX_THREADS);
 	}
@@ -76,18 +102,20 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 			if (data == null || m_isShutDown)
 			{
 				m_workers.clear();
+				stopRecordingChanges();
 				++m_cancelCurrentOperation;
 				m_latchSetData.countDown(); // allow calcing and other stuff to go ahead
 			}
 			else
 			{
 				++m_cancelCurrentOperation;
+				final boolean updateWorkers = (data == m_sourceData && !m_workers.isEmpty());
 				m_latchWorkerThreadsCreation.increment();// increment our token, so that we can set the data in a different thread and return from this one
 				m_executor.submit(new Runnable()
 				{
 					public void run()
 					{
-						createWorkers(data);
+						createWorkers(data, updateWorkers);
 					}
 				});
 			}
@@ -113,53 +141,130 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 		return Math.min(numberOfTimesWeCanCopyMax, MAX_THREADS); // use all threads
 	}
 	
-	private void createWorkers(final GameData data)
+	private void createWorkers(final GameData data, final boolean updateExistingWorkers)
+	{
+		if (updateExistingWorkers && updateWorkers())
+		{
+			s_logger.fine("Updated existing workers");
+		}
+		else
+		{
+			copyDataToWorkers(data);
+		}
+		if (m_cancelCurrentOperation < 0 || data == null)
+		{
+			m_workers.clear(); // we could have cancelled while setting data, so clear the workers again if so
+			stopRecordingChanges();
+			m_isDataSet = false;
+		}
+		else
+		{
+			m_isDataSet = true;// should make sure that all workers have their game data set before we can call calculate and other things
+			notifyListenersGameDataIsSet();
+		}
+		m_latchWorkerThreadsCreation.countDown(); // allow setting new data to take place if it is waiting on us
+		m_latchSetData.countDown(); // allow calcing and other stuff to go ahead
+		s_logger.fine("Initialized worker thread pool with size: " + m_workers.size());
+	}
+	
+	/**
+	 * Replays the changes made to the game data since the workers copied it, or since they were last updated.
+	 * 
+	 * @return false if the workers could not be updated, and should copy the game data again
+	 */
+	private boolean updateWorkers()
+	{
+		final GameData data = m_sourceData;
+		final List<Change> changes = m_changeRecorder.takeChanges();
+		if (data == null || changes == null)
+			return false;
+		// a calculation that was cancelled could still be finishing up with the workers, in which case we leave them to it
+		if (!m_lockWorkersInUse.tryLock())
+			return false;
+		try
+		{
+			final byte[] serializedChanges;
+			data.acquireReadLock();
+			try
+			{
+				final ByteArrayOutputStream sink = new ByteArrayOutputStream(1000);
+				final ObjectOutputStream out = new GameObjectOutputStream(sink);
+				out.writeObject(changes);
+				out.close();
+				serializedChanges = sink.toByteArray();
+			} finally
+			{
+				data.releaseReadLock();
+			}
+			for (final OddsCalculator worker : m_workers)
+			{
+				if (m_cancelCurrentOperation < 0)
+					return true; // the workers are about to be cleared anyway
+				worker.updateGameData(serializedChanges);
+			}
+			return true;
+		} catch (final Exception e)
+		{
+			s_logger.log(Level.WARNING, "Could not update battle calculator workers, copying game data again", e);
+			return false;
+		} finally
+		{
+			m_lockWorkersInUse.unlock();
+		}
+	}
+	
+	private void copyDataToWorkers(final GameData data)
 	{
 		m_workers.clear();
+		stopRecordingChanges();
 		if (data != null && m_cancelCurrentOperation >= 0)
 		{
-			final long startTime = System.currentTimeMillis(); // see how long 1 copy takes (some games can get REALLY big)
-			final long startMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-			final GameData newData;
+			// serialize the data only once, and only hold the lock on it while doing that, so that the game can continue while the workers make their copies
+			final GameDataSnapshot snapshot;
+			data.acquireReadLock();
 			try
-			{ // make first copy, then release lock on it so game can continue (ie: we don't want to lock on it while we copy it 16 times, when once is enough)
-				data.acquireReadLock(); // don't let the data change while we make the first copy
-				newData = GameDataUtils.cloneGameData(data, false);
+			{
+				snapshot = createSnapshot(data);
+				// start recording while we still hold the lock, so that we see exactly the changes that are not in the snapshot
+				if (snapshot != null)
+					startRecordingChanges(data);
 			} finally
 			{
 				data.releaseReadLock();
 			}
-			m_currentThreads = getThreadsToUse((System.currentTimeMillis() - startTime), startMemory);
-			try
+			if (snapshot != null)
 			{
-				newData.acquireReadLock(); // make sure all workers are using the same data
-				int i = 0;
+				final long startTime = System.currentTimeMillis(); // see how long 1 copy takes (some games can get REALLY big)
+				final long startMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+				final GameData firstCopy = materialize(snapshot);
+				m_currentThreads = getThreadsToUse((System.currentTimeMillis() - startTime), startMemory);
+				if (firstCopy != null)
+					m_workers.add(new OddsCalculator(firstCopy, true)); // the first one uses the copy we timed above, without copying it again
 				if (m_currentThreads <= 2 || MAX_THREADS <= 2) // we are already in 1 executor thread, so we have MAX_THREADS-1 threads left to use
 				{ // if 2 or fewer threads, do not multi-thread the copying (we have already copied it once above, so at most only 1 more copy to make)
-					while (m_cancelCurrentOperation >= 0 && i < m_currentThreads)
+					int i = 1;
+					while (m_cancelCurrentOperation >= 0 && i++ < m_currentThreads)
 					{
-						m_workers.add(new OddsCalculator(newData, (m_currentThreads == ++i))); // the last one will use our already copied data from above, without copying it again
+						addWorker(snapshot);
 					}
 				}
 				else
-				{ // multi-thread our copying, cus why the heck not (it increases the speed of copying by about double)
+				{ // multi-thread our copying, since every copy is read from the same snapshot and none of them need a lock
 					final CountDownLatch workerLatch = new CountDownLatch(m_currentThreads - 1);
-					while (i < (m_currentThreads - 1))
+					for (int i = 1; i < m_currentThreads; i++)
 					{
-						++i;
 						m_executor.submit(new Runnable()
 						{
 							public void run()
 							{
 								if (m_cancelCurrentOperation >= 0)
 								{
-									m_workers.add(new OddsCalculator(newData, false));
+									addWorker(snapshot);
 								}
 								workerLatch.countDown();
 							}
 						});
 					}
-					m_workers.add(new OddsCalculator(newData, true)); // the last one will use our already copied data from above, without copying it again
 					try
 					{
 						workerLatch.await();
@@ -167,24 +272,55 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 					{
 					}
 				}
-			} finally
-			{
-				newData.releaseReadLock();
 			}
 		}
-		if (m_cancelCurrentOperation < 0 || data == null)
+	}
+	
+	private void startRecordingChanges(final GameData data)
+	{
+		m_changeRecorder.clear();
+		data.addChangeRecorder(m_changeRecorder);
+		m_sourceData = data;
+	}
+	
+	private void stopRecordingChanges()
+	{
+		final GameData data = m_sourceData;
+		m_sourceData = null;
+		if (data != null)
+			data.removeChangeRecorder(m_changeRecorder);
+		m_changeRecorder.clear();
+	}
+	
+	private static GameDataSnapshot createSnapshot(final GameData data)
+	{
+		try
 		{
-			m_workers.clear(); // we could have cancelled while setting data, so clear the workers again if so
-			m_isDataSet = false;
+			return GameDataSnapshot.create(data, false);
+		} catch (final IOException e)
+		{
+			s_logger.log(Level.SEVERE, "Could not copy game data for battle calculator", e);
+			return null;
 		}
-		else
+	}
+	
+	private static GameData materialize(final GameDataSnapshot snapshot)
+	{
+		try
 		{
-			m_isDataSet = true;// should make sure that all workers have their game data set before we can call calculate and other things
-			notifyListenersGameDataIsSet();
+			return snapshot.materialize();
+		} catch (final IOException e)
+		{
+			s_logger.log(Level.SEVERE, "Could not copy game data for battle calculator", e);
+			return null;
 		}
-		m_latchWorkerThreadsCreation.countDown(); // allow setting new data to take place if it is waiting on us
-		m_latchSetData.countDown(); // allow calcing and other stuff to go ahead
-		s_logger.fine("Initialized worker thread pool with size: " + m_workers.size());
+	}
+	
+	private void addWorker(final GameDataSnapshot snapshot)
+	{
+		final GameData copy = materialize(snapshot);
+		if (copy != null)
+			m_workers.add(new OddsCalculator(copy, true));
 	}
 	
 	public void shutdown()
@@ -193,6 +329,7 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 		m_cancelCurrentOperation = Integer.MIN_VALUE / 2;
 		cancel();
 		m_executor.shutdown();
+		stopRecordingChanges();
 		synchronized (m_listeners)
 		{
 			m_listeners.clear();
@@ -222,23 +359,34 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 		synchronized (m_mutexCalcIsRunning)
 		{
 			awaitLatch();
-			m_isCalcSet = false;
-			final int workerNum = m_workers.size();
-			final int workerRunCount = Math.max(1, (runCount / Math.max(1, workerNum)));
-			for (final OddsCalculator worker : m_workers)
+			m_lockWorkersInUse.lock();
+			try
 			{
-				if (!m_isDataSet || m_isShutDown)
+				m_isCalcSet = false;
+				final int workerNum = m_workers.size();
+				final int workerRunCount = Math.max(1, (runCount / Math.max(1, workerNum)));
+				// each worker only fights its share of the battles, and the margin of error of the combined results shrinks with the square root of the number of workers
+				final double workerMarginOfError = m_targetMarginOfError * Math.sqrt(Math.max(1, workerNum));
+				for (final OddsCalculator worker : m_workers)
 				{
-					return;// we could have attempted to set a new game data, while the old one was still being set, causing it to abort with null data
+					if (!m_isDataSet || m_isShutDown)
+					{
+						return;// we could have attempted to set a new game data, while the old one was still being set, causing it to abort with null data
+					}
+					worker.setTargetMarginOfError(workerMarginOfError);
+					worker.setUseNumericSimulation(m_useNumericSimulation);
+					worker.setCalculateData(attacker, defender, location, attacking, defending, bombarding, territoryEffects, (runCount <= 0 ? 0 : workerRunCount));
+					runCount -= workerRunCount;
 				}
-				worker.setCalculateData(attacker, defender, location, attacking, defending, bombarding, territoryEffects, (runCount <= 0 ? 0 : workerRunCount));
-				runCount -= workerRunCount;
-			}
-			if (!m_isDataSet || m_isShutDown || workerNum <= 0)
+				if (!m_isDataSet || m_isShutDown || workerNum <= 0)
+				{
+					return;
+				}
+				m_isCalcSet = true;
+			} finally
 			{
-				return;
+				m_lockWorkersInUse.unlock();
 			}
-			m_isCalcSet = true;
 		}
 	}
 	
@@ -250,72 +398,85 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 		synchronized (m_mutexCalcIsRunning)
 		{
 			awaitLatch();
-			final long start = System.currentTimeMillis();
-			// Create worker thread pool and start all workers
-			int totalRunCount = 0;
-			final List<Future<AggregateResults>> list = new ArrayList<Future<AggregateResults>>();
-			for (final OddsCalculator worker : m_workers)
+			m_lockWorkersInUse.lock();
+			try
 			{
-				if (!getIsReady())
+				final long start = System.currentTimeMillis();
+				// Create worker thread pool and start all workers
+				int totalRunCount = 0;
+				final List<Future<AggregateResults>> list = new ArrayList<Future<AggregateResults>>();
+				boolean abandoned = false;
+				for (final OddsCalculator worker : m_workers)
 				{
-					return new AggregateResults(0);// we could have attempted to set a new game data, while the old one was still being set, causing it to abort with null data
+					if (!getIsReady())
+					{
+						abandoned = true;// we could have attempted to set a new game data, while the old one was still being set, causing it to abort with null data
+						break;// but still wait for the workers we started, since their game data could be updated as soon as we let go of them
+					}
+					if (!worker.getIsReady())
+					{
+						throw new IllegalStateException("Called calculate before setting calculate data!");
+					}
+					if (worker.getRunCount() > 0)
+					{
+						totalRunCount += worker.getRunCount();
+						final Future<AggregateResults> workerResult = m_executor.submit(worker);
+						list.add(workerResult);
+					}
 				}
-				if (!worker.getIsReady())
+				
+				// Wait for all worker futures to complete and combine results
+				final AggregateResults results = new AggregateResults(totalRunCount);
+				final Set<InterruptedException> interruptExceptions = new HashSet<InterruptedException>();
+				final Map<String, Set<ExecutionException>> executionExceptions = new HashMap<String, Set<ExecutionException>>();
+				for (final Future<AggregateResults> future : list)
 				{
-					throw new IllegalStateException("Called calculate before setting calculate data!");
+					try
+					{
+						final AggregateResults result = future.get();
+						results.addResults(result);
+					} catch (final InterruptedException e)
+					{
+						interruptExceptions.add(e);
+					} catch (final ExecutionException e)
+					{
+						final String cause = e.getCause().getLocalizedMessage();
+						Set<ExecutionException> exceptions = executionExceptions.get(cause);
+						if (exceptions == null)
+							exceptions = new HashSet<ExecutionException>();
+						exceptions.add(e);
+						executionExceptions.put(cause, exceptions);
+					}
 				}
-				if (worker.getRunCount() > 0)
+				if (abandoned)
 				{
-					totalRunCount += worker.getRunCount();
-					final Future<AggregateResults> workerResult = m_executor.submit(worker);
-					list.add(workerResult);
+					return new AggregateResults(0);
 				}
-			}
-			
-			// Wait for all worker futures to complete and combine results
-			final AggregateResults results = new AggregateResults(totalRunCount);
-			final Set<InterruptedException> interruptExceptions = new HashSet<InterruptedException>();
-			final Map<String, Set<ExecutionException>> executionExceptions = new HashMap<String, Set<ExecutionException>>();
-			for (final Future<AggregateResults> future : list)
-			{
-				try
-				{
-					final AggregateResults result = future.get();
-					results.addResults(result.getResults());
-				} catch (final InterruptedException e)
+				// we don't want to scare the user with 8+ errors all for the same thing
+				if (!interruptExceptions.isEmpty())
 				{
-					interruptExceptions.add(e);
-				} catch (final ExecutionException e)
-				{
-					final String cause = e.getCause().getLocalizedMessage();
-					Set<ExecutionException> exceptions = executionExceptions.get(cause);
-					if (exceptions == null)
-						exceptions = new HashSet<ExecutionException>();
-					exceptions.add(e);
-					executionExceptions.put(cause, exceptions);
+					s_logger.log(Level.SEVERE, interruptExceptions.size() + " Battle results workers interrupted", interruptExceptions.iterator().next());
 				}
-			}
-			// we don't want to scare the user with 8+ errors all for the same thing
-			if (!interruptExceptions.isEmpty())
-			{
-				s_logger.log(Level.SEVERE, interruptExceptions.size() + " Battle results workers interrupted", interruptExceptions.iterator().next());
-			}
-			if (!executionExceptions.isEmpty())
-			{
-				Exception e = null;
-				for (final Set<ExecutionException> entry : executionExceptions.values())
+				if (!executionExceptions.isEmpty())
 				{
-					if (!entry.isEmpty())
+					Exception e = null;
+					for (final Set<ExecutionException> entry : executionExceptions.values())
 					{
-						e = entry.iterator().next();
-						s_logger.log(Level.SEVERE, entry.size() + " Battle results workers aborted by exception", e.getCause());
+						if (!entry.isEmpty())
+						{
+							e = entry.iterator().next();
+							s_logger.log(Level.SEVERE, entry.size() + " Battle results workers aborted by exception", e.getCause());
+						}
 					}
+					if (e != null)
+						throw new IllegalStateException(e.getCause());
 				}
-				if (e != null)
-					throw new IllegalStateException(e.getCause());
+				results.setTime(System.currentTimeMillis() - start);
+				return results;
+			} finally
+			{
+				m_lockWorkersInUse.unlock();
 			}
-			results.setTime(System.currentTimeMillis() - start);
-			return results;
 		}
 	}
 	
@@ -368,6 +529,11 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 		}
 	}
 	
+	public void setTargetMarginOfError(final double marginOfError)
+	{
+		m_targetMarginOfError = marginOfError;
+	}
+	
 	public void setRetreatAfterRound(final int value)
 	{
 		synchronized (m_mutexCalcIsRunning)
@@ -475,6 +641,46 @@ public class ConcurrentOddsCalculator implements IOddsCalculator
 			}
 		}
 	}
+	
+	/**
+	 * Keeps the changes made to the game data the workers were copied from. It is told about them while the game data's write lock is held, so it must stay quick.
+	 */
+	private static class ChangeRecorder implements GameDataChangeListener
+	{
+		private final List<Change> m_changes = new ArrayList<Change>();
+		private boolean m_tooManyChanges = false;
+		
+		public synchronized void gameDataChanged(final Change change)
+		{
+			if (m_tooManyChanges)
+				return;
+			if (m_changes.size() >= MAX_CHANGES_TO_REPLAY)
+			{
+				m_tooManyChanges = true;
+				m_changes.clear();
+			}
+			else
+				m_changes.add(change);
+		}
+		
+		/**
+		 * @return the changes recorded since the last call, or null if there were too many to keep
+		 */
+		synchronized List<Change> takeChanges()
+		{
+			if (m_tooManyChanges)
+				return null;
+			final List<Change> changes = new ArrayList<Change>(m_changes);
+			m_changes.clear();
+			return changes;
+		}
+		
+		synchronized void clear()
+		{
+			m_changes.clear();
+			m_tooManyChanges = false;
+		}
+	}
 }
 
 
@@ -0,0 +1,233 @@
+package games.strategy.triplea.oddsCalculator.ta;
+
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.PlayerID;
+import games.strategy.engine.data.Territory;
+import games.strategy.engine.data.TerritoryEffect;
+import games.strategy.engine.data.Unit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An odds calculator that works out the exact odds of small, plain battles, instead of fighting them thousands of times.
+ * <p>
+ * The results it returns are weighted by the probability of each outcome, so they should be read through the methods of AggregateResults, and not counted.
+ * Any battle that the NumericBattleSimulator can not solve, or that has more states than getMaxStates(), is handed to the sampling odds calculator given in the constructor.
+ * <p>
+ * Unlike the other odds calculators, this does not copy the game data, it only reads it (while holding the read lock).
+ */
+public class ExactOddsCalculator implements IOddsCalculator
+{
+	public static final int DEFAULT_MAX_STATES = 2500;
+	
+	private final IOddsCalculator m_sampler;
+	private int m_maxStates = DEFAULT_MAX_STATES;
+	private GameData m_data = null;
+	private PlayerID m_attacker = null;
+	private PlayerID m_defender = null;
+	private Territory m_location = null;
+	private Collection<Unit> m_attackingUnits = new ArrayList<Unit>();
+	private Collection<Unit> m_defendingUnits = new ArrayList<Unit>();
+	private Collection<Unit> m_bombardingUnits = new ArrayList<Unit>();
+	private Collection<TerritoryEffect> m_territoryEffects = new ArrayList<TerritoryEffect>();
+	private boolean m_keepOneAttackingLandUnit = false;
+	private boolean m_amphibious = false;
+	private int m_retreatAfterRound = -1;
+	private int m_retreatAfterXUnitsLeft = -1;
+	private boolean m_retreatWhenOnlyAirLeft = false;
+	private boolean m_retreatWhenMetaPowerIsLower = false;
+	private String m_attackerOrderOfLosses = null;
+	private String m_defenderOrderOfLosses = null;
+	private int m_runCount = 0;
+	private volatile boolean m_isCalcSet = false;
+	
+	/**
+	 * @param sampler
+	 *            the odds calculator to use for battles that can not be solved exactly. It is given the game data whenever this calculator is.
+	 */
+	public ExactOddsCalculator(final IOddsCalculator sampler)
+	{
+		m_sampler = sampler;
+	}
+	
+	public void setGameData(final GameData data)
+	{
+		m_isCalcSet = false;
+		m_data = data;
+		m_sampler.setGameData(data);
+	}
+	
+	/**
+	 * Battles where more than this many combinations of attacker hits and defender hits are possible will be sampled instead of solved.
+	 */
+	public void setMaxStates(final int maxStates)
+	{
+		m_maxStates = maxStates;
+	}
+	
+	public int getMaxStates()
+	{
+		return m_maxStates;
+	}
+	
+	public void setCalculateData(final PlayerID attacker, final PlayerID defender, final Territory location, final Collection<Unit> attacking, final Collection<Unit> defending,
+				final Collection<Unit> bombarding, final Collection<TerritoryEffect> territoryEffects, final int runCount)
+	{
+		if (m_data == null)
+		{
+			throw new IllegalStateException("Called set calculation before setting game data!");
+		}
+		m_attacker = attacker;
+		m_defender = defender;
+		m_location = location;
+		m_attackingUnits = new ArrayList<Unit>(attacking);
+		m_defendingUnits = new ArrayList<Unit>(defending);
+		m_bombardingUnits = bombarding == null ? new ArrayList<Unit>() : new ArrayList<Unit>(bombarding);
+		m_territoryEffects = territoryEffects == null ? new ArrayList<TerritoryEffect>() : new ArrayList<TerritoryEffect>(territoryEffects);
+		m_runCount = runCount;
+		m_isCalcSet = true;
+	}
+	
+	public AggregateResults setCalculateDataAndCalculate(final PlayerID attacker, final PlayerID defender, final Territory location, final Collection<Unit> attacking,
+				final Collection<Unit> defending, final Collection<Unit> bombarding, final Collection<TerritoryEffect> territoryEffects, final int runCount)
+	{
+		setCalculateData(attacker, defender, location, attacking, defending, bombarding, territoryEffects, runCount);
+		return calculate();
+	}
+	
+	public AggregateResults calculate()
+	{
+		if (!getIsReady())
+		{
+			throw new IllegalStateException("Called calculate before setting calculate data!");
+		}
+		final long start = System.currentTimeMillis();
+		final NumericBattleSimulator simulator;
+		m_data.acquireReadLock();
+		try
+		{
+			simulator = createSimulator();
+		} finally
+		{
+			m_data.releaseReadLock();
+		}
+		if (simulator == null)
+			return m_sampler.setCalculateDataAndCalculate(m_attacker, m_defender, m_location, m_attackingUnits, m_defendingUnits, m_bombardingUnits, m_territoryEffects, m_runCount);
+		final AggregateResults results = new AggregateResults(16);
+		simulator.solve(results);
+		results.setTime(System.currentTimeMillis() - start);
+		return results;
+	}
+	
+	/**
+	 * @return the compiled battle, or null if the battle has to be sampled
+	 */
+	private NumericBattleSimulator createSimulator()
+	{
+		if (!m_bombardingUnits.isEmpty() || m_amphibious || m_keepOneAttackingLandUnit || m_retreatAfterRound > -1 || m_retreatAfterXUnitsLeft > -1 || m_retreatWhenOnlyAirLeft
+					|| m_retreatWhenMetaPowerIsLower)
+			return null;
+		if (!NumericBattleSimulator.canSimulate(m_data, m_location, m_attackingUnits, m_defendingUnits))
+			return null;
+		final List<Unit> attackerOrderOfLosses = OddsCalculator.getUnitListByOOL(m_attackerOrderOfLosses, m_attackingUnits, m_data);
+		final List<Unit> defenderOrderOfLosses = OddsCalculator.getUnitListByOOL(m_defenderOrderOfLosses, m_defendingUnits, m_data);
+		final NumericBattleSimulator simulator = new NumericBattleSimulator(m_data, m_attacker, m_defender, m_location, m_attackingUnits, m_defendingUnits, m_territoryEffects,
+					attackerOrderOfLosses, defenderOrderOfLosses);
+		if (simulator.getStateCount() > m_maxStates)
+			return null;
+		return simulator;
+	}
+	
+	public int getRunCount()
+	{
+		return m_runCount;
+	}
+	
+	public boolean getIsReady()
+	{
+		return m_data != null && m_isCalcSet;
+	}
+	
+	public void setKeepOneAttackingLandUnit(final boolean bool)
+	{
+		m_keepOneAttackingLandUnit = bool;
+		m_sampler.setKeepOneAttackingLandUnit(bool);
+	}
+	
+	public void setAmphibious(final boolean bool)
+	{
+		m_amphibious = bool;
+		m_sampler.setAmphibious(bool);
+	}
+	
+	public void setRetreatAfterRound(final int value)
+	{
+		m_retreatAfterRound = value;
+		m_sampler.setRetreatAfterRound(value);
+	}
+	
+	public void setRetreatAfterXUnitsLeft(final int value)
+	{
+		m_retreatAfterXUnitsLeft = value;
+		m_sampler.setRetreatAfterXUnitsLeft(value);
+	}
+	
+	public void setRetreatWhenOnlyAirLeft(final boolean value)
+	{
+		m_retreatWhenOnlyAirLeft = value;
+		m_sampler.setRetreatWhenOnlyAirLeft(value);
+	}
+	
+	public void setRetreatWhenMetaPowerIsLower(final boolean value)
+	{
+		m_retreatWhenMetaPowerIsLower = value;
+		m_sampler.setRetreatWhenMetaPowerIsLower(value);
+	}
+	
+	public void setAttackerOrderOfLosses(final String attackerOrderOfLosses)
+	{
+		m_attackerOrderOfLosses = attackerOrderOfLosses;
+		m_sampler.setAttackerOrderOfLosses(attackerOrderOfLosses);
+	}
+	
+	public void setDefenderOrderOfLosses(final String defenderOrderOfLosses)
+	{
+		m_defenderOrderOfLosses = defenderOrderOfLosses;
+		m_sampler.setDefenderOrderOfLosses(defenderOrderOfLosses);
+	}
+	
+	/**
+	 * Only used by the sampler, since exact results have no margin of error.
+	 */
+	public void setTargetMarginOfError(final double marginOfError)
+	{
+		m_sampler.setTargetMarginOfError(marginOfError);
+	}
+	
+	public void cancel()
+	{
+		m_sampler.cancel();
+	}
+	
+	public void shutdown()
+	{
+		m_sampler.shutdown();
+	}
+	
+	public int getThreadCount()
+	{
+		return m_sampler.getThreadCount();
+	}
+	
+	public void addOddsCalculatorListener(final OddsCalculatorListener listener)
+	{
+		m_sampler.addOddsCalculatorListener(listener);
+	}
+	
+	public void removeOddsCalculatorListener(final OddsCalculatorListener listener)
+	{
+		m_sampler.removeOddsCalculatorListener(listener);
+	}
+}
@@ -46,6 +46,12 @@ public interface IOddsCalculator
 	
 	public void setDefenderOrderOfLosses(final String defenderOrderOfLosses);
 	
+	/**
+	 * Stop fighting battles once the attacker's win percentage is known to within this much (either way), instead of always doing the full run count.
+	 * Zero or less (the default) means always do the full run count.
+	 */
+	public void setTargetMarginOfError(final double marginOfError);
+	
 	public void cancel();
 	
 	public void shutdown();
@@ -0,0 +1,507 @@
+package games.strategy.triplea.oddsCalculator.ta;
+
+import games.strategy.common.delegate.BaseEditDelegate;
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.PlayerID;
+import games.strategy.engine.data.Territory;
+import games.strategy.engine.data.TerritoryEffect;
+import games.strategy.engine.data.Unit;
+import games.strategy.engine.random.MersenneTwister;
+import games.strategy.engine.random.PlainRandomSource;
+import games.strategy.triplea.attatchments.UnitAttachment;
+import games.strategy.triplea.attatchments.UnitSupportAttachment;
+import games.strategy.triplea.delegate.BattleCalculator;
+import games.strategy.triplea.delegate.DiceRoll;
+import games.strategy.triplea.delegate.IBattle.WhoWon;
+import games.strategy.triplea.delegate.Matches;
+import games.strategy.util.CompositeMatchAnd;
+import games.strategy.util.Match;
+import games.strategy.util.Tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A fast path for the OddsCalculator, which does not fight a MustFightBattle, and does not create or perform any Changes.
+ * <p>
+ * Each side of the battle is compiled once into primitive arrays: the order in which it takes losses, the extra hitpoints of each unit, and the power and rolls of each unit for every
+ * number of units already lost (so that support is still counted correctly as supporting units die). Each simulated battle after that only rolls dice and moves counters.
+ * <p>
+ * The compiled sides can also be solved exactly (see solve()), which gives the probability of every outcome instead of a sample of outcomes.
+ * <p>
+ * This is an approximation, not a replay of MustFightBattle: the order of losses is picked once, up front, while MustFightBattle picks casualties again every round, and so can
+ * make a different choice as support changes. The odds of the two can differ for battles with support, which is why the OddsCalculator only uses this when asked to.
+ * <p>
+ * Only plain battles can be compiled. Battles with AA, subs, destroyers, transports, carriers, infrastructure, suicide units, bombarding, amphibious assaults, retreats, or enemy support
+ * must still be fought by MustFightBattle, so always check canSimulate() first.
+ */
+final class NumericBattleSimulator
+{
+	private static final double s_negligibleProbability = 1.0E-12;
+	private static final Match<Unit> s_simulatableUnit = new CompositeMatchAnd<Unit>(Matches.UnitIsNotInfrastructure, Matches.UnitIsAAforAnything.invert(), Matches.UnitIsSub.invert(),
+				Matches.UnitIsDestroyer.invert(), Matches.UnitCanTransport.invert(), Matches.UnitIsLandTransport.invert(), Matches.UnitIsAirTransport.invert(), Matches.UnitIsCarrier.invert(),
+				Matches.UnitIsSuicide.invert(), Matches.UnitIsKamikaze.invert(), new Match<Unit>()
+				{
+					@Override
+					public boolean match(final Unit unit)
+					{
+						return UnitAttachment.get(unit.getType()).getWhenCombatDamaged().isEmpty();
+					}
+				});
+	
+	private final GameData m_data;
+	private final int m_diceSides;
+	private final boolean m_lowLuck;
+	private final int m_maxRounds;
+	private final Side m_attacker;
+	private final Side m_defender;
+	private final MersenneTwister m_random = new MersenneTwister(PlainRandomSource.getSeed());
+	
+	/**
+	 * Can the battle be simulated without MustFightBattle, and still give the same results? Bombarding, amphibious and retreat options are checked by the caller.
+	 */
+	static boolean canSimulate(final GameData data, final Territory location, final Collection<Unit> attacking, final Collection<Unit> defending)
+	{
+		if (BaseEditDelegate.getEditMode(data))
+			return false;
+		for (final UnitSupportAttachment support : UnitSupportAttachment.get(data))
+		{
+			// we only compile the power of each side against the other side's starting units
+			if (support.getEnemy())
+				return false;
+		}
+		final boolean isLandBattle = !location.isWater();
+		final Match<Unit> wrongTerrain = isLandBattle ? Matches.UnitIsSea : Matches.UnitIsLand;
+		return Match.allMatch(attacking, s_simulatableUnit) && Match.allMatch(defending, s_simulatableUnit) && !Match.someMatch(attacking, wrongTerrain)
+					&& !Match.someMatch(defending, wrongTerrain) && Match.allMatch(attacking, Matches.UnitCanBeInBattle(true, isLandBattle, data, 1, false, true, true))
+					&& Match.allMatch(defending, Matches.UnitCanBeInBattle(false, isLandBattle, data, 1, false, true, true));
+	}
+	
+	NumericBattleSimulator(final GameData data, final PlayerID attacker, final PlayerID defender, final Territory location, final Collection<Unit> attacking,
+				final Collection<Unit> defending, final Collection<TerritoryEffect> territoryEffects, final List<Unit> attackerOrderOfLosses, final List<Unit> defenderOrderOfLosses)
+	{
+		m_data = data;
+		m_diceSides = data.getDiceSides();
+		m_lowLuck = games.strategy.triplea.Properties.getLow_Luck(data);
+		m_maxRounds = location.isWater() ? games.strategy.triplea.Properties.getSeaBattleRounds(data) : games.strategy.triplea.Properties.getLandBattleRounds(data);
+		m_attacker = new Side(data, attacker, defender, location, attacking, defending, territoryEffects, attackerOrderOfLosses, false);
+		m_defender = new Side(data, defender, attacker, location, defending, attacking, territoryEffects, defenderOrderOfLosses, true);
+	}
+	
+	/**
+	 * Fight one battle. The only thing allocated is the returned BattleResults.
+	 */
+	BattleResults fight()
+	{
+		m_attacker.reset();
+		m_defender.reset();
+		int round = 1;
+		while (true)
+		{
+			// both sides fire at the same time, so roll both before taking any casualties
+			final int attackerHits = m_attacker.rollHits(m_random, m_diceSides, m_lowLuck);
+			final int defenderHits = m_defender.rollHits(m_random, m_diceSides, m_lowLuck);
+			m_defender.takeHits(attackerHits);
+			m_attacker.takeHits(defenderHits);
+			final WhoWon whoWon;
+			if (m_attacker.getUnitsLeft() == 0)
+				whoWon = WhoWon.DEFENDER;
+			else if (m_defender.getUnitsLeft() == 0)
+				whoWon = WhoWon.ATTACKER;
+			else if ((m_maxRounds > 0 && m_maxRounds <= round) || (!m_attacker.canHit() && !m_defender.canHit()))
+				whoWon = WhoWon.DRAW;
+			else
+			{
+				round++;
+				continue;
+			}
+			return new BattleResults(round, m_attacker.getRemainingUnits(), m_defender.getRemainingUnits(), whoWon, m_data);
+		}
+	}
+	
+	/**
+	 * The number of states that solve() has to keep track of.
+	 */
+	int getStateCount()
+	{
+		return (m_attacker.getMaxHits() + 1) * (m_defender.getMaxHits() + 1);
+	}
+	
+	/**
+	 * Work out every possible outcome of the battle, and add each one to the results, weighted by its probability.
+	 * <p>
+	 * Since a side always uses up its extra hitpoints first and then loses units in a fixed order, the number of hits a side has taken is all we need to know about it.
+	 * So we carry the probability of every (attacker hits taken, defender hits taken) pair forward one round at a time, and take out the pairs that end the battle as we go.
+	 * We stop once the chance of the battle still going on is negligible. Takes time proportional to getStateCount() for each round fought.
+	 */
+	void solve(final AggregateResults results)
+	{
+		final int attackerMaxHits = m_attacker.getMaxHits();
+		final int defenderMaxHits = m_defender.getMaxHits();
+		final int width = defenderMaxHits + 1;
+		final int attackerUnits = m_attacker.getUnitCount();
+		final int defenderUnits = m_defender.getUnitCount();
+		double[] current = new double[(attackerMaxHits + 1) * width];
+		double[] next = new double[current.length];
+		final double[] ended = new double[(attackerUnits + 1) * (defenderUnits + 1)]; // [attacker killed][defender killed], for the current round
+		current[0] = 1.0;
+		double stillFighting = 1.0;
+		int round = 1;
+		while (stillFighting > s_negligibleProbability)
+		{
+			Arrays.fill(next, 0.0);
+			for (int attackerHits = 0; attackerHits <= attackerMaxHits; attackerHits++)
+			{
+				for (int defenderHits = 0; defenderHits <= defenderMaxHits; defenderHits++)
+				{
+					final double probability = current[attackerHits * width + defenderHits];
+					if (probability == 0.0)
+						continue;
+					// the attacker rolls the hits the defender takes, and the other way around
+					final double[] hitsOnDefender = m_attacker.getHitProbabilities(m_attacker.getKilled(attackerHits), m_diceSides, m_lowLuck);
+					final double[] hitsOnAttacker = m_defender.getHitProbabilities(m_defender.getKilled(defenderHits), m_diceSides, m_lowLuck);
+					for (int i = 0; i < hitsOnAttacker.length; i++)
+					{
+						if (hitsOnAttacker[i] == 0.0)
+							continue;
+						final int row = Math.min(attackerMaxHits, attackerHits + i) * width;
+						final double rowProbability = probability * hitsOnAttacker[i];
+						for (int j = 0; j < hitsOnDefender.length; j++)
+						{
+							next[row + Math.min(defenderMaxHits, defenderHits + j)] += rowProbability * hitsOnDefender[j];
+						}
+					}
+				}
+			}
+			// same checks, in the same order, as fight()
+			final boolean lastRound = m_maxRounds > 0 && m_maxRounds <= round;
+			stillFighting = 0.0;
+			for (int attackerHits = 0; attackerHits <= attackerMaxHits; attackerHits++)
+			{
+				final int attackerKilled = m_attacker.getKilled(attackerHits);
+				for (int defenderHits = 0; defenderHits <= defenderMaxHits; defenderHits++)
+				{
+					final int index = attackerHits * width + defenderHits;
+					final double probability = next[index];
+					if (probability == 0.0)
+						continue;
+					final int defenderKilled = m_defender.getKilled(defenderHits);
+					if (attackerKilled == attackerUnits || defenderKilled == defenderUnits || lastRound || (!m_attacker.canHit(attackerKilled) && !m_defender.canHit(defenderKilled)))
+					{
+						ended[attackerKilled * (defenderUnits + 1) + defenderKilled] += probability;
+						next[index] = 0.0;
+					}
+					else
+						stillFighting += probability;
+				}
+			}
+			for (int i = 0; i < ended.length; i++)
+			{
+				if (ended[i] == 0.0)
+					continue;
+				final int attackerKilled = i / (defenderUnits + 1);
+				final int defenderKilled = i % (defenderUnits + 1);
+				final WhoWon whoWon;
+				if (attackerKilled == attackerUnits)
+					whoWon = WhoWon.DEFENDER;
+				else if (defenderKilled == defenderUnits)
+					whoWon = WhoWon.ATTACKER;
+				else
+					whoWon = WhoWon.DRAW;
+				results.addResult(new BattleResults(round, m_attacker.getRemainingUnits(attackerKilled), m_defender.getRemainingUnits(defenderKilled), whoWon, m_data), ended[i]);
+				ended[i] = 0.0;
+			}
+			final double[] swap = current;
+			current = next;
+			next = swap;
+			round++;
+		}
+	}
+	
+	/**
+	 * One side of the battle, compiled.
+	 */
+	private static final class Side
+	{
+		private final Unit[] m_order; // order of losses, first to die is first
+		private final int[] m_startingExtraHitPoints;
+		private final boolean[] m_chooseBestRoll;
+		private final int[][] m_power; // [units killed][index in m_order], many of these arrays are shared since they only change when support changes
+		private final int[][] m_rolls;
+		private final int[] m_totalPower; // [units killed], for low luck
+		private final List<List<Unit>> m_remaining; // [units killed], made on demand
+		private final double[][] m_hitProbabilities; // [units killed][hits], made on demand, for solve()
+		private final int m_totalStartingExtraHitPoints;
+		// state of the current battle
+		private final int[] m_extraHitPointsLeft;
+		private int m_totalExtraHitPointsLeft;
+		private int m_killed;
+		
+		Side(final GameData data, final PlayerID player, final PlayerID enemy, final Territory location, final Collection<Unit> units, final Collection<Unit> enemyUnits,
+					final Collection<TerritoryEffect> territoryEffects, final List<Unit> orderOfLosses, final boolean defending)
+		{
+			final List<Unit> enemyList = new ArrayList<Unit>(enemyUnits);
+			final List<Unit> sorted = BattleCalculator.sortUnitsForCasualtiesWithSupport(units, units.size(), defending, player, units, enemy, enemyList, false, new ArrayList<Unit>(),
+						location, BattleCalculator.getCostsForTUV(player, data), territoryEffects, data, true, true);
+			// units in the order of losses die first, then everyone else in the default casualty order
+			final List<Unit> order = new ArrayList<Unit>(units.size());
+			final Set<Unit> ordered = new HashSet<Unit>();
+			if (orderOfLosses != null)
+			{
+				final Set<Unit> unitSet = new HashSet<Unit>(units);
+				for (final Unit u : orderOfLosses)
+				{
+					if (unitSet.contains(u) && ordered.add(u))
+						order.add(u);
+				}
+			}
+			for (final Unit u : sorted)
+			{
+				if (ordered.add(u))
+					order.add(u);
+			}
+			final int size = order.size();
+			m_order = order.toArray(new Unit[size]);
+			m_startingExtraHitPoints = new int[size];
+			m_extraHitPointsLeft = new int[size];
+			m_chooseBestRoll = new boolean[size];
+			final boolean lhtrBombers = games.strategy.triplea.Properties.getLHTR_Heavy_Bombers(data);
+			int totalExtraHitPoints = 0;
+			for (int i = 0; i < size; i++)
+			{
+				final UnitAttachment ua = UnitAttachment.get(m_order[i].getType());
+				m_startingExtraHitPoints[i] = Math.max(0, ua.getHitPoints() - (1 + m_order[i].getHits()));
+				m_chooseBestRoll[i] = lhtrBombers || ua.getChooseBestRoll();
+				totalExtraHitPoints += m_startingExtraHitPoints[i];
+			}
+			m_totalStartingExtraHitPoints = totalExtraHitPoints;
+			m_power = new int[size + 1][];
+			m_rolls = new int[size + 1][];
+			m_totalPower = new int[size + 1];
+			m_remaining = new ArrayList<List<Unit>>(Collections.<List<Unit>> nCopies(size + 1, null));
+			m_hitProbabilities = new double[size + 1][];
+			for (int killed = 0; killed < size; killed++)
+			{
+				final List<Unit> alive = new ArrayList<Unit>(order.subList(killed, size));
+				DiceRoll.sortByStrength(alive, defending);
+				final Map<Unit, Tuple<Integer, Integer>> powerAndRolls = DiceRoll.getUnitPowerAndRollsForNormalBattles(alive, alive, enemyList, defending, false, player, data, location,
+							territoryEffects, false, new ArrayList<Unit>());
+				final int[] power = new int[size];
+				final int[] rolls = new int[size];
+				for (int i = killed; i < size; i++)
+				{
+					final Tuple<Integer, Integer> unitPowerAndRolls = powerAndRolls.get(m_order[i]);
+					power[i] = unitPowerAndRolls.getFirst();
+					rolls[i] = unitPowerAndRolls.getSecond();
+				}
+				// share the previous arrays if losing the last unit did not change anyone's support
+				if (killed > 0 && sameFrom(killed, power, m_power[killed - 1]) && sameFrom(killed, rolls, m_rolls[killed - 1]))
+				{
+					m_power[killed] = m_power[killed - 1];
+					m_rolls[killed] = m_rolls[killed - 1];
+				}
+				else
+				{
+					m_power[killed] = power;
+					m_rolls[killed] = rolls;
+				}
+				m_totalPower[killed] = DiceRoll.getTotalPowerAndRolls(powerAndRolls, data).getFirst();
+			}
+			m_power[size] = new int[size];
+			m_rolls[size] = new int[size];
+			reset();
+		}
+		
+		private static boolean sameFrom(final int start, final int[] a, final int[] b)
+		{
+			for (int i = start; i < a.length; i++)
+			{
+				if (a[i] != b[i])
+					return false;
+			}
+			return true;
+		}
+		
+		void reset()
+		{
+			System.arraycopy(m_startingExtraHitPoints, 0, m_extraHitPointsLeft, 0, m_order.length);
+			m_totalExtraHitPointsLeft = m_totalStartingExtraHitPoints;
+			m_killed = 0;
+		}
+		
+		int getUnitsLeft()
+		{
+			return m_order.length - m_killed;
+		}
+		
+		int getUnitCount()
+		{
+			return m_order.length;
+		}
+		
+		/**
+		 * The most hits this side can take before every unit is dead.
+		 */
+		int getMaxHits()
+		{
+			return m_totalStartingExtraHitPoints + m_order.length;
+		}
+		
+		/**
+		 * How many units are dead after taking this many hits, since the extra hitpoints are always used up first.
+		 */
+		int getKilled(final int hits)
+		{
+			return Math.max(0, hits - m_totalStartingExtraHitPoints);
+		}
+		
+		boolean canHit()
+		{
+			return canHit(m_killed);
+		}
+		
+		boolean canHit(final int killed)
+		{
+			final int[] power = m_power[killed];
+			final int[] rolls = m_rolls[killed];
+			for (int i = killed; i < m_order.length; i++)
+			{
+				if (power[i] > 0 && rolls[i] > 0)
+					return true;
+			}
+			return false;
+		}
+		
+		int rollHits(final MersenneTwister random, final int diceSides, final boolean lowLuck)
+		{
+			if (lowLuck)
+			{
+				final int power = m_totalPower[m_killed];
+				int hits = power / diceSides;
+				final int rollFor = power % diceSides;
+				if (rollFor > 0 && rollFor > random.nextInt(diceSides))
+					hits++;
+				return hits;
+			}
+			final int[] power = m_power[m_killed];
+			final int[] rolls = m_rolls[m_killed];
+			int hits = 0;
+			for (int i = m_killed; i < m_order.length; i++)
+			{
+				final int strength = power[i];
+				if (strength <= 0 || rolls[i] <= 0)
+					continue;
+				if (rolls[i] > 1 && m_chooseBestRoll[i])
+				{
+					for (int r = 0; r < rolls[i]; r++)
+					{
+						if (strength > random.nextInt(diceSides))
+						{
+							hits++;
+							break;
+						}
+					}
+				}
+				else
+				{
+					for (int r = 0; r < rolls[i]; r++)
+					{
+						if (strength > random.nextInt(diceSides)) // zero based
+							hits++;
+					}
+				}
+			}
+			return hits;
+		}
+		
+		/**
+		 * The chance of this side getting each number of hits in one round, with this many units already killed. Matches the odds of rollHits().
+		 */
+		double[] getHitProbabilities(final int killed, final int diceSides, final boolean lowLuck)
+		{
+			if (m_hitProbabilities[killed] != null)
+				return m_hitProbabilities[killed];
+			double[] distribution = new double[] { 1.0 };
+			if (lowLuck)
+			{
+				final int power = m_totalPower[killed];
+				final int hits = power / diceSides;
+				distribution = new double[hits + 2];
+				distribution[hits + 1] = (double) (power % diceSides) / diceSides;
+				distribution[hits] = 1.0 - distribution[hits + 1];
+			}
+			else
+			{
+				final int[] power = m_power[killed];
+				final int[] rolls = m_rolls[killed];
+				for (int i = killed; i < m_order.length; i++)
+				{
+					if (power[i] <= 0 || rolls[i] <= 0)
+						continue;
+					final double chance = (double) Math.min(power[i], diceSides) / diceSides;
+					if (rolls[i] > 1 && m_chooseBestRoll[i])
+						distribution = addRoll(distribution, 1.0 - Math.pow(1.0 - chance, rolls[i]));
+					else
+					{
+						for (int r = 0; r < rolls[i]; r++)
+						{
+							distribution = addRoll(distribution, chance);
+						}
+					}
+				}
+			}
+			m_hitProbabilities[killed] = distribution;
+			return distribution;
+		}
+		
+		private static double[] addRoll(final double[] distribution, final double chance)
+		{
+			final double[] result = new double[distribution.length + 1];
+			for (int hits = 0; hits < distribution.length; hits++)
+			{
+				result[hits] += distribution[hits] * (1.0 - chance);
+				result[hits + 1] += distribution[hits] * chance;
+			}
+			return result;
+		}
+		
+		/**
+		 * Same as the default casualty selection: use up the extra hitpoints first, then kill units in order.
+		 */
+		void takeHits(int hits)
+		{
+			for (int i = m_killed; i < m_order.length && hits > 0 && m_totalExtraHitPointsLeft > 0; i++)
+			{
+				final int damage = Math.min(hits, m_extraHitPointsLeft[i]);
+				m_extraHitPointsLeft[i] -= damage;
+				m_totalExtraHitPointsLeft -= damage;
+				hits -= damage;
+			}
+			while (hits > 0 && m_killed < m_order.length)
+			{
+				m_totalExtraHitPointsLeft -= m_extraHitPointsLeft[m_killed];
+				m_killed++;
+				hits--;
+			}
+		}
+		
+		List<Unit> getRemainingUnits()
+		{
+			return getRemainingUnits(m_killed);
+		}
+		
+		List<Unit> getRemainingUnits(final int killed)
+		{
+			// shared between results, so that thousands of results do not mean thousands of lists
+			if (m_remaining.get(killed) == null)
+				m_remaining.set(killed, Collections.unmodifiableList(new ArrayList<Unit>(Arrays.asList(m_order).subList(killed, m_order.length))));
+			return m_remaining.get(killed);
+		}
+	}
+}
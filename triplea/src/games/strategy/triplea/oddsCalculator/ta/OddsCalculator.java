@@ -6,6 +6,7 @@ import games.strategy.engine.data.ChangeFactory;
 import games.strategy.engine.data.ChangePerformer;
 import games.strategy.engine.data.CompositeChange;
 import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.GameObjectInputStream;
 import games.strategy.engine.data.PlayerID;
 import games.strategy.engine.data.Territory;
 import games.strategy.engine.data.TerritoryEffect;
@@ -16,6 +17,7 @@ import games.strategy.engine.data.UnitTypeList;
 import games.strategy.engine.delegate.IDelegateBridge;
 import games.strategy.engine.display.IDisplay;
 import games.strategy.engine.framework.GameDataUtils;
+import games.strategy.engine.framework.GameObjectStreamFactory;
 import games.strategy.engine.framework.IGameModifiedChannel;
 import games.strategy.engine.gamePlayer.IRemotePlayer;
 import games.strategy.engine.history.DelegateHistoryWriter;
@@ -44,6 +46,9 @@ import games.strategy.util.CompositeMatchAnd;
 import games.strategy.util.Match;
 import games.strategy.util.Tuple;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -80,7 +85,10 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 	private boolean m_retreatWhenMetaPowerIsLower = false;
 	private String m_attackerOrderOfLosses = null;
 	private String m_defenderOrderOfLosses = null;
+	private boolean m_useNumericSimulation = false;
+	private double m_targetMarginOfError = 0;
 	private int m_runCount = 0;
+	private Change m_setupChange = null; // what setCalculateData did to our copy of the game data, so that it can be undone
 	private volatile boolean m_cancelled = false;
 	private volatile boolean m_isDataSet = false;
 	private volatile boolean m_isCalcSet = false;
@@ -109,7 +117,61 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 		m_isDataSet = false;
 		m_isCalcSet = false;
 		m_data = (data == null ? null : GameDataUtils.cloneGameData(data, false));
-		// reset old data
+		m_setupChange = null;
+		resetCalculateData();
+		if (data != null)
+		{
+			m_isDataSet = true;
+			notifyListenersGameDataIsSet();
+		}
+	}
+	
+	/**
+	 * Brings our copy of the game data up to date, instead of copying the game data again.
+	 * 
+	 * @param changes
+	 *            the changes made to the original game data since our copy was made or last updated, written to a GameObjectOutputStream as a single List
+	 */
+	@SuppressWarnings("unchecked")
+	public void updateGameData(final byte[] changes) throws IOException
+	{
+		if (m_isRunning)
+			throw new IllegalStateException("Can not update game data while calculating");
+		if (!m_isDataSet)
+			throw new IllegalStateException("Called update game data before setting game data!");
+		m_isCalcSet = false;
+		undoSetupChange();
+		resetCalculateData();
+		final List<Change> changeList;
+		final ObjectInputStream in = new GameObjectInputStream(new GameObjectStreamFactory(m_data), new ByteArrayInputStream(changes));
+		try
+		{
+			changeList = (List<Change>) in.readObject();
+		} catch (final ClassNotFoundException e)
+		{
+			throw new IOException(e.getMessage());
+		} finally
+		{
+			in.close();
+		}
+		final ChangePerformer changePerformer = new ChangePerformer(m_data);
+		for (final Change change : changeList)
+		{
+			changePerformer.perform(change);
+		}
+	}
+	
+	private void undoSetupChange()
+	{
+		if (m_setupChange != null)
+		{
+			new ChangePerformer(m_data).perform(m_setupChange.invert());
+			m_setupChange = null;
+		}
+	}
+	
+	private void resetCalculateData()
+	{
 		m_attacker = null;
 		m_defender = null;
 		m_location = null;
@@ -118,11 +180,6 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 		m_bombardingUnits = new ArrayList<Unit>();
 		m_territoryEffects = new ArrayList<TerritoryEffect>();
 		m_runCount = 0;
-		if (data != null)
-		{
-			m_isDataSet = true;
-			notifyListenersGameDataIsSet();
-		}
 	}
 	
 	/**
@@ -146,10 +203,13 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 		m_defendingUnits = (Collection<Unit>) GameDataUtils.translateIntoOtherGameData(defending, m_data);
 		m_bombardingUnits = (Collection<Unit>) GameDataUtils.translateIntoOtherGameData(bombarding, m_data);
 		m_territoryEffects = (Collection<TerritoryEffect>) GameDataUtils.translateIntoOtherGameData(territoryEffects, m_data);
-		final ChangePerformer changePerformer = new ChangePerformer(m_data);
-		changePerformer.perform(ChangeFactory.removeUnits(m_location, m_location.getUnits().getUnits()));
-		changePerformer.perform(ChangeFactory.addUnits(m_location, m_attackingUnits));
-		changePerformer.perform(ChangeFactory.addUnits(m_location, m_defendingUnits));
+		undoSetupChange();
+		final CompositeChange setupChange = new CompositeChange();
+		setupChange.add(ChangeFactory.removeUnits(m_location, m_location.getUnits().getUnits()));
+		setupChange.add(ChangeFactory.addUnits(m_location, m_attackingUnits));
+		setupChange.add(ChangeFactory.addUnits(m_location, m_defendingUnits));
+		new ChangePerformer(m_data).perform(setupChange);
+		m_setupChange = setupChange;
 		m_runCount = runCount;
 		m_isCalcSet = true;
 	}
@@ -225,6 +285,20 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 		m_defenderOrderOfLosses = defenderOrderOfLosses;
 	}
 	
+	public void setTargetMarginOfError(final double marginOfError)
+	{
+		m_targetMarginOfError = marginOfError;
+	}
+	
+	/**
+	 * Simulate plain battles with the NumericBattleSimulator instead of fighting a MustFightBattle. This is much faster, but only approximates the casualty choices of a real battle,
+	 * so it is off by default.
+	 */
+	public void setUseNumericSimulation(final boolean value)
+	{
+		m_useNumericSimulation = value;
+	}
+	
 	public void cancel()
 	{
 		m_cancelled = true;
@@ -262,24 +336,36 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 		// BattleCalculator.EnableCasualtySortingCaching();
 		final List<Unit> attackerOrderOfLosses = OddsCalculator.getUnitListByOOL(m_attackerOrderOfLosses, m_attackingUnits, m_data);
 		final List<Unit> defenderOrderOfLosses = OddsCalculator.getUnitListByOOL(m_defenderOrderOfLosses, m_defendingUnits, m_data);
-		for (int i = 0; i < count && !m_cancelled; i++)
+		if (m_useNumericSimulation && canSimulateNumerically())
 		{
-			final CompositeChange allChanges = new CompositeChange();
-			final DummyDelegateBridge bridge1 = new DummyDelegateBridge(m_attacker, m_data, allChanges, attackerOrderOfLosses, defenderOrderOfLosses,
-						m_keepOneAttackingLandUnit, m_retreatAfterRound, m_retreatAfterXUnitsLeft, m_retreatWhenOnlyAirLeft, m_retreatWhenMetaPowerIsLower);
-			final GameDelegateBridge bridge = new GameDelegateBridge(bridge1);
-			final MustFightBattle battle = new MustFightBattle(m_location, m_attacker, m_data, battleTracker);
-			battle.setHeadless(true);
-			battle.isAmphibious();
-			battle.setUnits(m_defendingUnits, m_attackingUnits, m_bombardingUnits, (m_amphibious ? m_attackingUnits : new ArrayList<Unit>()), m_defender, m_territoryEffects);
-			// battle.setAttackingFromAndMap(attackingFromMap);
-			bridge1.setBattle(battle);
-			battle.fight(bridge);
-			rVal.addResult(new BattleResults(battle, m_data));
-			// restore the game to its original state
-			new ChangePerformer(m_data).perform(allChanges.invert());
-			battleTracker.clear();
-			battleTracker.clearBattleRecords();
+			final NumericBattleSimulator simulator = new NumericBattleSimulator(m_data, m_attacker, m_defender, m_location, m_attackingUnits, m_defendingUnits, m_territoryEffects,
+						attackerOrderOfLosses, defenderOrderOfLosses);
+			for (int i = 0; i < count && !m_cancelled && !isPreciseEnough(rVal); i++)
+			{
+				rVal.addResult(simulator.fight());
+			}
+		}
+		else
+		{
+			for (int i = 0; i < count && !m_cancelled && !isPreciseEnough(rVal); i++)
+			{
+				final CompositeChange allChanges = new CompositeChange();
+				final DummyDelegateBridge bridge1 = new DummyDelegateBridge(m_attacker, m_data, allChanges, attackerOrderOfLosses, defenderOrderOfLosses,
+							m_keepOneAttackingLandUnit, m_retreatAfterRound, m_retreatAfterXUnitsLeft, m_retreatWhenOnlyAirLeft, m_retreatWhenMetaPowerIsLower);
+				final GameDelegateBridge bridge = new GameDelegateBridge(bridge1);
+				final MustFightBattle battle = new MustFightBattle(m_location, m_attacker, m_data, battleTracker);
+				battle.setHeadless(true);
+				battle.isAmphibious();
+				battle.setUnits(m_defendingUnits, m_attackingUnits, m_bombardingUnits, (m_amphibious ? m_attackingUnits : new ArrayList<Unit>()), m_defender, m_territoryEffects);
+				// battle.setAttackingFromAndMap(attackingFromMap);
+				bridge1.setBattle(battle);
+				battle.fight(bridge);
+				rVal.addResult(new BattleResults(battle, m_data));
+				// restore the game to its original state
+				new ChangePerformer(m_data).perform(allChanges.invert());
+				battleTracker.clear();
+				battleTracker.clearBattleRecords();
+			}
 		}
 		// BattleCalculator.DisableCasualtySortingCaching();
 		rVal.setTime(System.currentTimeMillis() - start);
@@ -288,6 +374,25 @@ public class OddsCalculator implements IOddsCalculator, Callable<AggregateResult
 		return rVal;
 	}
 	
+	/**
+	 * The aggregate keeps running sums, so this is cheap enough to check after every battle.
+	 */
+	private boolean isPreciseEnough(final AggregateResults results)
+	{
+		return m_targetMarginOfError > 0 && results.getAttackerWinPercentMarginOfError() <= m_targetMarginOfError;
+	}
+	
+	/**
+	 * Plain battles, without any retreating, do not need a real MustFightBattle to be fought.
+	 */
+	private boolean canSimulateNumerically()
+	{
+		if (!m_bombardingUnits.isEmpty() || m_amphibious || m_keepOneAttackingLandUnit || m_retreatAfterRound > -1 || m_retreatAfterXUnitsLeft > -1 || m_retreatWhenOnlyAirLeft
+					|| m_retreatWhenMetaPowerIsLower)
+			return false;
+		return NumericBattleSimulator.canSimulate(m_data, m_location, m_attackingUnits, m_defendingUnits);
+	}
+	
 	public static boolean isValidOOL(final String ool, final GameData data)
 	{
 		if (ool == null || ool.trim().length() == 0)
@@ -18,18 +18,32 @@
  */
 package games.strategy.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
  * 
  * A utility class for mapping Objects to ints. <br>
  * Supports adding and comparing of maps.
+ * <p>
+ * 
+ * The ints are kept unboxed, in an open addressed table with linear probing. Removed keys leave a marker behind so that probing and iteration stay valid, the markers are cleared when the table is rebuilt. <br>
+ * The serialized form is the HashMap the class used to be built on, so older saved games can still be read.
  * 
  * @author Sean Bridges
  * @version 2.0
@@ -38,22 +52,38 @@ import java.util.Set;
 public class IntegerMap<T> implements Cloneable, Serializable
 {
 	private static final long serialVersionUID = 6856531659284300930L;
-	private final HashMap<T, Integer> m_values;
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("m_values", HashMap.class) };
+	// stands in for a null key, since null marks a free slot
+	private static final Object NULL_KEY = new Object();
+	// marks the slot of a removed key
+	private static final Object REMOVED = new Object();
+	private static final int MIN_CAPACITY = 8;
+	private transient Object[] m_keys;
+	private transient int[] m_counts;
+	// number of keys
+	private transient int m_size;
+	// number of slots that are not free, keys plus removed markers
+	private transient int m_used;
+	// changed whenever keys are added or removed, so iterators can fail fast
+	private transient int m_modCount;
 	
 	/** Creates new IntegerMap */
 	public IntegerMap()
 	{
-		m_values = new HashMap<T, Integer>();
+		this(0);
 	}
 	
 	public IntegerMap(final int size)
 	{
-		m_values = new HashMap<T, Integer>(size);
+		init(size);
 	}
 	
+	/**
+	 * The table is always kept at most half full, the load factor is only used to size it.
+	 */
 	public IntegerMap(final int size, final float loadFactor)
 	{
-		m_values = new HashMap<T, Integer>(size, loadFactor);
+		this((int) Math.min(Integer.MAX_VALUE / 4, size / Math.max(loadFactor, 0.5f)));
 	}
 	
 	public IntegerMap(final T object, final int value)
@@ -76,14 +106,10 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public IntegerMap(final IntegerMap<T> integerMap)
 	{
-		/* this will also work:
-		m_values = new HashMap<T,Integer>(integerMap.m_values);
-		 */
-		m_values = new HashMap<T, Integer>(integerMap.size());
-		for (final T t : integerMap.keySet())
-		{
-			m_values.put(t, integerMap.getInt(t));
-		}
+		m_keys = integerMap.m_keys.clone();
+		m_counts = integerMap.m_counts.clone();
+		m_size = integerMap.m_size;
+		m_used = integerMap.m_used;
 	}
 	
 	/**
@@ -94,45 +120,168 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public IntegerMap(final IntegerMap<T>[] integerMaps)
 	{
-		m_values = new HashMap<T, Integer>();
+		this();
 		for (final IntegerMap<T> integerMap : integerMaps)
 		{
 			this.add(integerMap);
 		}
 	}
 	
+	private void init(final int size)
+	{
+		int capacity = MIN_CAPACITY;
+		while (capacity < size * 2)
+		{
+			capacity <<= 1;
+		}
+		m_keys = new Object[capacity];
+		m_counts = new int[capacity];
+		m_size = 0;
+		m_used = 0;
+	}
+	
+	private static int slotOf(final Object key, final int mask)
+	{
+		final int h = key.hashCode() * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+	
+	private static Object maskNull(final Object key)
+	{
+		return key == null ? NULL_KEY : key;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private T unmaskNull(final Object key)
+	{
+		return key == NULL_KEY ? null : (T) key;
+	}
+	
+	/**
+	 * @return the slot holding the key, or -1 if the key is not in the map.
+	 */
+	private int find(final Object key)
+	{
+		final Object k = maskNull(key);
+		final Object[] keys = m_keys;
+		final int mask = keys.length - 1;
+		int i = slotOf(k, mask);
+		Object current;
+		while ((current = keys[i]) != null)
+		{
+			if (current == k || (current != REMOVED && current.equals(k)))
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @return the slot holding the key, adding the key with a count of 0 if it is not in the map.
+	 *         Only adding a key changes the structure of the map, so updating a key that is already there never disturbs an iteration.
+	 */
+	private int findOrInsert(final Object key)
+	{
+		final int found = find(key);
+		if (found != -1)
+			return found;
+		if ((m_used + 1) * 2 > m_keys.length)
+			rebuild();
+		final Object k = maskNull(key);
+		final Object[] keys = m_keys;
+		final int mask = keys.length - 1;
+		int i = slotOf(k, mask);
+		int firstRemoved = -1;
+		Object current;
+		while ((current = keys[i]) != null)
+		{
+			if (current == REMOVED)
+			{
+				if (firstRemoved == -1)
+					firstRemoved = i;
+			}
+			else if (current == k || current.equals(k))
+				return i;
+			i = (i + 1) & mask;
+		}
+		if (firstRemoved != -1)
+			i = firstRemoved;
+		else
+			m_used++;
+		keys[i] = k;
+		m_counts[i] = 0;
+		m_size++;
+		m_modCount++;
+		return i;
+	}
+	
+	/**
+	 * Rebuild the table sized for the keys it holds, dropping any removed markers.
+	 */
+	private void rebuild()
+	{
+		final Object[] oldKeys = m_keys;
+		final int[] oldCounts = m_counts;
+		init(m_size + 1);
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			final Object k = oldKeys[i];
+			if (k == null || k == REMOVED)
+				continue;
+			final int mask = m_keys.length - 1;
+			int j = slotOf(k, mask);
+			while (m_keys[j] != null)
+			{
+				j = (j + 1) & mask;
+			}
+			m_keys[j] = k;
+			m_counts[j] = oldCounts[i];
+			m_size++;
+			m_used++;
+		}
+		m_modCount++;
+	}
+	
+	private void removeSlot(final int slot)
+	{
+		m_keys[slot] = REMOVED;
+		m_counts[slot] = 0;
+		m_size--;
+		m_modCount++;
+	}
+	
 	public int size()
 	{
-		return m_values.size();
+		return m_size;
 	}
 	
+	/**
+	 * A null value is stored as 0.
+	 */
 	public void put(final T key, final Integer value)
 	{
-		m_values.put(key, value);
+		put(key, value == null ? 0 : value.intValue());
 	}
 	
 	public void put(final T key, final int value)
 	{
-		final Integer obj = Integer.valueOf(value);
-		m_values.put(key, obj);
+		final int slot = findOrInsert(key);
+		m_counts[slot] = value;
 	}
 	
 	public void putAll(final Collection<T> keys, final int value)
 	{
-		final Integer obj = Integer.valueOf(value);
-		final Iterator<T> iter = keys.iterator();
-		while (iter.hasNext())
+		for (final T key : keys)
 		{
-			put(iter.next(), obj);
+			put(key, value);
 		}
 	}
 	
 	public void addAll(final Collection<T> keys, final int value)
 	{
-		final Iterator<T> iter = keys.iterator();
-		while (iter.hasNext())
+		for (final T key : keys)
 		{
-			add(iter.next(), value);
+			add(key, value);
 		}
 	}
 	
@@ -141,10 +290,10 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public int getInt(final T key)
 	{
-		final Integer val = m_values.get(key);
-		if (val == null)
+		final int slot = find(key);
+		if (slot == -1)
 			return 0;
-		return val.intValue();
+		return m_counts[slot];
 	}
 	
 	public void add(final T key, final Integer value)
@@ -154,14 +303,8 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	
 	public void add(final T key, final int value)
 	{
-		if (m_values.get(key) == null)
-			put(key, value);
-		else
-		{
-			final Integer oldVal = m_values.get(key);
-			final int newVal = oldVal.intValue() + value;
-			put(key, newVal);
-		}
+		final int slot = findOrInsert(key);
+		m_counts[slot] += value;
 	}
 	
 	/**
@@ -175,9 +318,11 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public void multiplyAllValuesBy(final double multiplyBy, final int RoundType)
 	{
-		for (final T t : keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			double val = m_values.get(t);
+			if (m_keys[i] == null || m_keys[i] == REMOVED)
+				continue;
+			double val = m_counts[i];
 			switch (RoundType)
 			{
 				case 1:
@@ -193,23 +338,96 @@ public class IntegerMap<T> implements Cloneable, Serializable
 					val = val * multiplyBy;
 					break;
 			}
-			put(t, (int) val);
+			m_counts[i] = (int) val;
 		}
 	}
 	
 	public void clear()
 	{
-		m_values.clear();
+		Arrays.fill(m_keys, null);
+		Arrays.fill(m_counts, 0);
+		m_size = 0;
+		m_used = 0;
+		m_modCount++;
 	}
 	
 	public Set<T> keySet()
 	{
-		return m_values.keySet();
+		return new AbstractSet<T>()
+		{
+			@Override
+			public Iterator<T> iterator()
+			{
+				return new SlotIterator<T>()
+				{
+					@Override
+					T get(final int slot)
+					{
+						return unmaskNull(m_keys[slot]);
+					}
+				};
+			}
+			
+			@Override
+			public int size()
+			{
+				return m_size;
+			}
+			
+			@Override
+			@SuppressWarnings("unchecked")
+			public boolean contains(final Object o)
+			{
+				return containsKey((T) o);
+			}
+			
+			@Override
+			public boolean remove(final Object o)
+			{
+				final int slot = find(o);
+				if (slot == -1)
+					return false;
+				removeSlot(slot);
+				return true;
+			}
+			
+			@Override
+			public void clear()
+			{
+				IntegerMap.this.clear();
+			}
+		};
 	}
 	
 	public Collection<Integer> values()
 	{
-		return m_values.values();
+		return new AbstractCollection<Integer>()
+		{
+			@Override
+			public Iterator<Integer> iterator()
+			{
+				return new SlotIterator<Integer>()
+				{
+					@Override
+					Integer get(final int slot)
+					{
+						return m_counts[slot];
+					}
+				};
+			}
+			
+			@Override
+			public int size()
+			{
+				return m_size;
+			}
+			
+			@Override
+			public void clear()
+			{
+				IntegerMap.this.clear();
+			}
+		};
 	}
 	
 	/**
@@ -219,12 +437,20 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public boolean allValuesAreSame()
 	{
-		if (m_values.isEmpty())
+		if (m_size == 0)
 			return false;
-		final int first = m_values.values().iterator().next();
-		for (final int value : m_values.values())
+		boolean first = true;
+		int firstValue = 0;
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (first != value)
+			if (m_keys[i] == null || m_keys[i] == REMOVED)
+				continue;
+			if (first)
+			{
+				firstValue = m_counts[i];
+				first = false;
+			}
+			else if (firstValue != m_counts[i])
 				return false;
 		}
 		return true;
@@ -237,11 +463,11 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public boolean allValuesEqual(final int integer)
 	{
-		if (m_values.isEmpty())
+		if (m_size == 0)
 			return false;
-		for (final int value : m_values.values())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (integer != value)
+			if (m_keys[i] != null && m_keys[i] != REMOVED && integer != m_counts[i])
 				return false;
 		}
 		return true;
@@ -254,13 +480,13 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public int highestValue()
 	{
-		if (m_values.isEmpty())
+		if (m_size == 0)
 			return 0;
 		int max = Integer.MIN_VALUE;
-		for (final int value : m_values.values())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (value > max)
-				max = value;
+			if (m_keys[i] != null && m_keys[i] != REMOVED && m_counts[i] > max)
+				max = m_counts[i];
 		}
 		return max;
 	}
@@ -272,13 +498,13 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public int lowestValue()
 	{
-		if (m_values.isEmpty())
+		if (m_size == 0)
 			return 0;
 		int min = Integer.MAX_VALUE;
-		for (final int value : m_values.values())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (value < min)
-				min = value;
+			if (m_keys[i] != null && m_keys[i] != REMOVED && m_counts[i] < min)
+				min = m_counts[i];
 		}
 		return min;
 	}
@@ -288,16 +514,16 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public T highestKey()
 	{
-		if (m_values.isEmpty())
+		if (m_size == 0)
 			return null;
 		int max = Integer.MIN_VALUE;
 		T rVal = null;
-		for (final Entry<T, Integer> entry : m_values.entrySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (entry.getValue() > max)
+			if (m_keys[i] != null && m_keys[i] != REMOVED && m_counts[i] > max)
 			{
-				max = entry.getValue();
-				rVal = entry.getKey();
+				max = m_counts[i];
+				rVal = unmaskNull(m_keys[i]);
 			}
 		}
 		return rVal;
@@ -308,16 +534,16 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public T lowestKey()
 	{
-		if (m_values.isEmpty())
+		if (m_size == 0)
 			return null;
 		int min = Integer.MAX_VALUE;
 		T rVal = null;
-		for (final Entry<T, Integer> entry : m_values.entrySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (entry.getValue() < min)
+			if (m_keys[i] != null && m_keys[i] != REMOVED && m_counts[i] < min)
 			{
-				min = entry.getValue();
-				rVal = entry.getKey();
+				min = m_counts[i];
+				rVal = unmaskNull(m_keys[i]);
 			}
 		}
 		return rVal;
@@ -329,27 +555,22 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	public int totalValues()
 	{
 		int sum = 0;
-		for (final Integer value : m_values.values())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			sum += value.intValue();
+			if (m_keys[i] != null && m_keys[i] != REMOVED)
+				sum += m_counts[i];
 		}
 		return sum;
 	}
 	
 	public void add(final IntegerMap<T> map)
 	{
-		for (final T key : map.keySet())
-		{
-			add(key, map.getInt(key));
-		}
+		addMultiple(map, 1);
 	}
 	
 	public void subtract(final IntegerMap<T> map)
 	{
-		for (final T key : map.keySet())
-		{
-			add(key, -map.getInt(key));
-		}
+		addMultiple(map, -1);
 	}
 	
 	/**
@@ -362,9 +583,10 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public boolean greaterThanOrEqualTo(final IntegerMap<T> map)
 	{
-		for (final T key : map.keySet())
+		final Object[] keys = map.m_keys;
+		for (int i = 0; i < keys.length; i++)
 		{
-			if (!(this.getInt(key) >= map.getInt(key)))
+			if (keys[i] != null && keys[i] != REMOVED && !(this.getInt(map.unmaskNull(keys[i])) >= map.m_counts[i]))
 				return false;
 		}
 		return true;
@@ -375,9 +597,9 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public boolean isPositive()
 	{
-		for (final T key : m_values.keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (getInt(key) < 0)
+			if (m_keys[i] != null && m_keys[i] != REMOVED && m_counts[i] < 0)
 				return false;
 		}
 		return true;
@@ -385,9 +607,7 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	
 	public IntegerMap<T> copy()
 	{
-		final IntegerMap<T> copy = new IntegerMap<T>();
-		copy.add(this);
-		return copy;
+		return new IntegerMap<T>(this);
 	}
 	
 	@Override
@@ -401,17 +621,25 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	 */
 	public void addMultiple(final IntegerMap<T> map, final int multiple)
 	{
-		for (final T key : map.keySet())
+		if (map == this)
 		{
-			add(key, map.getInt(key) * multiple);
+			multiplyAllValuesBy(multiple + 1, 0);
+			return;
+		}
+		final Object[] keys = map.m_keys;
+		final int[] counts = map.m_counts;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] != null && keys[i] != REMOVED)
+				add(map.unmaskNull(keys[i]), counts[i] * multiple);
 		}
 	}
 	
 	public boolean someKeysMatch(final Match<T> matcher)
 	{
-		for (final T obj : m_values.keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (matcher.match(obj))
+			if (m_keys[i] != null && m_keys[i] != REMOVED && matcher.match(unmaskNull(m_keys[i])))
 				return true;
 		}
 		return false;
@@ -419,9 +647,9 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	
 	public boolean allKeysMatch(final Match<T> matcher)
 	{
-		for (final T obj : m_values.keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (!matcher.match(obj))
+			if (m_keys[i] != null && m_keys[i] != REMOVED && !matcher.match(unmaskNull(m_keys[i])))
 				return false;
 		}
 		return true;
@@ -430,10 +658,10 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	public Collection<T> getKeyMatches(final Match<T> matcher)
 	{
 		final Collection<T> values = new ArrayList<T>();
-		for (final T obj : m_values.keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (matcher.match(obj))
-				values.add(obj);
+			if (m_keys[i] != null && m_keys[i] != REMOVED && matcher.match(unmaskNull(m_keys[i])))
+				values.add(unmaskNull(m_keys[i]));
 		}
 		return values;
 	}
@@ -441,10 +669,10 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	public int sumMatches(final Match<T> matcher)
 	{
 		int sum = 0;
-		for (final T obj : m_values.keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (matcher.match(obj))
-				sum += getInt(obj);
+			if (m_keys[i] != null && m_keys[i] != REMOVED && matcher.match(unmaskNull(m_keys[i])))
+				sum += m_counts[i];
 		}
 		return sum;
 	}
@@ -457,36 +685,59 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	
 	public void removeMatchingKeys(final Match<T> aMatch)
 	{
-		final Collection<T> badKeys = getKeyMatches(aMatch);
-		removeKeys(badKeys);
+		for (int i = 0; i < m_keys.length; i++)
+		{
+			if (m_keys[i] != null && m_keys[i] != REMOVED && aMatch.match(unmaskNull(m_keys[i])))
+				removeSlot(i);
+		}
 	}
 	
 	public void removeKey(final T key)
 	{
-		m_values.remove(key);
-	}
-	
-	private void removeKeys(final Collection<T> keys)
-	{
-		for (final T key : keys)
-		{
-			removeKey(key);
-		}
+		final int slot = find(key);
+		if (slot != -1)
+			removeSlot(slot);
 	}
 	
 	public boolean containsKey(final T key)
 	{
-		return m_values.containsKey(key);
+		return find(key) != -1;
 	}
 	
 	public boolean isEmpty()
 	{
-		return m_values.isEmpty();
+		return m_size == 0;
 	}
 	
 	public Set<Entry<T, Integer>> entrySet()
 	{
-		return m_values.entrySet();
+		return new AbstractSet<Entry<T, Integer>>()
+		{
+			@Override
+			public Iterator<Entry<T, Integer>> iterator()
+			{
+				return new SlotIterator<Entry<T, Integer>>()
+				{
+					@Override
+					Entry<T, Integer> get(final int slot)
+					{
+						return new SlotEntry(slot);
+					}
+				};
+			}
+			
+			@Override
+			public int size()
+			{
+				return m_size;
+			}
+			
+			@Override
+			public void clear()
+			{
+				IntegerMap.this.clear();
+			}
+		};
 	}
 	
 	@Override
@@ -494,21 +745,30 @@ public class IntegerMap<T> implements Cloneable, Serializable
 	{
 		final StringBuilder buf = new StringBuilder();
 		buf.append("IntegerMap:\n");
-		final Iterator<T> iter = m_values.keySet().iterator();
-		if (!iter.hasNext())
+		if (m_size == 0)
 			buf.append("empty\n");
-		while (iter.hasNext())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			final T current = iter.next();
-			buf.append(current).append(" -> ").append(getInt(current)).append("\n");
+			if (m_keys[i] != null && m_keys[i] != REMOVED)
+				buf.append(unmaskNull(m_keys[i])).append(" -> ").append(m_counts[i]).append("\n");
 		}
 		return buf.toString();
 	}
 	
+	/**
+	 * The same hash code the equivalent HashMap of Integers would have.
+	 */
 	@Override
 	public int hashCode()
 	{
-		return m_values.hashCode();
+		int h = 0;
+		for (int i = 0; i < m_keys.length; i++)
+		{
+			final Object k = m_keys[i];
+			if (k != null && k != REMOVED)
+				h += (k == NULL_KEY ? 0 : k.hashCode()) ^ m_counts[i];
+		}
+		return h;
 	}
 	
 	/**
@@ -525,15 +785,155 @@ public class IntegerMap<T> implements Cloneable, Serializable
 		if (o == null || !(o instanceof IntegerMap))
 			return false;
 		final IntegerMap<T> map = (IntegerMap<T>) o;
-		if (!map.keySet().equals(this.keySet()))
-			return false;
-		if (!map.m_values.equals(this.m_values))
+		if (map.m_size != m_size)
 			return false;
-		for (final T key : map.keySet())
+		for (int i = 0; i < m_keys.length; i++)
 		{
-			if (!(this.getInt(key) == map.getInt(key)))
+			if (m_keys[i] == null || m_keys[i] == REMOVED)
+				continue;
+			final int slot = map.find(unmaskNull(m_keys[i]));
+			if (slot == -1 || map.m_counts[slot] != m_counts[i])
 				return false;
 		}
 		return true;
 	}
+	
+	private void writeObject(final ObjectOutputStream out) throws IOException
+	{
+		final HashMap<T, Integer> values = new HashMap<T, Integer>(Math.max(16, m_size * 2));
+		for (int i = 0; i < m_keys.length; i++)
+		{
+			if (m_keys[i] != null && m_keys[i] != REMOVED)
+				values.put(unmaskNull(m_keys[i]), m_counts[i]);
+		}
+		final ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("m_values", values);
+		out.writeFields();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException
+	{
+		final ObjectInputStream.GetField fields = in.readFields();
+		final Map<T, Integer> values = (Map<T, Integer>) fields.get("m_values", null);
+		init(values == null ? 0 : values.size());
+		if (values != null)
+		{
+			for (final Entry<T, Integer> entry : values.entrySet())
+			{
+				put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Walks the slots that hold keys.
+	 */
+	private abstract class SlotIterator<E> implements Iterator<E>
+	{
+		private int m_next = -1;
+		private int m_last = -1;
+		private int m_expectedModCount = m_modCount;
+		
+		SlotIterator()
+		{
+			advance();
+		}
+		
+		private void advance()
+		{
+			m_next++;
+			while (m_next < m_keys.length && (m_keys[m_next] == null || m_keys[m_next] == REMOVED))
+			{
+				m_next++;
+			}
+		}
+		
+		abstract E get(int slot);
+		
+		public boolean hasNext()
+		{
+			return m_next < m_keys.length;
+		}
+		
+		public E next()
+		{
+			if (m_expectedModCount != m_modCount)
+				throw new ConcurrentModificationException();
+			if (!hasNext())
+				throw new NoSuchElementException();
+			m_last = m_next;
+			advance();
+			return get(m_last);
+		}
+		
+		public void remove()
+		{
+			if (m_last == -1)
+				throw new IllegalStateException();
+			if (m_expectedModCount != m_modCount)
+				throw new ConcurrentModificationException();
+			removeSlot(m_last);
+			m_last = -1;
+			m_expectedModCount = m_modCount;
+		}
+	}
+	
+	/**
+	 * A view of one slot, writing through to the map while the slot still holds the same key.
+	 */
+	private class SlotEntry implements Entry<T, Integer>
+	{
+		private final int m_slot;
+		private final Object m_key;
+		
+		SlotEntry(final int slot)
+		{
+			m_slot = slot;
+			m_key = m_keys[slot];
+		}
+		
+		public T getKey()
+		{
+			return unmaskNull(m_key);
+		}
+		
+		public Integer getValue()
+		{
+			return m_keys[m_slot] == m_key ? m_counts[m_slot] : getInt(getKey());
+		}
+		
+		public Integer setValue(final Integer value)
+		{
+			final Integer old = getValue();
+			if (m_keys[m_slot] == m_key)
+				m_counts[m_slot] = value == null ? 0 : value.intValue();
+			else
+				put(getKey(), value);
+			return old;
+		}
+		
+		@Override
+		public boolean equals(final Object o)
+		{
+			if (!(o instanceof Entry))
+				return false;
+			final Entry<?, ?> other = (Entry<?, ?>) o;
+			final T key = getKey();
+			return (key == null ? other.getKey() == null : key.equals(other.getKey())) && getValue().equals(other.getValue());
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			final T key = getKey();
+			return (key == null ? 0 : key.hashCode()) ^ getValue().intValue();
+		}
+		
+		@Override
+		public String toString()
+		{
+			return getKey() + "=" + getValue();
+		}
+	}
 }
@@ -18,6 +18,8 @@
  */
 package games.strategy.engine.data;
 
+import games.strategy.engine.data.events.TerritoryListener;
+
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
@@ -27,6 +29,7 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
@@ -101,6 +104,108 @@ public class ChangeTest extends TestCase
 		assertEquals(can.getUnits().getUnitCount(), 5);
 	}
 	
+	public void testUnitCountsFollowChanges()
+	{
+		final Territory can = m_data.getMap().getTerritory("canada");
+		final UnitType inf = m_data.getUnitTypeList().getUnitType("inf");
+		final PlayerID owner = can.getUnits().getUnits().iterator().next().getOwner();
+		final PlayerID us = m_data.getPlayerList().getPlayerID("bush");
+		final int infantry = can.getUnits().getUnitCount(inf);
+		assertEquals(infantry, can.getUnits().getUnitCount(inf, owner));
+		final ChangePerformer changePerformer = new ChangePerformer(m_data);
+		final Collection<Unit> units = can.getUnits().getUnits(inf, 2);
+		final Change remove = ChangeFactory.removeUnits(can, units);
+		changePerformer.perform(remove);
+		assertEquals(infantry - 2, can.getUnits().getUnitCount(inf));
+		changePerformer.perform(remove.invert());
+		assertEquals(infantry, can.getUnits().getUnitCount(inf));
+		// changing the owner of units moves them to the new owner's counts
+		final Change capture = ChangeFactory.changeOwner(units, us, can);
+		changePerformer.perform(capture);
+		assertEquals(infantry - 2, can.getUnits().getUnitCount(inf, owner));
+		assertEquals(2, can.getUnits().getUnitCount(inf, us));
+		assertEquals(2, can.getUnits().getUnitsByType(us).getInt(inf));
+		assertTrue(can.getUnits().hasUnitsFromMultiplePlayers());
+		changePerformer.perform(capture.invert());
+		assertEquals(0, can.getUnits().getUnitCount(us));
+		assertEquals(infantry, can.getUnits().getUnitCount(inf));
+	}
+	
+	public void testMergeTerritoryNotifications()
+	{
+		final Territory can = m_data.getMap().getTerritory("canada");
+		final UnitType inf = m_data.getUnitTypeList().getUnitType("inf");
+		final List<Territory> notified = new ArrayList<Territory>();
+		m_data.addTerritoryListener(new TerritoryListener()
+		{
+			public void unitsChanged(final Territory territory)
+			{
+				notified.add(territory);
+			}
+			
+			public void ownerChanged(final Territory territory)
+			{
+			}
+			
+			public void attachmentChanged(final Territory territory)
+			{
+			}
+		});
+		final ChangePerformer changePerformer = new ChangePerformer(m_data);
+		m_data.mergeTerritoryNotifications(new Runnable()
+		{
+			public void run()
+			{
+				for (int i = 0; i < 3; i++)
+				{
+					changePerformer.perform(ChangeFactory.addUnits(can, inf.create(1, null)));
+				}
+				assertTrue(notified.isEmpty());
+			}
+		});
+		assertEquals(Collections.singletonList(can), notified);
+		assertEquals(8, can.getUnits().getUnitCount());
+		// without merging, each change is notified
+		changePerformer.perform(ChangeFactory.addUnits(can, inf.create(1, null)));
+		assertEquals(2, notified.size());
+	}
+	
+	public void testMergedNotificationsSurviveFailingListener()
+	{
+		final Territory can = m_data.getMap().getTerritory("canada");
+		final Territory us = m_data.getMap().getTerritory("us");
+		final UnitType inf = m_data.getUnitTypeList().getUnitType("inf");
+		final List<Territory> notified = new ArrayList<Territory>();
+		m_data.addTerritoryListener(new TerritoryListener()
+		{
+			public void unitsChanged(final Territory territory)
+			{
+				notified.add(territory);
+				if (territory == can)
+					throw new IllegalStateException("expected by the test");
+			}
+			
+			public void ownerChanged(final Territory territory)
+			{
+			}
+			
+			public void attachmentChanged(final Territory territory)
+			{
+			}
+		});
+		final ChangePerformer changePerformer = new ChangePerformer(m_data);
+		m_data.mergeTerritoryNotifications(new Runnable()
+		{
+			public void run()
+			{
+				changePerformer.perform(ChangeFactory.addUnits(can, inf.create(1, null)));
+				changePerformer.perform(ChangeFactory.addUnits(us, inf.create(1, null)));
+			}
+		});
+		assertEquals(2, notified.size());
+		assertEquals(us, notified.get(1));
+	}
+	
 	public void testSerializeUnitsRemoteTerritory() throws Exception
 	{
 		// make sure we now where we are starting
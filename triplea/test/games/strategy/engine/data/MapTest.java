@@ -18,8 +18,12 @@
  */
 package games.strategy.engine.data;
 
+import games.strategy.triplea.delegate.Matches;
 import games.strategy.util.Match;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -272,4 +276,72 @@ public class MapTest extends TestCase
 		assertTrue(neighbors.contains(bb));
 		assertTrue(neighbors.contains(ca));
 	}
+	
+	public void testDistancesFollowMapChanges()
+	{
+		assertEquals(-1, map.getLandDistance(aa, cd));
+		assertNull(map.getLandRoute(aa, cd));
+		map.addOneWayConnection(ad, cd);
+		assertEquals(4, map.getLandDistance(aa, cd));
+		assertEquals(-1, map.getLandDistance(cd, aa));
+		final Route rt = map.getLandRoute(aa, cd);
+		assertEquals(4, rt.numberOfSteps());
+		assertEquals(ad, rt.getTerritoryAtStep(2));
+		assertTrue(map.isValidRoute(rt));
+	}
+	
+	public void testNeighborsOfManyTerritories()
+	{
+		final Set<Territory> frontier = new HashSet<Territory>();
+		frontier.add(aa);
+		frontier.add(ad);
+		final TerritorySet landNeighbors = map.getNeighbors(frontier, 1, Matches.TerritoryIsLand);
+		assertEquals(3, landNeighbors.size());
+		assertTrue(landNeighbors.containsAll(Arrays.asList(ab, ba, ac)));
+		final Match<Territory> landButNotBB = new Match<Territory>()
+		{
+			@Override
+			public boolean match(final Territory t)
+			{
+				return !t.isWater() && t != bb;
+			}
+		};
+		final TerritorySet neighbors = map.getNeighbors(frontier, 2, landButNotBB);
+		assertEquals(4, neighbors.size());
+		assertTrue(neighbors.containsAll(landNeighbors));
+		assertTrue(neighbors.contains(ca));
+		assertFalse(neighbors.contains(aa));
+		neighbors.retainAll(map.getNeighbors(Collections.singleton(ca), 1));
+		assertEquals(1, neighbors.size());
+		assertEquals(ba, neighbors.iterator().next());
+		assertEquals(1, map.getDistance(Arrays.asList(aa, dd), cd, null));
+		assertEquals(2, map.getDistance(Arrays.asList(aa, ca), db, Matches.TerritoryIsLand));
+		assertEquals(0, map.getDistance(Arrays.asList(aa, ca), ca, Matches.TerritoryIsLand));
+		assertEquals(-1, map.getDistance(Arrays.asList(aa, da), cd, Matches.TerritoryIsLand));
+	}
+	
+	public void testCheapestRoute()
+	{
+		final RouteFinder.Cost avoidBD = new RouteFinder.Cost()
+		{
+			public int getCost(final Territory from, final Territory to)
+			{
+				return to == bd ? 10 : 1;
+			}
+		};
+		final RouteFinder finder = new RouteFinder(map, null, avoidBD, RouteFinder.stepsToEnd(map, 1));
+		Route route = finder.findRoute(aa, cd);
+		assertEquals(5, route.numberOfSteps());
+		assertEquals(5, finder.getLastCost());
+		assertFalse(route.getAllTerritories().contains(bd));
+		assertTrue(map.isValidRoute(route));
+		route = finder.findRoute(ad, cd);
+		assertEquals(4, route.numberOfSteps());
+		assertEquals(4, finder.getLastCost());
+		assertNull(finder.findRoute(aa, nowhere));
+		assertEquals(-1, finder.getLastCost());
+		final RouteFinder landFinder = new RouteFinder(map, Matches.TerritoryIsLand);
+		assertEquals(2, landFinder.findRoute(aa, ca).numberOfSteps());
+		assertNull(landFinder.findRoute(aa, cd));
+	}
 }
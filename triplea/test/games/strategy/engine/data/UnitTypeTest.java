@@ -0,0 +1,55 @@
+package games.strategy.engine.data;
+
+import games.strategy.triplea.Constants;
+import games.strategy.triplea.attatchments.UnitAttachment;
+import games.strategy.triplea.xml.LoadGameUtil;
+
+import junit.framework.TestCase;
+
+public class UnitTypeTest extends TestCase
+{
+	private GameData m_data;
+	private UnitType m_infantry;
+	private UnitAttachment m_original;
+	
+	@Override
+	protected void setUp() throws Exception
+	{
+		m_data = LoadGameUtil.loadGame("World War II Revised Test", "revised_test.xml");
+		m_infantry = m_data.getUnitTypeList().getUnitType("infantry");
+		m_original = m_infantry.getUnitAttachment();
+		assertSame(m_infantry.getAttachment(Constants.UNIT_ATTACHMENT_NAME), m_original);
+	}
+	
+	public void testAddAndRemoveAttachmentClearCachedUnitAttachment() throws Exception
+	{
+		final UnitAttachment replacement = new UnitAttachment(Constants.UNIT_ATTACHMENT_NAME, m_infantry, m_data);
+		m_infantry.addAttachment(Constants.UNIT_ATTACHMENT_NAME, replacement);
+		assertSame(replacement, m_infantry.getUnitAttachment());
+		m_infantry.removeAttachment(Constants.UNIT_ATTACHMENT_NAME);
+		assertNull(m_infantry.getUnitAttachment());
+		m_infantry.addAttachment(Constants.UNIT_ATTACHMENT_NAME, m_original);
+		assertSame(m_original, m_infantry.getUnitAttachment());
+	}
+	
+	public void testCachedUnitAttachmentFollowsChanges() throws Exception
+	{
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final ChangePerformer performer = new ChangePerformer(m_data);
+		// a ChangeAttachmentChange changes the attachment in place, so the cached attachment must show the new value
+		final Change attackChange = ChangeFactory.attachmentPropertyChange(m_original, "5", "attack");
+		performer.perform(attackChange);
+		assertSame(m_original, m_infantry.getUnitAttachment());
+		assertEquals(5, m_infantry.getUnitAttachment().getAttack(germans));
+		performer.perform(attackChange.invert());
+		assertEquals(1, m_infantry.getUnitAttachment().getAttack(germans));
+		// swapping the attachment with a change must not leave the old one cached
+		final UnitAttachment replacement = new UnitAttachment(Constants.UNIT_ATTACHMENT_NAME, m_infantry, m_data);
+		replacement.setAttack("3");
+		performer.perform(ChangeFactory.addAttachmentChange(replacement, m_infantry, Constants.UNIT_ATTACHMENT_NAME));
+		assertSame(replacement, m_infantry.getUnitAttachment());
+		assertEquals(3, m_infantry.getUnitAttachment().getAttack(germans));
+		performer.perform(ChangeFactory.addAttachmentChange(m_original, m_infantry, Constants.UNIT_ATTACHMENT_NAME));
+		assertSame(m_original, m_infantry.getUnitAttachment());
+	}
+}
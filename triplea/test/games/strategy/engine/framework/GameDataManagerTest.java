@@ -13,9 +13,14 @@
  */
 package games.strategy.engine.framework;
 
+import games.strategy.engine.data.ChangeFactory;
 import games.strategy.engine.data.GameData;
 import games.strategy.engine.data.GameParser;
+import games.strategy.engine.data.GameStep;
+import games.strategy.engine.data.PlayerID;
 import games.strategy.engine.data.SerializationTest;
+import games.strategy.engine.data.Territory;
+import games.strategy.triplea.xml.LoadGameUtil;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -69,4 +74,55 @@ public class GameDataManagerTest extends TestCase
 		final GameData loaded = m.loadGame(new ByteArrayInputStream(sink.toByteArray()), null);
 		assertEquals(loaded.getProperties().get(GameData.GAME_UUID), data.getProperties().get(GameData.GAME_UUID));
 	}
+	
+	public void testSnapshotMaterializesIndependentCopies() throws IOException
+	{
+		final GameData data = new GameData();
+		final GameDataSnapshot snapshot = GameDataSnapshot.create(data, false);
+		final GameData copy1 = snapshot.materialize();
+		final GameData copy2 = snapshot.materialize();
+		assertNotSame(copy1, copy2);
+		assertEquals(data.getProperties().get(GameData.GAME_UUID), copy1.getProperties().get(GameData.GAME_UUID));
+		assertEquals(data.getProperties().get(GameData.GAME_UUID), copy2.getProperties().get(GameData.GAME_UUID));
+		copy1.getProperties().set(GameData.GAME_UUID, "changed");
+		assertEquals(data.getProperties().get(GameData.GAME_UUID), copy2.getProperties().get(GameData.GAME_UUID));
+	}
+	
+	public void testDeltaSaveReplaysChanges() throws IOException
+	{
+		final GameData data = LoadGameUtil.loadGame("World War II Revised Test", "revised_test.xml");
+		final DeltaSaveLog log = new DeltaSaveLog(data, true);
+		log.writeFull(new ByteArrayOutputStream());
+		final Territory germany = data.getMap().getTerritory("Germany");
+		final PlayerID russians = data.getPlayerList().getPlayerID("Russians");
+		final GameStep step = data.getSequence().getStep();
+		log.stepChanged(step.getName(), step.getDelegate().getName(), step.getPlayerID(), data.getSequence().getRound(), step.getDisplayName(), false);
+		log.startHistoryEvent("Russians take Germany");
+		log.gameDataChanged(ChangeFactory.changeOwner(germany, russians));
+		data.getSequence().next();
+		assertTrue(log.canWriteDelta());
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		log.writeDelta(sink);
+		final GameData loaded = new GameDataManager().loadGame(new ByteArrayInputStream(sink.toByteArray()), null);
+		assertEquals("Russians", loaded.getMap().getTerritory("Germany").getOwner().getName());
+		assertEquals("Russians take Germany", loaded.getHistory().getLastNode().getTitle());
+		assertEquals(data.getSequence().getStepIndex(), loaded.getSequence().getStepIndex());
+	}
+	
+	public void testDisabledDeltaSaveLogRecordsNothing() throws IOException
+	{
+		final GameData data = LoadGameUtil.loadGame("World War II Revised Test", "revised_test.xml");
+		final DeltaSaveLog log = new DeltaSaveLog(data, false);
+		final ByteArrayOutputStream full = new ByteArrayOutputStream();
+		log.writeFull(full);
+		log.startHistoryEvent("Russians take Germany");
+		log.gameDataChanged(ChangeFactory.changeOwner(data.getMap().getTerritory("Germany"), data.getPlayerList().getPlayerID("Russians")));
+		assertEquals(0, log.getRecordCount());
+		assertFalse(log.canWriteDelta());
+		// a plain gzipped save, which any engine can open
+		final byte[] bytes = full.toByteArray();
+		assertEquals(0x1f, bytes[0] & 0xff);
+		assertEquals(0x8b, bytes[1] & 0xff);
+		assertNotNull(new GameDataManager().loadGame(new ByteArrayInputStream(bytes), null));
+	}
 }
@@ -0,0 +1,75 @@
+package games.strategy.engine.framework.headlessGameServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class GameCatalogueTest extends TestCase
+{
+	private File m_dir;
+	private File m_game;
+	private File m_catalogueFile;
+	
+	@Override
+	public void setUp() throws IOException
+	{
+		m_dir = File.createTempFile("catalogue", "test");
+		m_dir.delete();
+		m_dir.mkdirs();
+		m_game = new File(m_dir, "game.xml");
+		final InputStream in = getClass().getResource("/games/strategy/engine/xml/GameExample.xml").openStream();
+		final OutputStream out = new FileOutputStream(m_game);
+		try
+		{
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) != -1)
+			{
+				out.write(buffer, 0, read);
+			}
+		} finally
+		{
+			in.close();
+			out.close();
+		}
+		m_catalogueFile = new File(m_dir, "catalogue.ser");
+	}
+	
+	@Override
+	public void tearDown()
+	{
+		m_game.delete();
+		m_catalogueFile.delete();
+		m_dir.delete();
+	}
+	
+	public void testUnchangedGamesAreNotParsedAgain() throws IOException
+	{
+		final GameCatalogue catalogue = new GameCatalogue(m_catalogueFile);
+		final List<List<GameCatalogue.Game>> games = catalogue.getGames(Collections.singletonList(m_game));
+		assertEquals(1, games.get(0).size());
+		final String name = games.get(0).get(0).getName();
+		catalogue.save();
+		// blank the file without changing its size or time, a parse would now find nothing
+		final long length = m_game.length();
+		final long lastModified = m_game.lastModified();
+		final OutputStream out = new FileOutputStream(m_game);
+		for (long i = 0; i < length; i++)
+		{
+			out.write(' ');
+		}
+		out.close();
+		m_game.setLastModified(lastModified);
+		final List<List<GameCatalogue.Game>> cached = new GameCatalogue(m_catalogueFile).getGames(Collections.singletonList(m_game));
+		assertEquals(name, cached.get(0).get(0).getName());
+		// once the time changes the file is parsed again
+		m_game.setLastModified(lastModified + 10000);
+		assertTrue(new GameCatalogue(m_catalogueFile).getGames(Collections.singletonList(m_game)).get(0).isEmpty());
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.engine.history;
+
+import games.strategy.engine.data.Change;
+import games.strategy.engine.data.ChangeFactory;
+import games.strategy.engine.data.ChangePerformer;
+import games.strategy.engine.data.GameData;
+import games.strategy.engine.data.GameParser;
+import games.strategy.engine.data.PlayerID;
+import games.strategy.engine.data.Resource;
+import games.strategy.engine.data.Territory;
+import games.strategy.engine.data.Unit;
+import games.strategy.engine.data.UnitType;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class HistoryTest extends TestCase
+{
+	private GameData m_data;
+	private PlayerID m_bush;
+	private Resource m_gold;
+	private Territory m_canada;
+	private Territory m_us;
+	private UnitType m_inf;
+	
+	public HistoryTest(final String name)
+	{
+		super(name);
+	}
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		final InputStream input = getClass().getResource("/games/strategy/engine/data/Test.xml").openStream();
+		try
+		{
+			m_data = new GameParser().parse(input, new AtomicReference<String>(), false);
+		} finally
+		{
+			input.close();
+		}
+		m_bush = m_data.getPlayerList().getPlayerID("bush");
+		m_gold = m_data.getResourceList().getResource("gold");
+		m_canada = m_data.getMap().getTerritory("canada");
+		m_us = m_data.getMap().getTerritory("us");
+		m_inf = m_data.getUnitTypeList().getUnitType("inf");
+	}
+	
+	private void addChange(final Change change)
+	{
+		new ChangePerformer(m_data).perform(change);
+		m_data.getHistory().getHistoryWriter().addChange(change);
+	}
+	
+	private String getState()
+	{
+		return m_bush.getResources().getQuantity(m_gold) + " gold, " + m_canada.getUnits().getUnitCount(m_inf) + " inf in canada, "
+					+ m_us.getUnits().getUnitCount(m_inf) + " inf in us";
+	}
+	
+	public void testGotoNodeAcrossRounds()
+	{
+		final HistoryWriter writer = m_data.getHistory().getHistoryWriter();
+		// the state going to a round is the state before its changes, going to its event is the state after them
+		final List<HistoryNode> nodes = new ArrayList<HistoryNode>();
+		final List<String> states = new ArrayList<String>();
+		for (int round = 1; round <= 4; round++)
+		{
+			writer.startNextRound(round);
+			nodes.add(m_data.getHistory().getLastNode());
+			states.add(getState());
+			writer.startNextStep("step", "delegate", m_bush, "Step");
+			writer.startEvent("round " + round);
+			// many small changes that compact to a few
+			for (int i = 0; i < 10; i++)
+			{
+				addChange(ChangeFactory.changeResourcesChange(m_bush, m_gold, round));
+			}
+			addChange(ChangeFactory.changeResourcesChange(m_bush, m_gold, -round));
+			final Collection<Unit> moved = m_canada.getUnits().getUnits(m_inf, 1);
+			addChange(ChangeFactory.moveUnits(m_canada, m_us, moved));
+			addChange(ChangeFactory.addUnits(m_canada, m_inf.create(round, m_bush)));
+			nodes.add(m_data.getHistory().getLastNode());
+			states.add(getState());
+		}
+		// jump back and forth over whole rounds, and into and out of the middle of them
+		for (final int index : new int[] { 0, 7, 2, 5, 1, 6, 0, 4, 7 })
+		{
+			m_data.getHistory().gotoNode(nodes.get(index));
+			assertEquals(states.get(index), getState());
+		}
+		// after removing the later rounds, moving over the rounds that are left still gives the same state
+		m_data.getHistory().removeAllHistoryAfterNode(nodes.get(5));
+		assertEquals(states.get(5), getState());
+		m_data.getHistory().gotoNode(nodes.get(0));
+		assertEquals(states.get(0), getState());
+		m_data.getHistory().gotoNode(m_data.getHistory().getLastNode());
+		assertEquals(states.get(5), getState());
+	}
+}
@@ -15,6 +15,9 @@ package games.strategy.engine.lobby.server.userDB;
 
 import games.strategy.util.Util;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.Date;
 
 import junit.framework.TestCase;
@@ -54,5 +57,26 @@ public class BannedIpControllerTest extends TestCase
 		controller.addBannedIp(ip, expire);
 		controller.addBannedIp(ip);
 		assertTrue(controller.isIpBanned(ip).getFirst());
+	}	
+	public void testBanRemovedOutsideController() throws SQLException
+	{
+		final BannedIpController controller = new BannedIpController();
+		final String ip = Util.createUniqueTimeStamp();
+		controller.addBannedIp(ip);
+		assertTrue(new BannedIpController().isIpBanned(ip).getFirst());
+		final Connection con = Database.getConnection();
+		try
+		{
+			final PreparedStatement ps = con.prepareStatement("delete from banned_ips where ip = ?");
+			ps.setString(1, ip);
+			ps.execute();
+			ps.close();
+		} finally
+		{
+			DbUtil.closeConnection(con);
+		}
+		assertTrue(con.isClosed());
+		Database.clearCaches();
+		assertFalse(controller.isIpBanned(ip).getFirst());
 	}
 }
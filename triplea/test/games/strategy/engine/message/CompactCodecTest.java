@@ -0,0 +1,77 @@
+package games.strategy.engine.message;
+
+import games.strategy.net.GUID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class CompactCodecTest extends TestCase
+{
+	private static final IRemoteNameWriter s_nameWriter = new IRemoteNameWriter()
+	{
+		public void write(final String remoteName, final ObjectOutput out) throws IOException
+		{
+			out.writeUTF(remoteName);
+		}
+	};
+	private static final IRemoteNameReader s_nameReader = new IRemoteNameReader()
+	{
+		public String read(final ObjectInput in) throws IOException
+		{
+			return in.readUTF();
+		}
+	};
+	
+	private Object roundTrip(final Object value) throws Exception
+	{
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(sink);
+		CompactCodec.writeValue(out, value);
+		out.close();
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(sink.toByteArray()));
+		return CompactCodec.readValue(in);
+	}
+	
+	public void testValues() throws Exception
+	{
+		final GUID guid = new GUID();
+		final List<Object> values = new ArrayList<Object>(Arrays.asList(null, "a string", 7, true, false, 8L, 1.5, 2.5f, (short) 3, (byte) 4, 'c', guid));
+		values.add(new ArrayList<String>(Arrays.asList("falls", "back")));
+		for (final Object value : values)
+		{
+			assertEquals(value, roundTrip(value));
+		}
+		assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, (byte[]) roundTrip(new byte[] { 1, 2, 3 })));
+		final char[] chars = new char[30000];
+		Arrays.fill(chars, 'x');
+		assertEquals(new String(chars), roundTrip(new String(chars)));
+	}
+	
+	public void testInvoke() throws Exception
+	{
+		final RemoteMethodCall call = new RemoteMethodCall("test.remote", "add", new Object[] { 42 }, new Class<?>[] { Object.class }, Collection.class);
+		final HubInvoke invoke = new HubInvoke(new GUID(), true, call);
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(sink);
+		invoke.writeCompact(out, s_nameWriter);
+		out.close();
+		final HubInvoke read = new HubInvoke();
+		read.readCompact(new ObjectInputStream(new ByteArrayInputStream(sink.toByteArray())), s_nameReader);
+		read.call.resolve(Collection.class);
+		assertEquals(invoke.methodCallID, read.methodCallID);
+		assertEquals("test.remote", read.call.getRemoteName());
+		assertEquals("add", read.call.getMethodName());
+		assertEquals(Arrays.asList(42), Arrays.asList(read.call.getArgs()));
+	}
+}
@@ -183,4 +183,14 @@ public class ParserTest extends TestCase
 		final Resource resource = gameData.getResourceList().getResource("silver");
 		assertEquals(200, chretian.getResources().getQuantity(resource));
 	}
+	
+	public void testDelayedParsingReadsOnlyWhatIsNeededToSelectAGame() throws Exception
+	{
+		final InputStream input = this.getClass().getResource("GameExample.xml").openStream();
+		final GameData delayed = (new GameParser()).parse(input, new AtomicReference<String>(), true);
+		input.close();
+		assertEquals(gameData.getGameName(), delayed.getGameName());
+		assertEquals(gameData.getPlayerList().size(), delayed.getPlayerList().size());
+		assertTrue(delayed.getMap().getTerritories().isEmpty());
+	}
 }
@@ -0,0 +1,74 @@
+package games.strategy.net.nio;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class BufferPoolTest extends TestCase
+{
+	/**
+	 * Take out any buffers of this size that other tests left in the pool, so that the next buffer released is the next one acquired.
+	 */
+	private static void drain(final int size)
+	{
+		while (BufferPool.getPooledCount(size) > 0)
+		{
+			BufferPool.acquire(size);
+		}
+	}
+	
+	public void testAcquireLimitsToSize()
+	{
+		final ByteBuffer buffer = BufferPool.acquire(100);
+		assertEquals(0, buffer.position());
+		assertEquals(100, buffer.limit());
+		assertEquals(128, buffer.capacity());
+		assertFalse(buffer.isDirect());
+		assertTrue(BufferPool.acquire(BufferPool.DIRECT_SIZE).isDirect());
+	}
+	
+	public void testReleasedBufferIsReused()
+	{
+		drain(300 * 1000);
+		final ByteBuffer buffer = BufferPool.acquire(300 * 1000);
+		BufferPool.release(buffer);
+		assertSame(buffer, BufferPool.acquire(400 * 1000));
+	}
+	
+	public void testReleasedHeapBufferIsReused()
+	{
+		drain(1000);
+		final ByteBuffer buffer = BufferPool.acquire(1000);
+		buffer.put((byte) 1);
+		BufferPool.release(buffer);
+		final ByteBuffer reused = BufferPool.acquire(600);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(600, reused.limit());
+	}
+	
+	public void testOversizedBufferIsNotPooled()
+	{
+		final int size = BufferPool.MAX_POOLED_SIZE + 1;
+		final ByteBuffer buffer = BufferPool.acquire(size);
+		assertEquals(size, buffer.capacity());
+		assertFalse(buffer.isDirect());
+		final int pooled = BufferPool.getPooledCount(BufferPool.MAX_POOLED_SIZE);
+		BufferPool.release(buffer);
+		assertEquals(pooled, BufferPool.getPooledCount(BufferPool.MAX_POOLED_SIZE));
+		assertNotSame(buffer, BufferPool.acquire(size));
+	}
+	
+	public void testDuplicatesShareBytesUntilAllReleased()
+	{
+		final int size = 3000;
+		final SocketWriteData data = new SocketWriteData(new byte[size], size);
+		final SocketWriteData copy = data.duplicate();
+		assertEquals(size + 4, copy.size());
+		final int pooled = BufferPool.getPooledCount(size + 4);
+		data.release();
+		assertEquals(pooled, BufferPool.getPooledCount(size + 4));
+		copy.release();
+		assertEquals(pooled + 1, BufferPool.getPooledCount(size + 4));
+	}
+}
@@ -0,0 +1,106 @@
+package games.strategy.net.nio;
+
+import games.strategy.net.ClientMessenger;
+import games.strategy.net.IMessageListener;
+import games.strategy.net.IMessenger;
+import games.strategy.net.INode;
+import games.strategy.net.IServerMessenger;
+import games.strategy.net.MacFinder;
+import games.strategy.net.ServerMessenger;
+import games.strategy.test.TestUtil;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class DecoderTest extends TestCase
+{
+	private static final int MESSAGES = 500;
+	private String m_oldThreadCount;
+	private IServerMessenger m_server;
+	private final List<IMessenger> m_clients = new ArrayList<IMessenger>();
+	// the numbers the server has received from each client, in the order they were received
+	private final Map<INode, List<Integer>> m_received = new HashMap<INode, List<Integer>>();
+	private int m_receivedCount = 0;
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		// decode on several threads, so that two connections can be decoded at the same time
+		m_oldThreadCount = System.getProperty(Decoder.DECODER_THREADS_PROPERTY);
+		System.setProperty(Decoder.DECODER_THREADS_PROPERTY, "4");
+		final int port = TestUtil.getUniquePort();
+		m_server = new ServerMessenger("Server", port);
+		m_server.setAcceptNewConnections(true);
+		m_server.addMessageListener(new IMessageListener()
+		{
+			public void messageReceived(final Serializable msg, final INode from)
+			{
+				synchronized (m_received)
+				{
+					List<Integer> numbers = m_received.get(from);
+					if (numbers == null)
+					{
+						numbers = new ArrayList<Integer>();
+						m_received.put(from, numbers);
+					}
+					numbers.add((Integer) msg);
+					m_receivedCount++;
+					m_received.notifyAll();
+				}
+			}
+		});
+		final String mac = MacFinder.GetHashedMacAddress();
+		m_clients.add(new ClientMessenger("localhost", port, "client1", mac));
+		m_clients.add(new ClientMessenger("localhost", port, "client2", mac));
+	}
+	
+	@Override
+	public void tearDown()
+	{
+		for (final IMessenger client : m_clients)
+		{
+			client.shutDown();
+		}
+		if (m_server != null)
+			m_server.shutDown();
+		if (m_oldThreadCount == null)
+			System.clearProperty(Decoder.DECODER_THREADS_PROPERTY);
+		else
+			System.setProperty(Decoder.DECODER_THREADS_PROPERTY, m_oldThreadCount);
+	}
+	
+	public void testMessagesFromEachChannelStayInOrder() throws InterruptedException
+	{
+		assertEquals(4, Decoder.getDefaultThreadCount());
+		// interleave the messages of the two connections
+		for (int i = 0; i < MESSAGES; i++)
+		{
+			for (final IMessenger client : m_clients)
+			{
+				client.send(Integer.valueOf(i), m_server.getLocalNode());
+			}
+		}
+		final List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < MESSAGES; i++)
+		{
+			expected.add(i);
+		}
+		synchronized (m_received)
+		{
+			final long end = System.currentTimeMillis() + 10 * 1000;
+			while (m_receivedCount < MESSAGES * m_clients.size() && System.currentTimeMillis() < end)
+			{
+				m_received.wait(100);
+			}
+			for (final IMessenger client : m_clients)
+			{
+				assertEquals(expected, m_received.get(client.getLocalNode()));
+			}
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package games.strategy.net.nio;
+
+import games.strategy.net.ClientMessenger;
+import games.strategy.net.IMessageListener;
+import games.strategy.net.IMessenger;
+import games.strategy.net.INode;
+import games.strategy.net.IServerMessenger;
+import games.strategy.net.MacFinder;
+import games.strategy.net.ServerMessenger;
+import games.strategy.test.TestUtil;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class EncoderTest extends TestCase
+{
+	private static final int CLIENTS = 4;
+	private String m_oldCompact;
+	private IServerMessenger m_server;
+	private final List<IMessenger> m_clients = new ArrayList<IMessenger>();
+	private final List<LinkedBlockingQueue<Serializable>> m_received = new ArrayList<LinkedBlockingQueue<Serializable>>();
+	
+	@Override
+	public void setUp() throws Exception
+	{
+		// every connection reads the same protocol, so a broadcast is serialized for all of them at once
+		m_oldCompact = System.getProperty(NIOSocket.COMPACT_PROTOCOL_PROPERTY);
+		System.setProperty(NIOSocket.COMPACT_PROTOCOL_PROPERTY, "false");
+		final int port = TestUtil.getUniquePort();
+		m_server = new ServerMessenger("Server", port);
+		m_server.setAcceptNewConnections(true);
+		final String mac = MacFinder.GetHashedMacAddress();
+		for (int i = 0; i < CLIENTS; i++)
+		{
+			final IMessenger client = new ClientMessenger("localhost", port, "client" + i, mac);
+			final LinkedBlockingQueue<Serializable> received = new LinkedBlockingQueue<Serializable>();
+			client.addMessageListener(new IMessageListener()
+			{
+				public void messageReceived(final Serializable msg, final INode from)
+				{
+					received.add(msg);
+				}
+			});
+			m_clients.add(client);
+			m_received.add(received);
+		}
+		for (int i = 0; i < 100 && m_server.getNodes().size() != CLIENTS + 1; i++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(CLIENTS + 1, m_server.getNodes().size());
+	}
+	
+	@Override
+	public void tearDown()
+	{
+		for (final IMessenger client : m_clients)
+		{
+			client.shutDown();
+		}
+		if (m_server != null)
+			m_server.shutDown();
+		if (m_oldCompact == null)
+			System.clearProperty(NIOSocket.COMPACT_PROTOCOL_PROPERTY);
+		else
+			System.setProperty(NIOSocket.COMPACT_PROTOCOL_PROPERTY, m_oldCompact);
+	}
+	
+	public void testBroadcastIsSerializedOnce() throws InterruptedException
+	{
+		final CountedMessage message = new CountedMessage(4000);
+		CountedMessage.s_writes.set(0);
+		m_server.broadcast(message);
+		assertReceivedBy(message, m_received);
+		assertEquals(1, CountedMessage.s_writes.get());
+	}
+	
+	public void testForwardedBroadcastIsSerializedOnceByServer() throws InterruptedException
+	{
+		final CountedMessage message = new CountedMessage(4000);
+		CountedMessage.s_writes.set(0);
+		m_clients.get(0).broadcast(message);
+		assertReceivedBy(message, m_received.subList(1, CLIENTS));
+		// once by the client that sent it to the server, and once by the server for all the other clients
+		assertEquals(2, CountedMessage.s_writes.get());
+		assertTrue(m_received.get(0).isEmpty());
+	}
+	
+	private static void assertReceivedBy(final CountedMessage message, final List<LinkedBlockingQueue<Serializable>> receivers) throws InterruptedException
+	{
+		final List<Serializable> copies = new ArrayList<Serializable>();
+		for (final LinkedBlockingQueue<Serializable> received : receivers)
+		{
+			final Serializable copy = received.poll(5, TimeUnit.SECONDS);
+			assertEquals(message, copy);
+			for (final Serializable other : copies)
+			{
+				assertNotSame(other, copy);
+			}
+			copies.add(copy);
+		}
+	}
+	
+	/**
+	 * A message that counts how many times it has been serialized.
+	 */
+	private static class CountedMessage implements Serializable
+	{
+		private static final long serialVersionUID = 6417235498721334581L;
+		static final AtomicInteger s_writes = new AtomicInteger();
+		private final byte[] m_bytes;
+		
+		CountedMessage(final int size)
+		{
+			m_bytes = new byte[size];
+			for (int i = 0; i < size; i++)
+			{
+				m_bytes[i] = (byte) i;
+			}
+		}
+		
+		private void writeObject(final ObjectOutputStream out) throws IOException
+		{
+			s_writes.incrementAndGet();
+			out.defaultWriteObject();
+		}
+		
+		@Override
+		public boolean equals(final Object o)
+		{
+			return o instanceof CountedMessage && Arrays.equals(m_bytes, ((CountedMessage) o).m_bytes);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode(m_bytes);
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Times LockUtil under contention: several threads taking and releasing the same read lock through one LockUtil, the way
+ * map drawing, the AIs and the battle calculator all take the GameData read lock at once.
+ * <p>
+ * 
+ * Not a unit test, run it with main(). The arguments are the total number of acquire and release pairs, then the thread counts to try,
+ * for example "2000000 1 2 4 8". Each count is run with lock order checking off and on, and the best of a few runs is printed.
+ * Run it on a machine with several cores to see how it scales across threads.
+ */
+public class LockUtilBenchmark
+{
+	private static final int RUNS = 5;
+	
+	public static void main(final String[] args) throws InterruptedException
+	{
+		final int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		final int[] threadCounts;
+		if (args.length > 1)
+		{
+			threadCounts = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++)
+			{
+				threadCounts[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		else
+		{
+			threadCounts = new int[] { 1, 2, 4, 8 };
+		}
+		System.out.println(Runtime.getRuntime().availableProcessors() + " processors, " + operations + " acquire and release pairs per run");
+		System.out.println("threads\tunchecked (ops/ms)\tchecked (ops/ms)");
+		for (final int threads : threadCounts)
+		{
+			System.out.println(threads + "\t" + best(new LockUtil(false), threads, operations) + "\t" + best(new LockUtil(true), threads, operations));
+		}
+	}
+	
+	private static long best(final LockUtil lockUtil, final int threads, final int operations) throws InterruptedException
+	{
+		long best = 0;
+		for (int i = 0; i < RUNS; i++)
+		{
+			best = Math.max(best, run(lockUtil, threads, operations));
+		}
+		return best;
+	}
+	
+	/**
+	 * @return acquire and release pairs per millisecond
+	 */
+	private static long run(final LockUtil lockUtil, final int threads, final int operations) throws InterruptedException
+	{
+		final Lock lock = new ReentrantReadWriteLock().readLock();
+		final int perThread = operations / threads;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int i = 0; i < threads; i++)
+		{
+			final Thread thread = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+					} catch (final InterruptedException e)
+					{
+						return;
+					}
+					for (int j = 0; j < perThread; j++)
+					{
+						lockUtil.acquireLock(lock);
+						lockUtil.releaseLock(lock);
+					}
+					done.countDown();
+				}
+			}, "LockUtilBenchmark " + i);
+			thread.start();
+		}
+		final long startTime = System.nanoTime();
+		start.countDown();
+		done.await();
+		final long millis = Math.max(1, (System.nanoTime() - startTime) / 1000000);
+		return (long) perThread * threads / millis;
+	}
+}
@@ -24,7 +24,7 @@ import junit.framework.TestCase;
 
 public class LockUtilTest extends TestCase
 {
-	private static final LockUtil S_LOCKUTIL = new LockUtil();
+	private static final LockUtil S_LOCKUTIL = new LockUtil(true);
 	private final TestErrorReporter m_reporter = new TestErrorReporter();
 	
 	@Override
@@ -91,6 +91,26 @@ public class LockUtilTest extends TestCase
 		assertTrue(l1.getHoldCount() == 0);
 		assertFalse(S_LOCKUTIL.isLockHeld(l1));
 	}
+	
+	public void testOrderNotCheckedByDefault()
+	{
+		final LockUtil lockUtil = new LockUtil();
+		final Lock l1 = new ReentrantLock();
+		final Lock l2 = new ReentrantLock();
+		lockUtil.acquireLock(l1);
+		lockUtil.acquireLock(l2);
+		lockUtil.releaseLock(l2);
+		lockUtil.releaseLock(l1);
+		// acquire locks in the wrong order
+		lockUtil.acquireLock(l2);
+		lockUtil.acquireLock(l1);
+		assertTrue(lockUtil.isLockHeld(l1));
+		lockUtil.releaseLock(l1);
+		assertFalse(lockUtil.isLockHeld(l1));
+		assertTrue(lockUtil.isLockHeld(l2));
+		lockUtil.releaseLock(l2);
+		assertFalse(m_reporter.errorOccured());
+	}
 }
 
 
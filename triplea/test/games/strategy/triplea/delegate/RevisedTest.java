@@ -59,6 +59,7 @@ import games.strategy.engine.data.TechnologyFrontier;
 import games.strategy.engine.data.Territory;
 import games.strategy.engine.data.Unit;
 import games.strategy.engine.data.UnitType;
+import games.strategy.engine.framework.GameDataUtils;
 import games.strategy.engine.random.ScriptedRandomSource;
 import games.strategy.net.GUID;
 import games.strategy.triplea.Constants;
@@ -80,9 +81,11 @@ import games.strategy.util.Match;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -498,6 +501,39 @@ public class RevisedTest extends TestCase
 		assertFalse(((TripleAUnit) infantry.get(0)).getWasLoadedThisTurn());
 	}
 	
+	public void testTransportingFollowsMovesAndCopies()
+	{
+		final Territory sz5 = m_data.getMap().getTerritory("5 Sea Zone");
+		final Territory sz6 = m_data.getMap().getTerritory("6 Sea Zone");
+		final Territory eastEurope = m_data.getMap().getTerritory("Eastern Europe");
+		final UnitType infantryType = m_data.getUnitTypeList().getUnitType("infantry");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final MoveDelegate moveDelegate = (MoveDelegate) m_data.getDelegateList().getDelegate("move");
+		final ITestDelegateBridge bridge = getDelegateBridge(germans);
+		bridge.setStepName("NonCombatMove");
+		moveDelegate.setDelegateBridgeAndPlayer(bridge);
+		moveDelegate.start();
+		final List<Unit> infantry = eastEurope.getUnits().getMatches(Matches.unitIsOfType(infantryType));
+		final TripleAUnit transport = (TripleAUnit) sz5.getUnits().getMatches(Matches.UnitIsTransport).get(0);
+		assertNull(moveDelegate.move(infantry, new Route(eastEurope, sz5), Collections.<Unit> singletonList(transport)));
+		final List<Unit> moving = new ArrayList<Unit>(infantry);
+		moving.add(transport);
+		assertNull(moveDelegate.move(moving, new Route(sz5, sz6)));
+		// the infantry moved with the transport
+		assertEquals(sz6, m_data.getUnitIndex().getTerritory(transport));
+		assertEquals(new HashSet<Unit>(infantry), new HashSet<Unit>(transport.getTransporting()));
+		// a copy of the game data builds its own index
+		final GameData copy = GameDataUtils.cloneGameData(m_data);
+		final TripleAUnit copiedTransport = (TripleAUnit) copy.getMap().getTerritory("6 Sea Zone").getUnits().getMatches(Matches.UnitIsTransport).get(0);
+		assertEquals(new HashSet<Unit>(infantry), new HashSet<Unit>(copiedTransport.getTransporting()));
+		// undoing both moves leaves the transport empty in its old sea zone
+		moveDelegate.undoMove(1);
+		moveDelegate.undoMove(0);
+		assertEquals(sz5, m_data.getUnitIndex().getTerritory(transport));
+		assertEquals(eastEurope, m_data.getUnitIndex().getTerritory(infantry.get(0)));
+		assertTrue(transport.getTransporting().isEmpty());
+	}
+	
 	public void testLoadDependencies()
 	{
 		final Territory sz5 = m_data.getMap().getTerritory("5 Sea Zone");
@@ -68,6 +68,9 @@ import games.strategy.engine.random.ScriptedRandomSource;
 import games.strategy.net.GUID;
 import games.strategy.triplea.Constants;
 import games.strategy.triplea.TripleAUnit;
+import games.strategy.triplea.attatchments.AbstractConditionsAttachment;
+import games.strategy.triplea.attatchments.ICondition;
+import games.strategy.triplea.attatchments.RulesAttachment;
 import games.strategy.triplea.attatchments.TechAttachment;
 import games.strategy.triplea.attatchments.TerritoryAttachment;
 import games.strategy.triplea.attatchments.UnitAttachment;
@@ -92,6 +95,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -1726,6 +1730,26 @@ public class WW2V3_41_Test extends TestCase
 		move(armour, new Route(libya, morrocco));
 	}
 	
+	public void testConditionResultsFollowChanges()
+	{
+		final ITestDelegateBridge delegateBridge = getDelegateBridge(germans(m_data));
+		final RulesAttachment objective = (RulesAttachment) germans(m_data).getAttachment("objectiveAttachment1");
+		final HashSet<ICondition> conditions = new HashSet<ICondition>();
+		conditions.add(objective);
+		final Territory france = territory("France", m_data);
+		assertTrue(AbstractConditionsAttachment.testAllConditionsRecursive(conditions, null, delegateBridge).get(objective));
+		// the result is kept while no change touches what it reads, so setting the owner directly goes unnoticed
+		france.setOwner(british(m_data));
+		assertTrue(AbstractConditionsAttachment.testAllConditionsRecursive(conditions, null, delegateBridge).get(objective));
+		france.setOwner(germans(m_data));
+		delegateBridge.addChange(ChangeFactory.changeOwner(territory("Egypt", m_data), germans(m_data)));
+		assertTrue(AbstractConditionsAttachment.testAllConditionsRecursive(conditions, null, delegateBridge).get(objective));
+		delegateBridge.addChange(ChangeFactory.changeOwner(france, british(m_data)));
+		assertFalse(AbstractConditionsAttachment.testAllConditionsRecursive(conditions, null, delegateBridge).get(objective));
+		delegateBridge.addChange(ChangeFactory.changeOwner(france, germans(m_data)));
+		assertTrue(AbstractConditionsAttachment.testAllConditionsRecursive(conditions, null, delegateBridge).get(objective));
+	}
+	
 	/***********************************************************/
 	/***********************************************************/
 	/***********************************************************/
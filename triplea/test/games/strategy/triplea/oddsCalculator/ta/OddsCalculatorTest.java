@@ -5,10 +5,15 @@ import static games.strategy.triplea.delegate.GameDataTestUtil.germans;
 import static games.strategy.triplea.delegate.GameDataTestUtil.submarine;
 import static games.strategy.triplea.delegate.GameDataTestUtil.territory;
 import static games.strategy.triplea.delegate.GameDataTestUtil.transports;
+import games.strategy.engine.data.ChangeFactory;
+import games.strategy.engine.data.ChangePerformer;
 import games.strategy.engine.data.GameData;
 import games.strategy.engine.data.PlayerID;
 import games.strategy.engine.data.Territory;
 import games.strategy.engine.data.Unit;
+import games.strategy.engine.data.UnitType;
+import games.strategy.engine.framework.GameDataUtils;
+import games.strategy.triplea.attatchments.UnitAttachment;
 import games.strategy.triplea.delegate.TerritoryEffectHelper;
 import games.strategy.triplea.xml.LoadGameUtil;
 
@@ -51,6 +56,32 @@ public class OddsCalculatorTest extends TestCase
 		assertTrue(results.getDrawPercent() < 0.1);
 	}
 	
+	public void testStopEarlyOnceMarginOfErrorIsSmallEnough()
+	{
+		final Territory germany = m_data.getMap().getTerritory("Germany");
+		final List<Unit> defendingUnits = new ArrayList<Unit>(germany.getUnits().getUnits());
+		final PlayerID russians = m_data.getPlayerList().getPlayerID("Russians");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final List<Unit> attackingUnits = m_data.getUnitTypeList().getUnitType("infantry").create(100, russians);
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final IOddsCalculator calculator = new OddsCalculator(m_data);
+		calculator.setTargetMarginOfError(0.02);
+		final AggregateResults results = calculator.setCalculateDataAndCalculate(russians, germans, germany, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(germany), 2000);
+		calculator.shutdown();
+		assertTrue(results.getRollCount() < 2000);
+		assertTrue(results.getAttackerWinPercentMarginOfError() <= 0.02);
+		assertTrue(results.getAttackerWinPercent() > 0.95);
+		// results with the same survivors are only kept once
+		assertTrue(results.getResults().size() < results.getRollCount());
+		double totalWeight = 0;
+		for (int i = 0; i < results.getResults().size(); i++)
+		{
+			totalWeight += results.getWeight(i);
+		}
+		assertEquals(results.getRollCount(), totalWeight, 0.000001);
+	}
+	
 	public void testBalancedFight()
 	{
 		// 1 british tank in eastern canada, defending one german tank
@@ -71,6 +102,207 @@ public class OddsCalculatorTest extends TestCase
 		assertEquals(0.33, results.getDrawPercent(), 0.06);
 	}
 	
+	public void testWorkersReplayChangesToSameGameData()
+	{
+		final Territory eastCanada = m_data.getMap().getTerritory("Eastern Canada");
+		final List<Unit> defendingUnits = new ArrayList<Unit>(eastCanada.getUnits().getUnits());
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final PlayerID british = m_data.getPlayerList().getPlayerID("British");
+		final UnitType armour = m_data.getUnitTypeList().getUnitType("armour");
+		final List<Unit> attackingUnits = armour.create(1, germans, false);
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final IOddsCalculator calculator = new ConcurrentOddsCalculator("Test");
+		calculator.setGameData(m_data);
+		final AggregateResults before = calculator.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 500);
+		assertTrue(before.getAttackerWinPercent() > 0.1);
+		// the workers only see this if they replay it, since they already have their copies
+		new ChangePerformer(m_data).perform(ChangeFactory.attachmentPropertyChange(UnitAttachment.get(armour), "0", "attack"));
+		calculator.setGameData(m_data);
+		final AggregateResults after = calculator.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 500);
+		calculator.shutdown();
+		assertEquals(0.0, after.getAttackerWinPercent(), 0.0);
+	}
+	
+	public void testNumericSimulationMatchesBattle()
+	{
+		// infantry and artillery, so that support has to be taken away as units die
+		final Territory eastCanada = m_data.getMap().getTerritory("Eastern Canada");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final PlayerID british = m_data.getPlayerList().getPlayerID("British");
+		final List<Unit> attackingUnits = new ArrayList<Unit>();
+		attackingUnits.addAll(m_data.getUnitTypeList().getUnitType("infantry").create(4, germans, false));
+		attackingUnits.addAll(m_data.getUnitTypeList().getUnitType("artillery").create(2, germans, false));
+		attackingUnits.addAll(m_data.getUnitTypeList().getUnitType("fighter").create(1, germans, false));
+		final List<Unit> defendingUnits = new ArrayList<Unit>();
+		defendingUnits.addAll(m_data.getUnitTypeList().getUnitType("infantry").create(4, british, false));
+		defendingUnits.addAll(m_data.getUnitTypeList().getUnitType("armour").create(1, british, false));
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		assertTrue(NumericBattleSimulator.canSimulate(m_data, eastCanada, attackingUnits, defendingUnits));
+		final OddsCalculator numeric = new OddsCalculator(m_data);
+		numeric.setUseNumericSimulation(true);
+		final AggregateResults numericResults = numeric.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		numeric.shutdown();
+		final OddsCalculator battle = new OddsCalculator(m_data);
+		battle.setUseNumericSimulation(false);
+		final AggregateResults battleResults = battle.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		battle.shutdown();
+		assertEquals(2000, numericResults.getRollCount());
+		assertEquals(battleResults.getAttackerWinPercent(), numericResults.getAttackerWinPercent(), 0.05);
+		assertEquals(battleResults.getDefenderWinPercent(), numericResults.getDefenderWinPercent(), 0.05);
+		assertEquals(battleResults.getAverageAttackingUnitsLeft(), numericResults.getAverageAttackingUnitsLeft(), 0.3);
+		assertEquals(battleResults.getAverageBattleRoundsFought(), numericResults.getAverageBattleRoundsFought(), 0.3);
+	}
+	
+	public void testNumericSimulationNotUsedForSubs()
+	{
+		final Territory sz1 = territory("1 Sea Zone", m_data);
+		final List<Unit> attacking = submarine(m_data).create(2, americans(m_data));
+		final List<Unit> defending = transports(m_data).create(2, germans(m_data));
+		assertFalse(NumericBattleSimulator.canSimulate(m_data, sz1, attacking, defending));
+	}
+	
+	public void testExactOddsOfOneOnOne()
+	{
+		// each round the attacker hits on a 1 and the defender on a 2, so the battle ends with a chance of 1 - 5/6 * 4/6 = 16/36 each round
+		// the attacker wins 4/36 of that, the defender 10/36, and both die (a draw) 2/36
+		final Territory eastCanada = m_data.getMap().getTerritory("Eastern Canada");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final PlayerID british = m_data.getPlayerList().getPlayerID("British");
+		final List<Unit> attackingUnits = m_data.getUnitTypeList().getUnitType("infantry").create(1, germans, false);
+		final List<Unit> defendingUnits = m_data.getUnitTypeList().getUnitType("infantry").create(1, british, false);
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final IOddsCalculator calculator = new ExactOddsCalculator(new OddsCalculator(m_data));
+		calculator.setGameData(m_data);
+		final AggregateResults results = calculator.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		calculator.shutdown();
+		assertEquals(0.25, results.getAttackerWinPercent(), 0.000001);
+		assertEquals(0.625, results.getDefenderWinPercent(), 0.000001);
+		assertEquals(0.125, results.getDrawPercent(), 0.000001);
+		assertEquals(0.25, results.getAverageAttackingUnitsLeft(), 0.000001);
+		assertEquals(36.0 / 16.0, results.getAverageBattleRoundsFought(), 0.000001);
+	}
+	
+	public void testExactOddsMatchSimulation()
+	{
+		final Territory eastCanada = m_data.getMap().getTerritory("Eastern Canada");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final PlayerID british = m_data.getPlayerList().getPlayerID("British");
+		final List<Unit> attackingUnits = new ArrayList<Unit>();
+		attackingUnits.addAll(m_data.getUnitTypeList().getUnitType("infantry").create(4, germans, false));
+		attackingUnits.addAll(m_data.getUnitTypeList().getUnitType("artillery").create(2, germans, false));
+		attackingUnits.addAll(m_data.getUnitTypeList().getUnitType("fighter").create(1, germans, false));
+		final List<Unit> defendingUnits = new ArrayList<Unit>();
+		defendingUnits.addAll(m_data.getUnitTypeList().getUnitType("infantry").create(4, british, false));
+		defendingUnits.addAll(m_data.getUnitTypeList().getUnitType("armour").create(1, british, false));
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final IOddsCalculator exact = new ExactOddsCalculator(new OddsCalculator(m_data));
+		exact.setGameData(m_data);
+		final AggregateResults exactResults = exact.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		exact.shutdown();
+		final OddsCalculator sampled = new OddsCalculator(m_data);
+		final AggregateResults sampledResults = sampled.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 20000);
+		sampled.shutdown();
+		assertEquals(1.0, exactResults.getAttackerWinPercent() + exactResults.getDefenderWinPercent() + exactResults.getDrawPercent(), 0.000001);
+		assertEquals(sampledResults.getAttackerWinPercent(), exactResults.getAttackerWinPercent(), 0.02);
+		assertEquals(sampledResults.getDefenderWinPercent(), exactResults.getDefenderWinPercent(), 0.02);
+		assertEquals(sampledResults.getAverageAttackingUnitsLeft(), exactResults.getAverageAttackingUnitsLeft(), 0.1);
+		assertEquals(sampledResults.getAverageDefendingUnitsLeft(), exactResults.getAverageDefendingUnitsLeft(), 0.1);
+		assertEquals(sampledResults.getAverageBattleRoundsFought(), exactResults.getAverageBattleRoundsFought(), 0.1);
+	}
+	
+	public void testExactOddsFallBackToSampling()
+	{
+		final Territory sz1 = territory("1 Sea Zone", m_data);
+		final List<Unit> attacking = submarine(m_data).create(2, americans(m_data));
+		final List<Unit> defending = transports(m_data).create(2, germans(m_data));
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final IOddsCalculator calculator = new ExactOddsCalculator(new OddsCalculator(m_data));
+		calculator.setGameData(m_data);
+		final AggregateResults results = calculator.setCalculateDataAndCalculate(americans(m_data), germans(m_data), sz1, attacking, defending, bombardingUnits,
+					TerritoryEffectHelper.getEffects(sz1), 100);
+		calculator.shutdown();
+		// subs can not be solved exactly, so this was sampled
+		assertEquals(100, results.getRollCount());
+	}
+	
+	public void testCachedResultsUseNewUnits()
+	{
+		final Territory eastCanada = m_data.getMap().getTerritory("Eastern Canada");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final PlayerID british = m_data.getPlayerList().getPlayerID("British");
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final CachingOddsCalculator calculator = new CachingOddsCalculator(new ExactOddsCalculator(new OddsCalculator(m_data)));
+		calculator.setGameData(m_data);
+		final AggregateResults first = calculator.setCalculateDataAndCalculate(germans, british, eastCanada, m_data.getUnitTypeList().getUnitType("infantry").create(3, germans, false),
+					m_data.getUnitTypeList().getUnitType("infantry").create(2, british, false), bombardingUnits, TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		assertEquals(0, calculator.getHits());
+		final List<Unit> attackingUnits = m_data.getUnitTypeList().getUnitType("infantry").create(3, germans, false);
+		final List<Unit> defendingUnits = m_data.getUnitTypeList().getUnitType("infantry").create(2, british, false);
+		final AggregateResults second = calculator.setCalculateDataAndCalculate(germans, british, eastCanada, attackingUnits, defendingUnits, bombardingUnits,
+					TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		// the same battle somewhere else is fought again
+		final Territory germany = m_data.getMap().getTerritory("Germany");
+		calculator.setCalculateDataAndCalculate(germans, british, germany, m_data.getUnitTypeList().getUnitType("infantry").create(3, germans, false),
+					m_data.getUnitTypeList().getUnitType("infantry").create(2, british, false), bombardingUnits, TerritoryEffectHelper.getEffects(germany), 2000);
+		calculator.shutdown();
+		assertEquals(1, calculator.getHits());
+		assertEquals(2, calculator.getMisses());
+		assertEquals(first.getAttackerWinPercent(), second.getAttackerWinPercent(), 0.000001);
+		assertEquals(first.getAverageDefendingUnitsLeft(), second.getAverageDefendingUnitsLeft(), 0.000001);
+		// the remaining units of a cached battle must be the units that were just asked about
+		for (final BattleResults result : second.getResults())
+		{
+			assertTrue(attackingUnits.containsAll(result.getRemainingAttackingUnits()));
+			assertTrue(defendingUnits.containsAll(result.getRemainingDefendingUnits()));
+		}
+	}
+	
+	public void testCacheKeptForCopyOfGameData()
+	{
+		final Territory eastCanada = m_data.getMap().getTerritory("Eastern Canada");
+		final PlayerID germans = m_data.getPlayerList().getPlayerID("Germans");
+		final PlayerID british = m_data.getPlayerList().getPlayerID("British");
+		final List<Unit> bombardingUnits = Collections.emptyList();
+		final CachingOddsCalculator calculator = new CachingOddsCalculator(new ExactOddsCalculator(new OddsCalculator(m_data)));
+		calculator.setGameData(m_data);
+		calculator.setCalculateDataAndCalculate(germans, british, eastCanada, m_data.getUnitTypeList().getUnitType("infantry").create(3, germans, false),
+					m_data.getUnitTypeList().getUnitType("infantry").create(2, british, false), bombardingUnits, TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		// the AI switches to a copy of the game data to plan its moves, which has the same rules
+		final GameData copy = GameDataUtils.cloneGameData(m_data);
+		final Territory copyEastCanada = copy.getMap().getTerritory("Eastern Canada");
+		final PlayerID copyGermans = copy.getPlayerList().getPlayerID("Germans");
+		final PlayerID copyBritish = copy.getPlayerList().getPlayerID("British");
+		calculator.setGameData(copy);
+		calculator.setCalculateDataAndCalculate(copyGermans, copyBritish, copyEastCanada, copy.getUnitTypeList().getUnitType("infantry").create(3, copyGermans, false),
+					copy.getUnitTypeList().getUnitType("infantry").create(2, copyBritish, false), bombardingUnits, TerritoryEffectHelper.getEffects(copyEastCanada), 2000);
+		assertEquals(1, calculator.getHits());
+		// and back again
+		calculator.setGameData(m_data);
+		calculator.setCalculateDataAndCalculate(germans, british, eastCanada, m_data.getUnitTypeList().getUnitType("infantry").create(3, germans, false),
+					m_data.getUnitTypeList().getUnitType("infantry").create(2, british, false), bombardingUnits, TerritoryEffectHelper.getEffects(eastCanada), 2000);
+		assertEquals(2, calculator.getHits());
+		// a copy whose rules have changed since must not use the cached battles
+		final GameData changedCopy = GameDataUtils.cloneGameData(m_data);
+		new ChangePerformer(changedCopy).perform(ChangeFactory.attachmentPropertyChange(UnitAttachment.get(changedCopy.getUnitTypeList().getUnitType("infantry")), "2", "attack"));
+		calculator.setGameData(changedCopy);
+		final PlayerID changedGermans = changedCopy.getPlayerList().getPlayerID("Germans");
+		final PlayerID changedBritish = changedCopy.getPlayerList().getPlayerID("British");
+		final Territory changedEastCanada = changedCopy.getMap().getTerritory("Eastern Canada");
+		calculator.setCalculateDataAndCalculate(changedGermans, changedBritish, changedEastCanada,
+					changedCopy.getUnitTypeList().getUnitType("infantry").create(3, changedGermans, false),
+					changedCopy.getUnitTypeList().getUnitType("infantry").create(2, changedBritish, false), bombardingUnits, TerritoryEffectHelper.getEffects(changedEastCanada), 2000);
+		calculator.shutdown();
+		assertEquals(2, calculator.getHits());
+		assertEquals(2, calculator.getMisses());
+	}
+	
 	public void testKeepOneAttackingLand()
 	{
 		// 1 bomber and 1 infantry attacking
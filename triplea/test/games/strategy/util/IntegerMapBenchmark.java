@@ -0,0 +1,109 @@
+/*
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+package games.strategy.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Times IntegerMap against a HashMap of boxed counts doing the same work: adding to, reading and copying maps of a few dozen keys,
+ * the way unit and resource counts are used.
+ * <p>
+ * 
+ * Not a unit test, run it with main(). The arguments are the number of keys and the number of rounds, for example "40 200000".
+ * The best of a few runs is printed for each.
+ */
+public class IntegerMapBenchmark
+{
+	private static final int RUNS = 5;
+	
+	public static void main(final String[] args)
+	{
+		final int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		final Object[] keys = new Object[keyCount];
+		for (int i = 0; i < keyCount; i++)
+		{
+			keys[i] = "key" + i;
+		}
+		long bestIntegerMap = Long.MAX_VALUE;
+		long bestHashMap = Long.MAX_VALUE;
+		long check = 0;
+		for (int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			check += runIntegerMap(keys, rounds);
+			bestIntegerMap = Math.min(bestIntegerMap, System.nanoTime() - start);
+			start = System.nanoTime();
+			check -= runHashMap(keys, rounds);
+			bestHashMap = Math.min(bestHashMap, System.nanoTime() - start);
+		}
+		if (check != 0)
+			throw new IllegalStateException("The maps did not count the same");
+		System.out.println(keyCount + " keys, " + rounds + " rounds");
+		System.out.println("IntegerMap: " + bestIntegerMap / 1000000 + " ms");
+		System.out.println("HashMap:    " + bestHashMap / 1000000 + " ms");
+	}
+	
+	private static long runIntegerMap(final Object[] keys, final int rounds)
+	{
+		long total = 0;
+		final IntegerMap<Object> map = new IntegerMap<Object>();
+		for (int round = 0; round < rounds; round++)
+		{
+			for (int i = 0; i < keys.length; i++)
+			{
+				map.add(keys[i], i & 3);
+			}
+			for (int i = 0; i < keys.length; i += 2)
+			{
+				total += map.getInt(keys[i]);
+			}
+			if (round % 64 == 0)
+			{
+				total += new IntegerMap<Object>(map).totalValues();
+				map.clear();
+			}
+		}
+		return total;
+	}
+	
+	private static long runHashMap(final Object[] keys, final int rounds)
+	{
+		long total = 0;
+		final Map<Object, Integer> map = new HashMap<Object, Integer>();
+		for (int round = 0; round < rounds; round++)
+		{
+			for (int i = 0; i < keys.length; i++)
+			{
+				final Integer count = map.get(keys[i]);
+				map.put(keys[i], (count == null ? 0 : count) + (i & 3));
+			}
+			for (int i = 0; i < keys.length; i += 2)
+			{
+				final Integer count = map.get(keys[i]);
+				total += count == null ? 0 : count;
+			}
+			if (round % 64 == 0)
+			{
+				for (final Integer count : new HashMap<Object, Integer>(map).values())
+				{
+					total += count;
+				}
+				map.clear();
+			}
+		}
+		return total;
+	}
+}
@@ -18,6 +18,13 @@
  */
 package games.strategy.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+
 import junit.framework.TestCase;
 
 /**
@@ -93,4 +100,74 @@ public class IntegerMapTest extends TestCase
 		map1.add(v3, 3);
 		assertTrue(map1.greaterThanOrEqualTo(map2));
 	}
+	
+	public void testRemoveAndGrow()
+	{
+		final IntegerMap<String> map = new IntegerMap<String>();
+		for (int i = 0; i < 100; i++)
+		{
+			map.put("key" + i, i);
+		}
+		for (int i = 0; i < 100; i += 2)
+		{
+			map.removeKey("key" + i);
+		}
+		final Iterator<String> iter = map.keySet().iterator();
+		while (iter.hasNext())
+		{
+			if (iter.next().equals("key1"))
+				iter.remove();
+		}
+		assertEquals(49, map.size());
+		assertFalse(map.containsKey("key0"));
+		assertFalse(map.containsKey("key1"));
+		assertEquals(99, map.getInt("key99"));
+		map.put("key0", 5);
+		assertEquals(5, map.getInt("key0"));
+		assertEquals(50, map.size());
+	}
+	
+	public void testUpdateExistingKeysWhileIterating()
+	{
+		// at every size, including those where the next new key would grow the table
+		for (int size = 1; size <= 40; size++)
+		{
+			final IntegerMap<String> map = new IntegerMap<String>();
+			for (int i = 0; i < size; i++)
+			{
+				map.put("key" + i, i);
+			}
+			for (final String key : map.keySet())
+			{
+				map.put(key, 5);
+				map.add(key, 1);
+			}
+			for (final Map.Entry<String, Integer> entry : map.entrySet())
+			{
+				map.put(entry.getKey(), entry.getValue() + 1);
+			}
+			assertEquals(size, map.size());
+			assertEquals(7 * size, map.totalValues());
+		}
+	}
+	
+	public void testSerialize() throws Exception
+	{
+		final IntegerMap<String> map = new IntegerMap<String>();
+		map.put("a", 3);
+		map.put("b", -2);
+		map.put(null, 7);
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(sink);
+		out.writeObject(map);
+		out.close();
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(sink.toByteArray()));
+		@SuppressWarnings("unchecked")
+		final IntegerMap<String> read = (IntegerMap<String>) in.readObject();
+		assertEquals(map, read);
+		assertEquals(map.hashCode(), read.hashCode());
+		assertEquals(7, read.getInt(null));
+		read.add("c", 1);
+		assertEquals(9, read.totalValues());
+	}
 }